@@ -9,6 +9,7 @@ import dap4.core.ce.CEConstraint;
 import dap4.core.dmr.DMRPrinter;
 import dap4.core.dmr.DapDataset;
 import dap4.core.dmr.ErrorResponse;
+import dap4.core.dmr.TypeSort;
 import dap4.core.util.DapConstants;
 import dap4.core.util.DapContext;
 import dap4.core.util.DapException;
@@ -20,6 +21,7 @@ import java.io.*;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.zip.Checksum;
 
 public class ChunkWriter extends OutputStream {
   //////////////////////////////////////////////////
@@ -169,9 +171,38 @@ public class ChunkWriter extends OutputStream {
   }
 
   public void cacheDMR(String dmr) throws IOException {
+    cacheDMR(encodeDMR(dmr));
+  }
+
+  /**
+   * Cache a DMR that has already been encoded by encodeDMR().
+   *
+   * @param dmr8 The DMR in UTF-8 form
+   * @throws IOException on IO related errors
+   */
+
+  public void cacheDMR(byte[] dmr8) throws IOException {
     if (state != State.INITIAL)
       throw new DapException("Attempt to write DMR twice");
 
+    if (dmr8 == null || dmr8.length == 0)
+      throw new DapException("Attempt to write empty DMR");
+
+    this.dmr8 = dmr8;
+
+    state = State.DMR;
+  }
+
+  /**
+   * Convert a DMR string into the UTF-8 form that is sent,
+   * with any trailing CR/LF sequence replaced by a single CRLF.
+   *
+   * @param dmr The DMR string
+   * @return the DMR in UTF-8 form
+   * @throws DapException if the DMR is empty
+   */
+
+  public static byte[] encodeDMR(String dmr) throws DapException {
     if (dmr == null)
       throw new DapException("Attempt to write empty DMR");
 
@@ -189,9 +220,7 @@ public class ChunkWriter extends OutputStream {
     dmr = dmr.substring(0, len) + DapUtil.CRLF;
 
     // Convert the dmr to UTF-8 and then to byte[]
-    this.dmr8 = DapUtil.extract(DapUtil.UTF8.encode(dmr));
-
-    state = State.DMR;
+    return DapUtil.extract(DapUtil.UTF8.encode(dmr));
   }
 
   /**
@@ -266,7 +295,7 @@ public class ChunkWriter extends OutputStream {
     // and amount to write is zero,
     // go ahead and write the zero size chunk.
     if (chunk == null)
-      chunk = ByteBuffer.allocate(maxbuffersize);
+      chunk = ByteBuffer.allocate(maxbuffersize).order(getWriteOrder());
 
     int buffersize = chunk.position();
     chunkheader(buffersize, flags, header);
@@ -439,11 +468,88 @@ public class ChunkWriter extends OutputStream {
           avail = chunk.remaining();
         }
         int towrite = (left < avail ? left : avail);
-        chunk.put(b, off, towrite);
+        chunk.put(b, offset, towrite);
+        offset += towrite;
         left -= towrite;
         avail -= towrite;
       } while (left > 0);
     }
     writecount += len;
   }
+
+  /**
+   * Encode an array of fixed size atomic values directly into the chunk buffer,
+   * one chunk-sized window at a time. This avoids encoding the whole array
+   * into a temporary buffer and then copying that into the chunk.
+   * Values are never split across chunks.
+   *
+   * @param atomtype the atomic type of the values; must be fixed size
+   * @param values the primitive array of values
+   * @param order the byte order in which to encode the values
+   * @param checksum if not null, updated with the encoded bytes
+   * @throws IOException if an I/O error occurs
+   */
+  public void writeAtomicArray(TypeSort atomtype, Object values, ByteOrder order, Checksum checksum)
+      throws IOException {
+    verifystate();
+    int elemsize = (int) TypeSort.getSize(atomtype);
+    int count = java.lang.reflect.Array.getLength(values);
+    long len = (long) elemsize * count;
+    if (writecount + len >= writelimit)
+      throw new DapException("Attempt to write too much data: limit=" + writecount + len)
+          .setCode(DapCodes.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+    if (chunk == null)
+      chunk = ByteBuffer.allocate(maxbuffersize).order(getWriteOrder());
+    if (state == State.DMR) {
+      chunk.clear(); // reset
+      state = State.DATA;
+    }
+    assert (state == State.DATA);
+    chunk.order(order);
+
+    int index = 0;
+    while (index < count) {
+      if (chunk.remaining() < elemsize)
+        writeChunk(DapConstants.CHUNK_DATA);
+      int n = Math.min(count - index, chunk.remaining() / elemsize);
+      int start = chunk.position();
+      switch (atomtype) {
+        case Char:
+          char[] datac = (char[]) values;
+          for (int i = index; i < index + n; i++)
+            chunk.put((byte) (0xFFL & (long) (datac[i])));
+          break;
+        case UInt8:
+        case Int8:
+          chunk.put((byte[]) values, index, n);
+          break;
+        case Int16:
+        case UInt16:
+          chunk.asShortBuffer().put((short[]) values, index, n);
+          break;
+        case Int32:
+        case UInt32:
+          chunk.asIntBuffer().put((int[]) values, index, n);
+          break;
+        case Int64:
+        case UInt64:
+          chunk.asLongBuffer().put((long[]) values, index, n);
+          break;
+        case Float32:
+          chunk.asFloatBuffer().put((float[]) values, index, n);
+          break;
+        case Float64:
+          chunk.asDoubleBuffer().put((double[]) values, index, n);
+          break;
+        default:
+          throw new DapException("Not a fixed size atomic type: " + atomtype);
+      }
+      int nbytes = n * elemsize;
+      chunk.position(start + nbytes); // because we are using asXXXBuffer
+      if (checksum != null)
+        checksum.update(chunk.array(), chunk.arrayOffset() + start, nbytes);
+      index += n;
+    }
+    writecount += len;
+  }
 }
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2012, UCAR/Unidata.
+ * See the LICENSE file for more information.
+ */
+
+package dap4.servlet;
+
+import dap4.core.dmr.DapDataset;
+
+import java.util.Formatter;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Server side cache of DMRs, so that repeated .dmr requests for
+ * the same dataset do not have to re-open the file, re-translate
+ * it through CDMWrap and re-print the DMR.
+ * <p>
+ * Entries are keyed on the dataset's absolute path and are valid only as
+ * long as the file's lastModified is unchanged. Each entry holds the
+ * DapDataset template plus a small number of pre-printed UTF-8 forms
+ * of the DMR, keyed on the format, byte order and queries. The printed
+ * DMR is the same for a .dmr request and for the DMR part of a .dap
+ * request, so the two share it.
+ * Eviction is least-recently-used, with a cap on the number of datasets.
+ * <p>
+ * The cached DapDataset must be treated as read-only.
+ */
+
+public class DMRCache {
+
+  //////////////////////////////////////////////////
+  // Constants
+
+  public static final int DEFAULTMAXSIZE = 100;
+
+  // Max number of printed DMR variants to keep per dataset
+  static final int MAXVARIANTS = 8;
+
+  //////////////////////////////////////////////////
+  // Type declarations
+
+  public static class Entry {
+    protected String path = null;
+    protected long lastmodified = 0;
+    protected DapDataset dmr = null;
+    protected Map<String, byte[]> printed = new LinkedHashMap<>();
+
+    public Entry(String path, long lastmodified, DapDataset dmr) {
+      this.path = path;
+      this.lastmodified = lastmodified;
+      this.dmr = dmr;
+    }
+
+    public String getPath() {
+      return this.path;
+    }
+
+    public long getLastModified() {
+      return this.lastmodified;
+    }
+
+    public DapDataset getDMR() {
+      return this.dmr;
+    }
+
+    public synchronized byte[] getPrinted(String key) {
+      return this.printed.get(key);
+    }
+
+    public synchronized void putPrinted(String key, byte[] dmr8) {
+      if (this.printed.size() >= MAXVARIANTS && !this.printed.containsKey(key)) {
+        // drop the oldest variant
+        Iterator<String> it = this.printed.keySet().iterator();
+        it.next();
+        it.remove();
+      }
+      this.printed.put(key, dmr8);
+    }
+  }
+
+  //////////////////////////////////////////////////
+  // Instance variables
+
+  protected int maxsize = DEFAULTMAXSIZE;
+  protected LinkedHashMap<String, Entry> entries = null;
+  protected long hits = 0;
+  protected long misses = 0;
+  protected long printedhits = 0;
+  protected long printedmisses = 0;
+
+  //////////////////////////////////////////////////
+  // Constructor(s)
+
+  public DMRCache(int maxsize) {
+    this.maxsize = maxsize;
+    // access order => LRU
+    this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > DMRCache.this.maxsize;
+      }
+    };
+  }
+
+  //////////////////////////////////////////////////
+  // Accessors
+
+  public boolean isEnabled() {
+    return this.maxsize > 0;
+  }
+
+  public synchronized long getHits() {
+    return this.hits;
+  }
+
+  public synchronized long getMisses() {
+    return this.misses;
+  }
+
+  public synchronized long getPrintedHits() {
+    return this.printedhits;
+  }
+
+  public synchronized long getPrintedMisses() {
+    return this.printedmisses;
+  }
+
+  public synchronized int size() {
+    return this.entries.size();
+  }
+
+  //////////////////////////////////////////////////
+  // Cache API
+
+  /**
+   * Find the entry for a dataset.
+   *
+   * @param path absolute path of the dataset
+   * @param lastmodified current lastModified of the dataset
+   * @return the entry, or null if missing or out of date
+   */
+  public synchronized Entry get(String path, long lastmodified) {
+    Entry entry = this.entries.get(path);
+    if (entry != null && entry.getLastModified() != lastmodified) {
+      this.entries.remove(path);
+      entry = null;
+    }
+    if (entry == null)
+      this.misses++;
+    else
+      this.hits++;
+    return entry;
+  }
+
+  /**
+   * Find a printed form of the DMR in an entry, counting hits and misses.
+   *
+   * @param entry the entry of the dataset, may be null
+   * @param key from printKey()
+   * @return the printed DMR, or null if not there
+   */
+  public byte[] getPrinted(Entry entry, String key) {
+    byte[] dmr8 = (entry == null ? null : entry.getPrinted(key));
+    synchronized (this) {
+      if (dmr8 == null)
+        this.printedmisses++;
+      else
+        this.printedhits++;
+    }
+    return dmr8;
+  }
+
+  public synchronized void put(Entry entry) {
+    if (!isEnabled())
+      return;
+    this.entries.put(entry.getPath(), entry);
+  }
+
+  public synchronized void clear() {
+    this.entries.clear();
+    this.hits = 0;
+    this.misses = 0;
+    this.printedhits = 0;
+    this.printedmisses = 0;
+  }
+
+  /**
+   * Build the key for a printed form of the DMR. The printed DMR
+   * depends on the format, the byte order and the request queries
+   * (constraint, etc), but not on the request mode, so that a .dap
+   * request finds the DMR printed for a .dmr request.
+   *
+   * @param drq the request
+   * @return key
+   */
+  public static String printKey(DapRequest drq) {
+    StringBuilder key = new StringBuilder();
+    key.append(drq.getFormat());
+    key.append('|');
+    key.append(drq.getOrder());
+    // queries are in no particular order
+    Map<String, String> queries = new java.util.TreeMap<>(drq.getQueries());
+    for (Map.Entry<String, String> entry : queries.entrySet()) {
+      key.append('|');
+      key.append(entry.getKey());
+      key.append('=');
+      key.append(entry.getValue());
+    }
+    return key.toString();
+  }
+
+  public synchronized void showCache(Formatter f) {
+    f.format("DAP4 DMR Cache:%n");
+    f.format("maxSize=%d, numberOfEntries=%d, hits=%d, misses=%d, hitRate=%.3f%n", this.maxsize, this.entries.size(),
+        this.hits, this.misses, rate(this.hits, this.misses));
+    f.format("printed DMR hits=%d, misses=%d, hitRate=%.3f%n", this.printedhits, this.printedmisses,
+        rate(this.printedhits, this.printedmisses));
+    f.format("entries:%n");
+    for (String path : this.entries.keySet())
+      f.format("  %s%n", path);
+  }
+
+  static private double rate(long hits, long misses) {
+    return (hits + misses) == 0 ? 0.0 : (double) hits / (hits + misses);
+  }
+
+  public synchronized String toString() {
+    return String.format("DMRCache: maxsize=%d size=%d hits=%d misses=%d", this.maxsize, this.entries.size(),
+        this.hits, this.misses);
+  }
+}
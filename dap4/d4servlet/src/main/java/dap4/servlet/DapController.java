@@ -72,6 +72,9 @@ abstract public class DapController extends HttpServlet {
   // Cache the value of getTestDataRoot()
   protected String testDataRoot = null;
 
+  // Cache of DMRs, keyed on dataset path
+  protected DMRCache dmrcache = new DMRCache(DMRCache.DEFAULTMAXSIZE);
+
   //////////////////////////////////////////////////
   // Constructor(s)
 
@@ -154,6 +157,21 @@ abstract public class DapController extends HttpServlet {
     if (this.initialized)
       return;
     this.initialized = true;
+    this.dmrcache = new DMRCache(getDMRCacheSize());
+  }
+
+  /**
+   * Get the max number of datasets whose DMR is cached;
+   * 0 turns off the cache. Subclasses may override.
+   *
+   * @return size
+   */
+  protected int getDMRCacheSize() {
+    return DMRCache.DEFAULTMAXSIZE;
+  }
+
+  public DMRCache getDMRCache() {
+    return this.dmrcache;
   }
 
 
@@ -260,43 +278,68 @@ abstract public class DapController extends HttpServlet {
     // Convert the url to an absolute path
     String realpath = drq.getResourcePath(drq.getDatasetPath());
 
-    CDMWrap c4 = new CDMWrap().open(realpath); // Create the wrapper
-    DapDataset dmr = c4.getDMR();
-    CEConstraint ce = constrainDapContext(cxt, dmr);
     ChecksumMode csummode = (ChecksumMode) cxt.get(DapConstants.CHECKSUMTAG);
     ByteOrder order = (ByteOrder) cxt.get(DapConstants.DAP4ENDIANTAG);
 
     // If the user calls for checksums, then we need to compute them
-    if (csummode == ChecksumMode.TRUE) {
-      Map<DapVariable, Long> checksummap = computeDMRChecksums(c4, cxt);
-      // Add to context
-      cxt.put("checksummap", checksummap);
-    }
-
-    // Provide a PrintWriter for capturing the DMR.
-    StringWriter sw = new StringWriter();
-    PrintWriter pw = new PrintWriter(sw);
+    // from the data, so the cached DMR cannot be used.
+    boolean usecache = (csummode != ChecksumMode.TRUE && this.dmrcache.isEnabled());
+    long lastmodified = new File(realpath).lastModified();
+    DMRCache.Entry entry = usecache ? this.dmrcache.get(realpath, lastmodified) : null;
+    String printkey = DMRCache.printKey(drq);
+    byte[] dmr8 = usecache ? this.dmrcache.getPrinted(entry, printkey) : null;
+
+    if (dmr8 == null) {
+      CDMWrap c4 = null;
+      try {
+        DapDataset dmr;
+        if (entry != null)
+          dmr = entry.getDMR();
+        else {
+          c4 = new CDMWrap().open(realpath); // Create the wrapper
+          dmr = c4.getDMR();
+          if (usecache && lastmodified > 0) {
+            entry = new DMRCache.Entry(realpath, lastmodified, dmr);
+            this.dmrcache.put(entry);
+          }
+        }
+        CEConstraint ce = constrainDapContext(cxt, dmr);
 
-    // Get the DMR as a string
-    DMRPrinter dapprinter = new DMRPrinter(dmr, ce, pw, drq.getFormat(), cxt);
-    dapprinter.print();
-    pw.close();
-    sw.close();
+        if (csummode == ChecksumMode.TRUE) {
+          Map<DapVariable, Long> checksummap = computeDMRChecksums(c4, cxt);
+          // Add to context
+          cxt.put("checksummap", checksummap);
+        }
 
-    String sdmr = sw.toString();
-    if (DEBUG)
-      System.err.println("Sending: DMR:\n" + sdmr);
+        // Provide a PrintWriter for capturing the DMR.
+        StringWriter sw = new StringWriter();
+        PrintWriter pw = new PrintWriter(sw);
+
+        // Get the DMR as a string
+        DMRPrinter dapprinter = new DMRPrinter(dmr, ce, pw, drq.getFormat(), cxt);
+        dapprinter.print();
+        pw.close();
+        sw.close();
+
+        String sdmr = sw.toString();
+        if (DEBUG)
+          System.err.println("Sending: DMR:\n" + sdmr);
+        dmr8 = ChunkWriter.encodeDMR(sdmr);
+        if (entry != null)
+          entry.putPrinted(printkey, dmr8);
+      } finally {
+        if (c4 != null)
+          c4.close();
+      }
+    }
 
     addCommonHeaders(drq);// Add relevant headers
 
     OutputStream out = drq.getOutputStream();
     // Wrap the outputstream with a Chunk writer
     ChunkWriter cw = new ChunkWriter(out, RequestMode.DMR, order);
-    cw.cacheDMR(sdmr);
+    cw.cacheDMR(dmr8);
     cw.close();
-
-    c4.close();
-
   }
 
   /**
@@ -334,18 +377,34 @@ abstract public class DapController extends HttpServlet {
       cxt.put("checksummap", checksummap);
     }
 
-    // Get the DMR as a string
-    DMRPrinter dapprinter = new DMRPrinter(dmr, ce, pw, drq.getFormat(), cxt);
-    dapprinter.print();
-    pw.close();
-    sw.close();
+    // Use the printed DMR from the cache, if any; it is the same as printing c4's DMR.
+    boolean usecache = (csummode != ChecksumMode.TRUE && this.dmrcache.isEnabled());
+    long lastmodified = new File(realpath).lastModified();
+    DMRCache.Entry entry = usecache ? this.dmrcache.get(realpath, lastmodified) : null;
+    String printkey = DMRCache.printKey(drq);
+    byte[] dmr8 = usecache ? this.dmrcache.getPrinted(entry, printkey) : null;
+
+    if (dmr8 == null) {
+      // Get the DMR as a string
+      DMRPrinter dapprinter = new DMRPrinter(dmr, ce, pw, drq.getFormat(), cxt);
+      dapprinter.print();
+      pw.close();
+      sw.close();
+      dmr8 = ChunkWriter.encodeDMR(sw.toString());
+      // keep it for the next .dmr or .dap request
+      if (usecache && entry == null && lastmodified > 0) {
+        entry = new DMRCache.Entry(realpath, lastmodified, dmr);
+        this.dmrcache.put(entry);
+      }
+      if (entry != null)
+        entry.putPrinted(printkey, dmr8);
+    }
 
     // Wrap the outputstream with a Chunk writer
     OutputStream out = drq.getOutputStream();
     ChunkWriter cw = new ChunkWriter(out, RequestMode.DAP, order);
     cw.setWriteLimit(getBinaryWriteLimit());
-    String sdmr = sw.toString();
-    cw.cacheDMR(sdmr);
+    cw.cacheDMR(dmr8);
     cw.flush();
 
     addCommonHeaders(drq);
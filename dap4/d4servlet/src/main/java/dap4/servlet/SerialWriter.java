@@ -273,6 +273,13 @@ public class SerialWriter {
    */
   public void writeAtomicArray(DapType daptype, Object values) throws IOException {
     assert values != null && values.getClass().isArray();
+    TypeSort atomtype = daptype.getAtomicType();
+    if (this.output instanceof ChunkWriter && isFixedSize(atomtype) && !DEBUG && !DUMPDATA && !DUMPCSUM) {
+      // encode straight into the chunk buffer
+      java.util.zip.Checksum crc = (this.checksummode == ChecksumMode.TRUE ? this.checksum : null);
+      ((ChunkWriter) this.output).writeAtomicArray(atomtype, values, this.order, crc);
+      return;
+    }
     ByteBuffer buf = SerialWriter.encodeArray(daptype, values, this.order);
     byte[] bytes = buf.array();
     int len = buf.position();
@@ -287,6 +294,25 @@ public class SerialWriter {
     }
   }
 
+  static boolean isFixedSize(TypeSort atomtype) {
+    switch (atomtype) {
+      case Char:
+      case UInt8:
+      case Int8:
+      case Int16:
+      case UInt16:
+      case Int32:
+      case UInt32:
+      case Int64:
+      case UInt64:
+      case Float32:
+      case Float64:
+        return true;
+      default:
+        return false;
+    }
+  }
+
   /**
    * Write out a set of bytes
    *
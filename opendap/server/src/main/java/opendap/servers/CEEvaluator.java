@@ -104,6 +104,12 @@ public class CEEvaluator {
    */
   private Vector<Clause> _cv;
 
+  /**
+   * The Clauses, compiled for evaluation. Null until compiled, or after the
+   * clause vector has been changed.
+   */
+  private CompiledClause[] _compiled;
+
   /**
    * The factory which will be used by the parser to construct the clause
    * tree. This allows servers to pass in a factory which creates
@@ -193,6 +199,9 @@ public class CEEvaluator {
       throw new DAP2Exception(ce);
     }
 
+    // resolve the selection clauses once, rather than for every row
+    compileClauses();
+
     if (_Debug) {
       int it = 0;
       Enumeration ec = getClauses();
@@ -235,6 +244,7 @@ public class CEEvaluator {
   public void appendClause(Clause c) {
     if (c != null) {
       _cv.add(c);
+      _compiled = null;
     }
   }
 
@@ -253,6 +263,7 @@ public class CEEvaluator {
    */
   public boolean removeClause(Clause c) {
     if (c != null) {
+      _compiled = null;
       return (_cv.remove(c));
     }
     return (false);
@@ -320,17 +331,16 @@ public class CEEvaluator {
    */
   public boolean evalClauses(Object specialO) throws NoSuchVariableException, DAP2ServerSideException, IOException {
 
-    boolean result = true;
-    Enumeration ec = getClauses();
+    if (_compiled == null)
+      compileClauses();
 
-    while (ec.hasMoreElements() && result == true) {
-      Object o = ec.nextElement();
+    boolean result = true;
+    for (int i = 0; i < _compiled.length && result; i++) {
       if (_Debug) {
-        System.out.println("Evaluating clause: " + ec.nextElement());
+        System.out.println("Evaluating clause: " + _cv.get(i));
       }
 
-      result = ((TopLevelClause) o).evaluate();
-
+      result = _compiled[i].evaluate();
     }
 
     // Hack: pop the projections of all DArrayDimensions that
@@ -341,6 +351,22 @@ public class CEEvaluator {
   }
 
 
+  /**
+   * Compile the Clauses in the Clause vector. A relational clause comparing a
+   * variable to constants gets its operand types and constant values resolved
+   * here, so that evalClauses() does not go through Operator.op() for each row.
+   *
+   * @see CompiledClause
+   */
+  private void compileClauses() {
+    CompiledClause[] compiled = new CompiledClause[_cv.size()];
+    for (int i = 0; i < compiled.length; i++) {
+      compiled[i] = CompiledClause.compile(_cv.get(i));
+    }
+    _compiled = compiled;
+  }
+
+
   /**
    * Mark all the variables in the DDS either as part of the current
    * projection (when <code>state</code> is true) or not
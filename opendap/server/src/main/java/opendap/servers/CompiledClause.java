@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package opendap.servers;
+
+import opendap.dap.*;
+import opendap.servers.parsers.ExprParserConstants;
+import java.util.List;
+
+/**
+ * A top level clause of a constraint expression, resolved once per request.
+ * <p>
+ * The common selection clause is a comparison of a variable against one or more
+ * constants, eg "time>1000" or "station={10,12,17}". Going through RelOpClause.evaluate()
+ * and Operator.op() means a cascade of instanceof checks on both operands, for every clause
+ * and every row of a sequence. Here the operand types, the constant values and the operator
+ * are resolved once, so that evaluating a row reads the primitive value of the variable and
+ * does a single comparison.
+ * <p>
+ * The semantics are those of Operator.op(): DByte is unsigned on the left, and on the right
+ * only when compared with another DByte; DUInt16 and DUInt32 are unsigned; the comparison
+ * is done in double if either side is a DFloat64, in float if either side is a DFloat32,
+ * else as an integer. Anything else (functions, dereferences, regular expressions,
+ * mixed string / number comparisons, custom clause classes) is evaluated by the clause itself.
+ */
+abstract class CompiledClause {
+
+  // operand kinds, in the order in which Operator.op() tests them
+  static final int BYTE = 0;
+  static final int FLOAT32 = 1;
+  static final int FLOAT64 = 2;
+  static final int INT16 = 3;
+  static final int INT32 = 4;
+  static final int STRING = 5;
+  static final int UINT16 = 6;
+  static final int UINT32 = 7;
+  static final int URL = 8;
+  static final int OTHER = -1;
+
+  /**
+   * Evaluate the clause against the current values of the variables.
+   *
+   * @return the value of the clause
+   */
+  abstract boolean evaluate() throws DAP2ServerSideException;
+
+  /**
+   * Compile a top level clause.
+   *
+   * @param clause parsed clause
+   * @return compiled clause, never null
+   */
+  static CompiledClause compile(Clause clause) {
+    CompiledClause result = null;
+    if (clause.getClass() == RelOpClause.class) {
+      result = compileRelOp((RelOpClause) clause);
+    }
+    return (result != null) ? result : new Fallback(clause);
+  }
+
+  static int kindOf(BaseType bt) {
+    if (bt instanceof DByte)
+      return BYTE;
+    else if (bt instanceof DFloat32)
+      return FLOAT32;
+    else if (bt instanceof DFloat64)
+      return FLOAT64;
+    else if (bt instanceof DInt16)
+      return INT16;
+    else if (bt instanceof DInt32)
+      return INT32;
+    else if (bt instanceof DString)
+      return STRING;
+    else if (bt instanceof DUInt16)
+      return UINT16;
+    else if (bt instanceof DUInt32)
+      return UINT32;
+    else if (bt instanceof DURL)
+      return URL;
+    else
+      return OTHER;
+  }
+
+  private static boolean isString(int kind) {
+    return kind == STRING || kind == URL;
+  }
+
+  private static boolean isNumeric(int kind) {
+    return kind != OTHER && !isString(kind);
+  }
+
+  // return null if the clause cannot be compiled
+  private static CompiledClause compileRelOp(RelOpClause clause) {
+    if (clause.isConstant())
+      return null;
+    int operator = clause.getOperator();
+    if (operator != ExprParserConstants.LESS && operator != ExprParserConstants.LESS_EQL
+        && operator != ExprParserConstants.GREATER && operator != ExprParserConstants.GREATER_EQL
+        && operator != ExprParserConstants.EQUAL && operator != ExprParserConstants.NOT_EQUAL)
+      return null;
+
+    // a variable on the left
+    SubClause lhs = clause.getLHS();
+    if (lhs.getClass() != ValueClause.class || lhs.isConstant())
+      return null;
+    BaseType var = ((ValueClause) lhs).getValue();
+    int lkind = kindOf(var);
+    if (lkind == OTHER)
+      return null;
+
+    // constants on the right
+    List rhs = clause.getRHS();
+    BaseType[] values = new BaseType[rhs.size()];
+    for (int i = 0; i < values.length; i++) {
+      Object sub = rhs.get(i);
+      if (sub.getClass() != ValueClause.class || !((ValueClause) sub).isConstant())
+        return null;
+      values[i] = ((ValueClause) sub).getValue();
+    }
+    if (values.length == 0)
+      return null;
+
+    if (isString(lkind)) {
+      String[] constants = new String[values.length];
+      for (int i = 0; i < values.length; i++) {
+        if (!isString(kindOf(values[i])))
+          return null; // Operator throws InvalidOperatorException, let it
+        constants[i] = ((DString) values[i]).getValue();
+      }
+      return new StringRelOp(operator, (DString) var, constants);
+    }
+
+    // numeric: decide the type of the comparison
+    boolean isDouble = (lkind == FLOAT64);
+    boolean isFloat = (lkind == FLOAT32);
+    for (BaseType value : values) {
+      int rkind = kindOf(value);
+      if (!isNumeric(rkind))
+        return null;
+      isDouble |= (rkind == FLOAT64);
+      isFloat |= (rkind == FLOAT32);
+    }
+
+    if (isDouble || isFloat) {
+      double[] constants = new double[values.length];
+      for (int i = 0; i < values.length; i++) {
+        int rkind = kindOf(values[i]);
+        double d = (rkind == FLOAT32 || rkind == FLOAT64) ? doubleValue(values[i], rkind)
+            : longValue(values[i], rkind, lkind == BYTE);
+        constants[i] = isDouble ? d : (double) (float) d;
+      }
+      return new DoubleRelOp(operator, var, lkind, !isDouble, constants);
+    }
+
+    long[] constants = new long[values.length];
+    for (int i = 0; i < values.length; i++) {
+      constants[i] = longValue(values[i], kindOf(values[i]), lkind == BYTE);
+    }
+    return new LongRelOp(operator, var, lkind, constants);
+  }
+
+  /**
+   * The integer value of an integer BaseType, following the conventions of Operator.op().
+   *
+   * @param bt the BaseType
+   * @param kind kindOf(bt)
+   * @param unsignedByte treat a DByte as unsigned
+   */
+  static long longValue(BaseType bt, int kind, boolean unsignedByte) {
+    switch (kind) {
+      case BYTE:
+        byte b = ((DByte) bt).getValue();
+        return unsignedByte ? (b & 0xFF) : b;
+      case INT16:
+        return ((DInt16) bt).getValue();
+      case INT32:
+        return ((DInt32) bt).getValue();
+      case UINT16:
+        return ((DUInt16) bt).getValue() & 0xFFFF;
+      case UINT32:
+        return ((DUInt32) bt).getValue() & 0xFFFFFFFFL;
+      default:
+        throw new IllegalArgumentException("Not an integer type: " + bt.getTypeName());
+    }
+  }
+
+  static double doubleValue(BaseType bt, int kind) {
+    switch (kind) {
+      case FLOAT32:
+        return ((DFloat32) bt).getValue();
+      case FLOAT64:
+        return ((DFloat64) bt).getValue();
+      default:
+        return longValue(bt, kind, true);
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////
+
+  private static class Fallback extends CompiledClause {
+    private final Clause clause;
+
+    Fallback(Clause clause) {
+      this.clause = clause;
+    }
+
+    boolean evaluate() throws DAP2ServerSideException {
+      return ((TopLevelClause) clause).evaluate();
+    }
+  }
+
+  private static class LongRelOp extends CompiledClause {
+    private final int operator;
+    private final BaseType var;
+    private final int kind;
+    private final long[] constants;
+
+    LongRelOp(int operator, BaseType var, int kind, long[] constants) {
+      this.operator = operator;
+      this.var = var;
+      this.kind = kind;
+      this.constants = constants;
+    }
+
+    boolean evaluate() {
+      long lval = longValue(var, kind, true);
+      for (long rval : constants) {
+        if (compare(operator, Long.compare(lval, rval)))
+          return true;
+      }
+      return false;
+    }
+  }
+
+  private static class DoubleRelOp extends CompiledClause {
+    private final int operator;
+    private final BaseType var;
+    private final int kind;
+    private final boolean isFloat;
+    private final double[] constants;
+
+    DoubleRelOp(int operator, BaseType var, int kind, boolean isFloat, double[] constants) {
+      this.operator = operator;
+      this.var = var;
+      this.kind = kind;
+      this.isFloat = isFloat;
+      this.constants = constants;
+    }
+
+    boolean evaluate() {
+      double lval = doubleValue(var, kind);
+      if (isFloat)
+        lval = (float) lval;
+      for (double rval : constants) {
+        if (compare(operator, lval, rval))
+          return true;
+      }
+      return false;
+    }
+
+    // not Double.compare(), which orders NaN and -0.0
+    private static boolean compare(int operator, double lval, double rval) {
+      switch (operator) {
+        case ExprParserConstants.LESS:
+          return lval < rval;
+        case ExprParserConstants.LESS_EQL:
+          return lval <= rval;
+        case ExprParserConstants.GREATER:
+          return lval > rval;
+        case ExprParserConstants.GREATER_EQL:
+          return lval >= rval;
+        case ExprParserConstants.EQUAL:
+          return lval == rval;
+        default:
+          return lval != rval;
+      }
+    }
+  }
+
+  private static class StringRelOp extends CompiledClause {
+    private final int operator;
+    private final DString var;
+    private final String[] constants;
+
+    StringRelOp(int operator, DString var, String[] constants) {
+      this.operator = operator;
+      this.var = var;
+      this.constants = constants;
+    }
+
+    boolean evaluate() {
+      String lval = var.getValue();
+      for (String rval : constants) {
+        if (compare(operator, lval.compareTo(rval)))
+          return true;
+      }
+      return false;
+    }
+  }
+
+  private static boolean compare(int operator, int cmp) {
+    switch (operator) {
+      case ExprParserConstants.LESS:
+        return cmp < 0;
+      case ExprParserConstants.LESS_EQL:
+        return cmp <= 0;
+      case ExprParserConstants.GREATER:
+        return cmp > 0;
+      case ExprParserConstants.GREATER_EQL:
+        return cmp >= 0;
+      case ExprParserConstants.EQUAL:
+        return cmp == 0;
+      default:
+        return cmp != 0;
+    }
+  }
+}
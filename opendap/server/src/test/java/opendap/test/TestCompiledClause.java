@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package opendap.test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import opendap.dap.*;
+import opendap.servers.*;
+import opendap.servers.parsers.ExprParserConstants;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Test that the compiled selection clauses in CEEvaluator give the same answers as Operator.op()
+
+public class TestCompiledClause {
+  private static final int[] OPERATORS = {ExprParserConstants.LESS, ExprParserConstants.LESS_EQL,
+      ExprParserConstants.GREATER, ExprParserConstants.GREATER_EQL, ExprParserConstants.EQUAL,
+      ExprParserConstants.NOT_EQUAL};
+
+  // values that exercise signed / unsigned and float rounding
+  private static final double[] VALUES = {0, 1, -1, 127, -128, 200, 32767, -32768, 40000, 16777217, -2147483648.0,
+      3000000000.0, 1.5, Double.NaN};
+
+  private final TestSDFactory factory = new TestSDFactory();
+  private final ClauseFactory clauseFactory = new ClauseFactory();
+
+  @Test
+  public void shouldMatchOperatorForNumbers() throws Exception {
+    String[] types = {"Byte", "Int16", "UInt16", "Int32", "UInt32", "Float32", "Float64"};
+    for (String ltype : types) {
+      for (String rtype : types) {
+        for (double lval : VALUES) {
+          for (double rval : VALUES) {
+            BaseType var = make(ltype, lval);
+            BaseType constant = make(rtype, rval);
+            for (int operator : OPERATORS) {
+              check(operator, var, Arrays.asList(constant));
+            }
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void shouldMatchOperatorForStrings() throws Exception {
+    String[] values = {"", "a", "abc", "abd", "B"};
+    for (String lval : values) {
+      for (String rval : values) {
+        DString var = factory.newDString("var");
+        var.setValue(lval);
+        DString constant = factory.newDString();
+        constant.setValue(rval);
+        for (int operator : OPERATORS) {
+          check(operator, var, Arrays.asList(constant));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void shouldMatchAnyOfList() throws Exception {
+    DInt32 var = factory.newDInt32("var");
+    List<BaseType> constants = new ArrayList<>();
+    for (int value : new int[] {10, 12, 17}) {
+      DInt32 constant = factory.newDInt32();
+      constant.setValue(value);
+      constants.add(constant);
+    }
+    for (int value = 8; value < 20; value++) {
+      var.setValue(value);
+      assertThat(evaluate(ExprParserConstants.EQUAL, var, constants))
+          .isEqualTo(value == 10 || value == 12 || value == 17);
+    }
+  }
+
+  @Test
+  public void shouldFollowChangingVariable() throws Exception {
+    DFloat64 var = factory.newDFloat64("var");
+    DFloat64 constant = factory.newDFloat64();
+    constant.setValue(100.0);
+
+    CEEvaluator ce = new CEEvaluator(new ServerDDS(factory));
+    ce.appendClause(clauseFactory.newRelOpClause(ExprParserConstants.GREATER, clauseFactory.newValueClause(var, false),
+        Arrays.asList(clauseFactory.newValueClause(constant, true))));
+
+    // as in SDSequence.serialize(), the same BaseType holds the value of each row in turn
+    for (double row = 0; row < 200; row += 10) {
+      var.setValue(row);
+      assertThat(ce.evalClauses(null)).isEqualTo(row > 100.0);
+    }
+  }
+
+  @Test(expected = InvalidOperatorException.class)
+  public void shouldStillRejectStringAgainstNumber() throws Exception {
+    DString var = factory.newDString("var");
+    var.setValue("abc");
+    DInt32 constant = factory.newDInt32();
+    constant.setValue(1);
+    evaluate(ExprParserConstants.EQUAL, var, Arrays.asList(constant));
+  }
+
+  private void check(int operator, BaseType var, List<BaseType> constants) throws Exception {
+    boolean expected = false;
+    for (BaseType constant : constants) {
+      expected |= Operator.op(operator, var, constant);
+    }
+    boolean result = evaluate(operator, var, constants);
+    assertWithMessage("%s %s %s", var.getTypeName(), ExprParserConstants.tokenImage[operator],
+        constants.get(0).getTypeName()).that(result).isEqualTo(expected);
+  }
+
+  private boolean evaluate(int operator, BaseType var, List<BaseType> constants) throws Exception {
+    List<SubClause> rhs = new ArrayList<>();
+    for (BaseType constant : constants) {
+      rhs.add(clauseFactory.newValueClause(constant, true));
+    }
+    CEEvaluator ce = new CEEvaluator(new ServerDDS(factory));
+    ce.appendClause(clauseFactory.newRelOpClause(operator, clauseFactory.newValueClause(var, false), rhs));
+    return ce.evalClauses(null);
+  }
+
+  private BaseType make(String type, double value) {
+    switch (type) {
+      case "Byte":
+        DByte b = factory.newDByte("var");
+        b.setValue((byte) (long) value);
+        return b;
+      case "Int16":
+        DInt16 s = factory.newDInt16("var");
+        s.setValue((short) (long) value);
+        return s;
+      case "UInt16":
+        DUInt16 us = factory.newDUInt16("var");
+        us.setValue((short) (long) value);
+        return us;
+      case "Int32":
+        DInt32 i = factory.newDInt32("var");
+        i.setValue((int) (long) value);
+        return i;
+      case "UInt32":
+        DUInt32 ui = factory.newDUInt32("var");
+        ui.setValue((int) (long) value);
+        return ui;
+      case "Float32":
+        DFloat32 f = factory.newDFloat32("var");
+        f.setValue((float) value);
+        return f;
+      default:
+        DFloat64 d = factory.newDFloat64("var");
+        d.setValue(value);
+        return d;
+    }
+  }
+}
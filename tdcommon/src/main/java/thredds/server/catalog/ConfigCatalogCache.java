@@ -63,6 +63,10 @@ public class ConfigCatalogCache implements CatalogReader {
     cache.put(catKey, cat);
   }
 
+  public void invalidate(String catKey) {
+    cache.invalidate(catKey);
+  }
+
   public void invalidateAll() {
     cache.invalidateAll();
   }
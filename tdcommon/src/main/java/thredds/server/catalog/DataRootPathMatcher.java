@@ -8,15 +8,16 @@ import thredds.client.catalog.Dataset;
 import thredds.server.catalog.tracker.DataRootExt;
 import thredds.server.catalog.tracker.DataRootTracker;
 import ucar.nc2.util.AliasTranslator;
-import ucar.unidata.util.StringUtil2;
 import javax.annotation.Nonnull;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Find the dataRoot path from the request, by getting the longest match.
- * Use a TreeSet for minimum in-memory use.
+ * The paths are kept in an immutable trie of path segments, which is rebuilt after new paths are added.
+ * Lookups do not lock, so that requests do not wait for each other, or for a catalog being read.
  * Keep the objects in a separate map that could be off-heap and persistent.
  *
  * @author caron
@@ -25,16 +26,68 @@ import java.util.*;
 public class DataRootPathMatcher {
   static private final Logger logger = LoggerFactory.getLogger(DataRootPathMatcher.class);
   static private org.slf4j.Logger logCatalogInit = org.slf4j.LoggerFactory.getLogger("catalogInit");
-  static private final boolean debug = false;
   static private final String ERROR = "*** ERROR: ";
   static private boolean skipTestDataDir = true;
 
-  private static class PathComparator implements Comparator<String> {
-    public int compare(String s1, String s2) {
-      int compare = s2.compareTo(s1); // reverse sort
-      if (debug)
-        System.out.println(" compare " + s1 + " to " + s2 + " = " + compare);
-      return compare;
+  /**
+   * The data root paths, by path segment. Never changed once built, so it can be searched without locking.
+   */
+  private static class PathTrie {
+    private final Map<String, PathTrie> children = new HashMap<>();
+    private String path; // the data root path that ends here, or null
+
+    PathTrie(Collection<String> paths) {
+      for (String path : paths) {
+        add(path);
+      }
+    }
+
+    private PathTrie() {}
+
+    private void add(String path) {
+      String key = path;
+      if (key.endsWith("/")) {
+        key = key.substring(0, key.length() - 1);
+      }
+      PathTrie node = this;
+      int start = 0;
+      while (true) {
+        int end = key.indexOf('/', start);
+        if (end < 0) {
+          end = key.length();
+        }
+        node = node.children.computeIfAbsent(key.substring(start, end), k -> new PathTrie());
+        if (end == key.length()) {
+          break;
+        }
+        start = end + 1;
+      }
+      node.path = path;
+    }
+
+    // the longest data root path that is a prefix of reqPath, on a segment boundary, or null
+    String findLongest(String reqPath) {
+      String result = null;
+      PathTrie node = this;
+      int start = 0;
+      while (true) {
+        int end = reqPath.indexOf('/', start);
+        if (end < 0) {
+          end = reqPath.length();
+        }
+        node = node.children.get(reqPath.substring(start, end));
+        if (node == null) {
+          break;
+        }
+        if (node.path != null) {
+          result = node.path;
+        }
+        if (end == reqPath.length()) {
+          break;
+        }
+        start = end + 1;
+      }
+      return result;
     }
   }
 
@@ -43,9 +96,9 @@ public class DataRootPathMatcher {
   private ConfigCatalogCache ccc;
   private DataRootTracker tracker;
 
-  private final TreeSet<String> treeSet = new TreeSet<>(new PathComparator()); // this should be in-memory for speed
-  private final Map<String, DataRootExt> map = new HashMap<>(); // this could be turned into an off-heap cache if
-                                                                // needed, with persistence.
+  private final Map<String, DataRootExt> map = new ConcurrentHashMap<>(); // this could be turned into an off-heap
+                                                                          // cache if needed, with persistence.
+  private volatile PathTrie trie; // null when a path has been added since it was built
 
   public DataRootPathMatcher(ConfigCatalogCache ccc, DataRootTracker tracker) {
     this.ccc = ccc;
@@ -57,17 +110,31 @@ public class DataRootPathMatcher {
   }
 
   /**
-   * Add a dataRootExt to in-memory tree.
+   * Add a dataRootExt to the map.
    * 
    * @return true if not already exist
    */
-  private boolean put(DataRootExt dataRootExt) {
-    map.put(dataRootExt.getPath(), dataRootExt);
-    String path = dataRootExt.getPath();
-    if (!path.endsWith("/")) {
-      path += "/";
+  private synchronized boolean put(DataRootExt dataRootExt) {
+    boolean isNew = map.put(dataRootExt.getPath(), dataRootExt) == null;
+    if (isNew) {
+      trie = null; // rebuilt on next use
     }
-    return treeSet.add(path);
+    return isNew;
+  }
+
+  // the trie of the current paths. Only rebuilding it locks.
+  private PathTrie getTrie() {
+    PathTrie result = trie;
+    if (result == null) {
+      synchronized (this) {
+        result = trie;
+        if (result == null) {
+          result = new PathTrie(map.keySet());
+          trie = result;
+        }
+      }
+    }
+    return result;
   }
 
   /**
@@ -77,7 +144,7 @@ public class DataRootPathMatcher {
    * @return true if already contains the key
    */
   public boolean contains(String path) {
-    return treeSet.contains(path);
+    return map.containsKey(path);
   }
 
   public DataRootExt get(String path) {
@@ -100,27 +167,7 @@ public class DataRootPathMatcher {
    * @return the value whose key is the longest that matches path, or null if none
    */
   public String findLongestPathMatch(String reqPath) {
-    if (!reqPath.endsWith("/")) {
-      reqPath += "/";
-    }
-    SortedSet<String> tail = treeSet.tailSet(reqPath);
-    if (tail.isEmpty()) {
-      return null;
-    }
-
-    // check for common starting chars
-    for (String key : tail) {
-      if (reqPath.startsWith(key)) {
-        return key.endsWith("/") ? key.substring(0, key.length() - 1) : key;
-      }
-
-      // terminate when there's no match at all.
-      if (StringUtil2.match(reqPath, key) == 0) {
-        break;
-      }
-    }
-
-    return null;
+    return getTrie().findLongest(reqPath);
   }
 
   /**
@@ -148,9 +195,15 @@ public class DataRootPathMatcher {
     if (dataRoot != null)
       return dataRoot;
 
-    // otherwise must read the catalog that its in
-    dataRoot = readDataRootFromCatalog(dataRootExt);
-    dataRootExt.setDataRoot(dataRoot);
+    // otherwise must read the catalog that its in.
+    // only requests for this data root wait for that, others go on.
+    synchronized (dataRootExt) {
+      dataRoot = dataRootExt.getDataRoot();
+      if (dataRoot == null) {
+        dataRoot = readDataRootFromCatalog(dataRootExt);
+        dataRootExt.setDataRoot(dataRoot);
+      }
+    }
     return dataRoot;
   }
 
@@ -347,7 +400,53 @@ public class DataRootPathMatcher {
     return true;
   }
 
-  private void putRoot(DataRoot droot, String catalogRelPath) {
+  /**
+   * Start reading a catalog again: stop tracking the dataRoots that were read from it, and return them.
+   * They are still found until removeRoots() is called, so that requests on them do not fail while it is read.
+   *
+   * @param catalogRelPath the catalog path, relative to the content root
+   * @return the dataRoots that were read from the catalog
+   */
+  public synchronized List<DataRootExt> forgetRoots(String catalogRelPath) {
+    tracker.removeDataRoots(catalogRelPath);
+    List<DataRootExt> result = new ArrayList<>();
+    for (DataRootExt dre : map.values()) {
+      if (catalogRelPath.equals(dre.getCatLocation()))
+        result.add(dre);
+    }
+    return result;
+  }
+
+  /**
+   * After a catalog has been read again, remove its old dataRoots that it did not add again.
+   *
+   * @param oldRoots what forgetRoots() returned
+   * @return the removed dataRoots
+   */
+  public synchronized List<DataRootExt> removeRoots(List<DataRootExt> oldRoots) {
+    List<DataRootExt> removed = new ArrayList<>();
+    for (DataRootExt dre : oldRoots) {
+      if (map.remove(dre.getPath(), dre)) // not if it has been replaced
+        removed.add(dre);
+    }
+    if (!removed.isEmpty())
+      trie = null; // rebuilt on next use
+    return removed;
+  }
+
+  /**
+   * A catalog could not be read again: keep the old dataRoots that forgetRoots() returned, and track them again.
+   *
+   * @param oldRoots what forgetRoots() returned
+   */
+  public synchronized void restoreRoots(List<DataRootExt> oldRoots) {
+    for (DataRootExt dre : oldRoots) {
+      if (map.get(dre.getPath()) == dre) // not if it has been replaced
+        tracker.trackDataRoot(dre);
+    }
+  }
+
+  private synchronized void putRoot(DataRoot droot, String catalogRelPath) {
     DataRootExt drootExt = new DataRootExt(droot, catalogRelPath);
     put(drootExt);
     tracker.trackDataRoot(drootExt);
@@ -164,6 +164,88 @@ public class DatasetScan extends CatalogRef {
    * @return the catalog for this path or null if build unsuccessful.
    */
   public CatalogBuilder makeCatalogForDirectory(String orgPath, URI baseURI) throws IOException {
+    return makeCatalogForDirectory(orgPath, baseURI, 0, -1);
+  }
+
+  /**
+   * Build a catalog for one page of the given path.
+   *
+   * @param orgPath the part of the baseURI that is the path
+   * @param baseURI the base URL for the catalog, used to resolve relative URLs.
+   * @param start index of the first dataset of the page
+   * @param limit maximum number of datasets in the page, or <= 0 for all
+   * @return the catalog for this page or null if build unsuccessful.
+   */
+  public CatalogBuilder makeCatalogForDirectory(String orgPath, URI baseURI, int start, int limit)
+      throws IOException {
+    DirectoryPage page = makeDirectoryPage(orgPath, baseURI, start, limit);
+    if (page == null)
+      return null;
+
+    DatasetBuilder top = page.top;
+    if (config.addLatest != null && config.addLatest.latestOnTop)
+      top.addDataset(makeLatestProxy(top, page.parentId));
+
+    // create Datasets
+    for (DirectoryListingCache.Entry entry : page.entries) {
+      MFile mfile = entry.mfile;
+      DatasetBuilder ds;
+
+      if (entry.isDirectory) {
+        CatalogRefBuilder catref = new CatalogRefBuilder(top);
+        catref.setTitle(makeName(mfile));
+        catref.setHref(mfile.getName() + "/catalog.xml");
+        catref.addToList(Dataset.Properties, new Property("DatasetScan", "true"));
+        top.addDataset(catref);
+        ds = catref;
+
+      } else {
+        ds = new DatasetBuilder(top);
+        ds.setName(makeName(mfile));
+        String urlPath = page.parentPath + mfile.getName();
+        ds.put(Dataset.UrlPath, urlPath);
+        ds.put(Dataset.DataSize, entry.length); // <dataSize units="Kbytes">54.73</dataSize>
+        CalendarDate date = CalendarDate.of(entry.lastModified);
+        ds.put(Dataset.Dates, new DateType(date).setType("modified")); // <date
+                                                                       // type="modified">2011-09-02T20:50:58.288Z</date>
+
+        if (addTimeCoverage != null)
+          addTimeCoverage.addMetadata(ds, mfile);
+
+        if (page.isNotAThreddsDataset(entry))
+          ds.addToList(Dataset.Properties, new Property(NotAThreddsDataset, "true"));
+
+        top.addDataset(ds);
+      }
+
+      ds.put(Dataset.Id, page.parentId + mfile.getName());
+    }
+
+    if (page.hasNextPage()) {
+      CatalogRefBuilder next = new CatalogRefBuilder(top);
+      next.setTitle(page.getNextPageTitle());
+      next.setHref(page.getNextPageHref());
+      top.addDataset(next);
+    }
+
+    if (config.addLatest != null && !config.addLatest.latestOnTop)
+      top.addDataset(makeLatestProxy(top, page.parentId));
+
+    // make the catalog
+    return page.catBuilder;
+  }
+
+  /**
+   * Scan the directory of the given path, and set up the catalog of one page of it, without its datasets.
+   * The datasets are made by makeCatalogForDirectory(), or streamed by DatasetScanXmlWriter.
+   *
+   * @param orgPath the part of the baseURI that is the path
+   * @param baseURI the base URL for the catalog, used to resolve relative URLs.
+   * @param start index of the first dataset of the page
+   * @param limit maximum number of datasets in the page, or <= 0 for all
+   * @return the page, or null if the path is not in this DatasetScan.
+   */
+  public DirectoryPage makeDirectoryPage(String orgPath, URI baseURI, int start, int limit) throws IOException {
 
     // Get the dataset location.
     String dataDirRelative = translatePathToReletiveLocation(orgPath, config.path);
@@ -188,6 +270,8 @@ public class DatasetScan extends CatalogRef {
     assert this.getParentCatalog() != null;
     for (Service s : this.getParentCatalog().getServices())
       catBuilder.addService(s);
+    if (config.addLatest != null)
+      catBuilder.addService(latestService);
 
     DatasetBuilder top = new DatasetBuilder(null);
     String name = (dataDirRelative.length() > 1) ? dataDirRelative : getName();
@@ -229,52 +313,114 @@ public class DatasetScan extends CatalogRef {
     }
 
     // scan and sort the directory
-    List<MFile> mfiles = getSortedFiles(directory, config.getSortFilesAscending());
+    DirectoryListingCache.Listing listing = DirectoryListingCache.get(this, directory, this::getFiles);
+    List<DirectoryListingCache.Entry> sorted = listing.getSorted(config.getSortFilesAscending());
+
+    DirectoryPage page = new DirectoryPage(catBuilder, top, parentPath, parentId, sorted, start, limit);
+    for (DirectoryListingCache.Entry entry : page.entries) {
+      if (page.isNotAThreddsDataset(entry)) {
+        top.put(ServiceName, fileService.getName());
+        break;
+      }
+    }
+    return page;
+  }
 
-    if (config.addLatest != null && config.addLatest.latestOnTop)
-      top.addDataset(makeLatestProxy(top, parentId));
+  /**
+   * Changes whenever the directory of the given path is rescanned, so that a catalog made from it can be reused
+   * while this stays the same.
+   *
+   * @param orgPath the part of the baseURI that is the path
+   * @return the directory listing, or null if directory listings are not cached or the path is not a directory
+   */
+  public Object getDirectoryVersion(String orgPath) throws IOException {
+    if (!DirectoryListingCache.isEnabled())
+      return null;
+    String dataDirRelative = translatePathToReletiveLocation(orgPath, config.path);
+    if (dataDirRelative == null)
+      return null;
+    if (!dataDirRelative.endsWith("/"))
+      dataDirRelative += "/";
+    MFile directory = MFiles.create(getDataDir(config.scanDir, dataDirRelative));
+    if (!directory.exists() || !directory.isDirectory())
+      return null;
+    return DirectoryListingCache.get(this, directory, this::getFiles);
+  }
 
-    // create Datasets
-    for (MFile mfile : mfiles) {
-      DatasetBuilder ds;
+  /**
+   * One page of the catalog of a directory: the catalog without its datasets, and the directory entries to make them
+   * from. Built per request.
+   */
+  public class DirectoryPage {
+    final CatalogBuilder catBuilder;
+    final DatasetBuilder top;
+    final String parentPath;
+    final String parentId;
+    final List<DirectoryListingCache.Entry> entries;
+    final int start;
+    final int limit;
+    final int total;
+
+    DirectoryPage(CatalogBuilder catBuilder, DatasetBuilder top, String parentPath, String parentId,
+        List<DirectoryListingCache.Entry> sorted, int start, int limit) {
+      this.catBuilder = catBuilder;
+      this.top = top;
+      this.parentPath = parentPath;
+      this.parentId = parentId;
+      this.total = sorted.size();
+      this.start = Math.min(Math.max(start, 0), total);
+      this.limit = limit;
+      int end = (limit > 0) ? (int) Math.min((long) this.start + limit, total) : total;
+      this.entries = sorted.subList(this.start, end);
+    }
 
-      if (mfile.isDirectory()) {
-        CatalogRefBuilder catref = new CatalogRefBuilder(top);
-        catref.setTitle(makeName(mfile));
-        catref.setHref(mfile.getName() + "/catalog.xml");
-        catref.addToList(Dataset.Properties, new Property("DatasetScan", "true"));
-        top.addDataset(catref);
-        ds = catref;
+    /** The catalog, with the top dataset but none of the datasets of the directory. */
+    public CatalogBuilder getCatalogBuilder() {
+      return catBuilder;
+    }
 
-      } else {
-        ds = new DatasetBuilder(top);
-        ds.setName(makeName(mfile));
-        String urlPath = parentPath + mfile.getName();
-        ds.put(Dataset.UrlPath, urlPath);
-        ds.put(Dataset.DataSize, mfile.getLength()); // <dataSize units="Kbytes">54.73</dataSize>
-        CalendarDate date = CalendarDate.of(mfile.getLastModified());
-        ds.put(Dataset.Dates, new DateType(date).setType("modified")); // <date
-                                                                       // type="modified">2011-09-02T20:50:58.288Z</date>
+    /** The number of datasets in the directory. */
+    public int getTotal() {
+      return total;
+    }
 
-        if (addTimeCoverage != null)
-          addTimeCoverage.addMetadata(ds, mfile);
+    DatasetScan getDatasetScan() {
+      return DatasetScan.this;
+    }
 
-        if (allowedServices != null && !allowedServices.isAThreddsDataset(mfile.getName())) {
-          ds.addToList(Dataset.Properties, new Property(NotAThreddsDataset, "true"));
-          top.put(ServiceName, fileService.getName());
-        }
+    boolean isNotAThreddsDataset(DirectoryListingCache.Entry entry) {
+      return !entry.isDirectory && allowedServices != null && !allowedServices.isAThreddsDataset(entry.mfile.getName());
+    }
 
-        top.addDataset(ds);
-      }
+    boolean hasLatest() {
+      return config.addLatest != null;
+    }
 
-      ds.put(Dataset.Id, parentId + mfile.getName());
+    boolean isLatestOnTop() {
+      return config.addLatest != null && config.addLatest.latestOnTop;
     }
 
-    if (config.addLatest != null && !config.addLatest.latestOnTop)
-      top.addDataset(makeLatestProxy(top, parentId));
+    String getLatestName() {
+      return config.addLatest.latestName;
+    }
 
-    // make the catalog
-    return catBuilder;
+    String getLatestServiceName() {
+      return latestService.getName();
+    }
+
+    boolean hasNextPage() {
+      return start + entries.size() < total;
+    }
+
+    // relative to the catalog of this page
+    String getNextPageHref() {
+      return "catalog.xml?start=" + (start + entries.size()) + "&limit=" + limit;
+    }
+
+    String getNextPageTitle() {
+      int next = start + entries.size();
+      return "Next page: datasets " + (next + 1) + " to " + Math.min((long) next + limit, total) + " of " + total;
+    }
   }
 
   private static String getDataDir(String scanDir, String dataDirRelative) {
@@ -287,28 +433,7 @@ public class DatasetScan extends CatalogRef {
   }
 
   ///////////////////////
-  // Scan and sort
-
-  private List<MFile> getSortedFiles(MFile directory, final boolean isSortIncreasing) throws IOException {
-
-    // scan the directory
-    List<MFile> mfiles = getFiles(directory);
-
-    // sort them
-    Collections.sort(mfiles, new Comparator<MFile>() {
-      public int compare(MFile o1, MFile o2) {
-        if (o1.isDirectory() != o2.isDirectory())
-          return o1.isDirectory() ? 1 : -1;
-
-        if (isSortIncreasing)
-          return o1.getName().compareTo(o2.getName());
-        else
-          return o2.getName().compareTo(o1.getName());
-      }
-    });
-
-    return mfiles;
-  }
+  // Scan
 
   private List<MFile> getFiles(MFile directory) throws IOException {
     final MController mController = MControllers.create(directory.getPath());
@@ -328,7 +453,7 @@ public class DatasetScan extends CatalogRef {
   ////////////////////////////////////////////////
   // Naming
 
-  private String makeName(MFile mfile) {
+  String makeName(MFile mfile) {
     if (namers == null)
       return mfile.getName();
     for (RegExpNamer namer : namers) {
@@ -339,6 +464,10 @@ public class DatasetScan extends CatalogRef {
     return mfile.getName();
   }
 
+  DateRange makeTimeCoverage(MFile mfile) {
+    return (addTimeCoverage == null) ? null : addTimeCoverage.makeTimeCoverage(mfile);
+  }
+
   private static class RegExpNamer {
     private java.util.regex.Pattern pattern;
     DatasetScanConfig.Namer namer;
@@ -385,14 +514,22 @@ public class DatasetScan extends CatalogRef {
     }
 
     boolean addMetadata(DatasetBuilder dataset, MFile crDataset) {
-      if (this.pattern == null)
+      DateRange dateRange = makeTimeCoverage(crDataset);
+      if (dateRange == null)
         return false;
+      dataset.put(Dataset.TimeCoverage, dateRange);
+      return true;
+    }
+
+    DateRange makeTimeCoverage(MFile crDataset) {
+      if (this.pattern == null)
+        return null;
 
       String matchTargetString = (this.matchOnName) ? crDataset.getName() : crDataset.getPath();
 
       java.util.regex.Matcher matcher = this.pattern.matcher(matchTargetString);
       if (!matcher.find()) {
-        return (false); // Pattern not found.
+        return null; // Pattern not found.
       }
       StringBuffer startTime = new StringBuffer();
       try {
@@ -400,23 +537,20 @@ public class DatasetScan extends CatalogRef {
       } catch (IndexOutOfBoundsException e) {
         log.error("addMetadata(): capture group mismatch between match pattern <" + this.matchPattern
             + "> and substitution pattern <" + atc.subst + ">: " + e.getMessage());
-        return (false);
+        return null;
       }
       startTime.delete(0, matcher.start());
 
       try {
-        DateRange dateRange =
-            new DateRange(new DateType(startTime.toString(), null, null), null, new TimeDuration(atc.duration), null);
-        dataset.put(Dataset.TimeCoverage, dateRange);
+        return new DateRange(new DateType(startTime.toString(), null, null), null, new TimeDuration(atc.duration),
+            null);
 
       } catch (Exception e) {
         log.warn("addMetadata(): Start time <" + startTime.toString() + "> or duration <" + atc.duration
             + "> not parsable" + " (crDataset.getName() <" + crDataset.getName() + ">, this.matchPattern() <"
             + this.matchPattern + ">, this.substitutionPattern() <" + atc.subst + ">): " + e.getMessage());
-        return (false);
+        return null;
       }
-
-      return (true);
     }
   }
 
@@ -480,29 +614,20 @@ public class DatasetScan extends CatalogRef {
       throw new FileNotFoundException("Not a directory. URL path = " + orgPath);
     }
 
-    // scan and sort the directory
-    List<MFile> mfiles = getSortedFiles(directory, false); // latest on top
-
-    long now = System.currentTimeMillis();
-
-    for (MFile mfile : mfiles) {
-      if (mfile.isDirectory())
-        continue;
-
-      if (config.addLatest.lastModLimit > 0) {
-        if (now - mfile.getLastModified() < config.addLatest.lastModLimit)
-          continue;
-      }
+    // the file with the largest name, from the sorted listing
+    DirectoryListingCache.Listing listing = DirectoryListingCache.get(this, directory, this::getFiles);
+    DirectoryListingCache.Entry latest = listing.getLatest(config.addLatest.lastModLimit, System.currentTimeMillis());
 
-      // this is the one we want
+    if (latest != null) {
+      MFile mfile = latest.mfile;
       DatasetBuilder ds = new DatasetBuilder(null);
       ds.transferMetadata(this, true);
 
       ds.setName(makeName(mfile));
       String urlPath = parentPath + mfile.getName();
       ds.put(Dataset.UrlPath, urlPath);
-      ds.put(Dataset.DataSize, mfile.getLength()); // <dataSize units="Kbytes">54.73</dataSize>
-      CalendarDate date = CalendarDate.of(mfile.getLastModified());
+      ds.put(Dataset.DataSize, latest.length); // <dataSize units="Kbytes">54.73</dataSize>
+      CalendarDate date = CalendarDate.of(latest.lastModified);
       ds.put(Dataset.Dates, new DateType(date).setType("modified")); // <date
                                                                      // type="modified">2011-09-02T20:50:58.288Z</date>
       ds.put(Dataset.Id, parentId + mfile.getName());
@@ -511,7 +636,6 @@ public class DatasetScan extends CatalogRef {
         addTimeCoverage.addMetadata(ds, mfile);
 
       catBuilder.addDataset(ds);
-      break; // only the one
     }
 
     // make the catalog
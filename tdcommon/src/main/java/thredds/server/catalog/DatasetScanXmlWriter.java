@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package thredds.server.catalog;
+
+import org.jdom2.Attribute;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.Namespace;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.output.StAXStreamOutputter;
+import thredds.client.catalog.Catalog;
+import thredds.client.catalog.Dataset;
+import thredds.client.catalog.tools.CatalogXmlWriter;
+import thredds.inventory.MFile;
+import ucar.nc2.time.CalendarDate;
+import ucar.nc2.units.DateRange;
+import ucar.nc2.units.DateType;
+import ucar.nc2.units.TimeDuration;
+import ucar.unidata.util.Format;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.util.List;
+
+/**
+ * Writes the catalog of a DatasetScan directory with StAX, one dataset at a time, as they come from the directory
+ * listing. Unlike CatalogXmlWriter, the catalog tree is never built, so the memory used does not grow with the
+ * number of files in the directory.
+ * <p>
+ * The catalog element, services and top dataset metadata are small, and are written by CatalogXmlWriter.
+ */
+public class DatasetScanXmlWriter {
+  private static final String XLINK = "http://www.w3.org/1999/xlink";
+  private static boolean useBytesForDataSize;
+
+  /**
+   * Write the dataSize in bytes, instead of in the largest unit; set with CatalogXmlWriter.useBytesForDataSize(),
+   * from the same catalogWriting.useBytesForDataSize setting.
+   */
+  public static void useBytesForDataSize(boolean b) {
+    useBytesForDataSize = b;
+  }
+
+  /**
+   * Write the catalog of a page.
+   *
+   * @param page from DatasetScan.makeDirectoryPage(); its catalog builder is complete, ie any services have been added
+   * @param os write to this stream, not closed
+   */
+  public void writeXML(DatasetScan.DirectoryPage page, OutputStream os) throws IOException {
+    Element root = makeHeader(page.getCatalogBuilder().makeCatalog());
+
+    try {
+      XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(os, "UTF-8");
+      StAXStreamOutputter outputter = new StAXStreamOutputter();
+      String ns = root.getNamespaceURI();
+
+      writer.writeStartDocument("UTF-8", "1.0");
+      writer.setDefaultNamespace(ns);
+      writer.setPrefix("xlink", XLINK);
+      writeStartElement(writer, root);
+      writer.writeDefaultNamespace(ns);
+      boolean hasXlink = false;
+      for (Namespace addNs : root.getAdditionalNamespaces()) {
+        writer.writeNamespace(addNs.getPrefix(), addNs.getURI());
+        hasXlink |= XLINK.equals(addNs.getURI());
+      }
+      if (!hasXlink)
+        writer.writeNamespace("xlink", XLINK);
+      writeAttributes(writer, root);
+
+      boolean topDone = false;
+      for (Element child : root.getChildren()) {
+        if (!topDone && child.getName().equals("dataset")) {
+          writeTop(writer, outputter, child, page);
+          topDone = true;
+        } else {
+          outputter.output(child, writer);
+        }
+      }
+
+      writer.writeEndElement();
+      writer.writeEndDocument();
+      writer.flush();
+
+    } catch (XMLStreamException e) {
+      throw new IOException(e);
+    }
+  }
+
+  // the catalog, without the datasets of the directory
+  private Element makeHeader(Catalog catalog) throws IOException {
+    String xml = new CatalogXmlWriter().writeXML(catalog);
+    try {
+      Document doc = new SAXBuilder().build(new StringReader(xml));
+      return doc.getRootElement();
+    } catch (JDOMException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private void writeTop(XMLStreamWriter writer, StAXStreamOutputter outputter, Element top,
+      DatasetScan.DirectoryPage page) throws XMLStreamException {
+    String ns = top.getNamespaceURI();
+    writeStartElement(writer, top);
+    writeAttributes(writer, top);
+    for (Element child : top.getChildren())
+      outputter.output(child, writer);
+
+    if (page.isLatestOnTop())
+      writeLatest(writer, ns, page);
+
+    DatasetScan dscan = page.getDatasetScan();
+    for (DirectoryListingCache.Entry entry : page.entries) {
+      if (entry.isDirectory)
+        writeCatalogRef(writer, ns, dscan, page, entry);
+      else
+        writeDataset(writer, ns, dscan, page, entry);
+    }
+
+    if (page.hasNextPage()) {
+      writer.writeStartElement(ns, "catalogRef");
+      writer.writeAttribute("xlink", XLINK, "href", page.getNextPageHref());
+      writer.writeAttribute("xlink", XLINK, "title", page.getNextPageTitle());
+      writer.writeAttribute("xlink", XLINK, "type", "simple");
+      writer.writeEndElement();
+    }
+
+    if (page.hasLatest() && !page.isLatestOnTop())
+      writeLatest(writer, ns, page);
+
+    writer.writeEndElement();
+  }
+
+  private void writeCatalogRef(XMLStreamWriter writer, String ns, DatasetScan dscan, DatasetScan.DirectoryPage page,
+      DirectoryListingCache.Entry entry) throws XMLStreamException {
+    MFile mfile = entry.mfile;
+    String name = dscan.makeName(mfile);
+    writer.writeStartElement(ns, "catalogRef");
+    writer.writeAttribute("xlink", XLINK, "href", mfile.getName() + "/catalog.xml");
+    writer.writeAttribute("xlink", XLINK, "title", name);
+    writer.writeAttribute("xlink", XLINK, "type", "simple");
+    writer.writeAttribute("name", name);
+    writer.writeAttribute("ID", page.parentId + mfile.getName());
+    writeProperty(writer, ns, "DatasetScan", "true");
+    writer.writeEndElement();
+  }
+
+  private void writeDataset(XMLStreamWriter writer, String ns, DatasetScan dscan, DatasetScan.DirectoryPage page,
+      DirectoryListingCache.Entry entry) throws XMLStreamException {
+    MFile mfile = entry.mfile;
+    writer.writeStartElement(ns, "dataset");
+    writer.writeAttribute("name", dscan.makeName(mfile));
+    writer.writeAttribute("ID", page.parentId + mfile.getName());
+    writer.writeAttribute("urlPath", page.parentPath + mfile.getName());
+
+    if (page.isNotAThreddsDataset(entry))
+      writeProperty(writer, ns, Dataset.NotAThreddsDataset, "true");
+
+    if (entry.length > 0) {
+      String[] size = formatSize(entry.length);
+      writer.writeStartElement(ns, "dataSize");
+      writer.writeAttribute("units", size[1]);
+      writer.writeCharacters(size[0]);
+      writer.writeEndElement();
+    }
+
+    writer.writeStartElement(ns, "date");
+    writer.writeAttribute("type", "modified");
+    writer.writeCharacters(CalendarDate.of(entry.lastModified).toString());
+    writer.writeEndElement();
+
+    DateRange timeCoverage = dscan.makeTimeCoverage(mfile);
+    if (timeCoverage != null)
+      writeTimeCoverage(writer, ns, timeCoverage);
+
+    writer.writeEndElement();
+  }
+
+  private void writeLatest(XMLStreamWriter writer, String ns, DatasetScan.DirectoryPage page)
+      throws XMLStreamException {
+    String latestName = page.getLatestName();
+    writer.writeStartElement(ns, "dataset");
+    writer.writeAttribute("name", latestName);
+    writer.writeAttribute("ID", page.parentId + latestName);
+    writer.writeAttribute("urlPath", latestName);
+    writer.writeStartElement(ns, "serviceName");
+    writer.writeCharacters(page.getLatestServiceName());
+    writer.writeEndElement();
+    writer.writeEndElement();
+  }
+
+  private void writeProperty(XMLStreamWriter writer, String ns, String name, String value)
+      throws XMLStreamException {
+    writer.writeEmptyElement(ns, "property");
+    writer.writeAttribute("name", name);
+    writer.writeAttribute("value", value);
+  }
+
+  private void writeTimeCoverage(XMLStreamWriter writer, String ns, DateRange range) throws XMLStreamException {
+    writer.writeStartElement(ns, "timeCoverage");
+    DateType start = range.getStart();
+    if (range.useStart() && start != null && !start.isBlank())
+      writeText(writer, ns, "start", start.toString());
+    DateType end = range.getEnd();
+    if (range.useEnd() && end != null && !end.isBlank())
+      writeText(writer, ns, "end", end.toString());
+    TimeDuration duration = range.getDuration();
+    if (range.useDuration() && duration != null && !duration.isBlank())
+      writeText(writer, ns, "duration", duration.toString());
+    TimeDuration resolution = range.getResolution();
+    if (range.useResolution() && resolution != null && !resolution.isBlank())
+      writeText(writer, ns, "resolution", resolution.toString());
+    writer.writeEndElement();
+  }
+
+  private void writeText(XMLStreamWriter writer, String ns, String elemName, String text) throws XMLStreamException {
+    writer.writeStartElement(ns, elemName);
+    writer.writeCharacters(text);
+    writer.writeEndElement();
+  }
+
+  private void writeStartElement(XMLStreamWriter writer, Element elem) throws XMLStreamException {
+    writer.writeStartElement(elem.getNamespacePrefix(), elem.getName(), elem.getNamespaceURI());
+  }
+
+  private void writeAttributes(XMLStreamWriter writer, Element elem) throws XMLStreamException {
+    List<Attribute> atts = elem.getAttributes();
+    for (Attribute att : atts) {
+      if (att.getNamespace() == Namespace.NO_NAMESPACE)
+        writer.writeAttribute(att.getName(), att.getValue());
+      else
+        writer.writeAttribute(att.getNamespacePrefix(), att.getNamespaceURI(), att.getName(), att.getValue());
+    }
+  }
+
+  // as CatalogXmlWriter writes it, eg <dataSize units="Kbytes">54.73</dataSize>
+  static String[] formatSize(long size) {
+    if (useBytesForDataSize)
+      return new String[] {Long.toString(size), "bytes"};
+
+    double value = size;
+    String unit;
+    if (value > 1.0e15) {
+      unit = "Pbytes";
+      value *= 1.0e-15;
+    } else if (value > 1.0e12) {
+      unit = "Tbytes";
+      value *= 1.0e-12;
+    } else if (value > 1.0e9) {
+      unit = "Gbytes";
+      value *= 1.0e-9;
+    } else if (value > 1.0e6) {
+      unit = "Mbytes";
+      value *= 1.0e-6;
+    } else if (value > 1.0e3) {
+      unit = "Kbytes";
+      value *= 1.0e-3;
+    } else {
+      unit = "bytes";
+    }
+    return new String[] {Format.d(value, 4), unit};
+  }
+}
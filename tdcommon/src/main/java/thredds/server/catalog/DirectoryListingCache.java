@@ -0,0 +1,375 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package thredds.server.catalog;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import thredds.inventory.MFile;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Formatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Caches the sorted directory listings of DatasetScans, so that catalog requests don't scan the directory each time.
+ * <p>
+ * A listing is dropped when the directory changes, if the file system tells us (WatchService), and in any case
+ * after a time to live, for file systems that don't, eg NFS. A change counted while a directory is being scanned makes
+ * its listing out of date, so it is scanned again.
+ * Turned off until init() is called.
+ */
+public class DirectoryListingCache {
+  private static final Logger logger = LoggerFactory.getLogger(DirectoryListingCache.class);
+
+  private static Cache<Key, Listing> cache;
+  private static WatchService watcher;
+  private static final Map<Path, Watch> watched = new HashMap<>(); // guarded by itself
+  private static final int MAX_SCANS = 3; // of a directory that keeps changing, before its listing is not cached
+
+  /**
+   * Turn on the cache.
+   *
+   * @param maxDirectories maximum number of listings kept; 0 turns the cache off.
+   * @param ttlSecs listings are rescanned after this many seconds; 0 turns the cache off.
+   * @param watch use a WatchService to drop listings as soon as their directory changes.
+   */
+  public static synchronized void init(int maxDirectories, long ttlSecs, boolean watch) {
+    shutdown();
+    if (maxDirectories <= 0 || ttlSecs <= 0) {
+      logger.info("DatasetScan directory listing cache is turned off");
+      return;
+    }
+
+    cache = CacheBuilder.newBuilder().maximumSize(maxDirectories).expireAfterWrite(ttlSecs, TimeUnit.SECONDS)
+        .removalListener(DirectoryListingCache::onRemoval).recordStats().build();
+
+    if (watch) {
+      try {
+        WatchService ws = FileSystems.getDefault().newWatchService();
+        Thread t = new Thread(() -> processEvents(ws), "DirectoryListingCache.watcher");
+        t.setDaemon(true);
+        t.start();
+        watcher = ws;
+      } catch (IOException e) {
+        logger.warn("No WatchService, directory listings are rescanned after {} secs", ttlSecs, e);
+      }
+    }
+    logger.info("DatasetScan directory listing cache: maxDirectories={} ttl={} secs watch={}", maxDirectories, ttlSecs,
+        watcher != null);
+  }
+
+  public static synchronized void shutdown() {
+    if (cache != null) {
+      cache.invalidateAll();
+      cache = null;
+    }
+    if (watcher != null) {
+      try {
+        watcher.close(); // ends the watcher thread
+      } catch (IOException e) {
+        logger.warn("Cant close WatchService", e);
+      }
+      watcher = null;
+    }
+    synchronized (watched) {
+      watched.clear();
+    }
+  }
+
+  public static void showCache(Formatter f) {
+    Cache<Key, Listing> c = cache;
+    if (c == null) {
+      f.format("%nDatasetScan DirectoryListingCache: turned off%n");
+    } else {
+      f.format("%nDatasetScan DirectoryListingCache:%n");
+      f.format("numberOfEntries=%d, watchedDirectories=%d, %s%n", c.size(), getNumberOfWatches(), c.stats());
+    }
+  }
+
+  public static boolean isEnabled() {
+    return cache != null;
+  }
+
+  /** Scans a directory. */
+  interface Lister {
+    List<MFile> list(MFile directory) throws IOException;
+  }
+
+  /**
+   * Get the listing of a directory, scanning it if needed.
+   *
+   * @param owner the DatasetScan, whose filters determine what is listed
+   * @param directory the directory
+   * @param lister scans the directory
+   */
+  static Listing get(Object owner, MFile directory, Lister lister) throws IOException {
+    Cache<Key, Listing> c = cache;
+    if (c == null)
+      return new Listing(lister.list(directory));
+
+    Key key = new Key(owner, directory.getPath());
+    for (int scans = 1;; scans++) {
+      Listing listing;
+      try {
+        listing = c.get(key, () -> {
+          // watch before scanning, so no change is missed
+          Watch watch = startWatch(key.watchPath);
+          try {
+            long changes = (watch == null) ? 0 : watch.changes;
+            Listing result = new Listing(lister.list(directory));
+            result.watchPath = (watch == null) ? null : key.watchPath;
+            result.watch = watch;
+            result.changes = changes;
+            return result;
+          } catch (IOException | RuntimeException e) {
+            if (watch != null)
+              stopWatch(key.watchPath);
+            throw e;
+          }
+        });
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException)
+          throw (IOException) e.getCause();
+        throw new IOException(e.getCause());
+      }
+
+      // invalidate() does not see a listing that is still loading, so check here, after it is in the cache
+      if (listing.isCurrent())
+        return listing;
+      c.asMap().remove(key, listing);
+      if (scans >= MAX_SCANS)
+        return listing; // as good as it gets, but not cached
+    }
+  }
+
+  /** Drop all the listings of this directory. */
+  static void invalidate(Path dir) {
+    synchronized (watched) {
+      Watch watch = watched.get(dir);
+      if (watch != null)
+        watch.changes++;
+    }
+    Cache<Key, Listing> c = cache;
+    if (c != null)
+      c.asMap().keySet().removeIf(key -> dir.equals(key.watchPath));
+  }
+
+  /////////////////////////////////////////////////////////
+  // watching
+
+  private static class Watch {
+    final WatchKey watchKey;
+    int users;
+    volatile long changes; // incremented by invalidate()
+
+    Watch(WatchKey watchKey) {
+      this.watchKey = watchKey;
+    }
+  }
+
+  // return null if not watched
+  private static Watch startWatch(Path dir) {
+    WatchService ws = watcher;
+    if (ws == null || dir == null)
+      return null;
+
+    synchronized (watched) {
+      Watch watch = watched.get(dir);
+      if (watch == null) {
+        try {
+          watch = new Watch(dir.register(ws, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY));
+        } catch (IOException | ClosedWatchServiceException e) {
+          logger.debug("Cant watch {}, relying on the time to live", dir, e);
+          return null;
+        }
+        watched.put(dir, watch);
+      }
+      watch.users++;
+      return watch;
+    }
+  }
+
+  private static void stopWatch(Path dir) {
+    synchronized (watched) {
+      Watch watch = watched.get(dir);
+      if (watch != null && --watch.users <= 0) {
+        watched.remove(dir);
+        watch.watchKey.cancel();
+      }
+    }
+  }
+
+  private static void onRemoval(RemovalNotification<Key, Listing> notification) {
+    Listing listing = notification.getValue();
+    if (notification.getCause() != RemovalCause.REPLACED && listing != null && listing.watchPath != null)
+      stopWatch(listing.watchPath);
+  }
+
+  private static void processEvents(WatchService ws) {
+    while (true) {
+      WatchKey watchKey;
+      try {
+        watchKey = ws.take();
+      } catch (InterruptedException | ClosedWatchServiceException e) {
+        return;
+      }
+      // any event, including OVERFLOW, drops the listings of the directory
+      watchKey.pollEvents();
+      Path dir = (Path) watchKey.watchable();
+      logger.debug("{} changed", dir);
+      invalidate(dir);
+      watchKey.reset();
+    }
+  }
+
+  // the local directory to watch, or null if not a local directory
+  private static Path getWatchPath(String location) {
+    try {
+      Path dir = Paths.get(location);
+      return Files.isDirectory(dir) ? dir.toAbsolutePath().normalize() : null;
+    } catch (InvalidPathException e) {
+      return null; // eg an object store
+    }
+  }
+
+  static int getNumberOfWatches() {
+    synchronized (watched) {
+      return watched.size();
+    }
+  }
+
+  static long getNumberOfEntries() {
+    Cache<Key, Listing> c = cache;
+    return (c == null) ? 0 : c.size();
+  }
+
+  /////////////////////////////////////////////////////////
+
+  private static class Key {
+    final Object owner;
+    final String location;
+    final Path watchPath;
+
+    Key(Object owner, String location) {
+      this.owner = owner;
+      this.location = location;
+      this.watchPath = getWatchPath(location);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o)
+        return true;
+      if (!(o instanceof Key))
+        return false;
+      Key key = (Key) o;
+      return owner == key.owner && location.equals(key.location);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(owner) + location.hashCode();
+    }
+  }
+
+  /** A file or subdirectory, with the metadata read when the directory was scanned. */
+  static class Entry {
+    final MFile mfile;
+    final boolean isDirectory;
+    final long length;
+    final long lastModified;
+
+    Entry(MFile mfile) {
+      this.mfile = mfile;
+      this.isDirectory = mfile.isDirectory();
+      this.length = isDirectory ? 0 : mfile.getLength();
+      this.lastModified = mfile.getLastModified();
+    }
+  }
+
+  /** A scanned directory, sorted once. Immutable. */
+  static class Listing {
+    private final List<Entry> files; // sorted by name
+    private final List<Entry> dirs; // sorted by name
+    private Path watchPath; // set before publication, if the directory is being watched
+    private Watch watch; // set before publication, if the directory is being watched
+    private long changes; // the changes of the watch before the directory was scanned
+
+    Listing(List<MFile> mfiles) {
+      List<Entry> files = new ArrayList<>();
+      List<Entry> dirs = new ArrayList<>();
+      for (MFile mfile : mfiles) {
+        Entry entry = new Entry(mfile);
+        (entry.isDirectory ? dirs : files).add(entry);
+      }
+      Comparator<Entry> byName = Comparator.comparing(e -> e.mfile.getName());
+      files.sort(byName);
+      dirs.sort(byName);
+      this.files = Collections.unmodifiableList(files);
+      this.dirs = Collections.unmodifiableList(dirs);
+    }
+
+    // false if the directory changed since it was scanned
+    private boolean isCurrent() {
+      return watch == null || watch.changes == changes;
+    }
+
+    /**
+     * The files sorted by name, then the subdirectories sorted by name.
+     *
+     * @param ascending sort by increasing name, else decreasing
+     */
+    List<Entry> getSorted(boolean ascending) {
+      List<Entry> result = new ArrayList<>(files.size() + dirs.size());
+      if (ascending) {
+        result.addAll(files);
+        result.addAll(dirs);
+      } else {
+        for (int i = files.size() - 1; i >= 0; i--)
+          result.add(files.get(i));
+        for (int i = dirs.size() - 1; i >= 0; i--)
+          result.add(dirs.get(i));
+      }
+      return result;
+    }
+
+    /**
+     * The file with the largest name, skipping files modified less than lastModLimit msecs before now.
+     *
+     * @return the latest file, or null if none
+     */
+    Entry getLatest(long lastModLimit, long now) {
+      for (int i = files.size() - 1; i >= 0; i--) {
+        Entry entry = files.get(i);
+        if (lastModLimit > 0 && now - entry.lastModified < lastModLimit)
+          continue;
+        return entry;
+      }
+      return null;
+    }
+  }
+}
@@ -4,10 +4,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Track the list of catalogs.
  * Used to check if any have changed, without having to read the catalog tree.
+ * get() may be called from other threads while the catalogs are being read.
  *
  * @author John
  * @since 6/22/2015
@@ -32,7 +34,7 @@ public class CatalogTracker {
       reinit();
     if (!file.exists() || startOver || readCatalogs() <= 0) {
       changed = true;
-      catalogs = new HashMap<>(2 * expectedSize);
+      catalogs = new ConcurrentHashMap<>(2 * expectedSize);
     }
   }
 
@@ -45,7 +47,7 @@ public class CatalogTracker {
       }
     }
     changed = true;
-    catalogs = new HashMap<>(2 * expectedSize);
+    catalogs = new ConcurrentHashMap<>(2 * expectedSize);
   }
 
   public long put(CatalogExt cat) {
@@ -79,7 +81,7 @@ public class CatalogTracker {
   }
 
   private int readCatalogs() {
-    catalogs = new HashMap<>();
+    catalogs = new ConcurrentHashMap<>();
     int count = 0;
     try (DataInputStream in = new DataInputStream(new FileInputStream(filepath))) {
       while (in.available() > 0) {
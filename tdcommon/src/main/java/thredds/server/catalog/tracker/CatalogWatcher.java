@@ -1,8 +1,11 @@
 /* Copyright */
 package thredds.server.catalog.tracker;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
 import java.nio.file.FileSystems;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
@@ -12,8 +15,12 @@ import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
@@ -21,136 +28,177 @@ import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
 import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
 
 /**
- * Put a watch on directories for when catalogs change. not used yet
+ * Put a watch on directories for when catalogs change, and tell a listener which ones did.
+ * Events are collected until there have been none for the delay, so that saving a file in an editor, or copying
+ * many catalogs, gives one call with all of them. Events keep coming for at most 10 times the delay before the
+ * listener is called anyway. The listener is called on the watcher thread, which ends on close().
  *
  * @author caron
  * @since 6/9/2015
  */
 public class CatalogWatcher implements Closeable {
+  static private final Logger logger = LoggerFactory.getLogger(CatalogWatcher.class);
+
+  public interface Listener {
+    /**
+     * The catalogs were created, modified or deleted.
+     *
+     * @param catalogs absolute paths of the catalog files
+     * @param overflow true if events were lost, so that other catalogs may have changed too
+     */
+    void catalogsChanged(Set<Path> catalogs, boolean overflow);
+  }
 
   private final WatchService watcher;
-  private final DatasetTracker tracker;
-  private final boolean enable;
-  private final Map<WatchKey, Path> keys;
-  private boolean recursive = true;
-  private boolean trace = true;
+  private final Listener listener;
+  private final long delayMsecs;
+  private final Set<Path> skipDirs; // these directories and their sub-directories are not watched
+  private final Map<WatchKey, Path> keys = new ConcurrentHashMap<>();
+  private Thread thread;
 
   @SuppressWarnings("unchecked")
   static <T> WatchEvent<T> cast(WatchEvent<?> event) {
     return (WatchEvent<T>) event;
   }
 
-  public CatalogWatcher(DatasetTracker tracker, boolean enable) throws IOException {
-    this.tracker = tracker;
-    this.enable = enable;
+  /**
+   * @param listener told about changed catalogs
+   * @param delayMsecs wait until there have been no events for this long
+   * @param skipDirs directories that are not watched, like the caches and logs
+   */
+  public CatalogWatcher(Listener listener, long delayMsecs, Collection<Path> skipDirs) throws IOException {
+    this.listener = listener;
+    this.delayMsecs = Math.max(delayMsecs, 1);
+    this.skipDirs = new HashSet<>();
+    for (Path dir : skipDirs)
+      this.skipDirs.add(dir.toAbsolutePath().normalize());
     this.watcher = FileSystems.getDefault().newWatchService();
-    this.keys = new HashMap<>();
-
-    // enable trace after initial registration
-    this.trace = true;
   }
 
   /**
    * Register the given directory with the WatchService
    */
   public void register(Path dir) throws IOException {
-    if (!enable)
-      return;
-
     WatchKey key = dir.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
-    if (trace) {
-      Path prev = keys.get(key);
-      if (prev == null) {
-        System.out.format("CatalogWatcher register: %s%n", dir);
-      } else {
-        if (!dir.equals(prev)) {
-          System.out.format("update: %s -> %s%n", prev, dir);
-        }
-      }
-    }
-    keys.put(key, dir);
+    Path prev = keys.put(key, dir);
+    if (prev == null)
+      logger.debug("CatalogWatcher register: {}", dir);
+    else if (!dir.equals(prev))
+      logger.debug("CatalogWatcher update: {} -> {}", prev, dir);
   }
 
   /**
-   * Register the given directory, and all its sub-directories, with the
-   * WatchService.
+   * Register the given directory, and all its sub-directories, with the WatchService.
+   *
+   * @param found catalogs already in the directories are added to this, or null
    */
-  public void registerAll(final Path start) throws IOException {
-    if (!enable)
-      return;
-
-    // register directory and sub-directories
+  public void registerAll(final Path start, Set<Path> found) throws IOException {
     Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
       @Override
       public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+        if (skipDirs.contains(dir.toAbsolutePath().normalize()))
+          return FileVisitResult.SKIP_SUBTREE;
         register(dir);
         return FileVisitResult.CONTINUE;
       }
-    });
-  }
-
-  /**
-   * Process all events for keys queued to the watcher
-   */
-  public void processEvents() {
-    if (!enable)
-      return;
-
-    for (;;) {
 
-      // wait for key to be signalled
-      WatchKey key;
-      try {
-        key = watcher.take();
-      } catch (InterruptedException x) {
-        return;
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        if (found != null && isCatalog(file))
+          found.add(file);
+        return FileVisitResult.CONTINUE;
       }
 
-      Path dir = keys.get(key);
-      if (dir == null) {
-        System.err.println("WatchKey not recognized!!");
-        continue;
+      @Override
+      public FileVisitResult visitFileFailed(Path file, IOException e) {
+        logger.warn("CatalogWatcher cannot watch {}", file, e);
+        return FileVisitResult.CONTINUE;
       }
+    });
+  }
 
-      for (WatchEvent<?> event : key.pollEvents()) {
-        WatchEvent.Kind kind = event.kind();
+  private static boolean isCatalog(Path file) {
+    return file.getFileName().toString().endsWith(".xml");
+  }
+
+  /** Start processing events on a daemon thread. */
+  public synchronized void start() {
+    if (thread != null)
+      return;
+    thread = new Thread(this::processEvents, "CatalogWatcher");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Process all events for keys queued to the watcher, until it is closed.
+   */
+  void processEvents() {
+    Set<Path> changed = new HashSet<>();
+    boolean overflow = false;
+    long firstEvent = 0;
+
+    try {
+      for (;;) {
+        // wait for key to be signalled, or for the delay to pass since the last one
+        WatchKey key;
+        if (changed.isEmpty() && !overflow) {
+          key = watcher.take();
+          firstEvent = System.currentTimeMillis();
+        } else {
+          long wait = Math.min(delayMsecs, firstEvent + 10 * delayMsecs - System.currentTimeMillis());
+          key = (wait > 0) ? watcher.poll(wait, TimeUnit.MILLISECONDS) : null;
+        }
 
-        // TBD - provide example of how OVERFLOW event is handled
-        if (kind == OVERFLOW) {
+        if (key == null) {
+          try {
+            listener.catalogsChanged(changed, overflow);
+          } catch (Throwable t) {
+            logger.error("CatalogWatcher listener failed", t);
+          }
+          changed = new HashSet<>();
+          overflow = false;
           continue;
         }
 
-        // Context for directory entry event is the file name of entry
-        WatchEvent<Path> ev = cast(event);
-        Path name = ev.context();
-        Path child = dir.resolve(name);
+        Path dir = keys.get(key);
+        if (dir == null) {
+          logger.warn("CatalogWatcher WatchKey not recognized");
+          key.cancel();
+          continue;
+        }
 
-        // print out event
-        System.out.format("%s: %s%n", event.kind().name(), child);
+        for (WatchEvent<?> event : key.pollEvents()) {
+          WatchEvent.Kind<?> kind = event.kind();
+          if (kind == OVERFLOW) {
+            overflow = true;
+            continue;
+          }
 
-        // if directory is created, and watching recursively, then
-        // register it and its sub-directories
-        if (recursive && (kind == ENTRY_CREATE)) {
-          try {
-            if (Files.isDirectory(child, NOFOLLOW_LINKS)) {
-              registerAll(child);
+          // Context for directory entry event is the file name of entry
+          WatchEvent<Path> ev = cast(event);
+          Path child = dir.resolve(ev.context());
+          logger.debug("CatalogWatcher {}: {}", kind.name(), child);
+
+          // a new directory may already have catalogs in it by the time it is registered
+          if (kind == ENTRY_CREATE && Files.isDirectory(child, NOFOLLOW_LINKS)) {
+            try {
+              registerAll(child, changed);
+            } catch (IOException e) {
+              logger.warn("CatalogWatcher cannot watch {}", child, e);
             }
-          } catch (IOException x) {
-            // ignore to keep sample readbale
+          } else if (isCatalog(child)) {
+            changed.add(child);
           }
         }
-      }
-
-      // reset key and remove from set if directory no longer accessible
-      boolean valid = key.reset();
-      if (!valid) {
-        keys.remove(key);
 
-        // all directories are inaccessible
-        if (keys.isEmpty()) {
-          break;
-        }
+        // reset key and remove from set if directory no longer accessible
+        if (!key.reset())
+          keys.remove(key);
       }
+
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      // closed
     }
   }
 
@@ -23,7 +23,7 @@ public class DataRootExt implements Comparable<DataRootExt> {
   private String name;
   private String restrict;
 
-  private DataRoot dataRoot;
+  private volatile DataRoot dataRoot; // set when its catalog is read, by any request thread
 
   public DataRootExt() {}
 
@@ -1,7 +1,10 @@
 package thredds.server.catalog.tracker;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -54,6 +57,26 @@ public class DataRootTracker {
     return dataRoots.remove(ds);
   }
 
+  /**
+   * Remove the dataRoots that were read from a catalog.
+   *
+   * @param catLocation the catalog path, relative to the content root
+   * @return the removed dataRoots
+   */
+  public List<DataRootExt> removeDataRoots(String catLocation) {
+    List<DataRootExt> removed = new ArrayList<>();
+    for (Iterator<DataRootExt> iter = dataRoots.iterator(); iter.hasNext();) {
+      DataRootExt ds = iter.next();
+      if (catLocation.equals(ds.getCatLocation())) {
+        iter.remove();
+        removed.add(ds);
+      }
+    }
+    if (!removed.isEmpty())
+      changed = true;
+    return removed;
+  }
+
   public Iterable<? extends DataRootExt> getDataRoots() {
     return dataRoots;
   }
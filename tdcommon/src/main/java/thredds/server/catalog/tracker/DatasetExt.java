@@ -69,7 +69,7 @@ public class DatasetExt {
 
   public void fromProtoBytes(byte[] b) throws InvalidProtocolBufferException {
     ConfigCatalogExtProto.Dataset pDataset = ConfigCatalogExtProto.Dataset.parseFrom(b);
-    this.catId = pDataset.getCatId(); // LOOK not used
+    this.catId = pDataset.getCatId(); // used to remove the datasets of a catalog
     if (pDataset.getRestrict().length() > 0)
       restrictedAccess = pDataset.getRestrict();
     if (pDataset.getNcml().length() > 0)
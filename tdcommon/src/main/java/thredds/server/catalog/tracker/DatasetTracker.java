@@ -30,6 +30,9 @@ public interface DatasetTracker extends Closeable {
   // datasets
   boolean trackDataset(long catId, Dataset ds, Callback callback);
 
+  // remove the datasets that were tracked from this catalog, return how many
+  int removeDatasets(long catId);
+
   String findResourceControl(String path);
 
   String findNcml(String path);
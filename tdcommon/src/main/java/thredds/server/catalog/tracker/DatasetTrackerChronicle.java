@@ -1,6 +1,14 @@
 package thredds.server.catalog.tracker;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import java.nio.charset.StandardCharsets;
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import net.openhft.chronicle.map.ChronicleMap;
 import net.openhft.chronicle.map.ChronicleMapBuilder;
 import org.jdom2.Element;
@@ -13,11 +21,15 @@ import thredds.server.catalog.DatasetScan;
 import thredds.server.catalog.FeatureCollectionRef;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Formatter;
+import java.util.List;
 import java.util.Map;
 
 /**
- * DatasetTracker using ChronicleMap
+ * DatasetTracker using ChronicleMap.
+ * Only datasets with NcML or a restriction are kept, which is usually few of them. A Bloom filter of the kept paths
+ * answers most lookups without going to the ChronicleMap, and recently used entries are kept decoded on the heap.
  *
  * @author John
  * @since 6/8/2015
@@ -28,6 +40,10 @@ public class DatasetTrackerChronicle implements DatasetTracker {
   // average size (bytes) of key for database, which is the path to a given dataset.
   // LOOK: is 512 a good average size? There is no length on file path, so hard to set a maximum.
   private static final int averagePathLength = 512;
+  // false positive rate of the filter of tracked paths
+  private static final double filterFalsePositiveRate = 0.01;
+  // number of decoded DatasetExt kept on the heap, at most
+  private static final int maxDecodedEntries = 1000;
   private final int averageValueSize;
 
   private enum AverageValueSize {
@@ -60,6 +76,15 @@ public class DatasetTrackerChronicle implements DatasetTracker {
   private long maxDatasets;
   private ChronicleMap<String, DatasetExt> datasetMap;
 
+  // every tracked path is in here; a path that is not has no ncml and no restriction.
+  private volatile BloomFilter<CharSequence> trackedPaths; // null = make from datasetMap on open
+  private final Cache<String, DatasetExt> decoded =
+      CacheBuilder.newBuilder().maximumSize(maxDecodedEntries).recordStats().build();
+  // bumped on every change to datasetMap, after the change and before the decoded entries are invalidated
+  private final AtomicLong writes = new AtomicLong();
+  private final LongAdder lookups = new LongAdder();
+  private final LongAdder filtered = new LongAdder();
+
   public DatasetTrackerChronicle(String pathname, long maxDatasets, long number) {
     this(pathname, maxDatasets, number, AverageValueSize.defaultSize.size);
   }
@@ -109,6 +134,9 @@ public class DatasetTrackerChronicle implements DatasetTracker {
     if (datasetMap != null) {
       datasetMap.close();
     }
+    trackedPaths = null;
+    writes.incrementAndGet();
+    decoded.invalidateAll();
     if (dbFile.exists()) {
       if (!dbFile.delete()) {
         catalogInitLog.error("DatasetTrackerChronicle not able to delete {} ", dbFile.getAbsolutePath());
@@ -134,6 +162,19 @@ public class DatasetTrackerChronicle implements DatasetTracker {
         .valueMarshaller(DatasetExtBytesMarshaller.INSTANCE).skipCloseOnExitHook(true);
     datasetMap = builder.createPersistedTo(dbFile);
     changed = false;
+    if (trackedPaths == null) {
+      trackedPaths = makeFilter();
+    }
+  }
+
+  // the filter of the paths already in the database
+  private BloomFilter<CharSequence> makeFilter() {
+    BloomFilter<CharSequence> filter = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8),
+        Math.max(maxDatasets, datasetMap.longSize()) + 1, filterFalsePositiveRate);
+    for (String path : datasetMap.keySet()) {
+      filter.put(path);
+    }
+    return filter;
   }
 
   public boolean trackDataset(long catId, Dataset dataset, DatasetTracker.Callback callback) {
@@ -212,36 +253,88 @@ public class DatasetTrackerChronicle implements DatasetTracker {
       return false;
     }
     datasetMap.put(path, dsext);
+    trackedPaths.put(path);
+    writes.incrementAndGet();
+    decoded.invalidate(path);
     changed = true;
     return true;
   }
 
-  public String findResourceControl(String path) {
-    if (datasetMap == null) {
-      return null;
+  /**
+   * Remove the datasets of a catalog. Their paths stay in the Bloom filter, which only costs a lookup in the map
+   * when they are asked for.
+   */
+  @Override
+  public int removeDatasets(long catId) {
+    if (datasetMap == null)
+      return 0;
+    List<String> paths = new ArrayList<>();
+    for (Map.Entry<String, DatasetExt> entry : datasetMap.entrySet()) {
+      if (entry.getValue().catId == catId)
+        paths.add(entry.getKey());
     }
-    DatasetExt dext = datasetMap.get(path);
+    for (String path : paths)
+      datasetMap.remove(path);
+    writes.incrementAndGet();
+    for (String path : paths)
+      decoded.invalidate(path);
+    if (!paths.isEmpty())
+      changed = true;
+    return paths.size();
+  }
+
+  public String findResourceControl(String path) {
+    DatasetExt dext = find(path);
     if (dext == null)
       return null;
     return dext.getRestrictAccess();
   }
 
   public String findNcml(String path) {
-    if (datasetMap == null) {
-      return null;
-    }
-    DatasetExt dext = datasetMap.get(path);
+    DatasetExt dext = find(path);
     if (dext == null)
       return null;
     return dext.getNcml();
   }
 
+  private DatasetExt find(String path) {
+    if (datasetMap == null || path == null) {
+      return null;
+    }
+    lookups.increment();
+    BloomFilter<CharSequence> filter = trackedPaths;
+    if (filter != null && !filter.mightContain(path)) {
+      filtered.increment();
+      return null;
+    }
+
+    DatasetExt dext = decoded.getIfPresent(path);
+    if (dext == null) {
+      long before = writes.get();
+      dext = datasetMap.get(path);
+      if (dext != null) {
+        decoded.put(path, dext);
+        // a change since it was read may have been invalidated before the put, so that it would stay
+        if (writes.get() != before)
+          decoded.invalidate(path);
+      }
+    }
+    return dext;
+  }
+
   @Override
   public void showDB(Formatter f) {
     if (datasetMap == null) {
       return;
     }
     f.format("ChronicleMap %s%n", dbFile.getPath());
+    long nlookups = lookups.sum();
+    long nfiltered = filtered.sum();
+    f.format("lookups=%d, answered by path filter=%d (%.3f)%n", nlookups, nfiltered,
+        nlookups == 0 ? 0.0 : (double) nfiltered / nlookups);
+    CacheStats stats = decoded.stats();
+    f.format("decoded entries: maxSize=%d, numberOfEntries=%d, hits=%d, misses=%d, hitRate=%.3f%n%n",
+        maxDecodedEntries, decoded.size(), stats.hitCount(), stats.missCount(), stats.hitRate());
     int count = 0;
     for (Map.Entry<String, DatasetExt> entry : datasetMap.entrySet()) {
       f.format("%4d: '%s' == %s%n", count++, entry.getKey(), entry.getValue());
@@ -254,4 +347,14 @@ public class DatasetTrackerChronicle implements DatasetTracker {
   long getCount() {
     return datasetMap != null ? datasetMap.longSize() : -1;
   }
+
+  // Package private for testing
+  long getFilteredCount() {
+    return filtered.sum();
+  }
+
+  // Package private for testing
+  CacheStats getDecodedStats() {
+    return decoded.stats();
+  }
 }
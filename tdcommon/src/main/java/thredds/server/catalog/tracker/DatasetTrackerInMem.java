@@ -66,6 +66,12 @@ public class DatasetTrackerInMem implements DatasetTracker {
     return true;
   }
 
+  // the catalog ids are not kept, so nothing can be removed
+  @Override
+  public int removeDatasets(long catId) {
+    return 0;
+  }
+
   /**
    * This tracks Dataset elements that have resource control attributes
    *
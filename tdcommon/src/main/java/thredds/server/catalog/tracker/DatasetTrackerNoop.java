@@ -33,6 +33,11 @@ public class DatasetTrackerNoop implements DatasetTracker {
     return false;
   }
 
+  @Override
+  public int removeDatasets(long catId) {
+    return 0;
+  }
+
   @Override
   public String findResourceControl(String path) {
     return null;
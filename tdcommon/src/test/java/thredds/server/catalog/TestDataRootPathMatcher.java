@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package thredds.server.catalog;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import thredds.server.catalog.tracker.DataRootExt;
+import thredds.server.catalog.tracker.DataRootTracker;
+
+public class TestDataRootPathMatcher {
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private DataRootPathMatcher matcher;
+
+  @Before
+  public void setup() {
+    DataRootTracker tracker = new DataRootTracker(tempFolder.getRoot().getPath(), true, null);
+    for (String path : new String[] {"models", "models/gfs", "obs/", "radar"}) {
+      tracker.trackDataRoot(new DataRootExt(new DataRoot(path, "/data/" + path, null), null));
+    }
+    matcher = new DataRootPathMatcher(null, tracker);
+  }
+
+  @Test
+  public void shouldMatchWholeSegments() {
+    assertThat(matcher.findLongestPathMatch("models/gfs/run.grib2")).isEqualTo("models/gfs");
+    assertThat(matcher.findLongestPathMatch("models/gfsx/run.grib2")).isEqualTo("models");
+    assertThat(matcher.findLongestPathMatch("models")).isEqualTo("models");
+    assertThat(matcher.findLongestPathMatch("modelsx/run.grib2")).isNull();
+    assertThat(matcher.findLongestPathMatch("radar/")).isEqualTo("radar");
+    assertThat(matcher.findLongestPathMatch("")).isNull();
+  }
+
+  @Test
+  public void shouldFindRootWithTrailingSlash() {
+    assertThat(matcher.findLongestPathMatch("obs/metar.nc")).isEqualTo("obs/");
+    DataRoot dataRoot = matcher.findDataRoot("obs/metar.nc");
+    assertThat(dataRoot).isNotNull();
+    assertThat(dataRoot.getDirLocation()).isEqualTo("/data/obs/");
+  }
+
+  @Test
+  public void shouldFindRootAddedLater() {
+    assertThat(matcher.findLongestPathMatch("models/nam/run.grib2")).isEqualTo("models");
+    assertThat(matcher.addRoot(new DatasetRootConfig("models/nam", "/data/nam"), "catalog.xml", true)).isTrue();
+    assertThat(matcher.findLongestPathMatch("models/nam/run.grib2")).isEqualTo("models/nam");
+    assertThat(matcher.addRoot(new DatasetRootConfig("models/nam", "/data/other"), "catalog.xml", true)).isFalse();
+  }
+
+  @Test
+  public void shouldRemoveRootsNotAddedAgain() {
+    matcher.addRoot(new DatasetRootConfig("models/nam", "/data/nam"), "models.xml", true);
+    matcher.addRoot(new DatasetRootConfig("models/ruc", "/data/ruc"), "models.xml", true);
+
+    List<DataRootExt> oldRoots = matcher.forgetRoots("models.xml");
+    assertThat(oldRoots).hasSize(2);
+    // still found while the catalog is read again
+    assertThat(matcher.findLongestPathMatch("models/ruc/run.grib2")).isEqualTo("models/ruc");
+
+    matcher.addRoot(new DatasetRootConfig("models/nam", "/data/nam2"), "models.xml", false);
+    List<DataRootExt> removed = matcher.removeRoots(oldRoots);
+    assertThat(removed).hasSize(1);
+    assertThat(removed.get(0).getPath()).isEqualTo("models/ruc");
+    assertThat(matcher.findLongestPathMatch("models/ruc/run.grib2")).isEqualTo("models");
+    assertThat(matcher.findDataRoot("models/nam/run.grib2").getDirLocation()).isEqualTo("/data/nam2");
+  }
+
+  @Test
+  public void shouldTrackRootsAgainWhenRestored() {
+    DataRootTracker tracker = new DataRootTracker(tempFolder.getRoot().getPath(), true, null);
+    DataRootPathMatcher matcher = new DataRootPathMatcher(null, tracker);
+    matcher.addRoot(new DatasetRootConfig("models/nam", "/data/nam"), "models.xml", true);
+
+    List<DataRootExt> oldRoots = matcher.forgetRoots("models.xml");
+    assertThat(tracker.getDataRoots()).isEmpty();
+    matcher.restoreRoots(oldRoots);
+    assertThat(tracker.getDataRoots()).hasSize(1);
+    assertThat(matcher.findLongestPathMatch("models/nam/run.grib2")).isEqualTo("models/nam");
+  }
+
+  @Test
+  public void shouldSearchConcurrently() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Integer>> results = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        int offset = t;
+        Callable<Integer> task = () -> {
+          int wrong = 0;
+          for (int i = 0; i < 1000; i++) {
+            if (offset == 0 && i % 100 == 0) {
+              matcher.addRoot(new DatasetRootConfig("new/root" + i, "/data/new"), "catalog.xml", false);
+            }
+            DataRoot dataRoot = matcher.findDataRoot("models/gfs/run" + i + ".grib2");
+            if (dataRoot == null || !dataRoot.getPath().equals("models/gfs"))
+              wrong++;
+          }
+          return wrong;
+        };
+        results.add(executor.submit(task));
+      }
+      for (Future<Integer> result : results) {
+        assertThat(result.get()).isEqualTo(0);
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertThat(matcher.findLongestPathMatch("new/root500/file.nc")).isEqualTo("new/root500");
+  }
+}
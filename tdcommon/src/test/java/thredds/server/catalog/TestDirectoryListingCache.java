@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package thredds.server.catalog;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import thredds.inventory.MFile;
+import thredds.inventory.MFiles;
+
+public class TestDirectoryListingCache {
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private final Object owner = new Object();
+  private final AtomicInteger scans = new AtomicInteger();
+  private MFile directory;
+
+  @Before
+  public void setup() throws IOException {
+    tempFolder.newFile("b.nc");
+    tempFolder.newFile("a.nc");
+    tempFolder.newFile("c.nc");
+    tempFolder.newFolder("subdir");
+    directory = MFiles.create(tempFolder.getRoot().getPath());
+  }
+
+  @After
+  public void reset() {
+    DirectoryListingCache.shutdown();
+  }
+
+  @Test
+  public void shouldSortFilesThenDirectories() throws IOException {
+    DirectoryListingCache.Listing listing = DirectoryListingCache.get(owner, directory, this::list);
+    assertThat(names(listing.getSorted(true))).containsExactly("a.nc", "b.nc", "c.nc", "subdir").inOrder();
+    assertThat(names(listing.getSorted(false))).containsExactly("c.nc", "b.nc", "a.nc", "subdir").inOrder();
+  }
+
+  @Test
+  public void shouldFindLatest() throws IOException {
+    DirectoryListingCache.Listing listing = DirectoryListingCache.get(owner, directory, this::list);
+    long now = System.currentTimeMillis();
+    assertThat(listing.getLatest(-1, now).mfile.getName()).isEqualTo("c.nc");
+
+    for (String name : new String[] {"a.nc", "b.nc"})
+      assertThat(new File(tempFolder.getRoot(), name).setLastModified(now - 3600 * 1000)).isTrue();
+    assertThat(new File(tempFolder.getRoot(), "c.nc").setLastModified(now)).isTrue();
+    listing = new DirectoryListingCache.Listing(list(directory));
+    assertThat(listing.getLatest(60 * 1000, now).mfile.getName()).isEqualTo("b.nc");
+    assertThat(listing.getLatest(60 * 1000, now + 120 * 1000).mfile.getName()).isEqualTo("c.nc");
+  }
+
+  @Test
+  public void shouldScanEachTimeWhenTurnedOff() throws IOException {
+    DirectoryListingCache.get(owner, directory, this::list);
+    DirectoryListingCache.get(owner, directory, this::list);
+    assertThat(scans.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldCacheListing() throws IOException {
+    DirectoryListingCache.init(10, 600, false);
+    DirectoryListingCache.Listing listing = DirectoryListingCache.get(owner, directory, this::list);
+    assertThat(DirectoryListingCache.get(owner, directory, this::list)).isSameInstanceAs(listing);
+    assertThat(scans.get()).isEqualTo(1);
+
+    // another DatasetScan has its own filters
+    DirectoryListingCache.get(new Object(), directory, this::list);
+    assertThat(scans.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldRescanWhenDirectoryChanges() throws Exception {
+    DirectoryListingCache.init(10, 600, true);
+    DirectoryListingCache.get(owner, directory, this::list);
+    assertThat(DirectoryListingCache.getNumberOfWatches()).isEqualTo(1);
+
+    tempFolder.newFile("d.nc");
+    long start = System.currentTimeMillis();
+    while (DirectoryListingCache.getNumberOfEntries() > 0 && System.currentTimeMillis() - start < 30 * 1000) {
+      Thread.sleep(50);
+    }
+
+    DirectoryListingCache.Listing listing = DirectoryListingCache.get(owner, directory, this::list);
+    assertThat(names(listing.getSorted(true))).contains("d.nc");
+    assertThat(scans.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldScanAgainWhenDirectoryChangesWhileScanning() throws IOException {
+    DirectoryListingCache.init(10, 600, true);
+    Path dir = Paths.get(directory.getPath()).toAbsolutePath().normalize();
+    DirectoryListingCache.Listing listing = DirectoryListingCache.get(owner, directory, d -> {
+      List<MFile> result = list(d);
+      if (scans.get() == 1) // the watcher sees a change before the listing is in the cache
+        DirectoryListingCache.invalidate(dir);
+      return result;
+    });
+    assertThat(scans.get()).isEqualTo(2);
+
+    assertThat(DirectoryListingCache.get(owner, directory, this::list)).isSameInstanceAs(listing);
+    assertThat(scans.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldNotCacheListingOfDirectoryThatKeepsChanging() throws IOException {
+    DirectoryListingCache.init(10, 600, true);
+    Path dir = Paths.get(directory.getPath()).toAbsolutePath().normalize();
+    DirectoryListingCache.Listing listing = DirectoryListingCache.get(owner, directory, d -> {
+      List<MFile> result = list(d);
+      DirectoryListingCache.invalidate(dir);
+      return result;
+    });
+    assertThat(names(listing.getSorted(true))).contains("a.nc");
+    assertThat(scans.get()).isEqualTo(3);
+    assertThat(DirectoryListingCache.getNumberOfEntries()).isEqualTo(0);
+    assertThat(DirectoryListingCache.getNumberOfWatches()).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldStopWatchingWhenDropped() throws IOException {
+    DirectoryListingCache.init(1, 600, true);
+    DirectoryListingCache.get(owner, directory, this::list);
+    DirectoryListingCache.get(owner, MFiles.create(tempFolder.newFolder("other").getPath()), this::list);
+    assertThat(DirectoryListingCache.getNumberOfEntries()).isEqualTo(1);
+    assertThat(DirectoryListingCache.getNumberOfWatches()).isEqualTo(1);
+  }
+
+  private List<MFile> list(MFile dir) {
+    scans.incrementAndGet();
+    List<MFile> result = new ArrayList<>();
+    File[] files = new File(dir.getPath()).listFiles();
+    if (files != null) {
+      for (File f : files)
+        result.add(MFiles.create(f.getPath()));
+    }
+    return result;
+  }
+
+  private static List<String> names(List<DirectoryListingCache.Entry> entries) {
+    List<String> names = new ArrayList<>();
+    for (DirectoryListingCache.Entry entry : entries)
+      names.add(entry.mfile.getName());
+    return names;
+  }
+}
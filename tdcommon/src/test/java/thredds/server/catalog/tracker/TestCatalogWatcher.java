@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package thredds.server.catalog.tracker;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestCatalogWatcher {
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private static class Changed {
+    final Set<Path> catalogs;
+    final boolean overflow;
+    final long time = System.currentTimeMillis();
+
+    Changed(Set<Path> catalogs, boolean overflow) {
+      this.catalogs = catalogs;
+      this.overflow = overflow;
+    }
+  }
+
+  private final BlockingQueue<Changed> calls = new LinkedBlockingQueue<>();
+
+  private CatalogWatcher makeWatcher(long delayMsecs) throws IOException {
+    CatalogWatcher watcher =
+        new CatalogWatcher((catalogs, overflow) -> calls.add(new Changed(catalogs, overflow)), delayMsecs,
+            Collections.singletonList(tempFolder.getRoot().toPath().resolve("cache")));
+    watcher.registerAll(tempFolder.getRoot().toPath(), null);
+    return watcher;
+  }
+
+  @Test
+  public void shouldCallOnceForChangesCloseTogether() throws Exception {
+    try (CatalogWatcher watcher = makeWatcher(500)) {
+      watcher.start();
+      Path dir = tempFolder.getRoot().toPath();
+      write(dir.resolve("a.xml"));
+      Thread.sleep(100);
+      write(dir.resolve("b.xml"));
+      write(dir.resolve("notes.txt"));
+      Thread.sleep(100);
+      write(dir.resolve("a.xml"));
+
+      Changed changed = calls.poll(10, TimeUnit.SECONDS);
+      assertThat(changed).isNotNull();
+      assertThat(changed.overflow).isFalse();
+      assertThat(changed.catalogs).containsExactly(dir.resolve("a.xml"), dir.resolve("b.xml"));
+      assertThat(calls.poll(1, TimeUnit.SECONDS)).isNull();
+    }
+  }
+
+  @Test
+  public void shouldFindCatalogsInNewDirectoryAndSkipDirs() throws Exception {
+    try (CatalogWatcher watcher = makeWatcher(200)) {
+      watcher.start();
+      Path dir = tempFolder.getRoot().toPath();
+      Files.createDirectories(dir.resolve("cache"));
+      write(dir.resolve("cache/cached.xml"));
+      Path sub = Files.createDirectory(dir.resolve("sub"));
+      write(sub.resolve("c.xml"));
+
+      Changed changed = calls.poll(10, TimeUnit.SECONDS);
+      assertThat(changed).isNotNull();
+      assertThat(changed.catalogs).contains(sub.resolve("c.xml"));
+      assertThat(changed.catalogs).doesNotContain(dir.resolve("cache/cached.xml"));
+    }
+  }
+
+  @Test
+  public void shouldCallWhileChangesKeepComing() throws Exception {
+    try (CatalogWatcher watcher = makeWatcher(100)) {
+      watcher.start();
+      Path catalog = tempFolder.getRoot().toPath().resolve("busy.xml");
+      long start = System.currentTimeMillis();
+      long end = start + 3000;
+      while (System.currentTimeMillis() < end) {
+        write(catalog);
+        Thread.sleep(20);
+      }
+
+      // at most 10 times the delay after the first change, not once they stop
+      Changed changed = calls.poll(10, TimeUnit.SECONDS);
+      assertThat(changed).isNotNull();
+      assertThat(changed.catalogs).containsExactly(catalog);
+      assertThat(changed.time).isLessThan(end);
+    }
+  }
+
+  @Test
+  public void shouldTellListenerAboutLostEvents() throws Exception {
+    try (CatalogWatcher watcher = makeWatcher(200)) {
+      // more events than a watch key keeps, before they are processed
+      Path dir = tempFolder.getRoot().toPath();
+      for (int i = 0; i < 1000; i++)
+        write(dir.resolve("cat" + i + ".xml"));
+      Thread.sleep(500);
+      watcher.start();
+
+      Changed changed = calls.poll(10, TimeUnit.SECONDS);
+      assertThat(changed).isNotNull();
+      assertThat(changed.overflow).isTrue();
+    }
+  }
+
+  private static void write(Path file) throws IOException {
+    Files.write(file, "<catalog/>".getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -6,6 +6,9 @@ import static org.mockito.Mockito.when;
 
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.jdom2.Element;
 import org.jdom2.output.Format;
 import org.jdom2.output.XMLOutputter;
@@ -83,6 +86,101 @@ public class TestDatasetTrackerChronicle {
     }
   }
 
+  @Test
+  public void shouldAnswerUntrackedPathFromFilter() throws IOException {
+    try (DatasetTrackerChronicle datasetTracker =
+        new DatasetTrackerChronicle(tempFolder.getRoot().getAbsolutePath(), 10, 1)) {
+      datasetTracker.trackDataset(1, mockDataset(100, "path"), null);
+
+      assertThat(datasetTracker.findNcml("otherPath")).isNull();
+      assertThat(datasetTracker.findResourceControl("otherPath")).isNull();
+      assertThat(datasetTracker.getFilteredCount()).isEqualTo(2);
+      assertThat(datasetTracker.getDecodedStats().requestCount()).isEqualTo(0);
+    }
+  }
+
+  @Test
+  public void shouldKeepDecodedEntry() throws IOException {
+    try (DatasetTrackerChronicle datasetTracker =
+        new DatasetTrackerChronicle(tempFolder.getRoot().getAbsolutePath(), 10, 1)) {
+      datasetTracker.trackDataset(1, mockDataset(100, "path"), null);
+
+      final String ncml = datasetTracker.findNcml("path");
+      assertThat(datasetTracker.findNcml("path")).isEqualTo(ncml);
+      assertThat(datasetTracker.getDecodedStats().missCount()).isEqualTo(1);
+      assertThat(datasetTracker.getDecodedStats().hitCount()).isEqualTo(1);
+
+      // tracking the path again replaces the decoded entry
+      datasetTracker.trackDataset(1, mockDataset(200, "path"), null);
+      assertThat(datasetTracker.findNcml("path")).isNotEqualTo(ncml);
+    }
+  }
+
+  @Test
+  public void shouldFindDatasetsTrackedBeforeReopen() throws IOException {
+    try (DatasetTrackerChronicle datasetTracker =
+        new DatasetTrackerChronicle(tempFolder.getRoot().getAbsolutePath(), 10, 1)) {
+      datasetTracker.trackDataset(1, mockDataset(100, "path"), null);
+      datasetTracker.save();
+    }
+
+    try (DatasetTrackerChronicle datasetTracker =
+        new DatasetTrackerChronicle(tempFolder.getRoot().getAbsolutePath(), 10, 1)) {
+      assertThat(datasetTracker.exists()).isTrue();
+      assertThat(datasetTracker.findNcml("path")).isNotNull();
+      assertThat(datasetTracker.getFilteredCount()).isEqualTo(0);
+    }
+  }
+
+  @Test
+  public void shouldRemoveDatasetsOfCatalog() throws IOException {
+    try (DatasetTrackerChronicle datasetTracker =
+        new DatasetTrackerChronicle(tempFolder.getRoot().getAbsolutePath(), 10, 1)) {
+      datasetTracker.trackDataset(1, mockDataset(100, "path1"), null);
+      datasetTracker.trackDataset(2, mockDataset(100, "path2"), null);
+      datasetTracker.trackDataset(2, mockDataset(100, "path3"), null);
+      assertThat(datasetTracker.findNcml("path2")).isNotNull();
+
+      assertThat(datasetTracker.removeDatasets(2)).isEqualTo(2);
+      assertThat(datasetTracker.getCount()).isEqualTo(1);
+      assertThat(datasetTracker.findNcml("path1")).isNotNull();
+      assertThat(datasetTracker.findNcml("path2")).isNull();
+      assertThat(datasetTracker.removeDatasets(2)).isEqualTo(0);
+    }
+  }
+
+  @Test
+  public void shouldNotKeepDecodedEntryOfRemovedDataset() throws Exception {
+    try (DatasetTrackerChronicle datasetTracker =
+        new DatasetTrackerChronicle(tempFolder.getRoot().getAbsolutePath(), 10, 1)) {
+      Dataset dataset = mockDataset(100, "path");
+      AtomicBoolean done = new AtomicBoolean();
+      List<Thread> finders = new ArrayList<>();
+      for (int t = 0; t < 2; t++) {
+        Thread finder = new Thread(() -> {
+          while (!done.get())
+            datasetTracker.findNcml("path");
+        });
+        finder.start();
+        finders.add(finder);
+      }
+
+      try {
+        for (int catId = 1; catId <= 200; catId++) {
+          datasetTracker.trackDataset(catId, dataset, null);
+          assertThat(datasetTracker.findNcml("path")).isNotNull();
+          datasetTracker.removeDatasets(catId);
+          assertThat(datasetTracker.findNcml("path")).isNull();
+        }
+      } finally {
+        done.set(true);
+        for (Thread finder : finders)
+          finder.join();
+      }
+      assertThat(datasetTracker.findNcml("path")).isNull();
+    }
+  }
+
   private static Dataset mockDataset(int ncmlLength, String path) {
     final Dataset dataset = mock(Dataset.class);
     when(dataset.getNcmlElement()).thenReturn(createNcml(ncmlLength));
@@ -324,8 +324,30 @@ public interface UGridDatatype extends ucar.nc2.dt.GridDatatype {
   public UGridDatatype makeSubset(Range t_range, Range z_range, LatLonRect bbox, int z_stride, int y_stride,
       int x_stride) throws InvalidRangeException;
 
+  /**
+   * Read the data of the first time and vertical level at the node or face closest to a point.
+   *
+   * @param point the point
+   * @return the value, NaN if it is missing, or -1 if the point is not in the mesh or cannot be read
+   */
   public double readPointData(LatLonPoint point) throws IOException;
 
+  /**
+   * Read a time series at each of some points. All of the points are located first, and the data is then read with as
+   * few reads as possible, so this is much faster than reading the points one at a time.
+   *
+   * @param points the points
+   * @param t_range subset the time dimension, or null if you want all of it
+   * @param z_index the vertical level, ignored if there is no vertical dimension
+   * @param interpolate if true, interpolate data on the nodes linearly within the triangle that contains the point,
+   *        else use the data of the closest node or face
+   * @return values[point][time], NaN where missing or where the point is not in the mesh
+   * @throws ucar.ma2.InvalidRangeException if t_range or z_index are invalid, or the variable has a dimension that is
+   *         not its time, vertical or data dimension and is longer than 1
+   */
+  public double[][] readPointData(List<? extends LatLonPoint> points, Range t_range, int z_index, boolean interpolate)
+      throws IOException, InvalidRangeException;
+
   /**
    * human readable information about this Grid.
    * 
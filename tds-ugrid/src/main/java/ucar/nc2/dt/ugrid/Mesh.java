@@ -8,13 +8,22 @@ package ucar.nc2.dt.ugrid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ucar.nc2.dataset.VariableDS;
+import ucar.nc2.dt.ugrid.topology.MeshArrays;
 import ucar.nc2.dt.ugrid.topology.Topology;
 import cern.colt.list.IntArrayList;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
-import java.util.Set;
 import java.util.Arrays;
 import ucar.nc2.Attribute;
 import ucar.nc2.Variable;
@@ -25,6 +34,7 @@ import ucar.nc2.dt.ugrid.geom.LatLonPoint2D;
 import ucar.nc2.dt.ugrid.geom.LatLonPolygon2D;
 import ucar.nc2.dt.ugrid.geom.LatLonRectangle2D;
 import ucar.nc2.dt.ugrid.rtree.RTree;
+import ucar.nc2.util.DiskCache2;
 import ucar.unidata.geoloc.LatLonPoint;
 import ucar.unidata.geoloc.LatLonPointImpl;
 import ucar.unidata.geoloc.LatLonRect;
@@ -41,10 +51,28 @@ public class Mesh {
   private static final String NODE_COORDINATES = "node_coordinates";
   private static final String FACE_COORDINATES = "face_coordinates";
   private static final String FACE_NODE_CONNECTIVITY = "face_node_connectivity";
+  // RTree cache file
+  private static final String RTREE_SUFFIX = ".rtree";
+  private static final int RTREE_MAGIC = 0x55475249; // "UGRI"
+
+  private static final MeshArrays EMPTY = new MeshArrays(new int[0], 1, new double[0], new double[0], null, null);
+
+  private static DiskCache2 rtreeCache; // null = RTrees are not written
+
+  /**
+   * Where to keep the RTree of each Mesh, so that it does not have to be built again each time the dataset is opened.
+   * The files are next to the dataset if possible, else in the cache directory, following the DiskCache2 policy.
+   *
+   * @param cache use this cache, or null to not keep the RTrees
+   */
+  public static void setRTreeCache(DiskCache2 cache) {
+    rtreeCache = cache;
+  }
 
   private String name;
-  private RTree rtree;
-  private List<Cell> cells = new ArrayList<Cell>();
+  private String location;
+  private volatile RTree rtree; // built on first use
+  private MeshArrays arrays = EMPTY;
   // A Mesh should only have one connectivity array!
   private Topology topology = new Topology();
   private List<CoordinateSystem> coordinate_systems = new ArrayList<CoordinateSystem>();
@@ -53,11 +81,7 @@ public class Mesh {
 
   public Mesh(NetcdfDataset ds, VariableEnhanced v) {
     name = v.getFullName();
-
-    Properties props = new Properties();
-    props.setProperty("MaxNodeEntries", "30");
-    props.setProperty("MinNodeEntries", "15");
-    rtree = new RTree(props);
+    location = ds.getLocation();
 
     processTopologyVariable(ds, v);
   }
@@ -118,12 +142,112 @@ public class Mesh {
         }
       }
     }
-    cells = topology.createCells(locations, coordinate_systems);
+    MeshArrays created = topology.createMeshArrays(locations, coordinate_systems);
+    if (created != null) {
+      arrays = created;
+    }
   }
 
+  /**
+   * Build the RTree of the cells, or read it from the RTree cache. This is done once, on first use; it is safe to call
+   * this again, or from several threads.
+   */
   public void buildRTree() {
-    for (int i = 0; i < cells.size(); i++) {
-      rtree.add(cells.get(i).getPolygon(), i);
+    getRTree();
+  }
+
+  private RTree getRTree() {
+    RTree result = rtree;
+    if (result == null) {
+      synchronized (this) {
+        result = rtree;
+        if (result == null) {
+          result = makeRTree();
+          rtree = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  private RTree makeRTree() {
+    List<LatLonPolygon2D> polys = arrays.makePolygons();
+
+    File dataFile = getDataFile();
+    File cacheFile = null;
+    if (dataFile != null) {
+      // one file for each Mesh in the dataset
+      cacheFile = rtreeCache.getFile(location + "." + name.replace('/', '_') + RTREE_SUFFIX);
+    }
+    if (cacheFile != null && cacheFile.exists()) {
+      RTree tree = readRTree(cacheFile, dataFile, polys);
+      if (tree != null) {
+        return tree;
+      }
+    }
+
+    Properties props = new Properties();
+    props.setProperty("MaxNodeEntries", "30");
+    props.setProperty("MinNodeEntries", "15");
+    RTree tree = new RTree(props);
+    tree.load(polys);
+
+    if (cacheFile != null) {
+      writeRTree(tree, cacheFile, dataFile);
+    }
+    return tree;
+  }
+
+  // the local file the Mesh was read from, or null if there is none, or the RTrees are not kept
+  private File getDataFile() {
+    if (rtreeCache == null || location == null) {
+      return null;
+    }
+    String path = location.startsWith("file:") ? location.substring(5) : location;
+    File file = new File(path);
+    return file.isFile() ? file : null;
+  }
+
+  // the cached RTree, or null if it is not for this version of the data file
+  private RTree readRTree(File cacheFile, File dataFile, List<LatLonPolygon2D> polys) {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile.toPath())))) {
+      if (in.readInt() != RTREE_MAGIC || in.readLong() != dataFile.lastModified() || in.readLong() != dataFile.length()
+          || in.readInt() != polys.size()) {
+        logger.debug("RTree cache file {} is out of date", cacheFile);
+        return null;
+      }
+      return RTree.readFrom(in, polys);
+    } catch (IOException e) {
+      logger.warn("Failed to read RTree cache file {}", cacheFile, e);
+      return null;
+    }
+  }
+
+  private void writeRTree(RTree tree, File cacheFile, File dataFile) {
+    Path tempFile = null;
+    try {
+      // write to a temporary file and move it, so that readers never see a partly written file
+      Path dir = cacheFile.getAbsoluteFile().toPath().getParent();
+      Files.createDirectories(dir);
+      tempFile = Files.createTempFile(dir, cacheFile.getName(), ".tmp");
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+        out.writeInt(RTREE_MAGIC);
+        out.writeLong(dataFile.lastModified());
+        out.writeLong(dataFile.length());
+        out.writeInt(arrays.getNumCells());
+        tree.writeTo(out);
+      }
+      Files.move(tempFile, cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      logger.debug("Wrote RTree cache file {}", cacheFile);
+    } catch (IOException e) {
+      logger.warn("Failed to write RTree cache file {}", cacheFile, e);
+      if (tempFile != null) {
+        try {
+          Files.deleteIfExists(tempFile);
+        } catch (IOException e2) {
+          // ignore
+        }
+      }
     }
   }
 
@@ -132,132 +256,177 @@ public class Mesh {
   }
 
   public int getSize() {
-    return cells.size();
+    return arrays.getNumCells();
   }
 
   public int getTreeSize() {
-    return rtree.size();
+    return getRTree().size();
+  }
+
+  /**
+   * The connectivity and coordinates of the Mesh, as primitive arrays. Prefer this to the Cell, Node and Face objects
+   * for anything that looks at many cells.
+   */
+  public MeshArrays getMeshArrays() {
+    return arrays;
   }
 
   public int getNodeSize() {
-    int i = 0;
-    for (Cell c : cells) {
-      if (c.hasNodes()) {
-        i += c.getNodes().size();
-      }
-    }
-    return i;
+    return arrays.getNodeRefCount();
   }
 
   public double[][] getNodeLatLons() {
-    double[][] ll = new double[this.getUniqueNodeSize()][2];
-    double[] d = new double[2];
-    for (Node n : getUniqueNodes()) {
-      d[0] = n.getGeoPoint().getLatitude();
-      d[1] = n.getGeoPoint().getLongitude();
-      ll[ll.length - 1] = d;
+    int[] nodes = arrays.getUniqueNodes();
+    double[][] ll = new double[nodes.length][2];
+    for (int i = 0; i < nodes.length; i++) {
+      ll[i][0] = arrays.getNodeLat(nodes[i]);
+      ll[i][1] = arrays.getNodeLon(nodes[i]);
     }
     return ll;
   }
 
   public int[] getNodeIndexes() {
-    int[] in = new int[this.getUniqueNodeSize()];
-    for (Node n : getUniqueNodes()) {
-      in[in.length - 1] = n.getDataIndex();
-    }
-    return in;
+    return arrays.getUniqueNodes();
   }
 
+  /**
+   * The nodes used by the cells. This makes an object for each node on each call; use {@link #getMeshArrays()} for
+   * large meshes.
+   */
   public ArrayList<Node> getUniqueNodes() {
-    ArrayList<Node> ents = new ArrayList<Node>();
-    for (Cell c : cells) {
-      if (c.hasNodes()) {
-        ents.addAll(c.getNodes());
-      }
+    int[] nodes = arrays.getUniqueNodes();
+    ArrayList<Node> unique = new ArrayList<Node>(nodes.length);
+    for (int n : nodes) {
+      unique.add(makeNode(n));
     }
-    Set set = new HashSet(ents);
-    ArrayList unique = new ArrayList(set);
     return unique;
   }
 
   public int getUniqueNodeSize() {
-    return getUniqueNodes().size();
+    return arrays.getUniqueNodeCount();
   }
 
   public ArrayList<Edge> getUniqueEdges() {
-    ArrayList<Edge> ents = new ArrayList<Edge>();
-    for (Cell c : cells) {
-      if (c.hasEdges()) {
-        ents.addAll(c.getEdges());
-      }
-    }
-    Set set = new HashSet(ents);
-    ArrayList unique = new ArrayList(set);
-    return unique;
+    // edge coordinates are not read
+    return new ArrayList<Edge>();
   }
 
   public int getEdgeSize() {
-    int i = 0;
-    for (Cell c : cells) {
-      if (c.hasEdges()) {
-        i += c.getEdges().size();
-      }
-    }
-    return i;
+    return 0;
   }
 
+  /**
+   * The faces of the cells. This makes an object for each face on each call; use {@link #getMeshArrays()} for large
+   * meshes.
+   */
   public ArrayList<Face> getUniqueFaces() {
-    ArrayList<Face> ents = new ArrayList<Face>();
-    for (Cell c : cells) {
-      if (c.hasFaces()) {
-        ents.addAll(c.getFaces());
-      }
+    ArrayList<Face> unique = new ArrayList<Face>(arrays.getNumFaces());
+    for (int f = 0; f < arrays.getNumFaces(); f++) {
+      unique.add(makeFace(f));
     }
-    Set set = new HashSet(ents);
-    ArrayList unique = new ArrayList(set);
     return unique;
   }
 
   public int getFaceSize() {
-    int i = 0;
-    for (Cell c : cells) {
-      if (c.hasFaces()) {
-        i += c.getFaces().size();
-      }
-    }
-    return i;
+    return arrays.getNumFaces();
   }
 
   public LatLonRect getLatLonBoundingBox() {
-    LatLonRectangle2D bounds = rtree.getBounds();
+    LatLonRectangle2D bounds = getRTree().getBounds();
     return new LatLonRect((LatLonPoint) new LatLonPointImpl(bounds.getLatMin(), bounds.getLonMin()),
         (LatLonPoint) new LatLonPointImpl(bounds.getLatMax(), bounds.getLonMax()));
   }
 
   public Cell getCellFromLatLon(double lat, double lon) {
-    LatLonPoint2D p = new LatLonPoint2D.Double(lat, lon);
-    return cells.get(rtree.nearest(p));
+    return getCell(getCellIndexFromLatLon(lat, lon));
   }
 
   public Cell getCellFromLatLon(LatLonPoint2D p) {
-    return cells.get(rtree.nearest(p));
+    return getCell(getRTree().nearest(p));
+  }
+
+  /**
+   * The index of the cell nearest to a point.
+   */
+  public int getCellIndexFromLatLon(double lat, double lon) {
+    return getRTree().nearest(new LatLonPoint2D.Double(lat, lon));
   }
 
   public ArrayList<Cell> getCellsInPolygon(LatLonPolygon2D p) {
-    IntArrayList polys = rtree.intersects(p);
-    ArrayList<Cell> containedCells = new ArrayList<Cell>(polys.size());
-    for (int i : polys.elements()) {
-      containedCells.add(this.cells.get(i));
+    int[] indexes = getCellIndexesInPolygon(p);
+    ArrayList<Cell> containedCells = new ArrayList<Cell>(indexes.length);
+    for (int i : indexes) {
+      containedCells.add(getCell(i));
     }
     return containedCells;
   }
 
+  /**
+   * The indexes of the cells that intersect a polygon.
+   *
+   * @return cell indexes, sorted
+   */
+  public int[] getCellIndexesInPolygon(LatLonPolygon2D p) {
+    IntArrayList polys = getRTree().intersects(p);
+    polys.sort();
+    return polys.elements().length == polys.size() ? polys.elements() : Arrays.copyOf(polys.elements(), polys.size());
+  }
+
+  /**
+   * Make the Cell object for a cell. The Cell and its Nodes and Faces are made on each call, they are not kept.
+   *
+   * @param index cell index
+   */
+  public Cell getCell(int index) {
+    Cell cell = new Cell();
+    if (arrays.hasFaces()) {
+      ArrayList<Face> faces = new ArrayList<Face>(1);
+      faces.add(makeFace(index));
+      cell.setFaces(faces);
+    }
+    int[] nodeIndexes = arrays.getCellNodes(index);
+    ArrayList<Node> nodes = new ArrayList<Node>(nodeIndexes.length);
+    for (int n : nodeIndexes) {
+      nodes.add(makeNode(n));
+    }
+    cell.setNodes(nodes);
+    cell.setConnectivityIndex(index);
+    return cell;
+  }
+
+  private Node makeNode(int index) {
+    Node node = new Node();
+    node.setDataIndex(index);
+    node.setGeoPoint(new LatLonPoint2D.Double(arrays.getNodeLat(index), arrays.getNodeLon(index)));
+    return node;
+  }
+
+  private Face makeFace(int index) {
+    Face face = new Face();
+    face.setDataIndex(index);
+    face.setGeoPoint(new LatLonPoint2D.Double(arrays.getFaceLat(index), arrays.getFaceLon(index)));
+    return face;
+  }
+
+  /**
+   * All cells. The Cell objects are made as they are asked for, see {@link #getCell(int)}.
+   */
   public List<Cell> getCells() {
-    return cells;
+    return new AbstractList<Cell>() {
+      @Override
+      public Cell get(int index) {
+        return getCell(index);
+      }
+
+      @Override
+      public int size() {
+        return getSize();
+      }
+    };
   }
 
   public List<Cell> getPolygons() {
-    return cells;
+    return getCells();
   }
 
   public Topology getTopology() {
@@ -270,7 +439,7 @@ public class Mesh {
         new LatLonPoint2D.Double(bounds.getLowerRightPoint().getLatitude(),
             bounds.getLowerRightPoint().getLongitude()));
     LatLonPolygon2D p = new LatLonPolygon2D.Double(r);
-    ArrayList<Cell> containedCells = this.getCellsInPolygon(p);
+    int[] containedCells = this.getCellIndexesInPolygon(p);
     return null;
   }
 
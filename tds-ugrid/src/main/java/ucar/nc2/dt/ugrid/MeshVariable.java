@@ -11,17 +11,17 @@ import org.slf4j.LoggerFactory;
 import ucar.nc2.dt.GridCoordSystem;
 import ucar.nc2.dt.GridDatatype;
 import ucar.nc2.dt.grid.GridCoordSys;
+import ucar.nc2.dt.ugrid.topology.MeshArrays;
 import ucar.nc2.dt.ugrid.topology.Topology;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 import ucar.ma2.Array;
 import ucar.ma2.DataType;
+import ucar.ma2.Index;
 import ucar.ma2.IndexIterator;
 import ucar.ma2.InvalidRangeException;
 import ucar.ma2.MAMath;
@@ -54,6 +54,9 @@ public class MeshVariable implements UGridDatatype {
 
   private static final Logger logger = LoggerFactory.getLogger(MeshVariable.class);
 
+  // read data indexes that are up to this far apart together, rather than with another read
+  private static final int MAX_READ_GAP = 64;
+
   private VariableDS vs;
   private UGridDataset dataset;
   private Meshset meshset;
@@ -281,31 +284,29 @@ public class MeshVariable implements UGridDatatype {
     throw new UnsupportedOperationException("Not supported yet.");
   }
 
-  public void subsetToDataset(UGridDataset ugd, NetcdfDataset ncd, List<Cell> containedCells) {
+  /**
+   * Add this variable, on some cells of its Mesh, to a dataset.
+   *
+   * @param ugd the dataset being subset
+   * @param ncd add to this dataset
+   * @param containedCells the cell indexes, sorted
+   */
+  public void subsetToDataset(UGridDataset ugd, NetcdfDataset ncd, int[] containedCells) {
 
-    // Get unique node indexes, so we know how large the Node array is going to be.
-    List<Entity> list = new ArrayList<Entity>();
+    // Get the data indexes on the cells, sorted, so we know how large the Node array is going to be.
+    MeshArrays arrays = meshset.getMesh().getMeshArrays();
+    int[] indexes;
+    boolean onFaces = false;
     if (cellLocation.equals("node")) {
-      for (Cell c : containedCells) {
-        for (Node n : c.getNodes()) {
-          list.add(n);
-        }
-      }
-    } else if (cellLocation.equals("face")) {
-      for (Cell c : containedCells) {
-        for (Face n : c.getFaces()) {
-          list.add(n);
-        }
-      }
-    } else if (cellLocation.equals("edge")) {
-      for (Cell c : containedCells) {
-        for (Edge n : c.getEdges()) {
-          list.add(n);
-        }
-      }
+      indexes = arrays.getUniqueNodes(containedCells);
+    } else if (cellLocation.equals("face") && arrays.hasFaces()) {
+      // face i is on cell i
+      indexes = containedCells;
+      onFaces = true;
+    } else {
+      // edge coordinates are not read
+      indexes = new int[0];
     }
-    Set set = new HashSet(list);
-    ArrayList<Entity> unique_entities = new ArrayList<Entity>(set);
 
     /*
      * Add all coordinate axis that this MeshVariable uses (ie. lat, lon, depth, time)
@@ -391,8 +392,7 @@ public class MeshVariable implements UGridDatatype {
           CoordinateAxis latAxis = cs.getLatAxis();
           Dimension node_dim = ncd.findDimension(latAxis.getDimension(0).getFullName());
           if (node_dim == null) {
-            node_dim =
-                ncd.addDimension(null, new Dimension(latAxis.getDimension(0).getFullName(), unique_entities.size()));
+            node_dim = ncd.addDimension(null, new Dimension(latAxis.getDimension(0).getFullName(), indexes.length));
           }
           data_index = vs.findDimensionIndex(node_dim.getFullName());
           ncd.finish();
@@ -411,10 +411,9 @@ public class MeshVariable implements UGridDatatype {
             ncd.addVariable(null, newLat);
             ncd.addCoordinateAxis(new VariableDS(null, newLat, true));
             Array lats = Array.factory(latAxis.getOriginalDataType(), newLat.getShape());
-            count = 0;
-            for (Entity k : unique_entities) {
-              lats.setObject(count, k.getGeoPoint().getLatitude());
-              count++;
+            for (count = 0; count < indexes.length; count++) {
+              int k = indexes[count];
+              lats.setDouble(count, onFaces ? arrays.getFaceLat(k) : arrays.getNodeLat(k));
             }
             newLat.setCachedData(lats);
           }
@@ -434,10 +433,9 @@ public class MeshVariable implements UGridDatatype {
             ncd.addVariable(null, newLon);
             ncd.addCoordinateAxis(new VariableDS(null, newLon, true));
             Array lons = Array.factory(lonAxis.getOriginalDataType(), newLon.getShape());
-            count = 0;
-            for (Entity k : unique_entities) {
-              lons.setObject(count, k.getGeoPoint().getLongitude());
-              count++;
+            for (count = 0; count < indexes.length; count++) {
+              int k = indexes[count];
+              lons.setDouble(count, onFaces ? arrays.getFaceLon(k) : arrays.getNodeLon(k));
             }
             newLon.setCachedData(lons);
             ncd.finish();
@@ -449,17 +447,8 @@ public class MeshVariable implements UGridDatatype {
       /*
        * Now add this actual MeshVariable, now that the file has
        * been set up with the correct Dimensions.
-       * TODO: Subset this variable.
-       * 
-       * Options:
-       * 1.) Iterate over the containedCells.get(i).getNodes().get(j).getDataIndex()
-       * and slice out each data index from this variable into a new variable.
-       * Update the topology with the new data index.
-       * 2.) Get the min and max data indexes from the topology and only
-       * reindex that section of the data variables. Don't have to take
-       * individual slices from the data variable doing it this way, but
-       * still need to reindex the topology.
-       * 3.) Set the unused data indexes to its FillValue
+       * The data is subset to the data indexes, in the same order as the
+       * lat/lon above; Topology renumbers the connectivity to match.
        */
 
       Variable newVar = ncd.findVariable(vs.getFullNameEscaped());
@@ -473,21 +462,11 @@ public class MeshVariable implements UGridDatatype {
         ncd.finish();
       }
 
-      ArrayList<Range> r = new ArrayList<Range>();
-      // Time
-      if (time_index != -1) {
-        r.add(time_index, new Range(time_length));
-      }
-      // Vertical
-      if (z_index != -1) {
-        r.add(z_index, new Range(z_length));
-      }
-      // Data
-      // System.out.println(newVar);
       if (data_index != -1) {
-        r.add(data_index, new Range(0, 10));
+        newVar.setCachedData(readIndexes(vs, data_index, indexes));
+      } else {
+        newVar.setCachedData(vs.read());
       }
-      newVar.setCachedData(vs.read(r));
       ncd.finish();
 
     } catch (IOException ioe) {
@@ -497,13 +476,56 @@ public class MeshVariable implements UGridDatatype {
     }
   }
 
+  /*
+   * Read the values at some indexes of one dimension, with all of the other dimensions.
+   * The indexes are read in runs of indexes that are close together: one read of the span of a run is usually much
+   * faster than one read for each index, without reading the whole span of scattered indexes.
+   */
+  static Array readIndexes(Variable v, int dim, int[] indexes) throws IOException, InvalidRangeException {
+    int[] shape = v.getShape();
+    shape[dim] = indexes.length;
+    Array result = null;
+    List<Range> ranges = new ArrayList<Range>(v.getRanges());
+    for (int[] run : findRuns(indexes)) {
+      int first = indexes[run[0]];
+      ranges.set(dim, new Range(first, indexes[run[1]]));
+      Array span = v.read(ranges);
+      if (result == null) {
+        result = Array.factory(span.getDataType(), shape);
+      }
+      for (int i = run[0]; i <= run[1]; i++) {
+        MAMath.copy(result.slice(dim, i), span.slice(dim, indexes[i] - first));
+      }
+    }
+    return result != null ? result : Array.factory(v.getDataType(), shape);
+  }
+
+  /*
+   * Split increasing indexes into runs, where each index is at most MAX_READ_GAP after the one before.
+   * Returns {start, end} of each run, inclusive positions in indexes.
+   */
+  static List<int[]> findRuns(int[] indexes) {
+    List<int[]> runs = new ArrayList<>();
+    int start = 0;
+    while (start < indexes.length) {
+      int end = start;
+      while (end + 1 < indexes.length && indexes[end + 1] >= indexes[end]
+          && indexes[end + 1] - indexes[end] <= MAX_READ_GAP) {
+        end++;
+      }
+      runs.add(new int[] {start, end});
+      start = end + 1;
+    }
+    return runs;
+  }
+
   public UGridDataset subsetToSelf(LatLonRect bounds) {
     LatLonRectangle2D r = new LatLonRectangle2D(
         new LatLonPoint2D.Double(bounds.getUpperLeftPoint().getLatitude(), bounds.getUpperLeftPoint().getLongitude()),
         new LatLonPoint2D.Double(bounds.getLowerRightPoint().getLatitude(),
             bounds.getLowerRightPoint().getLongitude()));
     LatLonPolygon2D p = new LatLonPolygon2D.Double(r);
-    List<Cell> containedCells = meshset.getMesh().getCellsInPolygon(p);
+    int[] containedCells = meshset.getMesh().getCellIndexesInPolygon(p);
 
     // Create a new subsat UGridDataset and return
     NetcdfDataset ncd = null;
@@ -514,7 +536,7 @@ public class MeshVariable implements UGridDatatype {
         ncd.addAttribute(null, a);
       }
 
-      Dimension ds = new Dimension("nodes", containedCells.size());
+      Dimension ds = new Dimension("nodes", containedCells.length);
 
       for (CoordinateSystem cs : dataset.getNetcdfDataset().getCoordinateSystems()) {
         for (Dimension d : cs.getDomain()) {
@@ -562,65 +584,169 @@ public class MeshVariable implements UGridDatatype {
   }
 
   public double readPointData(LatLonPoint point) throws IOException {
-    // Find the closest R-Tree Cell
-    final LatLonPoint2D p = new LatLonPoint2D.Double(point.getLatitude(), point.getLongitude());
-    Cell c = meshset.getMesh().getCellFromLatLon(p);
-    double z = -1;
+    // the first time and level, at the closest node or face
+    if (meshset.getMesh().getCellIndexFromLatLon(point.getLatitude(), point.getLongitude()) < 0) {
+      return -1; // not in the mesh
+    }
+    try {
+      return readPointData(Collections.singletonList(point), new Range(0, 0), 0, false)[0][0];
+    } catch (InvalidRangeException ex) {
+      logger.error("Error reading data point", ex);
+      return -1;
+    }
+  }
 
-    List<? extends Entity> e;
-    if (cellLocation.equals("node")) {
-      e = c.getNodes();
-    } else if (cellLocation.equals("face")) {
-      e = c.getFaces();
-    } else if (cellLocation.equals("edge")) {
-      e = c.getEdges();
-    } else {
-      e = null;
+  @Override
+  public double[][] readPointData(List<? extends LatLonPoint> points, Range t_range, int z_index, boolean interpolate)
+      throws IOException, InvalidRangeException {
+    int[] dims = findDimensionIndexes(vs);
+    int time_index = dims[0];
+    if (t_range == null) {
+      t_range = time_index < 0 ? new Range(0, 0) : new Range(vs.getDimension(time_index).getLength());
     }
-    if ((e != null) && (e.size() > 0)) {
-
-      // Sort the collection of Entities by distance from the query point.
-      // This should offer different ways to calculate the distance of
-      // the closest point.
-
-      // "e" is all of the Entities in the Cell that are on the variable's
-      // location (Node OR Edge OR Face).
-
-      Collections.sort(e, new Comparator() {
-
-        public int compare(Object o1, Object o2) {
-          Entity e1 = (Entity) o1;
-          Entity e2 = (Entity) o2;
-          if (e1.getGeoPoint().distance(p) == e2.getGeoPoint().distance(p)) {
-            return 0;
-          } else if (e1.getGeoPoint().distance(p) > e2.getGeoPoint().distance(p)) {
-            return 1;
-          } else {
-            return -1;
-          }
+    int ntimes = time_index < 0 ? 1 : t_range.length();
+
+    // Locate all of the points first: the data indexes, and their weights, of each point
+    Mesh mesh = meshset.getMesh();
+    MeshArrays arrays = mesh.getMeshArrays();
+    int[][] pointIndexes = new int[points.size()][];
+    double[][] pointWeights = new double[points.size()][];
+    int total = 0;
+    for (int p = 0; p < points.size(); p++) {
+      double lat = points.get(p).getLatitude();
+      double lon = points.get(p).getLongitude();
+      int cell = mesh.getCellIndexFromLatLon(lat, lon);
+      int in = MeshArrays.MISSING; // also if the Mesh is empty
+      if (cell >= 0 && cellLocation.equals("node")) {
+        double[] weights = interpolate ? arrays.getTriangleWeights(cell, lat, lon) : null;
+        if (weights != null) {
+          pointIndexes[p] = arrays.getCellNodes(cell);
+          pointWeights[p] = weights;
+        } else {
+          in = arrays.findClosestNode(cell, lat, lon);
         }
-      });
-
-      // Get the closest Entities DataIndex into the NetCDF file.
-      int in = e.get(0).getDataIndex();
-      try {
-
-        // Need to compute actual ranges here, not assume it is (time,z,entity)
-        List<Range> r = new ArrayList<Range>();
-        // Time (first)
-        r.add(new Range(0, 0));
-        // Sigma (first)
-        r.add(new Range(0, 0));
-        // Data (DataIndex from Cell)
-        r.add(new Range(in, in));
-
-        float[] ret1D = (float[]) vs.read(r).copyTo1DJavaArray();
-        z = ret1D[0];
-      } catch (InvalidRangeException ex) {
-        logger.error("Error reading data point", ex);
+      } else if (cell >= 0 && cellLocation.equals("face") && arrays.hasFaces()) {
+        in = cell;
+      }
+      if (pointIndexes[p] == null) {
+        pointIndexes[p] = in == MeshArrays.MISSING ? new int[0] : new int[] {in};
+        pointWeights[p] = new double[] {1.0};
+      }
+      total += pointIndexes[p].length;
+    }
+
+    // The different data indexes, sorted
+    int[] indexes = new int[total];
+    int count = 0;
+    for (int[] pi : pointIndexes) {
+      System.arraycopy(pi, 0, indexes, count, pi.length);
+      count += pi.length;
+    }
+    Arrays.sort(indexes);
+    int nunique = 0;
+    for (int i = 0; i < indexes.length; i++) {
+      if (nunique == 0 || indexes[i] != indexes[nunique - 1]) {
+        indexes[nunique++] = indexes[i];
+      }
+    }
+    indexes = Arrays.copyOf(indexes, nunique);
+
+    // Read them, values[unique index][time]
+    // one read for each run of indexes that are close together
+    double[][] values = new double[indexes.length][ntimes];
+    for (int[] run : findRuns(indexes)) {
+      readRun(vs, indexes, run[0], run[1], values, dims, t_range, z_index);
+    }
+
+    double[][] result = new double[points.size()][ntimes];
+    for (int p = 0; p < points.size(); p++) {
+      if (pointIndexes[p].length == 0) {
+        Arrays.fill(result[p], Double.NaN);
+        continue;
+      }
+      for (int k = 0; k < pointIndexes[p].length; k++) {
+        double[] v = values[Arrays.binarySearch(indexes, pointIndexes[p][k])];
+        for (int t = 0; t < ntimes; t++) {
+          result[p][t] += pointWeights[p][k] * v[t];
+        }
+      }
+    }
+    return result;
+  }
+
+  /*
+   * Read the data of indexes[start..end] for all times, into values[start..end].
+   * The indexes between them are read too, which is cheaper than another read when they are close together.
+   */
+  static void readRun(VariableDS vs, int[] indexes, int start, int end, double[][] values, int[] dims, Range t_range,
+      int z_index) throws IOException, InvalidRangeException {
+    int first = indexes[start];
+    List<Range> ranges = new ArrayList<Range>(vs.getRank());
+    for (int d = 0; d < vs.getRank(); d++) {
+      if (d == dims[0]) {
+        ranges.add(t_range);
+      } else if (d == dims[1]) {
+        ranges.add(new Range(z_index, z_index));
+      } else if (d == dims[2]) {
+        ranges.add(new Range(first, indexes[end]));
+      } else if (vs.getDimension(d).getLength() == 1) {
+        ranges.add(new Range(0, 0));
+      } else {
+        throw new InvalidRangeException("Dimension " + vs.getDimension(d).getShortName() + " of "
+            + vs.getFullName() + " is neither time, vertical nor data");
+      }
+    }
+    Array data = vs.read(ranges);
+
+    Index ima = data.getIndex();
+    boolean hasMissing = vs.hasMissing();
+    for (int i = start; i <= end; i++) {
+      if (dims[2] >= 0) {
+        ima.setDim(dims[2], indexes[i] - first);
+      }
+      for (int t = 0; t < values[i].length; t++) {
+        if (dims[0] >= 0) {
+          ima.setDim(dims[0], t);
+        }
+        double val = data.getDouble(ima);
+        values[i][t] = hasMissing && vs.isMissing(val) ? Double.NaN : val;
+      }
+    }
+  }
+
+  // The index in vs of the time, vertical and data (node, face or edge) dimensions, -1 if there is none
+  static int[] findDimensionIndexes(VariableDS vs) {
+    int[] dims = {-1, -1, -1};
+    for (CoordinateSystem cs : vs.getCoordinateSystems()) {
+      if (cs.hasTimeAxis()) {
+        dims[0] = vs.findDimensionIndex(cs.getTaxis().getDimension(0).getFullName());
+      }
+      for (CoordinateAxis zAxis : new CoordinateAxis[] {cs.getZaxis(), cs.getHeightAxis(), cs.getPressureAxis()}) {
+        if (zAxis != null && zAxis.getRank() > 0) {
+          dims[1] = vs.findDimensionIndex(zAxis.getDimension(0).getFullName());
+        }
+      }
+      if (cs.isLatLon()) {
+        dims[2] = vs.findDimensionIndex(cs.getLatAxis().getDimension(0).getFullName());
+      }
+    }
+    if (dims[2] < 0) {
+      // the data dimension is usually the last one
+      dims[2] = vs.getRank() - 1;
+    }
+    if (dims[1] < 0) {
+      // a vertical dimension without a recognized axis, eg sigma layers: the only other one
+      int other = -1;
+      for (int d = 0; d < vs.getRank(); d++) {
+        if (d != dims[0] && d != dims[2] && vs.getDimension(d).getLength() > 1) {
+          other = (other == -1) ? d : -2;
+        }
+      }
+      if (other >= 0) {
+        dims[1] = other;
       }
     }
-    return z;
+    return dims;
   }
 
   public String getInfo() {
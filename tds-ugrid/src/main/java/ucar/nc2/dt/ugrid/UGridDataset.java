@@ -382,13 +382,13 @@ public class UGridDataset implements ucar.nc2.dt.UGridDataset, ucar.nc2.ft.Featu
           new LatLonPoint2D.Double(bounds.getLowerRightPoint().getLatitude(),
               bounds.getLowerRightPoint().getLongitude()));
       LatLonPolygon2D p = new LatLonPolygon2D.Double(r);
-      List<Cell> containedCells;
+      int[] containedCells;
       for (ucar.nc2.dt.UGridDataset.Meshset ms3 : this.getMeshsets()) {
         ncd.addVariable(null, ms3.getDescriptionVariable());
 
         m4 = ms3.getMesh();
         m4.buildRTree();
-        containedCells = m4.getCellsInPolygon(p);
+        containedCells = m4.getCellIndexesInPolygon(p);
 
         /*
          * Create the subsat Topology
@@ -847,7 +847,7 @@ public abstract class LatLonPolygon2D implements Serializable {
               : vertices.get(i + 1).getLongitude();
           v1y = vertices.get(i + 1).getLatitude();
           tempDistSq = Line2D.ptSegDistSq(v0x, v0y, v1x, v1y, px, py);
-          tempDistSq = Math.min(tempDistSq, resultSq);
+          resultSq = Math.min(tempDistSq, resultSq);
         }
         v0x = (crossesDateline) ? LatLonPoint2D.normLon360(vertices.get(0).getLongitude())
             : vertices.get(0).getLongitude();
@@ -254,13 +254,10 @@ public class Node implements Serializable {
   }
 
 
-  public static long reorgTime = 0;
-
   /**
    * eliminate null entries, move all entries to the start of the source node
    */
   void reorganize(RTree rtree) {
-    long curTime = System.currentTimeMillis();
     int countdownIndex = rtree.maxNodeEntries - 1;
     for (int index = 0; index < entryCount; index++) {
       if (entries[index] == null) {
@@ -272,7 +269,6 @@ public class Node implements Serializable {
         entries[countdownIndex] = null;
       }
     }
-    reorgTime += (System.currentTimeMillis() - curTime);
   }
 
   boolean isLeaf() {
@@ -12,14 +12,19 @@ package ucar.nc2.dt.ugrid.rtree;
 
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 import java.util.Stack;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import cern.colt.Sorting;
 import cern.colt.list.AbstractIntList;
 import cern.colt.list.IntArrayList;
 import cern.colt.map.OpenIntObjectHashMap;
@@ -49,6 +54,17 @@ import ucar.nc2.dt.ugrid.geom.LatLonRectangle2D;
  * by using primitive collections from the COLT library.
  * </p>
  *
+ * <p>
+ * A large set of entries should be loaded all at once with {@link #load(List)}, which packs them into nodes using
+ * Sort-Tile-Recursive bulk loading, instead of adding them one at a time. A built tree can be saved with
+ * {@link #writeTo(DataOutputStream)} and read back with {@link #readFrom(DataInputStream, List)}.
+ * </p>
+ *
+ * <p>
+ * Searches (nearest, nearestNeighbors, intersects, contains) do not modify the tree, and may be called from several
+ * threads at once. Adding or deleting entries must not be done at the same time as anything else.
+ * </p>
+ *
  * NOTE: Node.findEntry() is not implemented and recalculateMBR() is not implemented. These are used in node deletion,
  * therefore nodes
  * cannot be deleted at this time. 06-05-09
@@ -77,6 +93,9 @@ public class RTree implements SpatialIndex, Serializable {
   // used to mark the status of entries during a node split
   private final static int ENTRY_STATUS_ASSIGNED = 0;
   private final static int ENTRY_STATUS_UNASSIGNED = 1;
+  // writeTo() / readFrom() format
+  private final static int MAGIC = 0x52545245; // "RTRE"
+  private final static int FORMAT_VERSION = 1;
 
 
 
@@ -117,39 +136,16 @@ public class RTree implements SpatialIndex, Serializable {
   // which can be reused.
   private Stack<Integer> deletedNodeIds = new Stack<Integer>();
 
-  // List of nearest rectangles. Use a member variable to
-  // avoid recreating the object each time nearest() is called.
-  // private TIntArrayList nearestIds = new TIntArrayList();
-  private IntArrayList nearestIds = new IntArrayList();
-  private OpenIntObjectHashMap nearestEntriesMap = new OpenIntObjectHashMap();
-
 
 
   /**
-   * Inner class used as a bridge (adapter) between the COLT TIntProcedure and the SpatialIndex IntProcedure. This is
-   * used because the
-   * nearest rectangles must be stored as they are found, in case a closer one is found later.
-   *
-   * A single instance of this class is used to avoid creating a new one every time nearest() is called.
+   * The nearest entries found so far by one call of nearest(). Each search has its own, so that searches may run
+   * concurrently.
    */
-  private static class TIntProcedureVisit implements cern.colt.function.IntProcedure, Serializable {
-    /**
-     *
-     */
-    private static final long serialVersionUID = 3278783388762254894L;
-    public IntProcedure m_intProcedure = null;
-
-    public void setProcedure(IntProcedure ip) {
-      m_intProcedure = ip;
-    }
-
-    public boolean apply(int index) {
-      m_intProcedure.execute(index);
-      return true;
-    }
-  };
-
-  private TIntProcedureVisit visitProc = new TIntProcedureVisit();
+  private static class NearestSearch {
+    final IntArrayList ids = new IntArrayList();
+    final List<LatLonPolygon2D> entries = new ArrayList<LatLonPolygon2D>();
+  }
 
   /**
    * Constructor. Use init() method to initialize parameters of the RTree.
@@ -240,13 +236,226 @@ public class RTree implements SpatialIndex, Serializable {
     size++;
   }
 
-  public static long addTime = 0;
+  /**
+   * Load all the entries at once, using Sort-Tile-Recursive bulk loading (Leutenegger, Lopez and Edgington, 1997).
+   * The entries are sorted into vertical slices by the longitude of their centers, each slice is sorted by latitude,
+   * and runs of entries are packed into full leaves. The same is done with the leaves to make the level above, and so
+   * on up to the root. This is much faster than adding the entries one at a time, and the nodes overlap less.
+   *
+   * @param polys
+   *        the entries. The id of each entry is its index in the list; null entries are skipped. The polygons are not
+   *        copied, so must not be changed afterwards.
+   * @throws IllegalStateException
+   *         if the tree is not empty
+   */
+  public void load(List<? extends LatLonPolygon2D> polys) {
+    if (size != 0) {
+      throw new IllegalStateException("RTree must be empty to be bulk loaded");
+    }
+
+    /* The items of the level being packed: entries for the leaves, then the nodes of the level below */
+    int count = 0;
+    int[] order = new int[polys.size()];
+    double[] centerLats = new double[polys.size()];
+    double[] centerLons = new double[polys.size()];
+    for (int i = 0; i < polys.size(); i++) {
+      LatLonPolygon2D poly = polys.get(i);
+      if (poly != null) {
+        double[] bounds = poly.getBoundingLatLonValues();
+        centerLats[i] = (bounds[0] + bounds[2]) / 2;
+        centerLons[i] = (bounds[1] + bounds[3]) / 2;
+        order[count++] = i;
+      }
+    }
+    if (count == 0) {
+      return;
+    }
+    int numEntries = count;
+
+    /* The empty root is replaced */
+    nodeMap.removeKey(rootNodeId);
+    deletedNodeIds.push(rootNodeId);
+
+    int[] childIds = null;
+    int level = 1;
+    while (true) {
+      sortTiles(order, count, centerLats, centerLons);
+
+      int numNodes = (count + maxNodeEntries - 1) / maxNodeEntries;
+      int[] nodeIds = new int[numNodes];
+      double[] nodeLats = new double[numNodes];
+      double[] nodeLons = new double[numNodes];
+      for (int k = 0; k < numNodes; k++) {
+        Node n = new Node(getNextNodeId(), level, maxNodeEntries);
+        int end = Math.min(count, (k + 1) * maxNodeEntries);
+        for (int j = k * maxNodeEntries; j < end; j++) {
+          int item = order[j];
+          if (level == 1) {
+            n.addEntryNoCopy(polys.get(item), item);
+          } else {
+            Node child = getNode(childIds[item]);
+            n.addEntryCopy(child.mbr, child.nodeId);
+          }
+        }
+        nodeMap.put(n.nodeId, n);
+
+        double[] bounds = n.mbr.getBoundingLatLonValues();
+        nodeIds[k] = n.nodeId;
+        nodeLats[k] = (bounds[0] + bounds[2]) / 2;
+        nodeLons[k] = (bounds[1] + bounds[3]) / 2;
+      }
+
+      if (numNodes == 1) {
+        rootNodeId = nodeIds[0];
+        treeHeight = level;
+        break;
+      }
+
+      /* Next level up */
+      childIds = nodeIds;
+      centerLats = nodeLats;
+      centerLons = nodeLons;
+      count = numNodes;
+      order = new int[count];
+      for (int k = 0; k < count; k++) {
+        order[k] = k;
+      }
+      level++;
+    }
+    size = numEntries;
+
+    if (INTERNAL_CONSISTENCY_CHECKING) {
+      checkConsistency(rootNodeId, treeHeight, null);
+    }
+  }
+
+  /**
+   * Sort the first <code>count</code> items of <code>order</code> into Sort-Tile-Recursive order, so that each run of
+   * maxNodeEntries items is one tile: sort into slices by longitude, then each slice by latitude.
+   */
+  private void sortTiles(int[] order, int count, final double[] lats, final double[] lons) {
+    int numNodes = (count + maxNodeEntries - 1) / maxNodeEntries;
+    int numSlices = (int) Math.ceil(Math.sqrt(numNodes));
+    int sliceSize = numSlices * maxNodeEntries;
+
+    Sorting.quickSort(order, 0, count, (a, b) -> Double.compare(lons[a], lons[b]));
+    for (int start = 0; start < count; start += sliceSize) {
+      Sorting.quickSort(order, start, Math.min(start + sliceSize, count), (a, b) -> Double.compare(lats[a], lats[b]));
+    }
+  }
+
+  /**
+   * Write the structure of this tree: the nodes that can be reached from the root, with the bounds of the entries of
+   * the non-leaf nodes. Only the ids of the leaf entries are written; the entries themselves must be passed to
+   * {@link #readFrom(DataInputStream, List)}.
+   *
+   * @param out
+   *        write to here
+   * @throws IOException
+   *         on write error
+   */
+  public void writeTo(DataOutputStream out) throws IOException {
+    /* parents before children */
+    List<Node> nodes = new ArrayList<Node>();
+    Stack<Integer> todo = new Stack<Integer>();
+    todo.push(rootNodeId);
+    while (!todo.isEmpty()) {
+      Node n = getNode(todo.pop());
+      nodes.add(n);
+      if (!n.isLeaf()) {
+        for (int i = 0; i < n.entryCount; i++) {
+          todo.push(n.ids[i]);
+        }
+      }
+    }
+
+    out.writeInt(MAGIC);
+    out.writeInt(FORMAT_VERSION);
+    out.writeInt(maxNodeEntries);
+    out.writeInt(minNodeEntries);
+    out.writeInt(size);
+    out.writeInt(treeHeight);
+    out.writeInt(rootNodeId);
+    out.writeInt(highestUsedNodeId);
+    out.writeInt(nodes.size());
+    for (Node n : nodes) {
+      out.writeInt(n.nodeId);
+      out.writeInt(n.level);
+      out.writeInt(n.entryCount);
+      for (int i = 0; i < n.entryCount; i++) {
+        out.writeInt(n.ids[i]);
+        if (!n.isLeaf()) {
+          for (double d : n.entries[i].getBoundingLatLonValues()) {
+            out.writeDouble(d);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Read a tree written by {@link #writeTo(DataOutputStream)}.
+   *
+   * @param in
+   *        read from here
+   * @param leafEntries
+   *        the entries of the tree that was written, by id. The polygons are not copied.
+   * @return the tree
+   * @throws IOException
+   *         on read error, or if this is not a tree of these entries
+   */
+  public static RTree readFrom(DataInputStream in, List<? extends LatLonPolygon2D> leafEntries) throws IOException {
+    if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+      throw new IOException("Not an RTree, or written by another version");
+    }
+    Properties props = new Properties();
+    props.setProperty("MaxNodeEntries", Integer.toString(in.readInt()));
+    props.setProperty("MinNodeEntries", Integer.toString(in.readInt()));
+    RTree tree = new RTree(props);
+    tree.nodeMap.clear();
+    tree.size = in.readInt();
+    tree.treeHeight = in.readInt();
+    tree.rootNodeId = in.readInt();
+    tree.highestUsedNodeId = in.readInt();
+
+    int numNodes = in.readInt();
+    for (int k = 0; k < numNodes; k++) {
+      int nodeId = in.readInt();
+      int level = in.readInt();
+      int entryCount = in.readInt();
+      if (entryCount < 0 || entryCount > tree.maxNodeEntries) {
+        throw new IOException("Bad entry count " + entryCount + " in node " + nodeId);
+      }
+      Node n = new Node(nodeId, level, tree.maxNodeEntries);
+      for (int i = 0; i < entryCount; i++) {
+        int id = in.readInt();
+        if (level == 1) {
+          LatLonPolygon2D poly = (id >= 0 && id < leafEntries.size()) ? leafEntries.get(id) : null;
+          if (poly == null) {
+            throw new IOException("No entry for id " + id);
+          }
+          n.addEntryNoCopy(poly, id);
+        } else {
+          double[] b = new double[4];
+          for (int d = 0; d < 4; d++) {
+            b[d] = in.readDouble();
+          }
+          n.addEntryCopy(new LatLonRectangle2D(b[0], b[1], b[2], b[3]), id);
+        }
+      }
+      tree.nodeMap.put(nodeId, n);
+    }
+
+    if (tree.getNode(tree.rootNodeId) == null) {
+      throw new IOException("No root node");
+    }
+    return tree;
+  }
 
   /**
    * Adds a new entry at a specified level in the tree
    */
   private void add(LatLonPolygon2D r, int id, int level) {
-    long curTime = System.currentTimeMillis();
     /*
      * I1 [Find position for new record]
      * Invoke ChooseLeaf to select a leaf node L in which to place r
@@ -293,7 +502,6 @@ public class RTree implements SpatialIndex, Serializable {
     if (INTERNAL_CONSISTENCY_CHECKING) {
       checkConsistency(rootNodeId, treeHeight, null);
     }
-    addTime += System.currentTimeMillis() - curTime;
   }
 
   /*
@@ -443,73 +651,25 @@ public class RTree implements SpatialIndex, Serializable {
   public void nearest(final LatLonPoint2D p, IntProcedure v, double searchRadius) {
     /* Get all the nearest neighbors to this point */
     /* ******************************************* */
-    nearestNeighborsExclusive(p, getNode(rootNodeId), searchRadius);
-
-
+    NearestSearch search = new NearestSearch();
+    nearestNeighborsExclusive(p, getNode(rootNodeId), searchRadius, search);
 
     /* If multiple entries are returned, find the closest by centroid */
     /* ************************************************************** */
-    if (nearestEntriesMap.size() > 1) {
-
-
-
-      /**
-       * Local Inner Class for finding closest entry of a set of nearest neighbors. Used by
-       * <code>nearestEntriesMap.forEachKey()</code>
-       *
-       * @author tlarocque
-       */
-      class FindClosestEntryProc implements cern.colt.function.IntProcedure, Serializable {
-
-        /**
-         *
-         */
-        private static final long serialVersionUID = -3036812482409644397L;
-        private double distanceSquared = Double.POSITIVE_INFINITY;
-        private int closestIndex = -1;
-
-        /**
-         * Sets <code>closestIndex</code> to the specified key if the centroid of that keys polygon is closer than the
-         * last one
-         * checked.
-         */
-        public boolean apply(int key) {
-          LatLonPoint2D tempPoint = ((LatLonPolygon2D) nearestEntriesMap.get(key)).getCentroid();
-          double tempDist = tempPoint.distanceSq(p);
-
-          if (tempDist < distanceSquared) {
-            distanceSquared = tempDist;
-            closestIndex = key;
-          } /* else: ignore additional equidistant entries */
-
-
-          return true;
-        }
-
-        /**
-         * @return the index value stored in this procedure which is associated with the closest polygon entry
-         */
-        public int getClosestIndex() {
-          return closestIndex;
-        }
-
-
-
-      }; /* End local inner class */
-
-
-
-      FindClosestEntryProc proc = new FindClosestEntryProc();
-      nearestEntriesMap.forEachKey(proc);
-      nearestIds.clear();
-      nearestIds.add(proc.getClosestIndex());
+    int closestIndex = -1;
+    double distanceSquared = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < search.ids.size(); i++) {
+      double tempDist = search.entries.get(i).getCentroid().distanceSq(p);
+      if (closestIndex < 0 || tempDist < distanceSquared) {
+        distanceSquared = tempDist;
+        closestIndex = i;
+      } /* else: ignore additional equidistant entries */
     }
 
-
     /* Process the nearest entry (1) */
-    visitProc.setProcedure(v);
-    nearestIds.forEach(visitProc);
-    nearestIds.clear();
+    if (closestIndex >= 0) {
+      v.execute(search.ids.get(closestIndex));
+    }
   }
 
 
@@ -627,11 +787,12 @@ public class RTree implements SpatialIndex, Serializable {
     // find all rectangles in the tree that are contained by the passed
     // rectangle
     // written to be non-recursive (should model other searches on this?)
+    // uses its own stacks, so that concurrent searches do not interfere
 
-    parents.clear();
+    Stack<Integer> parents = new Stack<Integer>();
     parents.push(rootNodeId);
 
-    parentsEntry.clear();
+    Stack<Integer> parentsEntry = new Stack<Integer>();
     parentsEntry.push(-1);
 
     // TODO: possible shortcut here - could test for intersection with the
@@ -760,8 +921,6 @@ public class RTree implements SpatialIndex, Serializable {
     return rootNodeId;
   }
 
-  public static long splitTime = 0;
-
   /**
    * Split a node. Algorithm is taken pretty much verbatim from Guttman's original paper.
    *
@@ -769,7 +928,6 @@ public class RTree implements SpatialIndex, Serializable {
    */
   private Node splitNode(Node n, LatLonPolygon2D newRect, int newId) {
 
-    long curTime = System.currentTimeMillis();
     /**
      * QS1 [Pick first entry for each group]
      *
@@ -859,12 +1017,9 @@ public class RTree implements SpatialIndex, Serializable {
     // logger.debug("Node " + n.nodeId + " split. New area increased by " +
     // percentageIncrease + "%");
     // }
-    splitTime += (System.currentTimeMillis() - curTime);
     return newNode;
   }
 
-  public static long pickSeedsTime = 0;
-
   /**
    * Pick the seeds used to split a node. Select two entries to be the first elements of the groups. These two entries
    * would be the ones
@@ -873,7 +1028,6 @@ public class RTree implements SpatialIndex, Serializable {
    * will not be placed in the same group.
    */
   private void pickSeeds(Node n, LatLonPolygon2D newRect, int newId, Node newNode) {
-    long curTime = System.currentTimeMillis();
     /**
      * LPS1 [Find extreme rectangles along all dimensions]
      *
@@ -1014,12 +1168,9 @@ public class RTree implements SpatialIndex, Serializable {
     /* Set the nodes mbr to the lowest high index's mbr [TPL] */
     n.mbr = n.entries[lowestHighIndex[mostExtremeDim]].getBouningLatLonRectangle2D();
 
-    pickSeedsTime += (System.currentTimeMillis() - curTime);
 
   }
 
-  public static long pickNextTime = 0;
-
   // /**
   // * Pick the next entry to be assigned to a group during a node split.
   // *
@@ -1097,7 +1248,6 @@ public class RTree implements SpatialIndex, Serializable {
 
   private int pickNextAndAssign(Node oldNode, Node newNode) {
 
-    long curTime = System.currentTimeMillis();
 
 
     /** Grab the next unassigned entry */
@@ -1164,7 +1314,6 @@ public class RTree implements SpatialIndex, Serializable {
     }
 
 
-    pickNextTime += (System.currentTimeMillis() - curTime);
     return nextEntry;
   }
 
@@ -1186,17 +1335,17 @@ public class RTree implements SpatialIndex, Serializable {
   public void nearestNeighbors(LatLonPoint2D p, IntProcedure v, double searchRadius) {
     Node rootNode = getNode(rootNodeId);
 
-    nearestIds.clear();
-    nearestNeighbors(p, rootNode, searchRadius * searchRadius);
+    IntArrayList nearestIds = new IntArrayList();
+    nearestNeighbors(p, rootNode, searchRadius * searchRadius, nearestIds);
 
-    visitProc.setProcedure(v);
-    nearestIds.forEach(visitProc);
-    nearestIds.clear();
+    for (int i = 0; i < nearestIds.size(); i++) {
+      v.execute(nearestIds.get(i));
+    }
   }
 
 
   // inclusive
-  private void nearestNeighbors(LatLonPoint2D p, Node n, double searchRadiusSquared) {
+  private void nearestNeighbors(LatLonPoint2D p, Node n, double searchRadiusSquared, IntArrayList nearestIds) {
     for (int i = 0; i < n.entryCount; i++) {
       double tempDistance = n.entries[i].distanceSq(p);
 
@@ -1208,7 +1357,7 @@ public class RTree implements SpatialIndex, Serializable {
           nearestIds.add(n.ids[i]);
         } else {
           /* Search this nodes children */
-          nearestNeighbors(p, getNode(n.ids[i]), searchRadiusSquared);
+          nearestNeighbors(p, getNode(n.ids[i]), searchRadiusSquared, nearestIds);
         }
 
       }
@@ -1221,16 +1370,13 @@ public class RTree implements SpatialIndex, Serializable {
    * Recursively searches the tree for the nearest entry. Other queries call execute() on an IntProcedure when a
    * matching entry is found;
    * however nearest() must store the entry Ids as it searches the tree, in case a nearer entry is found. Uses the
-   * member variable
-   * nearestIds to store the nearest entry IDs. Since some nearest entries may be equiquadistant to the given point, the
-   * entries polygon
-   * is cached in the variable nearestEntriesMap so that the calling method may (if needed) sort the entries further by
-   * centroid or other
-   * unique characteristic.
+   * <code>search</code> to store the nearest entry IDs. Since some nearest entries may be equiquadistant to the given
+   * point, the entries polygon is also kept, so that the calling method may (if needed) sort the entries further by
+   * centroid or other unique characteristic.
    *
    * [x] TODO rewrite this to be non-recursive?
    */
-  private double nearestNeighborsExclusive(LatLonPoint2D p, Node n, double searchRadius) {
+  private double nearestNeighborsExclusive(LatLonPoint2D p, Node n, double searchRadius, NearestSearch search) {
     for (int i = 0; i < n.entryCount; i++) {
       double tempDistance = n.entries[i].distance(p);
       if (n.isLeaf()) {
@@ -1240,19 +1386,19 @@ public class RTree implements SpatialIndex, Serializable {
          * just a distance used in adjusting the search radius. Breaking
          * down into the following two 'if' statements allows for the two
          * occasions where: 1) This node is closer than all the rest.
-         * This way the nearestIds must be cleared, and since nearest =
-         * temp, this node will be the only one added to the nearestIds
+         * This way the found ids must be cleared, and since nearest =
+         * temp, this node will be the only one added to the found ids
          * list. 2) This node is an equal distance from the point as
-         * other nodes, so it should simply be added to nearestIds.
+         * other nodes, so it should simply be added to the found ids.
          */
         if (tempDistance < searchRadius) {
           searchRadius = tempDistance;
-          nearestEntriesMap.clear();
-          nearestIds.clear();
+          search.ids.clear();
+          search.entries.clear();
         }
         if (tempDistance <= searchRadius) {
-          nearestEntriesMap.put(n.ids[i], n.entries[i]);
-          nearestIds.add(n.ids[i]);
+          search.ids.add(n.ids[i]);
+          search.entries.add(n.entries[i]);
         }
       } else {
         /*
@@ -1265,7 +1411,7 @@ public class RTree implements SpatialIndex, Serializable {
          */
         if (tempDistance <= searchRadius) {
           /* Search the child node */
-          searchRadius = nearestNeighborsExclusive(p, getNode(n.ids[i]), searchRadius);
+          searchRadius = nearestNeighborsExclusive(p, getNode(n.ids[i]), searchRadius, search);
         }
       }
     }
@@ -1363,13 +1509,10 @@ public class RTree implements SpatialIndex, Serializable {
     }
   }
 
-  public static long chooseTime = 0;
-
   /**
    * Used by add(). Chooses a leaf to add the rectangle to.
    */
   private Node chooseNode(LatLonPolygon2D r, int level) {
-    long curTime = System.currentTimeMillis();
     // CL1 [Initialize] Set N to be the root node
     Node n = getNode(rootNodeId);
     parents.clear();
@@ -1416,17 +1559,13 @@ public class RTree implements SpatialIndex, Serializable {
       n = getNode(n.ids[index]);
     }
 
-    chooseTime += (System.currentTimeMillis() - curTime);
     return n;
   }
 
-  public static long adjustTime = 0;
-
   /**
    * Ascend from a leaf node L to the root, adjusting covering rectangles and propagating node splits as necessary.
    */
   private Node adjustTree(Node n, Node nn) {
-    long curtime = System.currentTimeMillis();
 
 
     /*
@@ -1491,7 +1630,6 @@ public class RTree implements SpatialIndex, Serializable {
       // parent = null;
       // newNode = null;
     }
-    adjustTime += (System.currentTimeMillis() - curtime);
     return nn;
   }
 
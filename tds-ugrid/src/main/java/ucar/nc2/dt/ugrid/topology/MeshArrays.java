@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.dt.ugrid.topology;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import ucar.nc2.dt.ugrid.geom.LatLonPoint2D;
+import ucar.nc2.dt.ugrid.geom.LatLonPolygon2D;
+
+/**
+ * The cells of a Mesh, kept as primitive arrays: the nodes of each cell and the coordinates of each node and face.
+ * Memory use is about the size of the face_node_connectivity and coordinate variables, instead of an object for each
+ * cell, node and face.
+ * <p>
+ * Cell i has the nodes {@code cellNodes[i * nodesPerCell ... (i + 1) * nodesPerCell - 1]}, as 0-based indexes into the
+ * node coordinates. Cells with fewer nodes than nodesPerCell are padded with -1. If there are face coordinates, face i
+ * is the face of cell i. Immutable, so safe to share between threads.
+ */
+public class MeshArrays {
+  public static final int MISSING = -1;
+
+  private final int[] cellNodes;
+  private final int nodesPerCell;
+  private final int numCells;
+  private final double[] nodeLats;
+  private final double[] nodeLons;
+  private final double[] faceLats; // null if no face coordinates
+  private final double[] faceLons;
+  private final int nodeRefCount;
+  private final int uniqueNodeCount;
+
+  /**
+   * Constructor. The arrays are used as given, not copied.
+   *
+   * @param cellNodes the 0-based node indexes of each cell, nodesPerCell for each cell. Indexes that are not valid node
+   *        indexes, like fill values, are replaced by {@link #MISSING}.
+   * @param nodesPerCell maximum number of nodes of a cell
+   * @param nodeLats latitude of each node
+   * @param nodeLons longitude of each node
+   * @param faceLats latitude of the face of each cell, or null
+   * @param faceLons longitude of the face of each cell, or null
+   */
+  public MeshArrays(int[] cellNodes, int nodesPerCell, double[] nodeLats, double[] nodeLons, double[] faceLats,
+      double[] faceLons) {
+    if (nodesPerCell <= 0 || cellNodes.length % nodesPerCell != 0) {
+      throw new IllegalArgumentException("connectivity length " + cellNodes.length + " is not a multiple of "
+          + nodesPerCell + " nodes per cell");
+    }
+    if (nodeLats.length != nodeLons.length) {
+      throw new IllegalArgumentException("node coordinates have different lengths");
+    }
+    this.cellNodes = cellNodes;
+    this.nodesPerCell = nodesPerCell;
+    this.numCells = cellNodes.length / nodesPerCell;
+    this.nodeLats = nodeLats;
+    this.nodeLons = nodeLons;
+    if (faceLats != null && faceLons != null && faceLats.length == numCells && faceLons.length == numCells) {
+      this.faceLats = faceLats;
+      this.faceLons = faceLons;
+    } else {
+      this.faceLats = null;
+      this.faceLons = null;
+    }
+
+    // the counts are computed once here, instead of on each call
+    BitSet used = new BitSet(nodeLats.length);
+    int refs = 0;
+    for (int i = 0; i < cellNodes.length; i++) {
+      int node = cellNodes[i];
+      if (node < 0 || node >= nodeLats.length) {
+        cellNodes[i] = MISSING;
+      } else {
+        used.set(node);
+        refs++;
+      }
+    }
+    this.nodeRefCount = refs;
+    this.uniqueNodeCount = used.cardinality();
+  }
+
+  public int getNumCells() {
+    return numCells;
+  }
+
+  public int getNodesPerCell() {
+    return nodesPerCell;
+  }
+
+  /** Number of nodes, that is the length of the node coordinates. */
+  public int getNumNodes() {
+    return nodeLats.length;
+  }
+
+  /** Number of nodes in all cells, counting shared nodes once for each cell. */
+  public int getNodeRefCount() {
+    return nodeRefCount;
+  }
+
+  /** Number of different nodes used by the cells. */
+  public int getUniqueNodeCount() {
+    return uniqueNodeCount;
+  }
+
+  public boolean hasFaces() {
+    return faceLats != null;
+  }
+
+  /** Number of faces, 0 if there are no face coordinates. */
+  public int getNumFaces() {
+    return hasFaces() ? numCells : 0;
+  }
+
+  /**
+   * The node of a cell.
+   *
+   * @param cell cell index
+   * @param k node number within the cell, 0 to nodesPerCell - 1
+   * @return node index, or {@link #MISSING}
+   */
+  public int getCellNode(int cell, int k) {
+    return cellNodes[cell * nodesPerCell + k];
+  }
+
+  /** The node indexes of a cell, without the missing ones. */
+  public int[] getCellNodes(int cell) {
+    int[] result = new int[nodesPerCell];
+    int n = 0;
+    for (int k = 0; k < nodesPerCell; k++) {
+      int node = getCellNode(cell, k);
+      if (node != MISSING) {
+        result[n++] = node;
+      }
+    }
+    return n == nodesPerCell ? result : Arrays.copyOf(result, n);
+  }
+
+  public double getNodeLat(int node) {
+    return nodeLats[node];
+  }
+
+  public double getNodeLon(int node) {
+    return nodeLons[node];
+  }
+
+  public double getFaceLat(int face) {
+    return faceLats[face];
+  }
+
+  public double getFaceLon(int face) {
+    return faceLons[face];
+  }
+
+  /** Make the polygon of a cell, through its nodes. */
+  public LatLonPolygon2D makePolygon(int cell) {
+    LatLonPolygon2D poly = new LatLonPolygon2D.Double();
+    for (int k = 0; k < nodesPerCell; k++) {
+      int node = getCellNode(cell, k);
+      if (node != MISSING) {
+        poly.lineTo(nodeLats[node], nodeLons[node]);
+      }
+    }
+    return poly;
+  }
+
+  /** Make the polygons of all cells, in cell order. Cells that share a node share its point. */
+  public List<LatLonPolygon2D> makePolygons() {
+    LatLonPoint2D[] points = new LatLonPoint2D[nodeLats.length];
+    List<LatLonPolygon2D> result = new ArrayList<LatLonPolygon2D>(numCells);
+    for (int cell = 0; cell < numCells; cell++) {
+      LatLonPolygon2D poly = new LatLonPolygon2D.Double();
+      for (int k = 0; k < nodesPerCell; k++) {
+        int node = getCellNode(cell, k);
+        if (node == MISSING || Double.isNaN(nodeLats[node]) || Double.isNaN(nodeLons[node])) {
+          continue;
+        }
+        if (points[node] == null) {
+          points[node] = new LatLonPoint2D.Double(nodeLats[node], nodeLons[node]);
+        }
+        poly.lineTo(points[node]);
+      }
+      result.add(poly);
+    }
+    return result;
+  }
+
+  /** The different nodes used by the cells, sorted. */
+  public int[] getUniqueNodes() {
+    BitSet used = new BitSet(nodeLats.length);
+    for (int node : cellNodes) {
+      if (node != MISSING) {
+        used.set(node);
+      }
+    }
+    return used.stream().toArray();
+  }
+
+  /**
+   * The different nodes of some cells.
+   *
+   * @param cells cell indexes
+   * @return node indexes, sorted
+   */
+  public int[] getUniqueNodes(int[] cells) {
+    BitSet used = new BitSet(nodeLats.length);
+    for (int cell : cells) {
+      for (int k = 0; k < nodesPerCell; k++) {
+        int node = getCellNode(cell, k);
+        if (node != MISSING) {
+          used.set(node);
+        }
+      }
+    }
+    return used.stream().toArray();
+  }
+
+  /**
+   * The node of a cell closest to a point, by distance in degrees.
+   *
+   * @return node index, or {@link #MISSING} if the cell has no nodes
+   */
+  public int findClosestNode(int cell, double lat, double lon) {
+    int closest = MISSING;
+    double closestDistSq = Double.MAX_VALUE;
+    for (int k = 0; k < nodesPerCell; k++) {
+      int node = getCellNode(cell, k);
+      if (node == MISSING) {
+        continue;
+      }
+      double dlat = nodeLats[node] - lat;
+      double dlon = nodeLons[node] - lon;
+      double distSq = dlat * dlat + dlon * dlon;
+      if (distSq < closestDistSq) {
+        closestDistSq = distSq;
+        closest = node;
+      }
+    }
+    return closest;
+  }
+
+  /**
+   * The barycentric coordinates of a point within a triangular cell, by lat/lon in degrees. Used to interpolate
+   * linearly between the values on the three nodes.
+   *
+   * @return the weight of each of the nodes of {@link #getCellNodes(int)}, or null if the cell is not a triangle or
+   *         the point is not in it
+   */
+  public double[] getTriangleWeights(int cell, double lat, double lon) {
+    int[] nodes = getCellNodes(cell);
+    if (nodes.length != 3) {
+      return null;
+    }
+    double x1 = nodeLons[nodes[0]], y1 = nodeLats[nodes[0]];
+    double x2 = nodeLons[nodes[1]], y2 = nodeLats[nodes[1]];
+    double x3 = nodeLons[nodes[2]], y3 = nodeLats[nodes[2]];
+    double det = (y2 - y3) * (x1 - x3) + (x3 - x2) * (y1 - y3);
+    if (det == 0 || Double.isNaN(det)) {
+      return null;
+    }
+    double w1 = ((y2 - y3) * (lon - x3) + (x3 - x2) * (lat - y3)) / det;
+    double w2 = ((y3 - y1) * (lon - x3) + (x1 - x3) * (lat - y3)) / det;
+    double w3 = 1 - w1 - w2;
+    double eps = 1.0e-9;
+    if (w1 < -eps || w2 < -eps || w3 < -eps) {
+      return null;
+    }
+    return new double[] {w1, w2, w3};
+  }
+
+}
@@ -6,10 +6,8 @@
 package ucar.nc2.dt.ugrid.topology;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
 
 import ucar.ma2.*;
 import ucar.nc2.Attribute;
@@ -19,12 +17,7 @@ import ucar.nc2.constants.AxisType;
 import ucar.nc2.dataset.CoordinateSystem;
 import ucar.nc2.dataset.NetcdfDataset;
 import ucar.nc2.dataset.VariableDS;
-import ucar.nc2.dt.ugrid.Cell;
-import ucar.nc2.dt.ugrid.Edge;
-import ucar.nc2.dt.ugrid.Face;
-import ucar.nc2.dt.ugrid.Node;
 import ucar.nc2.dt.ugrid.UGridDataset;
-import ucar.nc2.dt.ugrid.geom.LatLonPoint2D;
 
 /**
  *
@@ -43,6 +36,7 @@ public class Topology {
   private String cellType = "none";
   private int startIndex = 0;
   private Variable face_node_connectivity_variable;
+  private MeshArrays meshArrays;
 
   public Topology() {
 
@@ -104,7 +98,15 @@ public class Topology {
     }
   }
 
-  public List<Cell> createCells(List<String> locations, List<CoordinateSystem> coords) {
+  /**
+   * Read the connectivity and the node and face coordinates into primitive arrays. The result is kept, see
+   * {@link #getMeshArrays()}.
+   *
+   * @param locations the location ("node" or "face") of each coordinate system
+   * @param coords the coordinate systems
+   * @return the mesh arrays, or null if they could not be read
+   */
+  public MeshArrays createMeshArrays(List<String> locations, List<CoordinateSystem> coords) {
     try {
       CoordinateSystem node_cs = null;
       CoordinateSystem face_cs = null;
@@ -119,87 +121,65 @@ public class Topology {
         // edge_cs = coords.get(i);
         // }
       }
-
-      List<Cell> cells = new ArrayList<Cell>();
-      Node node;
-      Face face;
-      Edge edge;
-      Cell cell;
-      int index;
-
-      Array arr = face_node_connectivity_variable.read();
-      Array arri = MAMath.convert(arr, DataType.INT);
-      int[][] conn_data = (int[][]) arri.copyToNDJavaArray();
+      if (node_cs == null) {
+        return null;
+      }
 
       double[] face_lats = null;
       double[] face_lons = null;
-      ArrayList<Face> unique_faces = null;
       if (face_cs != null) {
         face_lats = (double[]) face_cs.getLatAxis().read().get1DJavaArray(double.class);
         face_lons = (double[]) face_cs.getLonAxis().read().get1DJavaArray(double.class);
-        unique_faces = new ArrayList<Face>(face_lats.length);
-        for (int g = 0; g < face_lats.length; g++) {
-          face = new Face();
-          face.setDataIndex(g);
-          face.setGeoPoint(new LatLonPoint2D.Double(face_lats[g], face_lons[g]));
-          unique_faces.add(face);
-        }
       }
-
       double[] node_lats = (double[]) node_cs.getLatAxis().read().get1DJavaArray(double.class);
       double[] node_lons = (double[]) node_cs.getLonAxis().read().get1DJavaArray(double.class);
-      ArrayList<Node> unique_nodes = new ArrayList<Node>(node_lats.length);
-      for (int j = 0; j < node_lats.length; j++) {
-        node = new Node();
-        node.setDataIndex(j);
-        node.setGeoPoint(new LatLonPoint2D.Double(node_lats[j], node_lons[j]));
-        unique_nodes.add(node);
-      }
 
-      ArrayList<Node> nodes = new ArrayList<Node>();
-      ArrayList<Face> faces = new ArrayList<Face>();
+      // One int for each entry of the connectivity array, stored cell by cell and 0-based
+      Array arr = face_node_connectivity_variable.read();
+      int[] conn_data = (int[]) MAMath.convert(arr, DataType.INT).copyTo1DJavaArray();
+      int[] shape = arr.getShape();
+      int nodes_per_cell;
+      int[] cell_nodes;
       if (this.isTall()) {
-        for (int i = 0; i < conn_data.length; i++) {
-          cell = new Cell();
-          nodes.clear();
-          faces.clear();
-          for (int k = 0; k < conn_data[i].length; k++) {
-            index = conn_data[i][k] - startIndex;
-            nodes.add(unique_nodes.get(index));
-          }
-          if (!cell.hasFaces() && unique_faces != null) {
-            faces.add(unique_faces.get(i));
-            cell.setFaces(faces);
-          }
-          cell.setNodes((ArrayList<Node>) nodes.clone());
-          cell.setConnectivityIndex(i);
-          cells.add(cell);
+        nodes_per_cell = shape[1];
+        cell_nodes = conn_data;
+        for (int i = 0; i < cell_nodes.length; i++) {
+          cell_nodes[i] -= startIndex;
         }
       } else {
-        for (int i = 0; i < conn_data[0].length; i++) {
-          cell = new Cell();
-          nodes.clear();
-          faces.clear();
-          for (int k = 0; k < conn_data.length; k++) {
-            index = conn_data[k][i] - startIndex;
-            nodes.add(unique_nodes.get(index));
-          }
-          if (!cell.hasFaces() && unique_faces != null) {
-            faces.add(unique_faces.get(i));
-            cell.setFaces(faces);
+        nodes_per_cell = shape[0];
+        int num_cells = shape[1];
+        cell_nodes = new int[conn_data.length];
+        for (int k = 0; k < nodes_per_cell; k++) {
+          for (int i = 0; i < num_cells; i++) {
+            cell_nodes[i * nodes_per_cell + k] = conn_data[k * num_cells + i] - startIndex;
           }
-          cell.setNodes((ArrayList<Node>) nodes.clone());
-          cell.setConnectivityIndex(i);
-          cells.add(cell);
         }
       }
-      return cells;
+
+      meshArrays = new MeshArrays(cell_nodes, nodes_per_cell, node_lats, node_lons, face_lats, face_lons);
+      return meshArrays;
     } catch (IOException e) {
       return null;
     }
   }
 
-  public void subsetToDataset(UGridDataset ugd, NetcdfDataset ncd, List<Cell> containedCells) {
+  /**
+   * The mesh arrays made by {@link #createMeshArrays}, or null if they have not been made.
+   */
+  public MeshArrays getMeshArrays() {
+    return meshArrays;
+  }
+
+  /**
+   * Add the connectivity of some cells to a dataset. The node indexes are renumbered to the position of the node
+   * within the sorted unique nodes of the cells, which is how MeshVariable writes the node coordinates and data.
+   *
+   * @param ugd the dataset being subset
+   * @param ncd add to this dataset
+   * @param containedCells the cell indexes, sorted
+   */
+  public void subsetToDataset(UGridDataset ugd, NetcdfDataset ncd, int[] containedCells) {
 
     /*
      * The 'NFaces' dimension... or the number of sides of the polygons in the grid.
@@ -222,13 +202,9 @@ public class Topology {
     ncd.finish();
 
     // Create cell_dim of correct size if it does not exist
-
-    Set set = new HashSet(containedCells);
-    ArrayList<Cell> unique_cells = new ArrayList<Cell>(set);
-
     Dimension cell_dim = ncd.findDimension(cell_number_dimension_name);
     if (cell_dim == null) {
-      cell_dim = ncd.addDimension(null, new Dimension(cell_number_dimension_name, unique_cells.size()));
+      cell_dim = ncd.addDimension(null, new Dimension(cell_number_dimension_name, containedCells.length));
     }
     ncd.finish();
 
@@ -244,35 +220,35 @@ public class Topology {
     int[] shape = new int[] {newConn.getDimension(0).getLength(), newConn.getDimension(1).getLength()};
     ArrayInt conn_data = new ArrayInt.D2(shape[0], shape[1], false);
     Index ima = conn_data.getIndex();
-    for (int i = 0; i < unique_cells.size(); i++) {
-      for (int j = 0; j < unique_cells.get(i).getNodes().size(); j++) {
+    int[] unique_nodes = meshArrays.getUniqueNodes(containedCells);
+    for (int i = 0; i < containedCells.length; i++) {
+      for (int k = 0; k < meshArrays.getNodesPerCell(); k++) {
+        int node = meshArrays.getCellNode(containedCells[i], k);
+        int index = node == MeshArrays.MISSING ? MeshArrays.MISSING : Arrays.binarySearch(unique_nodes, node);
         if (this.isTall()) {
-          conn_data.set(ima.set(j, i), unique_cells.get(i).getNodes().get(j).getDataIndex());
+          conn_data.set(ima.set(i, k), index);
         } else {
-          conn_data.set(ima.set(j, i), unique_cells.get(i).getNodes().get(j).getDataIndex());
+          conn_data.set(ima.set(k, i), index);
         }
       }
     }
-
-    // TODO: Reindex the topology here.
-    // Array conn_data = Array.factory(DataType.INT, shape, raw_data);
     newConn.setCachedData(conn_data);
 
     ncd.addVariable(null, newConn);
     ncd.finish();
   }
 
-  public VariableDS subsetToVariable(List<Cell> containedCells) {
+  public VariableDS subsetToVariable(int[] containedCells) {
     Variable newV = new Variable(face_node_connectivity_variable);
     int[] shape = new int[] {newV.getShape(0), newV.getShape(1)};
     int[][] conn = new int[shape[0]][shape[1]];
     int count = 0;
-    for (Cell c : containedCells) {
-      for (int i = 0; i < c.getNodes().size(); i++) {
+    for (int cell : containedCells) {
+      for (int i = 0; i < meshArrays.getNodesPerCell(); i++) {
         if (this.isTall()) {
-          conn[count][i] = c.getNodes().get(i).getDataIndex();
+          conn[count][i] = meshArrays.getCellNode(cell, i);
         } else {
-          conn[i][count] = c.getNodes().get(i).getDataIndex();
+          conn[i][count] = meshArrays.getCellNode(cell, i);
         }
       }
       count++;
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.dt.ugrid;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.Array;
+import ucar.ma2.ArrayFloat;
+import ucar.ma2.DataType;
+import ucar.ma2.Index;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.Range;
+import ucar.nc2.dataset.NetcdfDataset;
+import ucar.nc2.dataset.NetcdfDatasets;
+import ucar.nc2.dataset.VariableDS;
+import ucar.nc2.write.NetcdfFormatWriter;
+
+public class TestMeshVariableReads {
+  private static final int NTIMES = 3;
+  private static final int NLEVELS = 2;
+  private static final int NNODES = 1000;
+
+  // scattered: close together, far apart, and a repeated index
+  private static final int[] INDEXES = {0, 1, 5, 70, 134, 135, 400, 401, 401, 999};
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private File file;
+
+  @Before
+  public void setup() throws Exception {
+    file = tempFolder.newFile("mesh.nc");
+    NetcdfFormatWriter.Builder builder = NetcdfFormatWriter.createNewNetcdf3(file.getPath());
+    builder.addDimension("time", NTIMES);
+    builder.addDimension("level", NLEVELS);
+    builder.addDimension("node", NNODES);
+    builder.addVariable("data", DataType.FLOAT, "time level node");
+    builder.addVariable("layered", DataType.FLOAT, "level node");
+    try (NetcdfFormatWriter writer = builder.build()) {
+      ArrayFloat.D3 data = new ArrayFloat.D3(NTIMES, NLEVELS, NNODES);
+      for (int t = 0; t < NTIMES; t++) {
+        for (int z = 0; z < NLEVELS; z++) {
+          for (int n = 0; n < NNODES; n++) {
+            data.set(t, z, n, t * 100_000 + z * 10_000 + n);
+          }
+        }
+      }
+      writer.write("data", data);
+      writer.write("layered", data.slice(0, 0));
+    }
+  }
+
+  @Test
+  public void shouldSplitIntoRuns() {
+    List<int[]> runs = MeshVariable.findRuns(INDEXES);
+    List<String> found = new ArrayList<>();
+    for (int[] run : runs) {
+      found.add(run[0] + "-" + run[1]);
+    }
+    assertThat(found).containsExactly("0-2", "3-5", "6-8", "9-9").inOrder();
+    assertThat(MeshVariable.findRuns(new int[0])).isEmpty();
+    // not increasing
+    assertThat(MeshVariable.findRuns(new int[] {10, 5})).hasSize(2);
+  }
+
+  @Test
+  public void shouldReadIndexesInRuns() throws Exception {
+    try (NetcdfDataset ncd = NetcdfDatasets.openDataset(file.getPath())) {
+      VariableDS data = (VariableDS) ncd.findVariable("data");
+      Array result = MeshVariable.readIndexes(data, 2, INDEXES);
+      assertThat(result.getShape()).asList().containsExactly(NTIMES, NLEVELS, INDEXES.length).inOrder();
+
+      Index ima = result.getIndex();
+      for (int t = 0; t < NTIMES; t++) {
+        for (int z = 0; z < NLEVELS; z++) {
+          for (int i = 0; i < INDEXES.length; i++) {
+            List<Range> ranges = new ArrayList<>();
+            ranges.add(new Range(t, t));
+            ranges.add(new Range(z, z));
+            ranges.add(new Range(INDEXES[i], INDEXES[i]));
+            double expected = data.read(ranges).getDouble(0);
+            assertThat(result.getDouble(ima.set(t, z, i))).isEqualTo(expected);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void shouldReadRunsOfPoints() throws Exception {
+    int[] indexes = {0, 1, 5, 70, 134, 135, 400, 401, 999};
+    int[] dims = {0, 1, 2};
+    try (NetcdfDataset ncd = NetcdfDatasets.openDataset(file.getPath())) {
+      VariableDS data = (VariableDS) ncd.findVariable("data");
+      for (int z = 0; z < NLEVELS; z++) {
+        double[][] values = new double[indexes.length][NTIMES];
+        for (int[] run : MeshVariable.findRuns(indexes)) {
+          MeshVariable.readRun(data, indexes, run[0], run[1], values, dims, new Range(NTIMES), z);
+        }
+
+        for (int i = 0; i < indexes.length; i++) {
+          double[][] single = new double[1][NTIMES];
+          MeshVariable.readRun(data, new int[] {indexes[i]}, 0, 0, single, dims, new Range(NTIMES), z);
+          assertThat(values[i]).usingExactEquality().containsExactly(single[0]).inOrder();
+          assertThat(values[i][1]).isEqualTo(100_000 + z * 10_000 + indexes[i]);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void shouldFindVerticalDimensionWithoutAxis() throws Exception {
+    try (NetcdfDataset ncd = NetcdfDatasets.openDataset(file.getPath())) {
+      VariableDS layered = (VariableDS) ncd.findVariable("layered");
+      int[] dims = MeshVariable.findDimensionIndexes(layered);
+      assertThat(dims).asList().containsExactly(-1, 0, 1).inOrder();
+
+      double[][] values = new double[1][1];
+      MeshVariable.readRun(layered, new int[] {7}, 0, 0, values, dims, new Range(0, 0), 1);
+      assertThat(values[0][0]).isEqualTo(10_000 + 7);
+    }
+  }
+
+  @Test(expected = InvalidRangeException.class)
+  public void shouldNotIgnoreUnknownDimension() throws Exception {
+    try (NetcdfDataset ncd = NetcdfDatasets.openDataset(file.getPath())) {
+      VariableDS data = (VariableDS) ncd.findVariable("data");
+      // neither time nor vertical dimension is known, so the vertical level cannot be chosen
+      assertThat(MeshVariable.findDimensionIndexes(data)).asList().containsExactly(-1, -1, 2).inOrder();
+      MeshVariable.readRun(data, new int[] {7}, 0, 0, new double[1][1], new int[] {0, -1, 2}, new Range(0, 0), 1);
+    }
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.dt.ugrid.rtree;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import cern.colt.list.IntArrayList;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import ucar.nc2.dt.ugrid.geom.LatLonPoint2D;
+import ucar.nc2.dt.ugrid.geom.LatLonPolygon2D;
+import ucar.nc2.dt.ugrid.geom.LatLonRectangle2D;
+
+public class TestRTree {
+  private static final int NROWS = 40;
+  private static final int NCOLS = 50;
+  private static final double SIZE = 0.5;
+
+  // a grid of square cells, id = row * NCOLS + col
+  private static List<LatLonPolygon2D> makeCells() {
+    List<LatLonPolygon2D> cells = new ArrayList<>();
+    for (int row = 0; row < NROWS; row++) {
+      for (int col = 0; col < NCOLS; col++) {
+        double lat = row * SIZE;
+        double lon = -100 + col * SIZE;
+        cells.add(new LatLonPolygon2D.Double(new double[] {lat, lat, lat + SIZE, lat + SIZE},
+            new double[] {lon, lon + SIZE, lon + SIZE, lon}));
+      }
+    }
+    return cells;
+  }
+
+  private static RTree makeTree(List<LatLonPolygon2D> cells) {
+    Properties props = new Properties();
+    props.setProperty("MaxNodeEntries", "30");
+    props.setProperty("MinNodeEntries", "15");
+    RTree tree = new RTree(props);
+    tree.load(cells);
+    return tree;
+  }
+
+  private static LatLonPoint2D center(int id) {
+    int row = id / NCOLS;
+    int col = id % NCOLS;
+    return new LatLonPoint2D.Double(row * SIZE + SIZE / 4, -100 + col * SIZE + SIZE / 3);
+  }
+
+  @Test
+  public void shouldBulkLoad() {
+    List<LatLonPolygon2D> cells = makeCells();
+    RTree tree = makeTree(cells);
+
+    assertThat(tree.size()).isEqualTo(NROWS * NCOLS);
+    assertThat(tree.getTreeHeight()).isEqualTo(3);
+    LatLonRectangle2D bounds = tree.getBounds();
+    assertThat(bounds.getLatMin()).isWithin(1e-9).of(0);
+    assertThat(bounds.getLatMax()).isWithin(1e-9).of(NROWS * SIZE);
+    assertThat(bounds.getLonMin()).isWithin(1e-9).of(-100);
+    assertThat(bounds.getLonMax()).isWithin(1e-9).of(-100 + NCOLS * SIZE);
+
+    for (int id = 0; id < cells.size(); id += 7) {
+      assertThat(tree.nearest(center(id))).isEqualTo(id);
+    }
+  }
+
+  @Test
+  public void shouldFindSameAsOneAtATime() {
+    List<LatLonPolygon2D> cells = makeCells();
+    RTree bulk = makeTree(cells);
+    RTree added = new RTree();
+    for (int i = 0; i < cells.size(); i++) {
+      added.add(cells.get(i), i);
+    }
+
+    LatLonPolygon2D box = new LatLonPolygon2D.Double(new LatLonRectangle2D(3.1, -95.2, 6.8, -91.4));
+    IntArrayList expected = added.intersects(box);
+    IntArrayList found = bulk.intersects(box);
+    expected.sort();
+    found.sort();
+    assertThat(found.size()).isGreaterThan(0);
+    assertThat(found).isEqualTo(expected);
+
+    LatLonPoint2D outside = new LatLonPoint2D.Double(NROWS * SIZE + 0.1, -100 + 0.6);
+    assertThat(bulk.nearest(outside)).isEqualTo(added.nearest(outside));
+  }
+
+  @Test
+  public void shouldWriteAndRead() throws Exception {
+    List<LatLonPolygon2D> cells = makeCells();
+    RTree tree = makeTree(cells);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      tree.writeTo(out);
+    }
+    RTree read = RTree.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), cells);
+
+    assertThat(read.size()).isEqualTo(tree.size());
+    assertThat(read.getTreeHeight()).isEqualTo(tree.getTreeHeight());
+    assertThat(read.getNodeCount()).isEqualTo(tree.getNodeCount());
+    for (int id = 0; id < cells.size(); id += 11) {
+      assertThat(read.nearest(center(id))).isEqualTo(id);
+    }
+  }
+
+  @Test
+  public void shouldSearchConcurrently() throws Exception {
+    List<LatLonPolygon2D> cells = makeCells();
+    RTree tree = makeTree(cells);
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Integer>> results = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        int offset = t;
+        Callable<Integer> task = () -> {
+          int wrong = 0;
+          for (int id = offset; id < cells.size(); id += 3) {
+            if (tree.nearest(center(id)) != id)
+              wrong++;
+          }
+          return wrong;
+        };
+        results.add(executor.submit(task));
+      }
+      for (Future<Integer> result : results) {
+        assertThat(result.get()).isEqualTo(0);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.dt.ugrid.topology;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.List;
+import org.junit.Test;
+import ucar.nc2.dt.ugrid.geom.LatLonPolygon2D;
+
+public class TestMeshArrays {
+
+  // 4 nodes on a unit square, split into 2 triangles and a cell with a fill value
+  private static MeshArrays makeMesh() {
+    int[] cellNodes = {0, 1, 2, 0, 2, 3, 3, 2, -999};
+    double[] nodeLats = {0, 0, 1, 1, 5};
+    double[] nodeLons = {0, 1, 1, 0, 5};
+    double[] faceLats = {0.3, 0.7, 0.9};
+    double[] faceLons = {0.7, 0.3, 0.5};
+    return new MeshArrays(cellNodes, 3, nodeLats, nodeLons, faceLats, faceLons);
+  }
+
+  @Test
+  public void shouldCountOnce() {
+    MeshArrays mesh = makeMesh();
+    assertThat(mesh.getNumCells()).isEqualTo(3);
+    assertThat(mesh.getNumNodes()).isEqualTo(5);
+    assertThat(mesh.getNodeRefCount()).isEqualTo(8);
+    assertThat(mesh.getUniqueNodeCount()).isEqualTo(4);
+    assertThat(mesh.getNumFaces()).isEqualTo(3);
+    assertThat(mesh.getCellNode(2, 2)).isEqualTo(MeshArrays.MISSING);
+    assertThat(mesh.getCellNodes(2)).asList().containsExactly(3, 2).inOrder();
+  }
+
+  @Test
+  public void shouldFindUniqueNodes() {
+    MeshArrays mesh = makeMesh();
+    assertThat(mesh.getUniqueNodes()).asList().containsExactly(0, 1, 2, 3).inOrder();
+    assertThat(mesh.getUniqueNodes(new int[] {1, 2})).asList().containsExactly(0, 2, 3).inOrder();
+  }
+
+  @Test
+  public void shouldFindClosestNode() {
+    MeshArrays mesh = makeMesh();
+    assertThat(mesh.findClosestNode(0, 0.1, 0.9)).isEqualTo(1);
+    assertThat(mesh.findClosestNode(1, 0.9, 0.2)).isEqualTo(3);
+    assertThat(mesh.findClosestNode(2, 0.1, 0.9)).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldMakePolygons() {
+    MeshArrays mesh = makeMesh();
+    List<LatLonPolygon2D> polys = mesh.makePolygons();
+    assertThat(polys).hasSize(3);
+    assertThat(polys.get(0).getVertexCount()).isEqualTo(3);
+    assertThat(polys.get(2).getVertexCount()).isEqualTo(2);
+    // shared nodes share their points
+    assertThat(polys.get(0).getVertices().get(2)).isSameInstanceAs(polys.get(1).getVertices().get(1));
+    assertThat(mesh.makePolygon(1).getVertices()).isEqualTo(polys.get(1).getVertices());
+  }
+
+  @Test
+  public void shouldFindTriangleWeights() {
+    MeshArrays mesh = makeMesh();
+    double[] weights = mesh.getTriangleWeights(0, 0.25, 0.5);
+    assertThat(weights).usingTolerance(1e-12).containsExactly(new double[] {0.5, 0.25, 0.25}).inOrder();
+    // on a node
+    weights = mesh.getTriangleWeights(1, 1, 0);
+    assertThat(weights).usingTolerance(1e-12).containsExactly(new double[] {0, 0, 1}).inOrder();
+    // outside of the triangle
+    assertThat(mesh.getTriangleWeights(0, 0.9, 0.1)).isNull();
+    // not a triangle
+    assertThat(mesh.getTriangleWeights(2, 1, 0.5)).isNull();
+  }
+
+  @Test
+  public void shouldIgnoreFacesOfOtherLength() {
+    MeshArrays mesh =
+        new MeshArrays(new int[] {0, 1, 2}, 3, new double[3], new double[3], new double[2], new double[2]);
+    assertThat(mesh.hasFaces()).isFalse();
+    assertThat(mesh.getNumFaces()).isEqualTo(0);
+  }
+}
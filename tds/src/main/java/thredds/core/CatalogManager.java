@@ -18,6 +18,7 @@ import thredds.server.catalog.ConfigCatalog;
 import thredds.server.catalog.ConfigCatalogCache;
 import thredds.server.catalog.DatasetScan;
 import thredds.server.config.TdsContext;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
@@ -64,6 +65,20 @@ public class CatalogManager {
    * @return the requested Catalog, or null if catalog does not exist or is not allowed.
    */
   public Catalog getCatalog(String path, URI baseURI) throws IOException {
+    return getCatalog(path, baseURI, 0, -1);
+  }
+
+  /**
+   * Same as getCatalog(path, baseURI), but only one page of the datasets of a DatasetScan directory.
+   * Other catalogs are not paged.
+   *
+   * @param path the path for the requested catalog.
+   * @param baseURI the base URI for the catalog, used to resolve relative URLs.
+   * @param start index of the first dataset of the page
+   * @param limit maximum number of datasets in the page, or <= 0 for all
+   * @return the requested Catalog, or null if catalog does not exist or is not allowed.
+   */
+  public Catalog getCatalog(String path, URI baseURI, int start, int limit) throws IOException {
     if (path == null)
       return null;
 
@@ -72,7 +87,7 @@ public class CatalogManager {
       workPath = workPath.substring(1);
 
     // Check if it's a CatalogBuilder or ConfigCatalog
-    Object dyno = makeDynamicCatalog(workPath, baseURI);
+    Object dyno = makeDynamicCatalog(workPath, baseURI, start, limit);
     if (dyno != null) {
       CatalogBuilder catBuilder;
       if (dyno instanceof CatalogBuilder) {
@@ -94,8 +109,85 @@ public class CatalogManager {
     return catBuilder.makeCatalog();
   }
 
+  /**
+   * If the path is the catalog of a DatasetScan directory, set up one page of it, to be streamed
+   * by DatasetScanXmlWriter.
+   *
+   * @param path the path for the requested catalog.
+   * @param baseURI the base URI for the catalog, used to resolve relative URLs.
+   * @param start index of the first dataset of the page
+   * @param limit maximum number of datasets in the page, or <= 0 for all
+   * @return the page, with global services added, or null if not a DatasetScan directory.
+   */
+  public DatasetScan.DirectoryPage getDirectoryPage(String path, URI baseURI, int start, int limit)
+      throws IOException {
+    if (path == null || path.endsWith("/latest.xml"))
+      return null;
+
+    String workPath = path;
+    if (workPath.startsWith("/"))
+      workPath = workPath.substring(1);
+    int pos = workPath.lastIndexOf("/");
+    if (pos >= 0)
+      workPath = workPath.substring(0, pos);
+
+    DataRootManager.DataRootMatch match = dataRootManager.findDataRootMatch(workPath);
+    if (match == null || match.dataRoot.getFeatureCollection() != null)
+      return null;
+    DatasetScan dscan = match.dataRoot.getDatasetScan();
+    if (dscan == null)
+      return null;
+
+    DatasetScan.DirectoryPage page = dscan.makeDirectoryPage(workPath, baseURI, start, limit);
+    if (page == null)
+      return null;
+
+    CatalogBuilder catBuilder = page.getCatalogBuilder();
+    addGlobalServices(catBuilder);
+    // standard services are added to datasets without a service, which the streamed datasets can't be given
+    for (DatasetBuilder top : catBuilder.getDatasets()) {
+      if (top.getFldOrInherited(Dataset.ServiceName) == null)
+        return null;
+    }
+    return page;
+  }
+
+  /**
+   * Something that changes whenever the catalog at this path changes, so that a catalog rendered from it can be
+   * reused while it stays the same. Compare with ==.
+   *
+   * @param path the path for the requested catalog.
+   * @return the version, or null if the catalog must be made each time, eg latest catalogs
+   */
+  public Object getCatalogVersion(String path) throws IOException {
+    if (path == null || path.endsWith("/latest.xml"))
+      return null;
+
+    String workPath = path;
+    if (workPath.startsWith("/"))
+      workPath = workPath.substring(1);
+    int pos = workPath.lastIndexOf("/");
+    String dirPath = (pos >= 0) ? workPath.substring(0, pos) : workPath;
+
+    DataRootManager.DataRootMatch match = dataRootManager.findDataRootMatch(dirPath);
+    if (match != null) {
+      if (match.dataRoot.getFeatureCollection() != null)
+        return featureCollectionCache.get(match.dataRoot.getFeatureCollection()).getStateVersion();
+      if (match.dataRoot.getDatasetScan() != null)
+        return match.dataRoot.getDatasetScan().getDirectoryVersion(dirPath);
+      if (match.dataRoot.getCatalogScan() != null)
+        return null;
+    }
+
+    try {
+      return ccc.get(workPath); // replaced when catalogs are reread
+    } catch (FileNotFoundException e) {
+      return null;
+    }
+  }
+
   // barfola on the return type
-  private Object makeDynamicCatalog(String path, URI baseURI) throws IOException {
+  private Object makeDynamicCatalog(String path, URI baseURI, int start, int limit) throws IOException {
     boolean isLatest = path.endsWith("/latest.xml");
 
     // strip off the filename
@@ -128,7 +220,7 @@ public class CatalogManager {
       if (isLatest)
         cat = dscan.makeCatalogForLatest(workPath, baseURI);
       else
-        cat = dscan.makeCatalogForDirectory(workPath, baseURI);
+        cat = dscan.makeCatalogForDirectory(workPath, baseURI, start, limit);
 
       if (null == cat)
         log.error("makeDynamicCatalog(): DatasetScan.makeCatalogForDirectory failed = " + workPath);
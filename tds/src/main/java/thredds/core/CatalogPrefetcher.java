@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package thredds.core;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * Reads catalogs on a pool of threads, ahead of the depth-first tree walk in ConfigCatalogInitialization.reread(),
+ * which still takes them one at a time.
+ * <p>
+ * Each catalog has its position in the walk. The catalogs that a catalog refers to come after it, and before its next
+ * sibling, so the pool always reads the first catalog in walk order that it knows about, not the first one it found.
+ * A read catalog holds a permit until the walk takes it, and at most maxWaiting of them wait at the same time, to
+ * limit the memory used. When the walk takes a catalog, the ones before it that are still waiting will never be taken,
+ * eg they were skipped, so they are dropped and their permits released. If the walk wants a catalog that no thread has
+ * started on, it reads it itself.
+ *
+ * @param <T> what reading a catalog gives the walk
+ */
+class CatalogPrefetcher<T> implements Closeable {
+
+  /** Reads a catalog on the pool. */
+  interface Reader<T> {
+    /**
+     * Read a catalog, and prefetch the catalogs it refers to, at position.child(0), position.child(1), ..., in the
+     * order that the walk will want them.
+     *
+     * @param prefetcher prefetch the catalogs it refers to with this
+     * @return the result for the walk, or null if there is nothing to take, eg the catalog has not changed
+     */
+    @Nullable
+    T read(CatalogPrefetcher<T> prefetcher, String path, Position position);
+  }
+
+  /** The position of a catalog in the depth-first walk: the index of each catalog on the way to it. */
+  static class Position implements Comparable<Position> {
+    private final int[] indexes;
+
+    private Position(int[] indexes) {
+      this.indexes = indexes;
+    }
+
+    static Position of(int index) {
+      return new Position(new int[] {index});
+    }
+
+    Position child(int index) {
+      int[] child = Arrays.copyOf(indexes, indexes.length + 1);
+      child[indexes.length] = index;
+      return new Position(child);
+    }
+
+    @Override
+    public int compareTo(Position o) {
+      return Arrays.compare(indexes, o.indexes);
+    }
+
+    @Override
+    public String toString() {
+      return Arrays.toString(indexes);
+    }
+  }
+
+  private final Reader<T> reader;
+  private final ThreadPoolExecutor executor;
+  private final Semaphore permits;
+  private final AtomicLong sequence = new AtomicLong();
+  private final Map<String, Prefetch> prefetches = new ConcurrentHashMap<>();
+  private final TreeMap<Position, Prefetch> waiting = new TreeMap<>(); // read, not taken yet; guarded by this
+  private Position lastTaken; // guarded by this
+  private volatile boolean closed;
+
+  private class Prefetch implements Runnable, Comparable<Prefetch> {
+    final String path;
+    final Position position;
+    final long seq = sequence.getAndIncrement(); // same position = in the order they were found
+    final AtomicBoolean started = new AtomicBoolean();
+    final CompletableFuture<T> result = new CompletableFuture<>(); // null = nothing to take
+    boolean hasPermit; // guarded by CatalogPrefetcher.this
+
+    Prefetch(String path, Position position) {
+      this.path = path;
+      this.position = position;
+    }
+
+    @Override
+    public void run() {
+      if (closed)
+        return;
+      try {
+        permits.acquire(); // before starting, so that a started prefetch is never blocked
+      } catch (InterruptedException e) {
+        return; // closed
+      }
+      if (!started.compareAndSet(false, true)) {
+        permits.release(); // the walk got there first
+        return;
+      }
+
+      T read = null;
+      try {
+        read = reader.read(CatalogPrefetcher.this, path, position);
+      } finally {
+        boolean keep = false;
+        synchronized (CatalogPrefetcher.this) {
+          // the walk may have gone past it while it was being read
+          if (read != null && !closed && (lastTaken == null || position.compareTo(lastTaken) > 0)) {
+            hasPermit = true;
+            waiting.put(position, this);
+            keep = true;
+          }
+        }
+        if (!keep)
+          permits.release();
+        result.complete(keep ? read : null);
+      }
+    }
+
+    @Override
+    public int compareTo(Prefetch o) {
+      int cmp = position.compareTo(o.position);
+      return (cmp != 0) ? cmp : Long.compare(seq, o.seq);
+    }
+  }
+
+  /**
+   * @param reader reads a catalog on the pool
+   * @param nthreads number of threads in the pool
+   * @param maxWaiting maximum number of read catalogs waiting for the walk
+   */
+  CatalogPrefetcher(Reader<T> reader, int nthreads, int maxWaiting) {
+    this.reader = reader;
+    this.permits = new Semaphore(maxWaiting);
+    this.executor = new ThreadPoolExecutor(nthreads, nthreads, 0L, TimeUnit.MILLISECONDS,
+        new PriorityBlockingQueue<>(), r -> {
+          Thread t = new Thread(r, "ConfigCatalogReader");
+          t.setDaemon(true);
+          return t;
+        });
+    this.executor.prestartAllCoreThreads(); // so that every prefetch goes through the queue
+  }
+
+  /** Read a catalog ahead of the walk, if it is not known already. */
+  void prefetch(String path, Position position) {
+    if (closed)
+      return;
+    Prefetch prefetch = new Prefetch(path, position);
+    if (prefetches.putIfAbsent(path, prefetch) == null) {
+      try {
+        executor.execute(prefetch);
+      } catch (RejectedExecutionException e) {
+        // closed
+      }
+    }
+  }
+
+  /**
+   * The walk takes a catalog, waiting for it if it is being read. The catalogs before it that are waiting are dropped.
+   *
+   * @return the result, or null if the walk must read it itself
+   */
+  @Nullable
+  T take(String path) {
+    Prefetch prefetch = prefetches.get(path);
+    if (prefetch == null)
+      return null;
+    T result = null;
+    if (!prefetch.started.compareAndSet(false, true))
+      result = prefetch.result.join();
+
+    synchronized (this) {
+      if (lastTaken == null || prefetch.position.compareTo(lastTaken) > 0)
+        lastTaken = prefetch.position;
+      drop(prefetch);
+      while (!waiting.isEmpty() && waiting.firstKey().compareTo(lastTaken) < 0)
+        drop(waiting.firstEntry().getValue());
+    }
+    return result;
+  }
+
+  // forget the result, but keep the path so that it is not read again
+  private void drop(Prefetch prefetch) {
+    if (prefetch.hasPermit) {
+      prefetch.hasPermit = false;
+      waiting.remove(prefetch.position);
+      permits.release();
+    }
+    Prefetch done = new Prefetch(prefetch.path, prefetch.position);
+    done.started.set(true);
+    done.result.complete(null);
+    prefetches.replace(prefetch.path, prefetch, done);
+  }
+
+  /**
+   * The position of a catalog that the walk reads itself, for the catalogs it refers to.
+   * One that was never prefetched goes right after the last one taken.
+   */
+  Position getPosition(String path) {
+    Prefetch prefetch = prefetches.get(path);
+    if (prefetch != null)
+      return prefetch.position;
+    synchronized (this) {
+      return (lastTaken == null) ? Position.of(0) : lastTaken.child(Integer.MAX_VALUE);
+    }
+  }
+
+  /** The number of catalogs that may still be read ahead of the walk, for testing. */
+  int getAvailablePermits() {
+    return permits.availablePermits();
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    executor.shutdownNow();
+    synchronized (this) {
+      waiting.clear();
+    }
+    prefetches.clear();
+  }
+}
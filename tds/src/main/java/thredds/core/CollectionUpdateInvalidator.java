@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package thredds.core;
+
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import thredds.inventory.CollectionUpdateEvent;
+import thredds.server.catalog.FeatureCollectionRef;
+
+/**
+ * Turns feature collection update events on the fcTriggerEventBus into the path of the collection, and tells the
+ * caches that keep things by request path to drop everything at or under it.
+ */
+@Component
+public class CollectionUpdateInvalidator implements InitializingBean {
+  static private final Logger logger = LoggerFactory.getLogger(CollectionUpdateInvalidator.class);
+
+  /** A cache that keeps things by request path. */
+  public interface Listener {
+    /** Remove everything at or under this path, the path of an updated feature collection. */
+    void invalidatePath(String path);
+  }
+
+  @Autowired
+  @Qualifier("fcTriggerEventBus")
+  private EventBus eventBus;
+
+  @Autowired
+  private DataRootManager dataRootManager;
+
+  private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+  @Override
+  public void afterPropertiesSet() {
+    eventBus.register(this);
+  }
+
+  public void addListener(Listener listener) {
+    listeners.add(listener);
+  }
+
+  // called by eventBus
+  @Subscribe
+  public void processEvent(CollectionUpdateEvent event) {
+    FeatureCollectionRef fcr = dataRootManager.findFeatureCollection(event.getCollectionName());
+    if (fcr == null)
+      return;
+    invalidatePath(fcr.getPath());
+  }
+
+  // package private for testing
+  void invalidatePath(String path) {
+    if (logger.isDebugEnabled())
+      logger.debug("invalidate everything under {}", path);
+    for (Listener listener : listeners) {
+      try {
+        listener.invalidatePath(path);
+      } catch (RuntimeException e) {
+        logger.error("Failed to invalidate " + path, e); // the others still do
+      }
+    }
+  }
+
+  /**
+   * Is this request path at or under the path of a collection. A leading "/" on either one is ignored.
+   *
+   * @param reqPath the request path of something in a cache
+   * @param path the path of the collection
+   */
+  public static boolean isAtOrUnder(String reqPath, String path) {
+    String key = reqPath.startsWith("/") ? reqPath.substring(1) : reqPath;
+    String prefix = path.startsWith("/") ? path.substring(1) : path;
+    if (prefix.endsWith("/"))
+      prefix = prefix.substring(0, prefix.length() - 1);
+    return key.equals(prefix) || key.startsWith(prefix + "/");
+  }
+}
@@ -11,11 +11,13 @@ import org.springframework.util.StringUtils;
 import thredds.client.catalog.Access;
 import thredds.client.catalog.CatalogRef;
 import thredds.client.catalog.Dataset;
+import thredds.core.CatalogPrefetcher.Position;
 import thredds.featurecollection.FeatureCollectionCache;
 import thredds.server.admin.DebugCommands;
 import thredds.server.catalog.*;
 import thredds.server.catalog.builder.ConfigCatalogBuilder;
 import thredds.server.catalog.tracker.*;
+import thredds.server.catalogservice.RenderedCatalogCache;
 import thredds.server.config.TdsContext;
 import thredds.server.config.ThreddsConfig;
 import ucar.nc2.time.CalendarDate;
@@ -27,6 +29,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.*;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * Reads in the Config catalogs on startup, and if triggered.
@@ -64,6 +67,9 @@ public class ConfigCatalogInitialization {
   @Autowired
   private FeatureCollectionCache fcCache;
 
+  @Autowired
+  private RenderedCatalogCache renderedCatalogCache;
+
   ///////////////////////////////////////////////////////
   public enum ReadMode {
     always, check, triggerOnly;
@@ -87,6 +93,9 @@ public class ConfigCatalogInitialization {
   private String trackerDir; // the tracker "databases" are kept in this directory
   private long maxDatasets; // chronicle limit
   private String averageValueSize;
+  private int readThreads = 1; // number of threads reading catalogs, 1 = read them on the calling thread
+  private long watchDelay; // msecs with no changes before changed catalogs are read again, 0 = dont watch
+  private CatalogWatcher catalogWatcher; // null = not watching
 
   // on reread, construct new objects, so cant be spring beans
   private DataRootPathMatcher dataRootPathMatcher;
@@ -95,6 +104,7 @@ public class ConfigCatalogInitialization {
 
   // temporary, discard after init
   private CatalogTracker catalogTracker;
+  private CatalogPrefetcher<ParsedCatalog> prefetcher; // null = no prefetch
   private Set<String> catPathMap; // Hash of paths, to look for duplicate catalogs
   private Map<String, String> fcNameMap; // Hash of featureCollection ids, to look for duplicates
 
@@ -115,6 +125,14 @@ public class ConfigCatalogInitialization {
     this.averageValueSize = averageValueSize;
   }
 
+  public synchronized void setReadThreads(int readThreads) {
+    this.readThreads = Math.max(readThreads, 1);
+  }
+
+  public synchronized void setWatchDelay(long watchDelay) {
+    this.watchDelay = Math.max(watchDelay, 0);
+  }
+
   // called from TdsInit on spring-managed auto-wired bean
   public synchronized void init(ReadMode readMode, PreferencesExt prefs) {
     if (readMode == null)
@@ -129,6 +147,7 @@ public class ConfigCatalogInitialization {
     this.contextPath = tdsContext.getContextPath();
 
     reread(readMode, true);
+    startWatching();
   }
 
   // called from init() and from trigger controller
@@ -178,7 +197,8 @@ public class ConfigCatalogInitialization {
         this.catalogTracker = new CatalogTracker(trackerDir, true, numberCatalogs, nextCatId);
         this.dataRootTracker = new DataRootTracker(trackerDir, true, callback);
         this.dataRootPathMatcher = new DataRootPathMatcher(ccc, dataRootTracker); // starting over
-        ccc.setRootCatalogKeys(readRootCatalogs(readMode));
+        startPrefetch(readMode);
+        setRootCatalogKeys(readRootCatalogs(readMode));
         break;
 
       case check:
@@ -186,7 +206,8 @@ public class ConfigCatalogInitialization {
                                                                                                 // list
         this.dataRootTracker = new DataRootTracker(trackerDir, false, callback); // use existing data roots
         this.dataRootPathMatcher = new DataRootPathMatcher(ccc, dataRootTracker);
-        ccc.setRootCatalogKeys(readRootCatalogs(readMode)); // read just roots to get global services
+        startPrefetch(readMode);
+        setRootCatalogKeys(readRootCatalogs(readMode)); // read just roots to get global services
         checkExistingCatalogs(readMode);
         break;
 
@@ -195,10 +216,15 @@ public class ConfigCatalogInitialization {
                                                                                                 // list
         this.dataRootTracker = new DataRootTracker(trackerDir, false, callback); // use existing data roots
         this.dataRootPathMatcher = new DataRootPathMatcher(ccc, dataRootTracker);
-        ccc.setRootCatalogKeys(readRootCatalogs(readMode)); // read just roots to get global services
+        setRootCatalogKeys(readRootCatalogs(readMode)); // read just roots to get global services
         break;
     }
 
+    if (prefetcher != null) {
+      prefetcher.close();
+      prefetcher = null;
+    }
+
     numberCatalogs = catalogTracker.size();
     nextCatId = catalogTracker.getNextCatId();
     if (prefs != null) {
@@ -223,6 +249,12 @@ public class ConfigCatalogInitialization {
       dataRootManager.setDataRootPathMatcher(dataRootPathMatcher);
     if (datasetManager != null)
       datasetManager.setDatasetTracker(datasetTracker);
+    if (renderedCatalogCache != null)
+      renderedCatalogCache.invalidateAll();
+
+    // open the feature collections in the background, rather than on their first request
+    if (fcCache != null && dataRootManager != null && ThreddsConfig.getBoolean("FeatureCollection.warmUp", false))
+      fcCache.warmUp(dataRootManager.getFeatureCollections());
 
     // cleanup old version of the database
     if (!isStartup && readMode == ReadMode.always) {
@@ -240,12 +272,46 @@ public class ConfigCatalogInitialization {
     return true; // ok
   }
 
-  private List<String> readRootCatalogs(ReadMode readMode) {
+  private void setRootCatalogKeys(List<String> rootCatalogKeys) {
+    if (ccc != null) // null when testing outside of spring
+      ccc.setRootCatalogKeys(rootCatalogKeys);
+  }
+
+  private List<String> getRootCatalogKeys() {
     ArrayList<String> rootCatalogKeys = new ArrayList<>();
     rootCatalogKeys.add("catalog.xml"); // always first
     // add any others listed in ThreddsConfig
     for (String location : ThreddsConfig.getRootList("catalogRoot"))
       rootCatalogKeys.add(location);
+    return rootCatalogKeys;
+  }
+
+  // start reading the catalogs in the background, in the order that reread() will want them.
+  // only catalogs that are read in full are worth it.
+  private void startPrefetch(ReadMode readMode) {
+    if (readThreads <= 1 || readMode == ReadMode.triggerOnly)
+      return;
+    CatalogTracker tracker = catalogTracker; // only get() is used, from any thread
+    Set<String> rootKeys = new HashSet<>();
+    for (String pathname : getRootCatalogKeys())
+      rootKeys.add(StringUtils.cleanPath(pathname));
+    prefetcher = new CatalogPrefetcher<>((p, path, position) -> prefetchCatalog(p, readMode, tracker,
+        rootKeys.contains(path), path, position), readThreads, 64 * readThreads);
+
+    // the roots first, then the catalogs that checkExistingCatalogs() reads
+    int index = 0;
+    for (String pathname : getRootCatalogKeys())
+      prefetcher.prefetch(StringUtils.cleanPath(pathname), Position.of(index++));
+    if (readMode == ReadMode.check) {
+      for (CatalogExt catalogExt : catalogTracker.getCatalogs()) {
+        if (!catalogExt.isRoot())
+          prefetcher.prefetch(StringUtils.cleanPath(catalogExt.getCatRelLocation()), Position.of(index++));
+      }
+    }
+  }
+
+  private List<String> readRootCatalogs(ReadMode readMode) {
+    List<String> rootCatalogKeys = getRootCatalogKeys();
     logCatalogInit.info("ConfigCatalogInit: initializing " + rootCatalogKeys.size() + " root catalogs.");
 
     // all root catalogs are checked
@@ -292,11 +358,8 @@ public class ConfigCatalogInitialization {
       logCatalogInit.error(ERROR + "initCatalog(): Catalog [" + catalogRelPath + "] does not exist.");
       return;
     }
-    long lastModified = catalogFile.lastModified();
-    if (!isRoot && readMode != ReadMode.always && lastModified < lastRead)
-      return; // skip catalogs that havent changed
-    if (!isRoot && readMode == ReadMode.triggerOnly)
-      return; // skip non-root catalogs for trigger only
+    if (skipCatalog(readMode, isRoot, catalogFile.lastModified(), lastRead))
+      return;
     if (show)
       System.out.printf("initCatalog %s%n", catalogRelPath);
 
@@ -360,48 +423,113 @@ public class ConfigCatalogInitialization {
         return;
       Path relLocation = Paths.get(dirPath, catScan.getLocation());
       Path absLocation = Paths.get(catalogFile.getParent(), catScan.getLocation());
-      // if (catalogWatcher != null) catalogWatcher.registerAll(absLocation);
       readCatsInDirectory(readMode, relLocation.toString(), absLocation);
     }
   }
 
+  private static boolean skipCatalog(ReadMode readMode, boolean isRoot, long lastModified, long lastRead) {
+    if (isRoot)
+      return false;
+    if (readMode != ReadMode.always && lastModified < lastRead)
+      return true; // skip catalogs that havent changed
+    return readMode == ReadMode.triggerOnly; // skip non-root catalogs for trigger only
+  }
+
   /**
-   * Does the actual work of reading a catalog.
+   * Read a catalog, or take it from the prefetcher if it has already read it.
    *
    * @param catalogRelPath relative path starting from content root
    * @param catalogFullPath absolute location on disk
    * @return the Catalog, or null if failure
    */
   private ConfigCatalog readCatalog(String catalogRelPath, String catalogFullPath) {
+    ParsedCatalog parsed = (prefetcher != null) ? prefetcher.take(catalogRelPath) : null;
+    if (parsed == null) {
+      parsed = parseCatalog(catalogRelPath, catalogFullPath);
+      if (prefetcher != null && parsed.cat != null)
+        findCatalogs(prefetcher, catalogRelPath, parsed.cat, prefetcher.getPosition(catalogRelPath));
+    }
+
+    // log here rather than where it was parsed, so the messages are in catalog order
+    logCatalogInit.info("-------readCatalog(): path=" + catalogRelPath);
+    if (parsed.error != null)
+      logCatalogInit.error(parsed.errorMessage, parsed.error);
+    else if (parsed.errorMessage != null)
+      logCatalogInit.error(parsed.errorMessage);
+    else if (parsed.debugMessage != null)
+      logCatalogInit.debug(parsed.debugMessage);
+    if (readListener != null) {
+      readListener.accept("readCatalog(): path=" + catalogRelPath);
+      String message = (parsed.errorMessage != null) ? parsed.errorMessage : parsed.debugMessage;
+      if (message != null)
+        readListener.accept(message);
+    }
+    return parsed.cat;
+  }
+
+  // the result of parsing a catalog, with the messages to log
+  private static class ParsedCatalog {
+    ConfigCatalog cat; // null if failure
+    String errorMessage;
+    Throwable error;
+    String debugMessage;
+  }
+
+  /**
+   * Does the actual work of reading a catalog. Does not log, may be called from any thread.
+   *
+   * @param catalogRelPath relative path starting from content root
+   * @param catalogFullPath absolute location on disk
+   * @return the Catalog and the messages to log
+   */
+  private ParsedCatalog parseCatalog(String catalogRelPath, String catalogFullPath) {
+    ParsedCatalog result = new ParsedCatalog();
     URI uri;
     try {
       // uri = new URI("file:" + StringUtil2.escape(catalogFullPath, "/:-_.")); // needed ?
       uri = new URI(this.contextPath + "/catalog/" + catalogRelPath);
     } catch (URISyntaxException e) {
-      logCatalogInit.error(ERROR + "readCatalog(): URISyntaxException=" + e.getMessage());
-      return null;
+      result.errorMessage = ERROR + "readCatalog(): URISyntaxException=" + e.getMessage();
+      return result;
     }
 
     ConfigCatalogBuilder builder = new ConfigCatalogBuilder(this.contextPath);
     try {
       // read the catalog
-      logCatalogInit.info("-------readCatalog(): path=" + catalogRelPath);
       ConfigCatalog cat = (ConfigCatalog) builder.buildFromLocation(catalogFullPath, uri);
       if (builder.hasFatalError()) {
-        logCatalogInit.error(ERROR + "   invalid catalog -- " + builder.getErrorMessage());
-        return null;
+        result.errorMessage = ERROR + "   invalid catalog -- " + builder.getErrorMessage();
+        return result;
       }
 
       if (builder.getErrorMessage().length() > 0)
-        logCatalogInit.debug(builder.getErrorMessage());
+        result.debugMessage = builder.getErrorMessage();
 
-      return cat;
+      result.cat = cat;
 
     } catch (Throwable t) {
-      logCatalogInit.error(ERROR + "  Exception on catalog=" + catalogFullPath + " " + t.getMessage() + "\n log="
-          + builder.getErrorMessage(), t);
+      result.errorMessage = ERROR + "  Exception on catalog=" + catalogFullPath + " " + t.getMessage() + "\n log="
+          + builder.getErrorMessage();
+      result.error = t;
+    }
+    return result;
+  }
+
+  // the path of a catalogRef relative to the content root, or null if it does not point to a config catalog
+  private String getCatalogRefPath(String href, String dirPath) {
+    if (href.startsWith("http:"))
       return null;
+    // Clean up relative URLs that start with "./"
+    if (href.startsWith("./")) {
+      href = href.substring(2);
     }
+
+    String contextPathPlus = this.contextPath + "/";
+    if (href.startsWith(contextPathPlus))
+      return href.substring(contextPathPlus.length()); // absolute starting from content root
+    if (href.startsWith("/"))
+      return null; // points to a non-TDS served catalog
+    return dirPath + href; // relative starting from current directory
   }
 
   // dirPath = the directory path, relative to the rootDir
@@ -438,24 +566,14 @@ public class ConfigCatalogInitialization {
 
         // Check that catRef is relative
         if (!href.startsWith("http:")) {
-          // Clean up relative URLs that start with "./"
-          if (href.startsWith("./")) {
-            href = href.substring(2);
-          }
-
-          String path;
-          String contextPathPlus = this.contextPath + "/";
-          if (href.startsWith(contextPathPlus)) {
-            path = href.substring(contextPathPlus.length()); // absolute starting from content root
-          } else if (href.startsWith("/")) {
+          String path = getCatalogRefPath(href, dirPath);
+          if (path == null) {
             // Drop the catRef because it points to a non-TDS served catalog.
             logCatalogInit.error(ERROR + "Skipping catalogRef <xlink:href=" + href
-                + ">. Reference is relative to the server outside the context path [" + contextPathPlus + "]. "
+                + ">. Reference is relative to the server outside the context path [" + this.contextPath + "/]. "
                 + "Parent catalog info: Name=\"" + catref.getParentCatalog().getName() + "\"; Base URI=\""
                 + catref.getParentCatalog().getUriString() + "\"; dirPath=\"" + dirPath + "\".");
             continue;
-          } else {
-            path = dirPath + href; // relative starting from current directory
           }
 
           CatalogExt ext = catalogTracker.get(path);
@@ -503,6 +621,292 @@ public class ConfigCatalogInitialization {
     }
   }
 
+  ///////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  // live reload of changed catalogs
+
+  // watch the content directory and the catalogScan directories, and read catalogs again when they change
+  synchronized void startWatching() {
+    if (watchDelay <= 0 || catalogWatcher != null)
+      return;
+    List<Path> skipDirs = Arrays.asList(new File(contentRootPath, "cache").toPath(),
+        new File(contentRootPath, "logs").toPath(), Paths.get(trackerDir));
+    try {
+      catalogWatcher = new CatalogWatcher(this::reloadCatalogs, watchDelay, skipDirs);
+      catalogWatcher.registerAll(contentRootPath.toPath(), null);
+      watchCatalogScans();
+      catalogWatcher.start();
+      logCatalogInit.info("ConfigCatalogInitialization watching {} for changed catalogs", contentRootPath);
+    } catch (IOException e) {
+      logCatalogInit.error(ERROR + "cannot watch " + contentRootPath + " for changed catalogs", e);
+      stopWatching();
+    }
+  }
+
+  // catalogScan directories outside of the content directory are watched too
+  private void watchCatalogScans() {
+    Path root = contentRootPath.toPath().toAbsolutePath().normalize();
+    for (Map.Entry<String, DataRootExt> entry : dataRootPathMatcher.getValues()) {
+      DataRootExt dre = entry.getValue();
+      if (dre.getType() != DataRoot.Type.catalogScan)
+        continue;
+      Path scanDir = getCatalogScanDir(dre);
+      if (scanDir.startsWith(root) || !Files.isDirectory(scanDir))
+        continue;
+      try {
+        catalogWatcher.registerAll(scanDir, null);
+      } catch (IOException e) {
+        logCatalogInit.error(ERROR + "cannot watch catalogScan directory " + scanDir, e);
+      }
+    }
+  }
+
+  /** Stop watching for changed catalogs. Called from TdsInit.destroy(). */
+  public synchronized void stopWatching() {
+    if (catalogWatcher == null)
+      return;
+    try {
+      catalogWatcher.close();
+    } catch (IOException e) {
+      logCatalogInit.error("catalogWatcher close failed", e);
+    }
+    catalogWatcher = null;
+  }
+
+  /**
+   * Called from the CatalogWatcher: read again just the catalogs that changed, and add and remove their datasets and
+   * dataRoots, instead of rereading the catalog tree. Other catalogs stay in the caches.
+   * Root catalogs have the global services, so if one of them changed, or events were lost, this does
+   * reread(ReadMode.check) instead. A new catalog is read when a catalog that refers to it changes, or when it is in
+   * a catalogScan directory. A catalog that is there but cannot be read keeps its old datasets and dataRoots.
+   *
+   * @param changedFiles absolute paths of the changed catalog files
+   * @param overflow true if other catalogs may have changed too
+   */
+  synchronized void reloadCatalogs(Set<Path> changedFiles, boolean overflow) {
+    if (catalogWatcher == null || dataRootPathMatcher == null)
+      return; // closed
+    readNow = System.currentTimeMillis();
+    catalogTracker = new CatalogTracker(trackerDir, false, numberCatalogs, nextCatId);
+
+    Set<String> rootKeys = new HashSet<>();
+    for (String pathname : getRootCatalogKeys())
+      rootKeys.add(StringUtils.cleanPath(pathname));
+
+    // the catalogs to read again, relative to the content root
+    Set<String> toRead = new TreeSet<>();
+    boolean rereadAll = overflow;
+    for (Path file : changedFiles) {
+      String relPath = getCatalogRelPath(file);
+      CatalogExt ext = catalogTracker.get(relPath);
+      if (rootKeys.contains(relPath) || (ext != null && ext.isRoot())) {
+        rereadAll = true;
+      } else if (ext != null) {
+        toRead.add(relPath);
+      } else {
+        String scanCatalog = findCatalogScanCatalog(file);
+        if (scanCatalog != null)
+          toRead.add(scanCatalog);
+      }
+    }
+
+    if (rereadAll) {
+      catalogTracker = null;
+      logCatalogInit.info("ConfigCatalogInitialization root catalog changed or events were lost, reread all");
+      reread(ReadMode.check, false);
+      watchCatalogScans();
+      return;
+    }
+    if (toRead.isEmpty()) {
+      catalogTracker = null;
+      return;
+    }
+
+    logCatalogInit.info("=========================================================================================\n"
+        + "ConfigCatalogInitialization reload {}", toRead);
+    catPathMap = new HashSet<>();
+    fcNameMap = new HashMap<>();
+
+    // the old datasets and dataRoots are removed after the new ones are added, so that requests on the ones that
+    // have not changed keep working. A catalog is forgotten first so that it is read, with a new catId.
+    Map<String, CatalogExt> oldCatalogs = new HashMap<>();
+    Map<String, List<DataRootExt>> oldRoots = new HashMap<>();
+    for (String relPath : toRead) {
+      oldCatalogs.put(relPath, catalogTracker.removeCatalog(relPath));
+      oldRoots.put(relPath, dataRootPathMatcher.forgetRoots(relPath));
+      if (ccc != null)
+        ccc.invalidate(relPath);
+    }
+    List<String> reread = new ArrayList<>();
+    for (String relPath : toRead) {
+      if (readChangedCatalog(relPath, oldCatalogs.get(relPath), oldRoots.get(relPath)))
+        reread.add(relPath);
+    }
+    for (String relPath : reread)
+      removeOldCatalog(relPath, oldCatalogs.get(relPath), oldRoots.get(relPath));
+
+    numberCatalogs = catalogTracker.size();
+    nextCatId = catalogTracker.getNextCatId();
+    if (prefs != null) {
+      prefs.putLong("nextCatId", nextCatId);
+      prefs.putInt("numberCatalogs", numberCatalogs);
+    }
+
+    // the datasetTracker is not saved, that closes and opens it again under running requests. Its changes are
+    // already in its memory mapped file.
+    try {
+      catalogTracker.save();
+      dataRootTracker.save();
+    } catch (IOException e) {
+      logCatalogInit.error("catalogTracker.save() failed", e);
+    }
+    watchCatalogScans();
+
+    logCatalogInit.info("ConfigCatalogInitialization reload finished took={} msecs",
+        System.currentTimeMillis() - readNow);
+    catPathMap = null;
+    fcNameMap = null;
+    catalogTracker = null;
+  }
+
+  // returns false if the catalog is there but could not be read, then its old datasets and dataRoots are kept
+  private boolean readChangedCatalog(String relPath, CatalogExt old, List<DataRootExt> oldRoots) {
+    if (!catPathMap.contains(relPath)) { // else already read, from a catalogRef in another changed catalog
+      File catalogFile = new File(contentRootPath, relPath);
+      if (!catalogFile.exists()) {
+        logCatalogInit.info("ConfigCatalogInitialization catalog {} was deleted", relPath);
+        return true;
+      }
+      try {
+        checkCatalogToRead(ReadMode.check, relPath, false, 0);
+      } catch (Throwable e) {
+        logCatalogInit.error(ERROR + "reloading catalog " + relPath + "; " + e.getMessage(), e);
+      }
+    }
+    if (catalogTracker.get(relPath) != null)
+      return true;
+
+    // keep a catalog that could not be read, with its old catId, so that it is read again when it is fixed
+    catalogTracker.put(new CatalogExt((old == null) ? 0 : old.getCatId(), relPath, false, 0));
+    dataRootPathMatcher.restoreRoots(oldRoots);
+    logCatalogInit.error(ERROR + "reloading catalog " + relPath + " failed, kept its old datasets and dataRoots");
+    return false;
+  }
+
+  private void removeOldCatalog(String relPath, CatalogExt old, List<DataRootExt> oldRoots) {
+    int nremoved = (old == null) ? 0 : datasetTracker.removeDatasets(old.getCatId());
+    List<DataRootExt> removed = dataRootPathMatcher.removeRoots(oldRoots);
+    for (DataRootExt dre : oldRoots) {
+      if (dre.getType() == DataRoot.Type.featureCollection && fcCache != null)
+        fcCache.invalidate(dre.getName());
+      if (renderedCatalogCache != null)
+        renderedCatalogCache.invalidatePath(dre.getPath());
+    }
+    logCatalogInit.info("ConfigCatalogInitialization reloaded {}: removed {} datasets and {} dataRoots", relPath,
+        nremoved, removed.size());
+  }
+
+  // the path of a catalog file relative to the content root, as it is in the catalogTracker
+  private String getCatalogRelPath(Path file) {
+    Path root = contentRootPath.toPath().toAbsolutePath().normalize();
+    String relPath = root.relativize(file.toAbsolutePath().normalize()).toString();
+    return StringUtils.cleanPath(relPath.replace('\\', '/'));
+  }
+
+  // the directory of a catalogScan, which is relative to its catalog
+  private Path getCatalogScanDir(DataRootExt dre) {
+    File catalogFile = new File(contentRootPath, dre.getCatLocation());
+    return Paths.get(catalogFile.getParent(), dre.getDirLocation()).toAbsolutePath().normalize();
+  }
+
+  // the catalog with the catalogScan that this catalog file is in, or null
+  private String findCatalogScanCatalog(Path file) {
+    Path abs = file.toAbsolutePath().normalize();
+    for (Map.Entry<String, DataRootExt> entry : dataRootPathMatcher.getValues()) {
+      DataRootExt dre = entry.getValue();
+      if (dre.getType() == DataRoot.Type.catalogScan && abs.startsWith(getCatalogScanDir(dre)))
+        return dre.getCatLocation();
+    }
+    return null;
+  }
+
+  ///////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  // called on the prefetcher threads: read a catalog that the tree walk will want, unless it will skip it
+  private ParsedCatalog prefetchCatalog(CatalogPrefetcher<ParsedCatalog> prefetcher, ReadMode readMode,
+      CatalogTracker tracker, boolean isRoot, String path, Position position) {
+    File catalogFile = new File(contentRootPath, path);
+    if (!catalogFile.exists() || skipCatalog(readMode, isRoot, catalogFile.lastModified(), getLastRead(tracker, path)))
+      return null;
+    ParsedCatalog parsed = parseCatalog(path, catalogFile.getPath());
+    if (parsed.cat != null)
+      findCatalogs(prefetcher, path, parsed.cat, position);
+    return parsed;
+  }
+
+  // prefetch the catalogs that processDatasets() and readCatsInDirectory() will want next, in the same order
+  private void findCatalogs(CatalogPrefetcher<ParsedCatalog> prefetcher, String catalogRelPath, ConfigCatalog cat,
+      Position position) {
+    int pos = catalogRelPath.lastIndexOf("/");
+    String dirPath = (pos > 0) ? catalogRelPath.substring(0, pos + 1) : "";
+    int next = findCatalogRefs(prefetcher, dirPath, cat.getDatasetsLocal(), position, 0);
+
+    File catalogFile = new File(contentRootPath, catalogRelPath);
+    for (CatalogScan catScan : cat.getCatalogScans()) {
+      Path relLocation = Paths.get(dirPath, catScan.getLocation());
+      Path absLocation = Paths.get(catalogFile.getParent(), catScan.getLocation());
+      next = findCatalogsInDirectory(prefetcher, relLocation.toString(), absLocation, position, next);
+    }
+  }
+
+  // returns the index of the next child of parent
+  private int findCatalogRefs(CatalogPrefetcher<ParsedCatalog> prefetcher, String dirPath, List<Dataset> datasets,
+      Position parent, int next) {
+    for (Dataset ds : datasets) {
+      if ((ds instanceof DatasetScan) || (ds instanceof FeatureCollectionRef) || (ds instanceof CatalogScan))
+        continue;
+      if (ds instanceof CatalogRef) {
+        String href = ((CatalogRef) ds).getXlinkHref();
+        String path = (href == null) ? null : getCatalogRefPath(href, dirPath);
+        if (path != null)
+          prefetcher.prefetch(StringUtils.cleanPath(path), parent.child(next++));
+      } else {
+        next = findCatalogRefs(prefetcher, dirPath, ds.getDatasetsLocal(), parent, next);
+      }
+    }
+    return next;
+  }
+
+  // returns the index of the next child of parent
+  private int findCatalogsInDirectory(CatalogPrefetcher<ParsedCatalog> prefetcher, String dirPath, Path directory,
+      Position parent, int next) {
+    try (DirectoryStream<Path> ds = Files.newDirectoryStream(directory, "*.xml")) {
+      for (Path p : ds) {
+        if (!Files.isDirectory(p)) {
+          String filename = p.getFileName().toString();
+          String path = dirPath.length() == 0 ? filename : dirPath + "/" + filename;
+          prefetcher.prefetch(StringUtils.cleanPath(path), parent.child(next++));
+        }
+      }
+    } catch (IOException | DirectoryIteratorException e) {
+      return next; // the tree walk reports it
+    }
+
+    try (DirectoryStream<Path> ds = Files.newDirectoryStream(directory)) {
+      for (Path dir : ds) {
+        if (Files.isDirectory(dir))
+          next = findCatalogsInDirectory(prefetcher, dirPath + "/" + dir.getFileName().toString(), dir, parent, next);
+      }
+    } catch (IOException | DirectoryIteratorException e) {
+      // the tree walk reports it
+    }
+    return next;
+  }
+
+  private static long getLastRead(CatalogTracker tracker, String path) {
+    CatalogExt ext = tracker.get(path);
+    return (ext == null) ? 0 : ext.getLastRead();
+  }
+
   ///////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
   public void makeDebugActions() {
@@ -681,6 +1085,7 @@ public class ConfigCatalogInitialization {
   // debugging mode, to test outside of tomcat/spring
 
   private boolean isDebugMode;
+  private Consumer<String> readListener; // also told what readCatalog() logs
   private long countDatasets = 0;
   private long maxDatasetsProcess;
   private boolean exceedLimit;
@@ -706,4 +1111,14 @@ public class ConfigCatalogInitialization {
 
     reread(readMode, true);
   }
+
+  // for testing
+  DataRootPathMatcher getDataRootPathMatcher() {
+    return dataRootPathMatcher;
+  }
+
+  // for testing
+  synchronized void setReadListener(Consumer<String> readListener) {
+    this.readListener = readListener;
+  }
 }
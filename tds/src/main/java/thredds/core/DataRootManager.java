@@ -49,8 +49,9 @@ public class DataRootManager implements InitializingBean {
   @Autowired
   private TdsContext tdsContext;
 
-  // injected by catalogInitializer, when catalogs are reread, so cant be spring managed
-  private DataRootPathMatcher dataRootPathMatcher;
+  // injected by catalogInitializer, when catalogs are reread, so cant be spring managed.
+  // swapped in whole, so readers only need to read it once.
+  private volatile DataRootPathMatcher dataRootPathMatcher;
 
   @Autowired
   private DebugCommands debugCommands;
@@ -77,7 +78,7 @@ public class DataRootManager implements InitializingBean {
     startupLog.info("DataRootManager:" + AliasTranslator.size() + " aliases set ");
   }
 
-  public synchronized void setDataRootPathMatcher(DataRootPathMatcher dataRootPathMatcher) {
+  public void setDataRootPathMatcher(DataRootPathMatcher dataRootPathMatcher) {
     this.dataRootPathMatcher = dataRootPathMatcher;
   }
 
@@ -135,13 +136,13 @@ public class DataRootManager implements InitializingBean {
     return match;
   }
 
-  private synchronized DataRoot findDataRoot(String spath) {
+  private DataRoot findDataRoot(String spath) {
     if (spath == null)
       return null;
     if (spath.startsWith("/"))
       spath = spath.substring(1);
 
-    // LOOK could it be safe to swap dataRootPathMatcher without synchronizing?
+    // no lock: the matcher is swapped in whole on reread, and does not lock to search
     return dataRootPathMatcher.findDataRoot(spath);
   }
 
@@ -167,7 +168,7 @@ public class DataRootManager implements InitializingBean {
   ////////////////////////////////////////////////////////////////////////////////////////////
   // debugging only !!
 
-  public synchronized void showRoots(Formatter f) {
+  public void showRoots(Formatter f) {
     List<Map.Entry<String, DataRootExt>> list = new ArrayList<>(dataRootPathMatcher.getValues());
     Collections.sort(list, (o1, o2) -> o1.getKey().compareTo(o2.getKey())); // java 8 lambda, baby
 
@@ -176,12 +177,13 @@ public class DataRootManager implements InitializingBean {
     }
   }
 
-  public synchronized List<FeatureCollectionRef> getFeatureCollections() {
+  public List<FeatureCollectionRef> getFeatureCollections() {
+    DataRootPathMatcher matcher = dataRootPathMatcher;
     List<FeatureCollectionRef> result = new ArrayList<>();
-    for (Map.Entry<String, DataRootExt> entry : dataRootPathMatcher.getValues()) {
+    for (Map.Entry<String, DataRootExt> entry : matcher.getValues()) {
       DataRootExt drootExt = entry.getValue();
       if (drootExt.getType() == DataRoot.Type.featureCollection) {
-        DataRoot dataRoot = dataRootPathMatcher.convert2DataRoot(drootExt);
+        DataRoot dataRoot = matcher.convert2DataRoot(drootExt);
         if (dataRoot == null) {
           logger.error("Cant find dataRoot {} in DataRootPathMatcher", drootExt);
           continue;
@@ -192,11 +194,12 @@ public class DataRootManager implements InitializingBean {
     return result;
   }
 
-  public synchronized FeatureCollectionRef findFeatureCollection(String collectionName) {
-    for (Map.Entry<String, DataRootExt> entry : dataRootPathMatcher.getValues()) {
+  public FeatureCollectionRef findFeatureCollection(String collectionName) {
+    DataRootPathMatcher matcher = dataRootPathMatcher;
+    for (Map.Entry<String, DataRootExt> entry : matcher.getValues()) {
       DataRootExt drootExt = entry.getValue();
       if (drootExt.getType() == DataRoot.Type.featureCollection && drootExt.getName().equals(collectionName)) {
-        DataRoot dataRoot = dataRootPathMatcher.convert2DataRoot(drootExt);
+        DataRoot dataRoot = matcher.convert2DataRoot(drootExt);
         return dataRoot.getFeatureCollection();
       }
     }
@@ -209,19 +212,17 @@ public class DataRootManager implements InitializingBean {
 
     act = new DebugCommands.Action("showDataRoots", "Show data roots") {
       public void doAction(DebugCommands.Event e) {
-        synchronized (DataRootManager.this) {
-          List<Map.Entry<String, DataRootExt>> list = new ArrayList<>(dataRootPathMatcher.getValues());
-          Collections.sort(list, (o1, o2) -> o1.getKey().compareTo(o2.getKey())); // java 8 lambda, baby
-
-          for (Map.Entry<String, DataRootExt> entry : list) {
-            DataRootExt ds = entry.getValue();
-            e.pw.printf(" <b>%s</b>", ds.getPath());
-            String url = DataRootManager.this.tdsContext.getContextPath() + "/admin/dir/dataDir/" + ds.getPath() + "/";
-            e.pw.printf(" for %s directory= <a href='%s'>%s</a>", ds.getType(), url, ds.getDirLocation());
-            if (ds.getRestrict() != null)
-              e.pw.printf(" (restrict ='%s')", ds.getRestrict());
-            e.pw.printf("%n");
-          }
+        List<Map.Entry<String, DataRootExt>> list = new ArrayList<>(dataRootPathMatcher.getValues());
+        Collections.sort(list, (o1, o2) -> o1.getKey().compareTo(o2.getKey())); // java 8 lambda, baby
+
+        for (Map.Entry<String, DataRootExt> entry : list) {
+          DataRootExt ds = entry.getValue();
+          e.pw.printf(" <b>%s</b>", ds.getPath());
+          String url = DataRootManager.this.tdsContext.getContextPath() + "/admin/dir/dataDir/" + ds.getPath() + "/";
+          e.pw.printf(" for %s directory= <a href='%s'>%s</a>", ds.getType(), url, ds.getDirLocation());
+          if (ds.getRestrict() != null)
+            e.pw.printf(" (restrict ='%s')", ds.getRestrict());
+          e.pw.printf("%n");
         }
       }
     };
@@ -77,6 +77,9 @@ public class DatasetManager implements InitializingBean {
   @Autowired
   private DebugCommands debugCommands;
 
+  @Autowired
+  private FeatureDatasetCache featureDatasetCache;
+
   // injected by catalogInitializer, when catalogs are reread
   private DatasetTracker datasetTracker;
 
@@ -142,6 +145,80 @@ public class DatasetManager implements InitializingBean {
     }
   }
 
+  // A file or NcML dataset whose feature datasets can be kept in the featureDatasetCache; package private for testing
+  static class CacheableSource {
+    final String location; // the file location, or the request path for NcML datasets
+    final String ncml; // null if none
+    final FileFactory opener; // opens the NetcdfFile, not through the NetcdfFile cache
+
+    CacheableSource(String location, String ncml, FileFactory opener) {
+      this.location = location;
+      this.ncml = ncml;
+      this.opener = opener;
+    }
+
+    static CacheableSource ofFile(String location) {
+      return new CacheableSource(location, null, (durl, bufferSize, cancelTask, spiObject) -> NetcdfDatasets
+          .openFile(durl, bufferSize, cancelTask, spiObject));
+    }
+
+    static CacheableSource ofNcml(String reqPath, String ncml) {
+      return new CacheableSource(reqPath, ncml, new NcmlFileFactory(ncml));
+    }
+
+    NetcdfFile open(DatasetUrl durl) throws IOException {
+      return (NetcdfFile) opener.open(durl, -1, null, null);
+    }
+  }
+
+  private CacheableSource makeDatasetScanSource(String location, DataRootMatch match) {
+    String ncml = new XMLOutputter().outputString(match.dataRoot.getDatasetScan().getNcmlElement());
+    return new CacheableSource(location, ncml,
+        (durl, bufferSize, cancelTask, spiObject) -> openNcmlDatasetScan(location, match));
+  }
+
+  // Follows the same order as openNetcdfFile(), but does not check resource control.
+  // Return null if the cache is off, or the dataset is a feature collection or comes from a DatasetSource.
+  private CacheableSource findCacheableSource(HttpServletRequest req, String reqPath) {
+    if (!featureDatasetCache.isEnabled() || reqPath == null)
+      return null;
+
+    String ncml = datasetTracker.findNcml(reqPath);
+    if (ncml != null)
+      return CacheableSource.ofNcml(reqPath, ncml);
+
+    DataRootMatch match = dataRootManager.findDataRootMatch(reqPath);
+    if (match == null || match.dataRoot.getFeatureCollection() != null)
+      return null;
+
+    for (DatasetSource datasetSource : datasetSources) {
+      if (datasetSource.isMine(req))
+        return null;
+    }
+
+    String location = dataRootManager.getLocationFromRequestPath(reqPath);
+    if (location == null)
+      return null;
+
+    if (hasDatasetScanNcml(match))
+      return makeDatasetScanSource(location, match);
+
+    return CacheableSource.ofFile(location);
+  }
+
+  // package private for testing
+  static GridDataset acquireGridDataset(FeatureDatasetCache cache, CacheableSource source) throws IOException {
+    return (GridDataset) cache.acquire("grid", source.location, source.ncml,
+        (durl, bufferSize, cancelTask, spiObject) -> makeGridDataset(source.open(durl)));
+  }
+
+  // package private for testing
+  static FeatureDatasetPoint acquirePointDataset(FeatureDatasetCache cache, CacheableSource source)
+      throws IOException {
+    return (FeatureDatasetPoint) cache.acquire("point", source.location, source.ncml,
+        (durl, bufferSize, cancelTask, spiObject) -> makePointDataset(source.open(durl)));
+  }
+
   // return null means request has been handled, and calling routine should exit without further processing
   public NetcdfFile openNetcdfFile(HttpServletRequest req, HttpServletResponse res, String reqPath) throws IOException {
     if (log.isDebugEnabled())
@@ -284,11 +361,23 @@ public class DatasetManager implements InitializingBean {
       return gds;
     }
 
+    // files and NcML datasets are shared through the featureDatasetCache
+    String path = (reqPath != null && reqPath.startsWith("/")) ? reqPath.substring(1) : reqPath;
+    CacheableSource source = findCacheableSource(req, path);
+    if (source != null) {
+      if (!resourceControlOk(req, res, path))
+        return null;
+      return acquireGridDataset(featureDatasetCache, source);
+    }
+
     // fetch it as a NetcdfFile; this deals with possible NcML
     NetcdfFile ncfile = openNetcdfFile(req, res, reqPath);
     if (ncfile == null)
       return null;
+    return makeGridDataset(ncfile);
+  }
 
+  private static GridDataset makeGridDataset(NetcdfFile ncfile) throws IOException {
     NetcdfDataset ncd = null;
     try {
       // Convert to NetcdfDataset
@@ -337,11 +426,23 @@ public class DatasetManager implements InitializingBean {
       return fd;
     }
 
+    // files and NcML datasets are shared through the featureDatasetCache
+    String path = (reqPath != null && reqPath.startsWith("/")) ? reqPath.substring(1) : reqPath;
+    CacheableSource source = findCacheableSource(req, path);
+    if (source != null) {
+      if (!resourceControlOk(req, res, path))
+        return null;
+      return acquirePointDataset(featureDatasetCache, source);
+    }
+
     // fetch it as a NetcdfFile; this deals with possible NcML
     NetcdfFile ncfile = openNetcdfFile(req, res, reqPath);
     if (ncfile == null)
       return null;
+    return makePointDataset(ncfile);
+  }
 
+  private static FeatureDatasetPoint makePointDataset(NetcdfFile ncfile) throws IOException {
     Formatter errlog = new Formatter();
     NetcdfDataset ncd = null;
     try {
@@ -399,6 +500,9 @@ public class DatasetManager implements InitializingBean {
     // since the urlPath doesn't need to point to a file if there is ncml
     String ncml = datasetTracker.findNcml(reqPath);
     if (ncml != null) {
+      if (featureDatasetCache.isEnabled())
+        return acquireCoverageFromNcml(featureDatasetCache, CacheableSource.ofNcml(reqPath, ncml), reqPath);
+
       Optional<FeatureDatasetCoverage> opt =
           CoverageDatasetFactory.openNcmlString(ncml, DatasetUrl.findDatasetUrl(reqPath).getTrueurl());
       if (!opt.isPresent())
@@ -428,6 +532,8 @@ public class DatasetManager implements InitializingBean {
 
     // Ncml in datasetScan
     if (location != null && hasDatasetScanNcml(match)) {
+      if (featureDatasetCache.isEnabled())
+        return acquireCoverageFromNcml(featureDatasetCache, makeDatasetScanSource(location, match), reqPath);
       return openCoverageFromDatasetScanNcml(location, match, reqPath);
     }
 
@@ -471,6 +577,34 @@ public class DatasetManager implements InitializingBean {
     return coverage.getSingleCoverageCollection();
   }
 
+  // The enhanced NetcdfDataset is kept in the featureDatasetCache, closing the CoverageCollection puts it back.
+  // package private for testing
+  static CoverageCollection acquireCoverageFromNcml(FeatureDatasetCache cache, CacheableSource source, String reqPath)
+      throws IOException {
+    NetcdfDataset ncd = (NetcdfDataset) cache.acquire("coverage", source.location, source.ncml,
+        (durl, bufferSize, cancelTask, spiObject) -> {
+          NetcdfFile ncf = source.open(durl);
+          try {
+            return NetcdfDatasets.enhance(ncf, NetcdfDataset.getDefaultEnhanceMode(), null);
+          } catch (Throwable t) {
+            ncf.close();
+            throw t;
+          }
+        });
+
+    try {
+      DtCoverageDataset gds = new DtCoverageDataset(ncd);
+      if (gds.getGrids().isEmpty()) {
+        throw new FileNotFoundException("Error opening grid dataset " + reqPath + ". err= no grids found.");
+      }
+      FeatureDatasetCoverage coverage = DtCoverageAdapter.factory(gds, new Formatter());
+      return coverage.getSingleCoverageCollection();
+    } catch (Throwable t) {
+      ncd.close();
+      throw t;
+    }
+  }
+
   public SimpleGeometryFeatureDataset openSimpleGeometryDataset(HttpServletRequest req, HttpServletResponse res,
       String reqPath) throws IOException {
     // first look for a feature collection
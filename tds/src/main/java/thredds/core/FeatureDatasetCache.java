@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package thredds.core;
+
+import com.google.common.hash.Hashing;
+import org.springframework.stereotype.Component;
+import thredds.inventory.MFile;
+import thredds.inventory.MFiles;
+import thredds.servlet.ServletUtil;
+import ucar.nc2.dataset.DatasetUrl;
+import ucar.nc2.util.cache.FileCache;
+import ucar.nc2.util.cache.FileCacheable;
+import ucar.nc2.util.cache.FileFactory;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Formatter;
+
+/**
+ * Cache of opened GridDataset, FeatureDatasetPoint and coverage NetcdfDataset objects for files and NcML datasets,
+ * so that back-to-back requests on the same dataset do not open it and build its coordinate systems again.
+ * Feature collections are not kept here, they have their own caches.
+ * <p>
+ * The objects are kept in a {@link FileCache}: each one is used by one request at a time, and its close() puts it
+ * back in the cache instead of closing it. Up to maxFiles objects are kept, and objects not used for a while are
+ * closed every scour period, down to minFiles. The key has the location, a hash of the NcML and the lastModified of
+ * the file, so that a changed file or NcML is opened again, and the old object is scoured.
+ */
+@Component
+public class FeatureDatasetCache {
+  private volatile FileCache cache; // null = not caching
+
+  /** Called from TdsInit. maxFiles = 0 turns the cache off. */
+  public void init(int minFiles, int maxFiles, int scourSecs) {
+    FileCache old = cache;
+    cache = maxFiles > 0 ? new FileCache("FeatureDatasetCache", minFiles, maxFiles, -1, scourSecs) : null;
+    if (old != null)
+      old.clearCache(true);
+    ServletUtil.logServerStartup.info(getClass().getName() + " FeatureDatasetCache= [" + minFiles + "," + maxFiles
+        + "] scour = " + scourSecs);
+  }
+
+  public boolean isEnabled() {
+    return cache != null;
+  }
+
+  /**
+   * Get an unused dataset from the cache, or open a new one. The caller must close it when done.
+   *
+   * @param kind what kind of object the factory makes, part of the key
+   * @param location the location of the file, or the request path for NcML datasets
+   * @param ncml the NcML wrapping the location, or null
+   * @param factory opens the dataset, without going through the NetcdfFile cache
+   * @return the opened dataset
+   */
+  public FileCacheable acquire(String kind, String location, String ncml, FileFactory factory) throws IOException {
+    DatasetUrl durl = DatasetUrl.findDatasetUrl(location);
+    FileCache current = cache;
+    if (current == null)
+      return factory.open(durl, -1, null, null);
+    return current.acquire(factory, makeKey(kind, location, ncml), durl, -1, null, null);
+  }
+
+  // package private for testing
+  static String makeKey(String kind, String location, String ncml) {
+    MFile file = MFiles.create(location);
+    long lastModified = (file == null) ? -1 : file.getLastModified();
+    String ncmlHash = (ncml == null) ? "" : Hashing.murmur3_128().hashString(ncml, StandardCharsets.UTF_8).toString();
+    return kind + "|" + location + "|" + lastModified + "|" + ncmlHash;
+  }
+
+  public void showCache(Formatter f) {
+    FileCache current = cache;
+    if (current == null)
+      f.format("FeatureDatasetCache : turned off%n");
+    else
+      current.showCache(f);
+  }
+
+  public void clearCache(boolean force) {
+    FileCache current = cache;
+    if (current != null)
+      current.clearCache(force);
+  }
+}
@@ -14,6 +14,7 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 import thredds.server.catalog.FeatureCollectionRef;
 import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 
@@ -66,15 +67,15 @@ public class FeatureCollectionCache implements InitializingBean {
    * cache.put(collectionName, fc);
    * }
    * 
-   * public void invalidate(String collectionName) throws IOException {
-   * cache.invalidate(collectionName);
-   * }
-   * 
    * public InvDatasetFeatureCollection getIfPresent(String collectionName) throws IOException {
    * return cache.getIfPresent(collectionName);
    * }
    */
 
+  public void invalidate(String collectionName) {
+    cache.invalidate(collectionName);
+  }
+
   public void invalidateAll() { // LOOK may need to call close on anything in the cache
     cache.invalidateAll();
   }
@@ -96,6 +97,29 @@ public class FeatureCollectionCache implements InitializingBean {
     }
   }
 
+  /**
+   * Initialize these feature collections in a background thread, so that the first requests dont have to wait for
+   * the collection to be read. Requests for a collection that is still being read wait for it.
+   */
+  public void warmUp(List<FeatureCollectionRef> fcrs) {
+    if (fcrs.isEmpty())
+      return;
+    Thread t = new Thread(() -> {
+      long start = System.currentTimeMillis();
+      for (FeatureCollectionRef fcr : fcrs) {
+        try {
+          get(fcr).warmUp();
+        } catch (Throwable e) {
+          logger.error("FeatureCollection warmUp failed for {}", fcr.getCollectionName(), e);
+        }
+      }
+      logger.info("FeatureCollection warmUp of {} collections took {} msecs", fcrs.size(),
+          System.currentTimeMillis() - start);
+    }, "FeatureCollectionWarmUp");
+    t.setDaemon(true);
+    t.start();
+  }
+
   private InvDatasetFeatureCollection makeFeatureCollection(FeatureCollectionRef fcr) throws IOException {
     try {
       InvDatasetFeatureCollection result = InvDatasetFeatureCollection.factory(fcr, fcr.getConfig());
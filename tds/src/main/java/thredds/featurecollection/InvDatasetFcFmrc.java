@@ -4,6 +4,7 @@
  */
 package thredds.featurecollection;
 
+import com.google.common.collect.Lists;
 import org.slf4j.Logger;
 import thredds.client.catalog.Catalog;
 import thredds.client.catalog.Dataset;
@@ -12,7 +13,9 @@ import thredds.client.catalog.ThreddsMetadata;
 import thredds.client.catalog.builder.CatalogBuilder;
 import thredds.client.catalog.builder.CatalogRefBuilder;
 import thredds.client.catalog.builder.DatasetBuilder;
+import thredds.featurecollection.cache.GridInventoryCacheChronicle;
 import thredds.inventory.CollectionUpdateType;
+import thredds.inventory.MFile;
 import thredds.inventory.MFileCollectionManager;
 import thredds.server.catalog.FeatureCollectionRef;
 import thredds.server.catalog.writer.ThreddsMetadataExtractor;
@@ -130,6 +133,31 @@ public class InvDatasetFcFmrc extends InvDatasetFeatureCollection {
     }
   }
 
+  private static final int PREFETCH_CHUNK = 100;
+
+  // decode the cached inventories of the collection in bulk, before the Fmrc asks for them one at a time.
+  // Only as many as the decoded cache holds, in the order the Fmrc reads them, so that the first ones are not
+  // evicted before they are used; the Fmrc reads the rest as it goes.
+  private void prefetchInventory() {
+    int max = GridInventoryCacheChronicle.getMaxDecodedEntries();
+    if (max == 0)
+      return;
+    List<MFile> files = new ArrayList<>();
+    for (MFile mfile : datasetCollection.getFilesSorted()) {
+      if (files.size() >= max)
+        break;
+      files.add(mfile);
+    }
+
+    GridInventoryCacheChronicle invCache = new GridInventoryCacheChronicle();
+    try {
+      for (List<MFile> chunk : Lists.partition(files, PREFETCH_CHUNK))
+        invCache.getAll(chunk);
+    } catch (IOException e) {
+      logger.warn("{}: prefetch of cached inventory failed", name, e); // the Fmrc will read what it needs
+    }
+  }
+
   public void updateProto() {
     fmrc.updateProto();
   }
@@ -137,6 +165,7 @@ public class InvDatasetFcFmrc extends InvDatasetFeatureCollection {
   @Override
   protected void updateCollection(State localState, CollectionUpdateType force) { // LOOK probably not right
     try {
+      prefetchInventory();
       fmrc.update();
 
       boolean checkInv = fmrc.checkInvState(localState.lastInvChange);
@@ -69,9 +69,13 @@ public class InvDatasetFcGrib extends InvDatasetFeatureCollection {
   static private final String PARTITION_DATASET = "TP";
   static private final String COLLECTION_DATASET = "GC";
 
+  // how long a replaced GribCollection stays open for datasets that were opened from it
+  static private final long RETIRE_GRACE_MSECS = 10 * 60 * 1000;
+
   /////////////////////////////////////////////////////////////////////////////
   protected class StateGrib extends State {
     GribCollectionImmutable gribCollection; // top level
+    RefCountedCollection<GribCollectionImmutable> gribCollectionRef; // shared by the copies of this state
     GribCollectionImmutable latest;
     String latestPath;
 
@@ -79,6 +83,7 @@ public class InvDatasetFcGrib extends InvDatasetFeatureCollection {
       super(from);
       if (from != null) {
         this.gribCollection = from.gribCollection;
+        this.gribCollectionRef = from.gribCollectionRef;
         this.latest = from.latest;
         this.latestPath = from.latestPath;
       }
@@ -110,27 +115,43 @@ public class InvDatasetFcGrib extends InvDatasetFeatureCollection {
   public void close() {
     if (state != null) {
       StateGrib stateGrib = (StateGrib) state;
-      if (stateGrib.gribCollection != null)
-        try {
-          stateGrib.gribCollection.close();
-        } catch (IOException e) {
-          logger.error("Cant close {}", stateGrib.gribCollection.getName(), e);
-        }
+      if (stateGrib.gribCollectionRef != null)
+        stateGrib.gribCollectionRef.closeNow();
     }
     super.close();
   }
 
+  /**
+   * A copy of the current state, whose GribCollection stays open until release().
+   * An update may replace the GribCollection at any time; the old one is closed only after the last release.
+   */
+  private StateGrib acquireState() throws IOException {
+    for (int tries = 0; tries < 3; tries++) {
+      StateGrib localState = (StateGrib) checkState();
+      if (localState.gribCollectionRef == null || localState.gribCollectionRef.acquire() != null)
+        return localState;
+      // closed since we got the state, the current state has its replacement
+    }
+    throw new IOException("GRIB collection " + name + " has been closed");
+  }
+
+  private void release(StateGrib localState) {
+    if (localState.gribCollectionRef != null)
+      localState.gribCollectionRef.release();
+  }
+
   @Override
   protected void _showStatus(Formatter f, boolean summaryOnly, String type) throws IOException {
-    StateGrib localState;
-    synchronized (lock) {
-      localState = (StateGrib) state;
-    }
-    if (localState.gribCollection != null) {
-      if (summaryOnly)
-        localState.gribCollection.showStatusSummary(f, type);
-      else
-        localState.gribCollection.showStatus(f);
+    StateGrib localState = acquireState();
+    try {
+      if (localState.gribCollection != null) {
+        if (summaryOnly)
+          localState.gribCollection.showStatusSummary(f, type);
+        else
+          localState.gribCollection.showStatus(f);
+      }
+    } finally {
+      release(localState);
     }
   }
 
@@ -138,17 +159,19 @@ public class InvDatasetFcGrib extends InvDatasetFeatureCollection {
   protected void updateCollection(State state, CollectionUpdateType force) {
     try {
       StateGrib localState = (StateGrib) state;
-      GribCollectionImmutable previous = localState.gribCollection;
+      RefCountedCollection<GribCollectionImmutable> previous = localState.gribCollectionRef;
       GribCollectionImmutable previousLatest = localState.latest;
 
       localState.latest = null; // will get updated next time its asked for
       localState.gribCollection = GribCdmIndex.openGribCollection(this.config, force, logger);
+      localState.gribCollectionRef =
+          (localState.gribCollection == null) ? null : new RefCountedCollection<>(localState.gribCollection);
       if (localState.gribCollection == null)
         logger.error("InvDatasetFcGrib.updateCollection failed " + this.config);
 
       logger.debug("{}: GribCollection object was recreated", name);
       if (previous != null)
-        previous.close(); // LOOK may be another thread using - other thread will fail
+        previous.retire(RETIRE_GRACE_MSECS); // closed when requests using it are done
       if (previousLatest != null)
         previousLatest.close();
 
@@ -410,11 +433,11 @@ public class InvDatasetFcGrib extends InvDatasetFeatureCollection {
   // see top javadoc for possible URLs
   @Override
   public CatalogBuilder makeCatalog(String match, String reqPath, URI catURI) throws IOException {
-    StateGrib localState = (StateGrib) checkState();
-    if (localState == null)
-      return null; // not ready yet maybe
-    if (localState.gribCollection == null)
+    StateGrib localState = acquireState();
+    if (localState.gribCollection == null) {
+      release(localState);
       return null; // not ready yet maybe
+    }
 
     try {
 
@@ -433,6 +456,8 @@ public class InvDatasetFcGrib extends InvDatasetFeatureCollection {
     } catch (Exception e) {
       e.printStackTrace();
       logger.error("Error making catalog for " + configPath, e);
+    } finally {
+      release(localState);
     }
 
     return null;
@@ -493,7 +518,15 @@ public class InvDatasetFcGrib extends InvDatasetFeatureCollection {
   // path/latest.xml
   @Override
   public CatalogBuilder makeLatest(String matchPath, String reqPath, URI catURI) throws IOException {
-    StateGrib localState = (StateGrib) checkState();
+    StateGrib localState = acquireState();
+    try {
+      return makeLatest(localState, catURI);
+    } finally {
+      release(localState);
+    }
+  }
+
+  private CatalogBuilder makeLatest(StateGrib localState, URI catURI) throws IOException {
     if (!(localState.gribCollection instanceof PartitionCollectionImmutable))
       return null;
 
@@ -584,11 +617,10 @@ public class InvDatasetFcGrib extends InvDatasetFeatureCollection {
   @Override
   public File getFile(String remaining) {
     try {
-      StateGrib localState = (StateGrib) checkState();
       int pos = remaining.lastIndexOf("/");
       final String filename = (pos >= 0) && (remaining.length() > 1) ? remaining.substring(pos + 1) : remaining;
 
-      MFile result = (MFile) findDataset(remaining, localState.gribCollection, new DatasetCreator() {
+      MFile result = (MFile) findDataset(remaining, new DatasetCreator() {
         @Override
         public Object obtain(GribCollectionImmutable gc, GribCollectionImmutable.Dataset ds,
             GribCollectionImmutable.GroupGC group) throws IOException {
@@ -607,9 +639,7 @@ public class InvDatasetFcGrib extends InvDatasetFeatureCollection {
   }
 
   public CoverageCollection getGridCoverage(String matchPath) throws IOException {
-    StateGrib localState = (StateGrib) checkState();
-
-    return (CoverageCollection) findDataset(matchPath, localState.gribCollection, new DatasetCreator() {
+    return (CoverageCollection) findDataset(matchPath, new DatasetCreator() {
       @Override
       public Object obtain(GribCollectionImmutable gc, GribCollectionImmutable.Dataset ds,
           GribCollectionImmutable.GroupGC group) throws IOException {
@@ -620,9 +650,7 @@ public class InvDatasetFcGrib extends InvDatasetFeatureCollection {
 
   @Override
   public ucar.nc2.dt.grid.GridDataset getGridDataset(String matchPath) throws IOException {
-    StateGrib localState = (StateGrib) checkState();
-
-    return (ucar.nc2.dt.grid.GridDataset) findDataset(matchPath, localState.gribCollection, new DatasetCreator() {
+    return (ucar.nc2.dt.grid.GridDataset) findDataset(matchPath, new DatasetCreator() {
       @Override
       public Object obtain(GribCollectionImmutable gc, GribCollectionImmutable.Dataset ds,
           GribCollectionImmutable.GroupGC group) throws IOException {
@@ -633,9 +661,7 @@ public class InvDatasetFcGrib extends InvDatasetFeatureCollection {
 
   @Override
   public NetcdfDataset getNetcdfDataset(String matchPath) throws IOException {
-    StateGrib localState = (StateGrib) checkState();
-
-    return (NetcdfDataset) findDataset(matchPath, localState.gribCollection, new DatasetCreator() {
+    return (NetcdfDataset) findDataset(matchPath, new DatasetCreator() {
       @Override
       public Object obtain(GribCollectionImmutable gc, GribCollectionImmutable.Dataset ds,
           GribCollectionImmutable.GroupGC group) throws IOException {
@@ -646,6 +672,15 @@ public class InvDatasetFcGrib extends InvDatasetFeatureCollection {
 
   // see top javadoc for possible URLs
   // returns visitor.obtain(), either a GridDataset or a NetcdfDataset
+  private Object findDataset(String matchPath, DatasetCreator visit) throws IOException {
+    StateGrib localState = acquireState();
+    try {
+      return findDataset(matchPath, localState.gribCollection, visit);
+    } finally {
+      release(localState);
+    }
+  }
+
   private Object findDataset(String matchPath, GribCollectionImmutable topCollection, DatasetCreator visit)
       throws IOException {
     String[] paths = matchPath.split("/");
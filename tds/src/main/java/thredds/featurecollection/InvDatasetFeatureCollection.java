@@ -24,7 +24,6 @@ import ucar.nc2.ft2.coverage.CoverageCollection;
 import ucar.nc2.ft2.simpgeometry.SimpleGeometryFeatureDataset;
 import ucar.nc2.time.CalendarDateRange;
 import ucar.nc2.util.URLnaming;
-import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 import java.io.*;
 import java.net.URI;
@@ -131,11 +130,11 @@ public abstract class InvDatasetFeatureCollection implements Closeable {
   protected MFileCollectionManager datasetCollection; // defines the collection of datasets in this feature collection,
                                                       // actually final NOT USED BY GRIB
 
-  @GuardedBy("lock")
-  protected State state;
-  @GuardedBy("lock")
-  protected boolean first = true;
-  protected final Object lock = new Object();
+  // the state is replaced, never modified once published, so requests read it without locking
+  protected volatile State state;
+  protected volatile boolean first = true;
+  protected final Object lock = new Object(); // first initialization, and publishing a new state
+  private final Object updateLock = new Object(); // one update at a time
 
   protected InvDatasetFeatureCollection(FeatureCollectionRef parent, FeatureCollectionConfig config) {
     this.parent = parent;
@@ -267,24 +266,43 @@ public abstract class InvDatasetFeatureCollection implements Closeable {
 
   /**
    * A request has come in, check that the state has been initialized.
-   * this is called from the request thread.
+   * this is called from the request thread. Once initialized, this never waits, even while an update is in progress.
    *
    * @return a copy of the State
    */
   protected State checkState() throws IOException {
-    State localState;
+    if (!first)
+      return state.copy();
 
     synchronized (lock) {
       if (first) {
         firstInit();
-        updateCollection(state, config.updateConfig.updateType);
+        State localState = state.copy();
+        updateCollection(localState, config.updateConfig.updateType);
         // makeDatasetTop(state);
+        state = localState;
         first = false;
       }
-      localState = state.copy();
+      return state.copy();
     }
+  }
 
-    return localState;
+  /**
+   * Changes each time the collection is updated, so anything made from the state, eg a rendered catalog,
+   * can be reused while this stays the same.
+   *
+   * @return the current state, or null if the collection has not been initialized yet
+   */
+  public Object getStateVersion() {
+    return first ? null : state;
+  }
+
+  /**
+   * Initialize the collection now, rather than on the first request.
+   * Called in a background thread at startup, when FeatureCollection.warmUp is set.
+   */
+  public void warmUp() throws IOException {
+    checkState();
   }
 
   /**
@@ -295,27 +313,26 @@ public abstract class InvDatasetFeatureCollection implements Closeable {
    */
   protected void update(CollectionUpdateType force) throws IOException { // this may be called from a background thread,
                                                                          // or from checkState() request thread
-    State localState;
-
-    synchronized (lock) {
+    synchronized (updateLock) {
       if (first) {
-        state = checkState();
-        state.lastInvChange = System.currentTimeMillis();
+        checkState();
+        State localState = state.copy();
+        localState.lastInvChange = System.currentTimeMillis();
+        state = localState;
         return;
       }
-      // do the update in a local object
-      localState = state.copy();
-    }
 
-    updateCollection(localState, force);
-    // makeDatasetTop(localState);
-    localState.lastInvChange = System.currentTimeMillis();
+      // do the update in a local object, requests keep using the current state meanwhile
+      State localState = state.copy();
+      updateCollection(localState, force);
+      // makeDatasetTop(localState);
+      localState.lastInvChange = System.currentTimeMillis();
 
-    // switch to live
-    synchronized (lock) {
-      state = localState;
+      // switch to live
+      synchronized (lock) {
+        state = localState;
+      }
     }
-
   }
 
   /////////////////////////////////////////////////////////////////////////////////////////////////////////////////
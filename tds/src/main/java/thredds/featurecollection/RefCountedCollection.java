@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package thredds.featurecollection;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A collection object shared by request threads, eg the top GribCollectionImmutable of a feature collection.
+ * <p>
+ * Requests acquire() it for as long as they use it, and release() it when done. When the feature collection is
+ * updated, the old object is retired, and closed only once the last user has released it. Datasets that were opened
+ * from it and are still being read are not counted, so retiring also waits a grace period before closing.
+ */
+class RefCountedCollection<T extends Closeable> {
+  private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RefCountedCollection.class);
+
+  private static final ScheduledExecutorService closer = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread t = new Thread(r, "RefCountedCollection.closer");
+    t.setDaemon(true);
+    return t;
+  });
+
+  private final T collection;
+  private int users;
+  private boolean retired, graceOver, closed;
+
+  RefCountedCollection(T collection) {
+    this.collection = collection;
+  }
+
+  /**
+   * Use the collection. If not null, the caller must call release() when done.
+   *
+   * @return the collection, or null if it has already been closed
+   */
+  synchronized T acquire() {
+    if (closed)
+      return null;
+    users++;
+    return collection;
+  }
+
+  synchronized void release() {
+    if (users > 0)
+      users--;
+    closeIfUnused();
+  }
+
+  /**
+   * The collection has been replaced: close it when nobody uses it anymore, and not before graceMsecs.
+   */
+  void retire(long graceMsecs) {
+    synchronized (this) {
+      if (retired)
+        return;
+      retired = true;
+    }
+    if (graceMsecs > 0)
+      closer.schedule(this::endGrace, graceMsecs, TimeUnit.MILLISECONDS);
+    else
+      endGrace();
+  }
+
+  private synchronized void endGrace() {
+    graceOver = true;
+    closeIfUnused();
+  }
+
+  /** The feature collection itself is closed: close now, whoever is using it. */
+  synchronized void closeNow() {
+    retired = true;
+    graceOver = true;
+    users = 0;
+    closeIfUnused();
+  }
+
+  // must hold lock
+  private void closeIfUnused() {
+    if (closed || !retired || !graceOver || users > 0)
+      return;
+    closed = true;
+    try {
+      collection.close();
+    } catch (IOException e) {
+      logger.error("Cant close {}", collection, e);
+    }
+  }
+
+  synchronized int getUsers() {
+    return users;
+  }
+
+  synchronized boolean isClosed() {
+    return closed;
+  }
+}
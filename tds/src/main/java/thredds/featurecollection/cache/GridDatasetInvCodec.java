@@ -0,0 +1,416 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package thredds.featurecollection.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+import sun.reflect.ReflectionFactory;
+import ucar.nc2.ft.fmrc.GridDatasetInv;
+import ucar.nc2.time.Calendar;
+import ucar.nc2.time.CalendarDate;
+
+/**
+ * Binary encoding of a GridDatasetInv, so that reading one from the inventory cache does not parse XML.
+ * <p>
+ * A GridDatasetInv can only be made from an open dataset or by readXML(), so the objects it is made of (the inventory,
+ * its time, vertical and ensemble coordinates, and its grids) are written field by field, and read back into new
+ * objects without calling their constructors, as java serialization does. Each class is written with a hash of the
+ * names and types of its fields, so a value written for another version of netcdf-java is not read, and the inventory
+ * is made again from the file.
+ * <p>
+ * Format: int number of classes, then for each: name (UTF) and schema hash (int); int number of objects, then the class
+ * index of each (the inventory first); then the fields of each object, in schema order, as tagged values.
+ */
+final class GridDatasetInvCodec {
+  // the classes an inventory is made of; any other object is a value
+  private static final String[] GRAPH_CLASSES = {GridDatasetInv.class.getName(),
+      GridDatasetInv.class.getName() + "$Grid", "ucar.nc2.ft.fmrc.TimeCoord", "ucar.nc2.ft.fmrc.VertCoord",
+      "ucar.nc2.ft.fmrc.EnsCoord"};
+
+  private static final byte NULL = 0;
+  private static final byte REF = 1;
+  private static final byte INT = 2;
+  private static final byte LONG = 3;
+  private static final byte DOUBLE = 4;
+  private static final byte FLOAT = 5;
+  private static final byte BOOLEAN = 6;
+  private static final byte STRING = 7;
+  private static final byte INT_ARRAY = 8;
+  private static final byte DOUBLE_ARRAY = 9;
+  private static final byte STRING_ARRAY = 10;
+  private static final byte CALENDAR_DATE = 11;
+  private static final byte DATE = 12;
+  private static final byte LIST = 13;
+  private static final byte MAP = 14;
+  private static final byte ENUM = 15;
+
+  private static final Map<Class<?>, Schema> schemas = new ConcurrentHashMap<>();
+
+  private static class Schema {
+    final Class<?> cls;
+    final Field[] fields;
+    final int hash;
+    final Constructor<?> constructor; // makes an instance without running the constructors of cls
+
+    Schema(Class<?> cls) throws ReflectiveOperationException {
+      this.cls = cls;
+      List<Field> fields = new ArrayList<>();
+      for (Class<?> c = cls; c != Object.class; c = c.getSuperclass()) {
+        for (Field field : c.getDeclaredFields()) {
+          if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isTransient(field.getModifiers())) {
+            field.setAccessible(true);
+            fields.add(field);
+          }
+        }
+      }
+      fields.sort(Comparator.comparing((Field f) -> f.getDeclaringClass().getName()).thenComparing(Field::getName));
+      this.fields = fields.toArray(new Field[0]);
+
+      StringBuilder sb = new StringBuilder(cls.getName());
+      for (Field field : this.fields)
+        sb.append(';').append(field.getName()).append(':').append(field.getType().getName());
+      this.hash = sb.toString().hashCode();
+      this.constructor = ReflectionFactory.getReflectionFactory().newConstructorForSerialization(cls,
+          Object.class.getDeclaredConstructor());
+    }
+
+    Object newInstance() throws ReflectiveOperationException {
+      return constructor.newInstance();
+    }
+  }
+
+  private static Schema getSchema(Class<?> cls) throws IOException {
+    Schema schema = schemas.get(cls);
+    if (schema == null) {
+      try {
+        schema = new Schema(cls);
+      } catch (ReflectiveOperationException | RuntimeException e) {
+        throw new IOException("Cannot encode " + cls.getName(), e);
+      }
+      schemas.put(cls, schema);
+    }
+    return schema;
+  }
+
+  private static boolean isGraphClass(Class<?> cls) {
+    for (String name : GRAPH_CLASSES) {
+      if (name.equals(cls.getName()))
+        return true;
+    }
+    return false;
+  }
+
+  private GridDatasetInvCodec() {}
+
+  /**
+   * Write an inventory.
+   *
+   * @throws IOException if it holds something that cannot be encoded, eg after an upgrade of netcdf-java
+   */
+  static void encode(GridDatasetInv inv, OutputStream os) throws IOException {
+    getLastModifiedField(); // so that decode() can set it
+    // find all the objects first, since they refer to each other, eg a grid and its time coordinate
+    Map<Object, Integer> ids = new IdentityHashMap<>();
+    List<Object> objects = new ArrayList<>();
+    List<Schema> classes = new ArrayList<>();
+    Deque<Object> toVisit = new ArrayDeque<>();
+    toVisit.add(inv);
+    ids.put(inv, 0);
+    objects.add(inv);
+    while (!toVisit.isEmpty()) {
+      Object object = toVisit.poll();
+      for (Field field : getSchema(object.getClass()).fields)
+        findObjects(get(field, object), ids, objects, toVisit);
+    }
+
+    int[] classIndexes = new int[objects.size()];
+    for (int i = 0; i < objects.size(); i++) {
+      Schema schema = getSchema(objects.get(i).getClass());
+      int index = classes.indexOf(schema);
+      if (index < 0) {
+        index = classes.size();
+        classes.add(schema);
+      }
+      classIndexes[i] = index;
+    }
+
+    DataOutputStream out = new DataOutputStream(os);
+    out.writeInt(classes.size());
+    for (Schema schema : classes) {
+      out.writeUTF(schema.cls.getName());
+      out.writeInt(schema.hash);
+    }
+    out.writeInt(objects.size());
+    for (int classIndex : classIndexes)
+      out.writeInt(classIndex);
+    for (Object object : objects) {
+      for (Field field : getSchema(object.getClass()).fields)
+        writeValue(out, get(field, object), ids);
+    }
+    out.flush();
+  }
+
+  /**
+   * Read an inventory written by encode().
+   *
+   * @param lastModified the lastModified of the file, which the inventory reports, as when read from XML
+   * @return the inventory, or null if it was written for other versions of its classes
+   */
+  @Nullable
+  static GridDatasetInv decode(byte[] bytes, int offset, long lastModified) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, offset, bytes.length - offset));
+    Schema[] classes = new Schema[in.readInt()];
+    for (int i = 0; i < classes.length; i++) {
+      String name = in.readUTF();
+      int hash = in.readInt();
+      Class<?> cls;
+      try {
+        cls = Class.forName(name, false, GridDatasetInv.class.getClassLoader());
+      } catch (ClassNotFoundException e) {
+        return null;
+      }
+      if (!isGraphClass(cls))
+        throw new IOException("Not a class of an inventory: " + name);
+      classes[i] = getSchema(cls);
+      if (classes[i].hash != hash)
+        return null;
+    }
+
+    Object[] objects = new Object[in.readInt()];
+    Schema[] objectClasses = new Schema[objects.length];
+    try {
+      for (int i = 0; i < objects.length; i++) {
+        objectClasses[i] = classes[in.readInt()];
+        objects[i] = objectClasses[i].newInstance();
+      }
+      for (int i = 0; i < objects.length; i++) {
+        for (Field field : objectClasses[i].fields)
+          field.set(objects[i], readValue(in, objects));
+      }
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      throw new IOException("Cannot decode inventory", e);
+    }
+    if (objects.length == 0 || !(objects[0] instanceof GridDatasetInv))
+      throw new IOException("Not an inventory");
+
+    Field lastModifiedField = getLastModifiedField();
+    try {
+      if (lastModifiedField.getType() == Date.class)
+        lastModifiedField.set(objects[0], new Date(lastModified));
+      else
+        lastModifiedField.set(objects[0], lastModified);
+    } catch (IllegalAccessException | RuntimeException e) {
+      throw new IOException("Cannot decode inventory", e);
+    }
+    return (GridDatasetInv) objects[0];
+  }
+
+  private static Field getLastModifiedField() throws IOException {
+    for (Field field : getSchema(GridDatasetInv.class).fields) {
+      if (field.getName().equals("lastModified") && (field.getType() == Date.class || field.getType() == long.class))
+        return field;
+    }
+    throw new IOException("Cannot set lastModified of " + GridDatasetInv.class.getName());
+  }
+
+  private static Object newCollection(String name) throws IOException, ReflectiveOperationException {
+    if (!name.startsWith("java.util."))
+      throw new IOException("Not a collection: " + name);
+    return Class.forName(name).getConstructor().newInstance();
+  }
+
+  private static Object get(Field field, Object object) throws IOException {
+    try {
+      return field.get(object);
+    } catch (IllegalAccessException e) {
+      throw new IOException("Cannot encode " + field, e);
+    }
+  }
+
+  private static void findObjects(Object value, Map<Object, Integer> ids, List<Object> objects,
+      Deque<Object> toVisit) {
+    if (value == null)
+      return;
+    if (isGraphClass(value.getClass())) {
+      if (!ids.containsKey(value)) {
+        ids.put(value, objects.size());
+        objects.add(value);
+        toVisit.add(value);
+      }
+    } else if (value instanceof Collection) {
+      for (Object element : (Collection<?>) value)
+        findObjects(element, ids, objects, toVisit);
+    } else if (value instanceof Map) {
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        findObjects(entry.getKey(), ids, objects, toVisit);
+        findObjects(entry.getValue(), ids, objects, toVisit);
+      }
+    }
+  }
+
+  private static void writeValue(DataOutputStream out, Object value, Map<Object, Integer> ids) throws IOException {
+    if (value == null) {
+      out.writeByte(NULL);
+    } else if (ids.containsKey(value)) {
+      out.writeByte(REF);
+      out.writeInt(ids.get(value));
+    } else if (value instanceof Integer) {
+      out.writeByte(INT);
+      out.writeInt((Integer) value);
+    } else if (value instanceof Long) {
+      out.writeByte(LONG);
+      out.writeLong((Long) value);
+    } else if (value instanceof Double) {
+      out.writeByte(DOUBLE);
+      out.writeDouble((Double) value);
+    } else if (value instanceof Float) {
+      out.writeByte(FLOAT);
+      out.writeFloat((Float) value);
+    } else if (value instanceof Boolean) {
+      out.writeByte(BOOLEAN);
+      out.writeBoolean((Boolean) value);
+    } else if (value instanceof String) {
+      out.writeByte(STRING);
+      out.writeUTF((String) value);
+    } else if (value instanceof int[]) {
+      int[] values = (int[]) value;
+      out.writeByte(INT_ARRAY);
+      out.writeInt(values.length);
+      for (int v : values)
+        out.writeInt(v);
+    } else if (value instanceof double[]) {
+      double[] values = (double[]) value;
+      out.writeByte(DOUBLE_ARRAY);
+      out.writeInt(values.length);
+      for (double v : values)
+        out.writeDouble(v);
+    } else if (value instanceof String[]) {
+      String[] values = (String[]) value;
+      out.writeByte(STRING_ARRAY);
+      out.writeInt(values.length);
+      for (String v : values)
+        writeValue(out, v, ids);
+    } else if (value instanceof CalendarDate) {
+      CalendarDate date = (CalendarDate) value;
+      out.writeByte(CALENDAR_DATE);
+      out.writeUTF(date.getCalendar().name());
+      out.writeLong(date.getMillis());
+    } else if (value instanceof Date) {
+      out.writeByte(DATE);
+      out.writeLong(((Date) value).getTime());
+    } else if (value instanceof List || value instanceof Map) {
+      // only kinds that can be made again empty, eg ArrayList, HashMap
+      try {
+        value.getClass().getConstructor();
+      } catch (NoSuchMethodException e) {
+        throw new IOException("Cannot encode " + value.getClass().getName());
+      }
+      if (!value.getClass().getName().startsWith("java.util."))
+        throw new IOException("Cannot encode " + value.getClass().getName());
+      out.writeByte((value instanceof List) ? LIST : MAP);
+      out.writeUTF(value.getClass().getName());
+      if (value instanceof List) {
+        List<?> list = (List<?>) value;
+        out.writeInt(list.size());
+        for (Object element : list)
+          writeValue(out, element, ids);
+      } else {
+        Map<?, ?> map = (Map<?, ?>) value;
+        out.writeInt(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+          writeValue(out, entry.getKey(), ids);
+          writeValue(out, entry.getValue(), ids);
+        }
+      }
+    } else if (value instanceof Enum) {
+      out.writeByte(ENUM);
+      out.writeUTF(((Enum<?>) value).getDeclaringClass().getName());
+      out.writeUTF(((Enum<?>) value).name());
+    } else {
+      throw new IOException("Cannot encode " + value.getClass().getName());
+    }
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static Object readValue(DataInputStream in, Object[] objects)
+      throws IOException, ReflectiveOperationException {
+    byte tag = in.readByte();
+    switch (tag) {
+      case NULL:
+        return null;
+      case REF:
+        return objects[in.readInt()];
+      case INT:
+        return in.readInt();
+      case LONG:
+        return in.readLong();
+      case DOUBLE:
+        return in.readDouble();
+      case FLOAT:
+        return in.readFloat();
+      case BOOLEAN:
+        return in.readBoolean();
+      case STRING:
+        return in.readUTF();
+      case INT_ARRAY: {
+        int[] values = new int[in.readInt()];
+        for (int i = 0; i < values.length; i++)
+          values[i] = in.readInt();
+        return values;
+      }
+      case DOUBLE_ARRAY: {
+        double[] values = new double[in.readInt()];
+        for (int i = 0; i < values.length; i++)
+          values[i] = in.readDouble();
+        return values;
+      }
+      case STRING_ARRAY: {
+        String[] values = new String[in.readInt()];
+        for (int i = 0; i < values.length; i++)
+          values[i] = (String) readValue(in, objects);
+        return values;
+      }
+      case CALENDAR_DATE:
+        return CalendarDate.of(Calendar.valueOf(in.readUTF()), in.readLong());
+      case DATE:
+        return new Date(in.readLong());
+      case LIST: {
+        List list = (List) newCollection(in.readUTF());
+        int n = in.readInt();
+        for (int i = 0; i < n; i++)
+          list.add(readValue(in, objects));
+        return list;
+      }
+      case MAP: {
+        Map map = (Map) newCollection(in.readUTF());
+        int n = in.readInt();
+        for (int i = 0; i < n; i++)
+          map.put(readValue(in, objects), readValue(in, objects));
+        return map;
+      }
+      case ENUM:
+        return Enum.valueOf((Class<Enum>) Class.forName(in.readUTF()), in.readUTF());
+      default:
+        throw new IOException("Unknown value tag " + tag);
+    }
+  }
+}
@@ -6,6 +6,9 @@
 package thredds.featurecollection.cache;
 
 import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.io.ByteStreams;
 import net.openhft.chronicle.map.ChronicleMap;
 import net.openhft.chronicle.map.ChronicleMapBuilder;
 import org.slf4j.Logger;
@@ -15,21 +18,45 @@ import ucar.nc2.ft.fmrc.GridDatasetInv;
 import ucar.nc2.internal.dataset.ft.fmrc.InventoryCacheProvider;
 
 import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
  * Implementation of a persisted grid inventory cache using ChronicleMap.
+ * <p>
+ * Values are stored in a versioned binary envelope: a header with the file lastModified, so that out of date entries
+ * are found without decoding them, followed by the binary encoding of the GridDatasetInv (see GridDatasetInvCodec).
+ * Entries written by earlier versions (plain XML, or deflated XML in format 1) are still read, and rewritten in the
+ * current format; XML is only written if the inventory cannot be encoded.
+ * A bounded on-heap LRU of decoded inventories sits in front of the persisted cache.
  */
 public class GridInventoryCacheChronicle implements InventoryCacheProvider {
 
   private static final Logger logger = LoggerFactory.getLogger(GridInventoryCacheChronicle.class);
   private static ChronicleMap<String, byte[]> cache;
+  private static Cache<String, GridDatasetInv> decoded;
+  private static int maxDecodedEntries;
+  private static volatile boolean warnedNotEncoded;
 
   private static final int DEFAULT_ENTRIES = 1000;
   private static final int DEFAULT_BLOAT_FACTOR = 1;
+  private static final int DEFAULT_DECODED_ENTRIES = 1000;
+
+  // value format: MAGIC, format version, file lastModified (long), then the encoded GridDatasetInv
+  private static final byte[] MAGIC = {'G', 'I', 'N', 'V'};
+  private static final byte FORMAT_NONE = 0; // plain XML, from before the header
+  private static final byte FORMAT_XML = 1; // deflated compact XML
+  private static final byte FORMAT_BINARY = 2; // GridDatasetInvCodec
+  private static final int HEADER_SIZE = MAGIC.length + 1 + 8;
 
   private enum AverageValueSize {
     small(4096), medium(16384), large(65536), defaultSize(small.size);
@@ -60,7 +87,7 @@ public class GridInventoryCacheChronicle implements InventoryCacheProvider {
    * @throws IOException
    */
   public static void init(Path cacheDir, int maxEntries, int maxBloatFactor) throws IOException {
-    init(cacheDir, maxEntries, maxBloatFactor, AverageValueSize.defaultSize.size);
+    init(cacheDir, maxEntries, maxBloatFactor, null, DEFAULT_DECODED_ENTRIES);
   }
 
   /**
@@ -75,9 +102,30 @@ public class GridInventoryCacheChronicle implements InventoryCacheProvider {
    */
   public static void init(Path cacheDir, int maxEntries, int maxBloatFactor, String averageValueSizeName)
       throws IOException {
+    init(cacheDir, maxEntries, maxBloatFactor, averageValueSizeName, DEFAULT_DECODED_ENTRIES);
+  }
+
+  /**
+   * Initialize the inventory cache
+   *
+   * @param cacheDir Path to the cache directory. This location will be created if it does not exist.
+   * @param maxEntries number of entries in the cache, at most
+   * @param maxBloatFactor max number of times the cache size can increase
+   * @param averageValueSizeName a name of one of the {@link AverageValueSize} constants or null if the default should
+   *        be used
+   * @param maxDecodedEntries number of decoded inventories kept on the heap, at most; 0 to turn off
+   * @throws IOException
+   */
+  public static void init(Path cacheDir, int maxEntries, int maxBloatFactor, String averageValueSizeName,
+      int maxDecodedEntries) throws IOException {
     final int averageValueSize = averageValueSizeName == null ? AverageValueSize.defaultSize.size
         : AverageValueSize.valueOf(averageValueSizeName.toLowerCase(Locale.ROOT)).size;
     init(cacheDir, maxEntries, maxBloatFactor, averageValueSize);
+    if (decoded == null && maxDecodedEntries > 0) {
+      logger.info("Grid inventory cache keeps {} decoded inventories on heap", maxDecodedEntries);
+      decoded = CacheBuilder.newBuilder().maximumSize(maxDecodedEntries).recordStats().build();
+      GridInventoryCacheChronicle.maxDecodedEntries = maxDecodedEntries;
+    }
   }
 
   /**
@@ -113,38 +161,217 @@ public class GridInventoryCacheChronicle implements InventoryCacheProvider {
   @Override
   @Nullable
   public GridDatasetInv get(MFile mfile) throws IOException {
-    GridDatasetInv inv = null;
-    if (cache != null) {
+    if (cache == null)
+      return null;
+
+    String mfileLoc = mfile.getPath();
+    if (decoded != null) {
+      GridDatasetInv inv = decoded.getIfPresent(mfileLoc);
+      if (inv != null) {
+        if (isUpToDate(inv.getLastModified(), mfile))
+          return inv;
+        decoded.invalidate(mfileLoc);
+      }
+    }
+
+    byte[] bytes = cache.getOrDefault(mfileLoc, null);
+    if (bytes == null)
+      return null;
+
+    int format = getFormat(bytes);
+    if (format != FORMAT_NONE && !isUpToDate(getLastModified(bytes), mfile)) {
+      logger.info(" cache out of date for {}. Removing cache entry.", mfileLoc);
+      cache.remove(mfileLoc);
+      return null;
+    }
+    GridDatasetInv inv = decode(bytes, format);
+    if (inv == null) {
+      logger.info(" cache entry for {} was written by another version of netcdf-java. Removing cache entry.",
+          mfileLoc);
+      cache.remove(mfileLoc);
+      return null;
+    }
+    if (format != FORMAT_BINARY && inv.isXmlVersionCompatible() && isUpToDate(inv.getLastModified(), mfile)) {
+      cache.put(mfileLoc, encode(inv, inv.getLastModified())); // written by an earlier version
+    }
+
+    // check if version requires regenerating the inventory
+    if (!inv.isXmlVersionCompatible()) {
+      logger.error("GridDatasetInv xml version needs upgrade for {}. Removing cache entry.", mfileLoc);
+      cache.remove(mfileLoc);
+      return null;
+    }
+    if (!isUpToDate(inv.getLastModified(), mfile)) {
+      logger.info(" cache out of date for {}. Removing cache entry.", mfileLoc);
+      cache.remove(mfileLoc);
+      return null;
+    }
+
+    if (decoded != null)
+      decoded.put(mfileLoc, inv);
+    return inv;
+  }
+
+  /**
+   * Get the inventories of all these files in one pass, eg before an FMRC asks for them one at a time.
+   * The persisted entries are looked up first, skipping the out of date ones without decoding them, then decoded in
+   * parallel. The decoded inventories are also kept in the on-heap cache.
+   *
+   * @param mfiles the files
+   * @return the cached inventories by file path, in the order of mfiles; files not in the cache are missing
+   */
+  public Map<String, GridDatasetInv> getAll(List<MFile> mfiles) throws IOException {
+    Map<String, GridDatasetInv> result = new LinkedHashMap<>();
+    if (cache == null)
+      return result;
+
+    Map<String, byte[]> toDecode = new HashMap<>();
+    for (MFile mfile : mfiles) {
       String mfileLoc = mfile.getPath();
-      byte[] xmlBytes = cache.getOrDefault(mfileLoc, null);
-      if (xmlBytes != null) {
-        inv = GridDatasetInv.readXML(xmlBytes);
-        // check if version requires regenerating the inventory
-        if (inv.isXmlVersionCompatible()) {
-          // check if file has changed
-          long fileModifiedSecs = mfile.getLastModified() / 1000; // ignore msecs
-          long xmlModifiedSecs = inv.getLastModified() / 1000; // ignore msecs
-          if (xmlModifiedSecs >= fileModifiedSecs) { // LOOK if fileDate is -1, will always succeed
-            logger.debug("cache ok {} >= {} for {}", xmlModifiedSecs, fileModifiedSecs, mfileLoc);
-          } else {
-            logger.info(" cache out of date {} < {} for {}. Removing cache entry.", xmlModifiedSecs, fileModifiedSecs,
-                mfileLoc);
-            cache.remove(mfileLoc);
-          }
-        } else {
-          logger.error("GridDatasetInv xml version needs upgrade for {}. Removing cache entry.", mfileLoc);
-          cache.remove(mfileLoc);
+      GridDatasetInv inv = (decoded == null) ? null : decoded.getIfPresent(mfileLoc);
+      if (inv != null && isUpToDate(inv.getLastModified(), mfile)) {
+        result.put(mfileLoc, inv);
+        continue;
+      }
+
+      byte[] bytes = cache.getOrDefault(mfileLoc, null);
+      if (bytes == null)
+        continue;
+      if (getFormat(bytes) != FORMAT_BINARY) { // written by an earlier version, get() rewrites it
+        inv = get(mfile);
+        if (inv != null)
+          result.put(mfileLoc, inv);
+      } else if (!isUpToDate(getLastModified(bytes), mfile)) {
+        logger.info(" cache out of date for {}. Removing cache entry.", mfileLoc);
+        cache.remove(mfileLoc);
+      } else {
+        result.put(mfileLoc, null); // keeps the order
+        toDecode.put(mfileLoc, bytes);
+      }
+    }
+
+    Map<String, GridDatasetInv> decodedInvs = new ConcurrentHashMap<>();
+    try {
+      toDecode.entrySet().parallelStream().forEach(entry -> {
+        try {
+          GridDatasetInv inv = decode(entry.getValue(), FORMAT_BINARY);
+          if (inv != null)
+            decodedInvs.put(entry.getKey(), inv);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
         }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+
+    for (String mfileLoc : toDecode.keySet()) {
+      GridDatasetInv inv = decodedInvs.get(mfileLoc);
+      if (inv == null) {
+        logger.info(" cache entry for {} was written by another version of netcdf-java. Removing cache entry.",
+            mfileLoc);
+        cache.remove(mfileLoc);
+        result.remove(mfileLoc);
+        continue;
       }
+      if (!inv.isXmlVersionCompatible()) {
+        logger.error("GridDatasetInv xml version needs upgrade for {}. Removing cache entry.", mfileLoc);
+        cache.remove(mfileLoc);
+        result.remove(mfileLoc);
+        continue;
+      }
+      result.put(mfileLoc, inv);
+      if (decoded != null)
+        decoded.put(mfileLoc, inv);
     }
-    return inv;
+    return result;
+  }
+
+  /** Number of decoded inventories that can be kept on the heap, 0 if none. */
+  public static int getMaxDecodedEntries() {
+    return (decoded == null) ? 0 : maxDecodedEntries;
+  }
+
+  // check if file has changed
+  private static boolean isUpToDate(long invModified, MFile mfile) {
+    long fileModifiedSecs = mfile.getLastModified() / 1000; // ignore msecs
+    long invModifiedSecs = invModified / 1000; // ignore msecs
+    return invModifiedSecs >= fileModifiedSecs; // LOOK if fileDate is -1, will always succeed
   }
 
   @Override
   public void put(MFile mfile, GridDatasetInv inventory) throws IOException {
     if (cache != null) {
-      String xml = inventory.writeCompactXML(new Date(mfile.getLastModified()));
-      cache.put(mfile.getPath(), xml.getBytes(Charsets.UTF_8));
+      cache.put(mfile.getPath(), encode(inventory, mfile.getLastModified()));
+      if (decoded != null)
+        decoded.invalidate(mfile.getPath()); // next get() decodes what was stored, with its lastModified
+    }
+  }
+
+  // the format of a value, FORMAT_NONE if it has no header; package private for testing
+  static int getFormat(byte[] bytes) {
+    if (bytes.length < HEADER_SIZE)
+      return FORMAT_NONE;
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (bytes[i] != MAGIC[i])
+        return FORMAT_NONE;
+    }
+    return bytes[MAGIC.length];
+  }
+
+  private static long getLastModified(byte[] bytes) {
+    return ByteBuffer.wrap(bytes, MAGIC.length + 1, 8).getLong();
+  }
+
+  @Nullable
+  private static GridDatasetInv decode(byte[] bytes, int format) throws IOException {
+    switch (format) {
+      case FORMAT_NONE:
+        return GridDatasetInv.readXML(bytes);
+      case FORMAT_XML:
+        return GridDatasetInv.readXML(inflate(bytes));
+      case FORMAT_BINARY:
+        return GridDatasetInvCodec.decode(bytes, HEADER_SIZE, getLastModified(bytes));
+      default:
+        return null; // written by a later version
+    }
+  }
+
+  static byte[] encode(GridDatasetInv inv, long lastModified) throws IOException {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream(1024);
+    writeHeader(bout, FORMAT_BINARY, lastModified);
+    try {
+      GridDatasetInvCodec.encode(inv, bout);
+      return bout.toByteArray();
+    } catch (IOException e) {
+      if (!warnedNotEncoded) {
+        warnedNotEncoded = true;
+        logger.warn("Cannot encode grid inventory of {}, storing XML instead", inv.getLocation(), e);
+      }
+      return encode(inv.writeCompactXML(new Date(lastModified)), lastModified);
+    }
+  }
+
+  // format 1, for inventories that cannot be encoded
+  static byte[] encode(String xml, long lastModified) throws IOException {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream(xml.length() / 4 + HEADER_SIZE);
+    writeHeader(bout, FORMAT_XML, lastModified);
+    try (DeflaterOutputStream out = new DeflaterOutputStream(bout)) {
+      out.write(xml.getBytes(Charsets.UTF_8));
+    }
+    return bout.toByteArray();
+  }
+
+  private static void writeHeader(ByteArrayOutputStream bout, byte format, long lastModified) throws IOException {
+    bout.write(MAGIC);
+    bout.write(format);
+    bout.write(ByteBuffer.allocate(8).putLong(lastModified).array());
+  }
+
+  private static byte[] inflate(byte[] bytes) throws IOException {
+    try (InflaterInputStream in =
+        new InflaterInputStream(new ByteArrayInputStream(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE))) {
+      return ByteStreams.toByteArray(in);
     }
   }
 
@@ -170,6 +397,8 @@ public class GridInventoryCacheChronicle implements InventoryCacheProvider {
       formatter.format("percentageFreeSpace=%d, ", getPercentageFreeSpace());
       formatter.format("offHeapMemoryUsed=%d", getOffHeapMemoryUsed());
       formatter.format("%n");
+      if (decoded != null)
+        formatter.format("decoded: numberOfEntries=%d, %s%n", decoded.size(), decoded.stats());
     }
   }
 
@@ -177,6 +406,15 @@ public class GridInventoryCacheChronicle implements InventoryCacheProvider {
   static void resetCache() {
     shutdown();
     cache = null;
+    decoded = null;
+  }
+
+  static void putBytes(String key, byte[] bytes) {
+    cache.put(key, bytes);
+  }
+
+  static byte[] getBytes(String key) {
+    return cache.get(key);
   }
 
   static long getNumberOfEntries() {
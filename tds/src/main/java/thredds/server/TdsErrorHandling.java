@@ -19,6 +19,7 @@ import org.springframework.web.servlet.HandlerExceptionResolver;
 import org.springframework.web.servlet.ModelAndView;
 import thredds.server.exception.MethodNotImplementedException;
 import thredds.server.exception.RequestTooLargeException;
+import thredds.server.exception.ServiceBusyException;
 import thredds.server.exception.ServiceNotAllowed;
 import thredds.server.ncss.exception.NcssException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -34,6 +35,7 @@ import static org.springframework.web.util.HtmlUtils.htmlEscape;
 /**
  * Global Exception handling
  * ServiceNotAllowed FORBIDDEN
+ * ServiceBusyException SERVICE_UNAVAILABLE
  * FileNotFoundException NOT_FOUND
  * IOException INTERNAL_SERVER_ERROR
  * UnsupportedOperationException UNPROCESSABLE_ENTITY
@@ -70,6 +72,17 @@ public class TdsErrorHandling implements HandlerExceptionResolver {
         HttpStatus.FORBIDDEN);
   }
 
+  @ExceptionHandler(ServiceBusyException.class)
+  public ResponseEntity<String> handle(ServiceBusyException ex) {
+    logger.warn("TDS Error", ex);
+
+    HttpHeaders responseHeaders = new HttpHeaders();
+    responseHeaders.setContentType(MediaType.TEXT_PLAIN);
+    responseHeaders.set(HttpHeaders.RETRY_AFTER, Integer.toString(ex.getRetryAfterSecs()));
+    return new ResponseEntity<>("Service Busy: " + htmlEscape(ex.getMessage()), responseHeaders,
+        HttpStatus.SERVICE_UNAVAILABLE);
+  }
+
   @ExceptionHandler(MethodNotImplementedException.class)
   public ResponseEntity<String> handle(MethodNotImplementedException ex) {
     logger.warn("TDS Error", ex);
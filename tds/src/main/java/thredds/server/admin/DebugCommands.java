@@ -8,8 +8,15 @@ package thredds.server.admin;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import thredds.core.FeatureDatasetCache;
 import thredds.featurecollection.cache.GridInventoryCacheChronicle;
+import thredds.server.catalog.DirectoryListingCache;
+import thredds.server.catalogservice.RenderedCatalogCache;
 import thredds.server.config.TdsContext;
+import thredds.server.dap4.Dap4Controller;
+import thredds.server.ncss.controller.NcssJobManager;
+import thredds.server.ncss.controller.NcssResultCache;
+import thredds.server.opendap.DdsDasCache;
 import thredds.server.wms.ThreddsWmsServlet;
 import thredds.servlet.ServletUtil;
 import ucar.nc2.dataset.NetcdfDataset;
@@ -36,6 +43,21 @@ public class DebugCommands {
   @Autowired
   TdsContext tdsContext;
 
+  @Autowired
+  NcssResultCache ncssResultCache;
+
+  @Autowired
+  RenderedCatalogCache renderedCatalogCache;
+
+  @Autowired
+  NcssJobManager ncssJobManager;
+
+  @Autowired
+  FeatureDatasetCache featureDatasetCache;
+
+  @Autowired
+  Dap4Controller dap4Controller;
+
   private List<Category> dhList = new ArrayList<>();
 
   public List<Category> getCategories() {
@@ -147,12 +169,33 @@ public class DebugCommands {
           fc.showCache(f);
         }
 
+        f.format("%n%n");
+        featureDatasetCache.showCache(f);
+
         f.format("%n%n");
         GridInventoryCacheChronicle.showCache(f);
 
+        f.format("%n%n");
+        DirectoryListingCache.showCache(f);
+
+        f.format("%n%n");
+        renderedCatalogCache.showCache(f);
+
         f.format("%n%n");
         ThreddsWmsServlet.showCache(f);
 
+        f.format("%n%n");
+        DdsDasCache.showCache(f);
+
+        f.format("%n%n");
+        dap4Controller.getDMRCache().showCache(f);
+
+        f.format("%n%n");
+        ncssResultCache.showCache(f);
+
+        f.format("%n%n");
+        ncssJobManager.showJobs(f);
+
         e.pw.flush();
       }
     };
@@ -161,6 +204,11 @@ public class DebugCommands {
     act = new Action("clearCaches", "Clear All File Object Caches") {
       public void doAction(Event e) {
         ThreddsWmsServlet.resetCache();
+        DdsDasCache.resetCache();
+        dap4Controller.getDMRCache().clear();
+        ncssResultCache.clearCache();
+        renderedCatalogCache.invalidateAll();
+        featureDatasetCache.clearCache(false);
         NetcdfDataset.getNetcdfFileCache().clearCache(false);
         NetcdfDatasets.getNetcdfFileCache().clearCache(false);
         RandomAccessFile.getGlobalFileCache().clearCache(false);
@@ -6,6 +6,8 @@ package thredds.server.catalogservice;
 
 public class CatalogRequest {
   String dataset;
+  int start;
+  int limit;
 
   public String getDataset() {
     return dataset;
@@ -15,4 +17,20 @@ public class CatalogRequest {
     this.dataset = dataset;
   }
 
+  public int getStart() {
+    return start;
+  }
+
+  public void setStart(int start) {
+    this.start = start;
+  }
+
+  public int getLimit() {
+    return limit;
+  }
+
+  public void setLimit(int limit) {
+    this.limit = limit;
+  }
+
 }
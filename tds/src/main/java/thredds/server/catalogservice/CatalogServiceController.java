@@ -4,18 +4,32 @@
  */
 package thredds.server.catalogservice;
 
+import org.springframework.beans.factory.BeanFactoryUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.AnnotationAwareOrderComparator;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.View;
+import org.springframework.web.servlet.ViewResolver;
+import org.springframework.web.servlet.support.RequestContextUtils;
+import org.springframework.web.util.ContentCachingResponseWrapper;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import thredds.client.catalog.Catalog;
 import thredds.client.catalog.Dataset;
 import thredds.core.CatalogManager;
 import thredds.core.TdsRequestedDataset;
+import thredds.server.catalog.DatasetScan;
+import thredds.server.catalog.DatasetScanXmlWriter;
+import thredds.util.ContentType;
+import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
@@ -38,6 +52,9 @@ public class CatalogServiceController {
   @Autowired
   CatalogViewContextParser parser;
 
+  @Autowired
+  private RenderedCatalogCache renderedCatalogCache;
+
   @RequestMapping(value = "**", method = {RequestMethod.GET})
   protected ModelAndView handleRequest(HttpServletRequest request, HttpServletResponse response, CatalogRequest params)
       throws Exception {
@@ -45,14 +62,65 @@ public class CatalogServiceController {
     TdsRequestedDataset reqD = new TdsRequestedDataset(request, "/catalog");
     String path = reqD.getPath();
     boolean isHtml = path.endsWith(".html");
+    boolean isHead = request.getMethod().equals("HEAD");
     String catalogPath = path.replaceAll(".html$", ".xml");
+    RenderedCatalogCache.Key key = null;
+    Object version = null;
 
     Catalog catalog;
     URI baseUri;
     String baseUriString = request.getRequestURL().toString();
     try {
       baseUri = new URI(baseUriString);
-      catalog = catalogManager.getCatalog(catalogPath, baseUri);
+
+      // reuse the catalog rendered from this version of the catalog, if any
+      if (renderedCatalogCache.isEnabled()) {
+        version = catalogManager.getCatalogVersion(catalogPath);
+        if (version != null) {
+          key = new RenderedCatalogCache.Key(catalogPath, baseUriString, isHtml, params.dataset, params.start,
+              params.limit);
+          RenderedCatalogCache.Rendered rendered = renderedCatalogCache.get(key, version);
+          if (rendered != null) {
+            sendRendered(request, response, rendered);
+            return null;
+          }
+        }
+      }
+
+      // DatasetScan directories are streamed, no matter how many files they have
+      if (!isHtml && params.dataset == null) {
+        DatasetScan.DirectoryPage page =
+            catalogManager.getDirectoryPage(catalogPath, baseUri, params.start, params.limit);
+        if (page != null) {
+          response.setContentType(ContentType.xml.getContentHeader());
+          if (isHead)
+            return null;
+
+          if (key == null) {
+            OutputStream os = response.getOutputStream();
+            new DatasetScanXmlWriter().writeXML(page, os);
+            os.flush();
+            return null;
+          }
+
+          // keep the bytes if the catalog is small enough to cache
+          CapturingOutputStream os = new CapturingOutputStream(response, renderedCatalogCache.getMaxEntrySize());
+          new DatasetScanXmlWriter().writeXML(page, os);
+          byte[] bytes = os.getCaptured();
+          if (bytes != null) {
+            RenderedCatalogCache.Rendered rendered =
+                renderedCatalogCache.put(key, version, bytes, ContentType.xml.getContentHeader());
+            if (rendered != null)
+              sendRendered(request, response, rendered);
+            else
+              response.getOutputStream().write(bytes);
+          }
+          os.flush();
+          return null;
+        }
+      }
+
+      catalog = catalogManager.getCatalog(catalogPath, baseUri, params.start, params.limit);
 
     } catch (URISyntaxException e) {
       String msg = "Bad URI syntax [" + baseUriString + "]: " + e.getMessage();
@@ -63,10 +131,111 @@ public class CatalogServiceController {
     if (catalog == null)
       throw new FileNotFoundException(request.getRequestURI());
 
+    ModelAndView mav;
     if (isHtml) {
-      return handleHTMLRequest(request, response, catalog, params);
+      mav = handleHTMLRequest(request, response, catalog, params);
     } else {
-      return handleXMLRequest(request, response, catalog, params);
+      mav = handleXMLRequest(request, response, catalog, params);
+    }
+
+    if (key == null || isHead)
+      return mav;
+    return renderAndCache(request, response, mav, key, version);
+  }
+
+  // render the view here rather than in the DispatcherServlet, so that the bytes can be cached
+  private ModelAndView renderAndCache(HttpServletRequest request, HttpServletResponse response, ModelAndView mav,
+      RenderedCatalogCache.Key key, Object version) throws Exception {
+    View view = resolveView(mav.getViewName(), request);
+    if (view == null)
+      return mav;
+
+    ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+    view.render(mav.getModel(), request, wrapper);
+
+    RenderedCatalogCache.Rendered rendered = null;
+    if (wrapper.getStatus() == HttpServletResponse.SC_OK && wrapper.getContentSize() > 0)
+      rendered = renderedCatalogCache.put(key, version, wrapper.getContentAsByteArray(), wrapper.getContentType());
+    if (rendered != null)
+      sendRendered(request, response, rendered);
+    else
+      wrapper.copyBodyToResponse();
+    return null;
+  }
+
+  // the view resolvers are in the servlet context, not the root context that the controllers are in
+  private View resolveView(String viewName, HttpServletRequest request) throws Exception {
+    WebApplicationContext context = RequestContextUtils.findWebApplicationContext(request);
+    if (viewName == null || context == null)
+      return null;
+
+    List<ViewResolver> resolvers = new ArrayList<>(
+        BeanFactoryUtils.beansOfTypeIncludingAncestors(context, ViewResolver.class, true, false).values());
+    AnnotationAwareOrderComparator.sort(resolvers);
+    Locale locale = RequestContextUtils.getLocale(request);
+    for (ViewResolver resolver : resolvers) {
+      View view = resolver.resolveViewName(viewName, locale);
+      if (view != null)
+        return view;
+    }
+    return null;
+  }
+
+  // answers conditional requests with 304 Not Modified
+  private void sendRendered(HttpServletRequest request, HttpServletResponse response,
+      RenderedCatalogCache.Rendered rendered) throws IOException {
+    if (new ServletWebRequest(request, response).checkNotModified(rendered.getETag(), rendered.getLastModified()))
+      return;
+
+    byte[] bytes = rendered.getBytes();
+    response.setContentType(rendered.getContentType());
+    response.setContentLength(bytes.length);
+    if (!request.getMethod().equals("HEAD"))
+      response.getOutputStream().write(bytes);
+  }
+
+  /**
+   * Keeps what is written, up to limit bytes, so that it can be cached.
+   * Past the limit, it all goes to the response, and nothing is kept.
+   */
+  private static class CapturingOutputStream extends OutputStream {
+    private final HttpServletResponse response;
+    private final int limit;
+    private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private OutputStream out; // the response, once over the limit
+
+    CapturingOutputStream(HttpServletResponse response, int limit) {
+      this.response = response;
+      this.limit = limit;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (out == null && buffer.size() + len > limit) {
+        out = response.getOutputStream();
+        buffer.writeTo(out);
+        buffer = null;
+      }
+      if (out != null)
+        out.write(b, off, len);
+      else
+        buffer.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (out != null)
+        out.flush();
+    }
+
+    /** @return what was written, or null if it went over the limit */
+    byte[] getCaptured() {
+      return (out == null) ? buffer.toByteArray() : null;
     }
   }
 
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package thredds.server.catalogservice;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import thredds.core.CollectionUpdateInvalidator;
+import thredds.server.config.ThreddsConfig;
+import thredds.servlet.ServletUtil;
+import java.lang.ref.WeakReference;
+import java.util.Formatter;
+import java.util.Objects;
+
+/**
+ * Cache of rendered catalogs, XML or HTML, so that repeated requests for an unchanged catalog are answered
+ * with the same bytes, without making the catalog again. Each entry has a strong ETag, so that conditional
+ * requests can be answered with 304 Not Modified.
+ * <p>
+ * An entry is only valid for the version of the catalog it was rendered from, see CatalogManager.getCatalogVersion().
+ * Versions are compared by identity and held weakly, so an entry never keeps an old catalog in memory.
+ * Entries are also dropped when the catalogs are reread and when a feature collection is updated, and are evicted
+ * least recently used first when the total size goes over ConfigCatalog.renderedCacheMaxSize.
+ */
+@Component
+public class RenderedCatalogCache implements InitializingBean {
+  static private final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RenderedCatalogCache.class);
+
+  /** A rendered catalog. Immutable. */
+  public static class Rendered {
+    private final WeakReference<Object> version;
+    private final byte[] bytes;
+    private final String contentType;
+    private final String etag;
+    private final long lastModified;
+
+    private Rendered(Object version, byte[] bytes, String contentType) {
+      this.version = new WeakReference<>(version);
+      this.bytes = bytes;
+      this.contentType = contentType;
+      this.etag = "\"" + Hashing.murmur3_128().hashBytes(bytes) + "\"";
+      this.lastModified = System.currentTimeMillis() / 1000 * 1000; // HTTP dates have second resolution
+    }
+
+    public byte[] getBytes() {
+      return bytes;
+    }
+
+    public String getContentType() {
+      return contentType;
+    }
+
+    public String getETag() {
+      return etag;
+    }
+
+    public long getLastModified() {
+      return lastModified;
+    }
+  }
+
+  /** Identifies one rendering of a catalog. */
+  public static class Key {
+    private final String path;
+    private final String baseUri;
+    private final boolean isHtml;
+    private final String dataset;
+    private final int start, limit;
+
+    public Key(String path, String baseUri, boolean isHtml, String dataset, int start, int limit) {
+      this.path = path;
+      this.baseUri = baseUri;
+      this.isHtml = isHtml;
+      this.dataset = dataset;
+      this.start = start;
+      this.limit = limit;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o)
+        return true;
+      if (!(o instanceof Key))
+        return false;
+      Key key = (Key) o;
+      return isHtml == key.isHtml && start == key.start && limit == key.limit && path.equals(key.path)
+          && baseUri.equals(key.baseUri) && Objects.equals(dataset, key.dataset);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(path, baseUri, isHtml, dataset, start, limit);
+    }
+  }
+
+  @Autowired
+  private CollectionUpdateInvalidator collectionUpdateInvalidator;
+
+  private volatile Cache<Key, Rendered> cache; // null = off
+  private volatile long maxSize; // bytes
+  private volatile int maxEntrySize;
+
+  public RenderedCatalogCache() {}
+
+  // for unit tests
+  RenderedCatalogCache(long maxSize) {
+    init(maxSize);
+  }
+
+  @Override
+  public void afterPropertiesSet() {
+    collectionUpdateInvalidator.addListener(this::invalidatePath);
+  }
+
+  /** Called from TdsInit */
+  public void init() {
+    init(ThreddsConfig.getBytes("ConfigCatalog.renderedCacheMaxSize", 20L * 1000 * 1000));
+    ServletUtil.logServerStartup.info(getClass().getName() + " ConfigCatalog.renderedCacheMaxSize = " + maxSize);
+  }
+
+  private void init(long maxSize) {
+    this.maxSize = Math.max(maxSize, 0);
+    if (maxSize <= 0) {
+      cache = null;
+      maxEntrySize = 0;
+      return;
+    }
+    // one big catalog should not push out all the others
+    maxEntrySize = (int) Math.min(Integer.MAX_VALUE, Math.max(maxSize / 10, 1));
+    cache = CacheBuilder.newBuilder().maximumWeight(maxSize)
+        .weigher((Key key, Rendered rendered) -> rendered.bytes.length).recordStats().build();
+  }
+
+  public boolean isEnabled() {
+    return cache != null;
+  }
+
+  /** Catalogs bigger than this are not cached. */
+  public int getMaxEntrySize() {
+    return maxEntrySize;
+  }
+
+  /**
+   * Get the rendered catalog, if it was rendered from this version of the catalog.
+   *
+   * @param key identifies the rendering
+   * @param version from CatalogManager.getCatalogVersion(); if null, nothing is cached
+   * @return the rendered catalog, or null if not cached
+   */
+  public Rendered get(Key key, Object version) {
+    Cache<Key, Rendered> c = cache;
+    if (c == null || version == null)
+      return null;
+    Rendered rendered = c.getIfPresent(key);
+    if (rendered == null)
+      return null;
+    if (rendered.version.get() != version) {
+      c.asMap().remove(key, rendered); // stale
+      return null;
+    }
+    return rendered;
+  }
+
+  /**
+   * Add a rendered catalog.
+   *
+   * @param key identifies the rendering
+   * @param version the version of the catalog it was rendered from, from CatalogManager.getCatalogVersion()
+   * @param bytes the rendered catalog
+   * @param contentType its content type
+   * @return the cached catalog, or null if it was not cached, because it is too big or version is null
+   */
+  public Rendered put(Key key, Object version, byte[] bytes, String contentType) {
+    Cache<Key, Rendered> c = cache;
+    if (c == null || version == null || bytes.length > maxEntrySize)
+      return null;
+    Rendered rendered = new Rendered(version, bytes, contentType);
+    c.put(key, rendered);
+    return rendered;
+  }
+
+  public void invalidateAll() {
+    Cache<Key, Rendered> c = cache;
+    if (c != null)
+      c.invalidateAll();
+  }
+
+  /** Remove all catalogs at or under this path */
+  public void invalidatePath(String path) {
+    Cache<Key, Rendered> c = cache;
+    if (c == null)
+      return;
+    c.asMap().keySet().removeIf(key -> CollectionUpdateInvalidator.isAtOrUnder(key.path, path));
+  }
+
+  public void showCache(Formatter f) {
+    Cache<Key, Rendered> c = cache;
+    f.format("%nRendered Catalog Cache:%n");
+    if (c == null) {
+      f.format("turned off%n");
+      return;
+    }
+    long totalSize = 0;
+    for (Rendered rendered : c.asMap().values())
+      totalSize += rendered.bytes.length;
+    f.format("maxSize=%d, maxEntrySize=%d, totalSize=%d, numberOfEntries=%d%n", maxSize, maxEntrySize, totalSize,
+        c.size());
+    f.format("%s%n", c.stats());
+  }
+
+  // package private for testing
+  long getNumberOfEntries() {
+    Cache<Key, Rendered> c = cache;
+    return (c == null) ? 0 : c.size();
+  }
+
+}
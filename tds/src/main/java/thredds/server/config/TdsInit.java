@@ -18,19 +18,26 @@ import thredds.client.catalog.tools.DataFactory;
 import thredds.core.AllowedServices;
 import thredds.core.ConfigCatalogInitialization;
 import thredds.core.DatasetManager;
+import thredds.core.FeatureDatasetCache;
 import thredds.core.StandardService;
 import thredds.featurecollection.CollectionUpdater;
 import thredds.featurecollection.cache.GridInventoryCacheChronicle;
 import thredds.featurecollection.InvDatasetFeatureCollection;
 import thredds.server.catalog.ConfigCatalogCache;
 import thredds.server.catalog.DatasetScan;
+import thredds.server.catalog.DatasetScanXmlWriter;
+import thredds.server.catalog.DirectoryListingCache;
+import thredds.server.catalogservice.RenderedCatalogCache;
 import thredds.server.ncss.controller.NcssDiskCache;
+import thredds.server.ncss.controller.NcssJobManager;
+import thredds.server.ncss.controller.NcssResultCache;
 import thredds.server.ncss.format.FormatsAvailabilityService;
 import thredds.server.ncss.format.SupportedFormat;
 import thredds.server.notebook.JupyterNotebookServiceCache;
 import ucar.nc2.NetcdfFile;
 import ucar.nc2.dataset.NetcdfDataset;
 import ucar.nc2.dataset.NetcdfDatasets;
+import ucar.nc2.dt.ugrid.Mesh;
 import ucar.nc2.grib.GribIndexCache;
 import ucar.nc2.grib.collection.GribCdmIndex;
 import ucar.nc2.jni.netcdf.Nc4Iosp;
@@ -81,6 +88,9 @@ public class TdsInit implements ApplicationListener<ContextRefreshedEvent>, Disp
   @Autowired
   private DatasetManager datasetManager;
 
+  @Autowired
+  private FeatureDatasetCache featureDatasetCache;
+
   @Autowired
   private ConfigCatalogCache ccc;
 
@@ -103,6 +113,15 @@ public class TdsInit implements ApplicationListener<ContextRefreshedEvent>, Disp
   @Autowired
   private NcssDiskCache ncssDiskCache;
 
+  @Autowired
+  private RenderedCatalogCache renderedCatalogCache;
+
+  @Autowired
+  private NcssResultCache ncssResultCache;
+
+  @Autowired
+  private NcssJobManager ncssJobManager;
+
   private Timer cdmDiskCacheTimer;
   private boolean wasInitialized;
 
@@ -233,6 +252,7 @@ public class TdsInit implements ApplicationListener<ContextRefreshedEvent>, Disp
     // Global config
     boolean useBytesForDataSize = ThreddsConfig.getBoolean("catalogWriting.useBytesForDataSize", false);
     CatalogXmlWriter.useBytesForDataSize(useBytesForDataSize);
+    DatasetScanXmlWriter.useBytesForDataSize(useBytesForDataSize);
     startupLog.info("TdsInit: catalogWriting.useBytesForDataSize= " + useBytesForDataSize);
 
     // datasetSource plug-in
@@ -266,6 +286,16 @@ public class TdsInit implements ApplicationListener<ContextRefreshedEvent>, Disp
     DatasetScan.setSpecialServices(allowedServices.getStandardService(StandardService.resolver),
         allowedServices.getStandardService(StandardService.httpServer));
     DatasetScan.setAllowedServices(allowedServices);
+
+    /*
+     * <DatasetScan>
+     * <maxDirectories>1000</maxDirectories>
+     * <ttl>60 sec</ttl>
+     * <watch>true</watch>
+     * </DatasetScan>
+     */
+    DirectoryListingCache.init(ThreddsConfig.getInt("DatasetScan.maxDirectories", 1000),
+        ThreddsConfig.getSeconds("DatasetScan.ttl", 60), ThreddsConfig.getBoolean("DatasetScan.watch", true));
     allowedServices.makeDebugActions();
 
     /*
@@ -369,8 +399,20 @@ public class TdsInit implements ApplicationListener<ContextRefreshedEvent>, Disp
     GribIndexCache.setDiskCache2(gribCache);
     startupLog.info("TdsInit: GribIndex=" + gribCache);
 
+    // UGRID mesh RTree placement, using DiskCache2
+    String ugridIndexDir =
+        ThreddsConfig.get("UGridIndex.dir", new File(tdsContext.getThreddsDirectory(), "/cache/ugrid/").getPath());
+    DiskCache2 ugridCache = new DiskCache2(ugridIndexDir, false, -1, -1);
+    ugridCache.setPolicy(ThreddsConfig.get("UGridIndex.policy", null));
+    ugridCache.setAlwaysUseCache(ThreddsConfig.getBoolean("UGridIndex.alwaysUse", false));
+    ugridCache.setNeverUseCache(ThreddsConfig.getBoolean("UGridIndex.neverUse", false));
+    Mesh.setRTreeCache(ugridCache);
+    startupLog.info("TdsInit: UGridIndex=" + ugridCache);
+
     // LOOK just create the diskCache here and send it in
     ncssDiskCache.init();
+    ncssResultCache.init();
+    ncssJobManager.init();
 
     String fcCache = ThreddsConfig.get("FeatureCollectionCache.dir", null);
     if (fcCache == null)
@@ -381,10 +423,11 @@ public class TdsInit implements ApplicationListener<ContextRefreshedEvent>, Disp
     int maxEntries = ThreddsConfig.getInt("FeatureCollection.maxEntries", 1000);
     int maxBloatFactor = ThreddsConfig.getInt("FeatureCollection.maxBloatFactor", 1);
     String averageValueSize = ThreddsConfig.get("FeatureCollection.averageValueSize", null);
+    int maxDecodedEntries = ThreddsConfig.getInt("FeatureCollection.maxDecodedEntries", 1000);
 
     Path fcCacheDir = Paths.get(fcCache);
     try {
-      GridInventoryCacheChronicle.init(fcCacheDir, maxEntries, maxBloatFactor, averageValueSize);
+      GridInventoryCacheChronicle.init(fcCacheDir, maxEntries, maxBloatFactor, averageValueSize, maxDecodedEntries);
       startupLog.info("TdsInit: GridDatasetInv cache= {}", fcCache);
     } catch (Exception e) {
       startupLog.error("TdsInit: Failed initialize GridDatasetInv cache= {}", fcCache, e);
@@ -423,6 +466,12 @@ public class TdsInit implements ApplicationListener<ContextRefreshedEvent>, Disp
       startupLog.info("TdsInit: GribCdmIndex.initDefaultCollectionCache= [" + min + "," + max + "] scour = " + secs);
     }
 
+    // FeatureDatasetCache: default is allow 50 - 100 objects, cleanup every 14 minutes
+    min = ThreddsConfig.getInt("FeatureDatasetCache.minFiles", 50);
+    max = ThreddsConfig.getInt("FeatureDatasetCache.maxFiles", 100);
+    secs = ThreddsConfig.getSeconds("FeatureDatasetCache.scour", 14 * 60);
+    featureDatasetCache.init(min, max, secs);
+
     // RandomAccessFile.enableDefaultGlobalFileCache();
     // RandomAccessFile.setDebugLeaks(true);
 
@@ -431,6 +480,7 @@ public class TdsInit implements ApplicationListener<ContextRefreshedEvent>, Disp
     String rootPath = tdsContext.getContentRootPathProperty() + "thredds/";
     final String context = tdsContext.getContextPath();
     ccc.init(rootPath, max, context);
+    renderedCatalogCache.init();
 
     // Config Dataset Tracker
     String trackerDir = ThreddsConfig.get("ConfigCatalog.dir",
@@ -445,6 +495,10 @@ public class TdsInit implements ApplicationListener<ContextRefreshedEvent>, Disp
     configCatalogInitializer.setTrackerDir(trackerDir);
     configCatalogInitializer.setMaxDatasetToTrack(trackerMax);
     configCatalogInitializer.setDatasetTrackerAverageValueSize(datasetTrackerAverageValueSize);
+    configCatalogInitializer.setReadThreads(
+        ThreddsConfig.getInt("ConfigCatalog.readThreads", Runtime.getRuntime().availableProcessors()));
+    if (ThreddsConfig.getBoolean("ConfigCatalog.watch", false))
+      configCatalogInitializer.setWatchDelay(1000L * ThreddsConfig.getSeconds("ConfigCatalog.watchDelay", 2));
 
     // Jupyter notebook service cache
     if (allowedServices.isAllowed(StandardService.jupyterNotebook)) {
@@ -492,17 +546,12 @@ public class TdsInit implements ApplicationListener<ContextRefreshedEvent>, Disp
     FileCache.shutdown(); // this handles background threads for all instances of FileCache
     DiskCache2.exit(); // this handles background threads for all instances of DiskCache2
     GridInventoryCacheChronicle.shutdown();
+    DirectoryListingCache.shutdown();
     executor.shutdownNow();
-    /*
-     * try {
-     * catalogWatcher.close();
-     * } catch (IOException ioe) {
-     * ioe.printStackTrace();
-     * startupLog.error("catalogWatcher close failed", ioe);
-     * }
-     */
+    configCatalogInitializer.stopWatching();
 
     // open file caches
+    featureDatasetCache.clearCache(true);
     RandomAccessFile.shutdown();
     NetcdfDataset.shutdown();
     NetcdfDatasets.shutdown();
@@ -16,6 +16,7 @@ import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import thredds.core.TdsRequestedDataset;
 import thredds.server.config.TdsContext;
+import thredds.server.config.ThreddsConfig;
 
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -75,6 +76,11 @@ public class Dap4Controller extends DapController {
     pw.flush();
   }
 
+  @Override
+  protected int getDMRCacheSize() {
+    return ThreddsConfig.getInt("DAP4.dmrCacheMaxSize", super.getDMRCacheSize());
+  }
+
   @Override
   public long getBinaryWriteLimit() {
     return DEFAULTBINARYWRITELIMIT;
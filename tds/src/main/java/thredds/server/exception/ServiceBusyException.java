@@ -0,0 +1,22 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package thredds.server.exception;
+
+/**
+ * The server is too busy to accept the request, the client should retry later.
+ */
+public class ServiceBusyException extends RuntimeException {
+  private final int retryAfterSecs;
+
+  public ServiceBusyException(String message, int retryAfterSecs) {
+    super(message);
+    this.retryAfterSecs = retryAfterSecs;
+  }
+
+  public int getRetryAfterSecs() {
+    return retryAfterSecs;
+  }
+}
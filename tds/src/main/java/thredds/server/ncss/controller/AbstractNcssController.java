@@ -15,6 +15,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.servlet.ModelAndView;
 import thredds.core.StandardService;
 import thredds.server.config.TdsContext;
 import thredds.server.ncss.exception.NcssException;
@@ -23,6 +24,7 @@ import thredds.server.ncss.format.SupportedOperation;
 import thredds.util.TdsPathUtils;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
@@ -46,6 +48,9 @@ public abstract class AbstractNcssController {
   @Autowired
   NcssDiskCache ncssDiskCache;
 
+  @Autowired
+  NcssJobManager jobManager;
+
   //////////////////////////////////////////////////////////////////////////
   // common methods
 
@@ -88,6 +93,17 @@ public abstract class AbstractNcssController {
     }
   }
 
+  /**
+   * Queue an async=true request, and answer 202 Accepted with the job status.
+   *
+   * @param resource closed by the job when it is done, eg the open dataset
+   */
+  protected ModelAndView submitJob(HttpServletResponse res, NcssJobManager.Job job, NcssJobManager.JobWork work,
+      Closeable resource) {
+    jobManager.submit(job, work, resource);
+    return NcssJobController.makeSubmitResponse(job, tdsContext.getContextPath(), res);
+  }
+
   public static Element makeAcceptXML(SupportedOperation ops) {
     Element acceptList = new Element("AcceptList");
     for (SupportedFormat sf : ops.getSupportedFormats()) {
@@ -23,6 +23,7 @@ public final class NcssDiskCache {
 
   private DiskCache2 diskCache;
   private String cachePath;
+  private int maxAgeSecs;
 
   public NcssDiskCache() {}
 
@@ -45,6 +46,8 @@ public final class NcssDiskCache {
     scourSecs = Math.max(scourSecs, 60 * 5); // always need to scour, in case user doesnt get the file, we need to clean
                                              // it up
 
+    this.maxAgeSecs = maxAgeSecs;
+
     // LOOK: what happens if we are still downloading when the disk scour starts?
     diskCache = new DiskCache2(cachePath, false, maxAgeSecs / 60, scourSecs / 60);
     ServletUtil.logServerStartup.info(
@@ -55,6 +58,11 @@ public final class NcssDiskCache {
     return this.diskCache;
   }
 
+  /** How long files are left in the cache before being scoured */
+  public int getMaxAgeSecs() {
+    return this.maxAgeSecs;
+  }
+
   public String getServletCachePath() {
     String contextPath = (tdsContext == null) ? "" : tdsContext.getContextPath(); // for unit tests until i can figure
                                                                                   // out how to get a mock TdsContext
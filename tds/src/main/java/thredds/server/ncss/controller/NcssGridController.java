@@ -37,6 +37,7 @@ import ucar.nc2.ft2.coverage.writer.CFGridCoverageWriter;
 import ucar.nc2.ft2.coverage.writer.CoverageAsPoint;
 import ucar.nc2.ft2.coverage.writer.CoverageDatasetCapabilities;
 import ucar.nc2.util.IO;
+import ucar.nc2.util.Optional;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
@@ -67,12 +68,15 @@ public class NcssGridController extends AbstractNcssController {
   @Autowired
   private AllowedServices allowedServices;
 
+  @Autowired
+  private NcssResultCache ncssResultCache;
+
   protected String getBase() {
     return StandardService.netcdfSubsetGrid.getBase();
   }
 
   @RequestMapping("**") // data request
-  public void handleRequest(HttpServletRequest req, HttpServletResponse res, @Valid NcssGridParamsBean params,
+  public ModelAndView handleRequest(HttpServletRequest req, HttpServletResponse res, @Valid NcssGridParamsBean params,
       BindingResult validationResult) throws Exception {
     if (!allowedServices.isAllowed(StandardService.netcdfSubsetGrid))
       throw new ServiceNotAllowed(StandardService.netcdfSubsetGrid.toString());
@@ -81,14 +85,16 @@ public class NcssGridController extends AbstractNcssController {
       throw new BindException(validationResult);
 
     String datasetPath = getDatasetPath(req);
-    try (CoverageCollection gcd = TdsRequestedDataset.getCoverageCollection(req, res, datasetPath)) {
-      if (gcd == null)
-        return;
+    CoverageCollection gcd = TdsRequestedDataset.getCoverageCollection(req, res, datasetPath);
+    if (gcd == null)
+      return null;
 
+    boolean closeDataset = true;
+    try {
       Formatter errs = new Formatter();
       if (!params.intersectsTime(gcd.getCalendarDateRange(), errs)) {
         handleValidationErrorMessage(res, HttpServletResponse.SC_BAD_REQUEST, errs.toString());
-        return;
+        return null;
       }
 
       // throws exception if grid names not valid
@@ -96,27 +102,75 @@ public class NcssGridController extends AbstractNcssController {
 
       if (params.hasLatLonPoint()) {
         handleRequestGridAsPoint(res, params, datasetPath, gcd);
+      } else if (params.isAsync()) {
+        NcssJobManager.Job job = makeGridJob(req, params, datasetPath, gcd);
+        closeDataset = false; // the job closes it
+        return submitJob(res, job, j -> writeGridJob(j, params, gcd), gcd);
       } else {
         handleRequestGrid(res, params, datasetPath, gcd);
       }
+      return null;
+
+    } finally {
+      if (closeDataset)
+        gcd.close();
     }
   }
 
   private void handleRequestGrid(HttpServletResponse res, NcssGridParamsBean params, String datasetPath,
-      CoverageCollection gcd) throws IOException, NcssException, InvalidRangeException {
+      CoverageCollection gcd) throws Exception {
     // Supported formats are netcdf3 (default) and netcdf4ext/ netcdf4 (turned on in TdsInit if C library is present)
     SupportedFormat sf = SupportedOperation.GRID_REQUEST.getSupportedFormat(params.getAccept());
     NetcdfFileFormat version = getNetcdfFileFormat(sf);
+    checkVertCoord(gcd, params);
+
+    // identical requests on an unchanged dataset share the same file
+    NcssResultCache.Result cached = null;
+    File netcdfResult;
+    String cacheKey = ncssResultCache.makeKey(datasetPath, params, version);
+    if (cacheKey != null) {
+      cached = ncssResultCache.get(cacheKey, datasetPath,
+          file -> makeCFNetcdfFile(gcd, file.getPath(), params, version));
+      netcdfResult = cached.getFile();
+    } else {
+      String responseFile = getResponseFileName();
+      netcdfResult = makeCFNetcdfFile(gcd, responseFile, params, version);
+    }
+
+    try {
+      // Headers...
+      HttpHeaders httpHeaders = makeGridHeaders(datasetPath, sf);
+
+      // set content length
+      httpHeaders.set(Constants.Content_Length, Constants.getContentLengthValue(netcdfResult));
+
+      setResponseHeaders(res, httpHeaders);
+
+      IO.copyFileB(netcdfResult, res.getOutputStream(), 60000);
+      res.flushBuffer();
+      res.getOutputStream().close();
+      res.setStatus(HttpServletResponse.SC_OK);
+
+    } finally {
+      if (cached != null) {
+        cached.close(); // the cache deletes the file when it is evicted
+      }
+    }
+
+    if (cached == null) {
+      netcdfResult.delete();
+    }
+  }
 
-    // all variables have to have the same vertical axis if a vertical coordinate was set. LOOK can we relax this ?
+  // all variables have to have the same vertical axis if a vertical coordinate was set. LOOK can we relax this ?
+  private void checkVertCoord(CoverageCollection gcd, NcssGridParamsBean params) throws NcssException {
     if (params.getVertCoord() != null && !checkVarsHaveSameVertAxis(gcd, params)) {
       throw new NcssException("The variables requested: " + params.getVar() + " have different vertical levels. "
           + "Grid requests with vertCoord must have variables with same vertical levels.");
     }
+  }
 
-    String responseFile = getResponseFileName();
-    File netcdfResult = makeCFNetcdfFile(gcd, responseFile, params, version);
-
+  private static HttpHeaders makeGridHeaders(String datasetPath, SupportedFormat sf) {
     // filename download attachment
     String suffix = sf.getFileSuffix();
     int pos = datasetPath.lastIndexOf("/");
@@ -125,22 +179,41 @@ public class NcssGridController extends AbstractNcssController {
       filename += suffix;
     }
 
-    // Headers...
     HttpHeaders httpHeaders = new HttpHeaders();
     httpHeaders.set(ContentType.HEADER, sf.getMimeType());
     httpHeaders.set(Constants.Content_Disposition, Constants.setContentDispositionValue(filename));
+    return httpHeaders;
+  }
 
-    // set content length
-    httpHeaders.set(Constants.Content_Length, Constants.getContentLengthValue(netcdfResult));
-
-    setResponseHeaders(res, httpHeaders);
+  ///////////////////////////////////////////////////////////
+  // async
 
-    IO.copyFileB(netcdfResult, res.getOutputStream(), 60000);
-    res.flushBuffer();
-    res.getOutputStream().close();
-    res.setStatus(HttpServletResponse.SC_OK);
+  // validate the request, and fail now if it is too large, before it gets queued
+  private NcssJobManager.Job makeGridJob(HttpServletRequest req, NcssGridParamsBean params, String datasetPath,
+      CoverageCollection gcd) throws IOException, NcssException, InvalidRangeException {
+    SupportedFormat sf = SupportedOperation.GRID_REQUEST.getSupportedFormat(params.getAccept());
+    NetcdfFileFormat version = getNetcdfFileFormat(sf);
+    checkVertCoord(gcd, params);
+
+    Optional<Long> size =
+        CFGridCoverageWriter.getSizeOfOutput(gcd, params.getVar(), params.makeSubset(gcd), params.isAddLatLon());
+    if (!size.isPresent())
+      throw new NcssException(size.getErrorMessage());
+    long maxFileDownloadSize = getMaxFileDownloadSize(version);
+    if (maxFileDownloadSize > 0 && size.get() > maxFileDownloadSize)
+      throw new RequestTooLargeException(size.get(), maxFileDownloadSize);
+
+    // only create the job file once the request is known to be good
+    NcssJobManager.Job job = jobManager.makeJob(NcssJobController.getUser(req), datasetPath, sf.getFileSuffix());
+    job.setHttpHeaders(makeGridHeaders(datasetPath, sf));
+    job.setEstimatedSize(size.get());
+    return job;
+  }
 
-    netcdfResult.delete();
+  private void writeGridJob(NcssJobManager.Job job, NcssGridParamsBean params, CoverageCollection gcd)
+      throws IOException, NcssException, InvalidRangeException {
+    SupportedFormat sf = SupportedOperation.GRID_REQUEST.getSupportedFormat(params.getAccept());
+    makeCFNetcdfFile(gcd, job.getFile().getPath(), params, getNetcdfFileFormat(sf));
   }
 
   private static NetcdfFileFormat getNetcdfFileFormat(SupportedFormat supportedFormat) {
@@ -162,14 +235,13 @@ public class NcssGridController extends AbstractNcssController {
     SubsetParams subset = params.makeSubset(gcd);
 
     // Test maxFileDownloadSize
-    long maxFileDownloadSize = ThreddsConfig.getBytes("NetcdfSubsetService.maxFileDownloadSize", -1L);
-    if (version.isNetcdf4Format()) {
-      maxFileDownloadSize *= ESTIMATED_COMPRESSION_RATE;
-    }
+    long maxFileDownloadSize = getMaxFileDownloadSize(version);
 
     // write the file
     // default chunking - let user control at some point
-    NetcdfFormatWriter.Builder writerb = NetcdfFormatWriter.builder().setLocation(responseFilename).setFormat(version);
+    // CFGridCoverageWriter writes every variable in full, so dont prefill the netcdf-3 file: that would write it twice
+    NetcdfFormatWriter.Builder writerb =
+        NetcdfFormatWriter.builder().setLocation(responseFilename).setFormat(version).setFill(false);
     CFGridCoverageWriter.Result result =
         CFGridCoverageWriter.write(gcd, params.getVar(), subset, params.isAddLatLon(), writerb, maxFileDownloadSize);
 
@@ -184,6 +256,14 @@ public class NcssGridController extends AbstractNcssController {
     return new File(responseFilename);
   }
 
+  private static long getMaxFileDownloadSize(NetcdfFileFormat version) {
+    long maxFileDownloadSize = ThreddsConfig.getBytes("NetcdfSubsetService.maxFileDownloadSize", -1L);
+    if (version.isNetcdf4Format()) {
+      maxFileDownloadSize *= ESTIMATED_COMPRESSION_RATE;
+    }
+    return maxFileDownloadSize;
+  }
+
   private String getResponseFileName() {
     File ncFile = ncssDiskCache.getDiskCache().createUniqueFile("ncss-grid", ".nc");
 
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package thredds.server.ncss.controller;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.servlet.ModelAndView;
+import thredds.server.config.TdsContext;
+import thredds.servlet.ServletUtil;
+import thredds.util.ContentType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Status, download and cancel of asynchronous NCSS requests.
+ * Jobs are submitted by adding async=true to a grid or point request.
+ *
+ * @see NcssJobManager
+ */
+@Controller
+@RequestMapping("/ncss/job")
+public class NcssJobController {
+
+  @Autowired
+  private TdsContext tdsContext;
+
+  @Autowired
+  private NcssJobManager jobManager;
+
+  /** Identifies the client, for the per user job limit and for access to the job */
+  static String getUser(HttpServletRequest req) {
+    return (req.getRemoteUser() != null) ? req.getRemoteUser() : req.getRemoteAddr();
+  }
+
+  @RequestMapping(value = "{id}", method = RequestMethod.GET)
+  public ModelAndView getStatus(@PathVariable String id, HttpServletRequest req, HttpServletResponse res)
+      throws IOException {
+    NcssJobManager.Job job = jobManager.getJob(id, getUser(req));
+    if (job == null) {
+      res.sendError(HttpServletResponse.SC_NOT_FOUND, "No such NCSS job");
+      return null;
+    }
+    return new ModelAndView("threddsXmlView", "Document", makeStatusDocument(job, tdsContext.getContextPath()));
+  }
+
+  @RequestMapping(value = "{id}/result", method = RequestMethod.GET)
+  public void getResult(@PathVariable String id, HttpServletRequest req, HttpServletResponse res) throws IOException {
+    NcssJobManager.Job job = jobManager.getJob(id, getUser(req));
+    if (job == null) {
+      res.sendError(HttpServletResponse.SC_NOT_FOUND, "No such NCSS job");
+      return;
+    }
+    if (job.getState() != NcssJobManager.State.done) {
+      res.sendError(HttpServletResponse.SC_CONFLICT, "NCSS job is " + job.getState());
+      return;
+    }
+
+    String contentType = null;
+    HttpHeaders httpHeaders = job.getHttpHeaders();
+    if (httpHeaders != null) {
+      contentType = httpHeaders.getFirst(ContentType.HEADER);
+      for (String key : httpHeaders.keySet()) {
+        // ServletUtil sets the length for the requested range
+        if (!key.equalsIgnoreCase(ContentType.HEADER) && !key.equalsIgnoreCase(HttpHeaders.CONTENT_LENGTH))
+          res.setHeader(key, httpHeaders.getFirst(key));
+      }
+    }
+    // handles Range requests, so a client can resume the download
+    ServletUtil.returnFile(req, res, job.getFile(), contentType);
+  }
+
+  @RequestMapping(value = "{id}", method = RequestMethod.DELETE)
+  public void cancel(@PathVariable String id, HttpServletRequest req, HttpServletResponse res) throws IOException {
+    if (!jobManager.cancel(id, getUser(req))) {
+      res.sendError(HttpServletResponse.SC_NOT_FOUND, "No such NCSS job");
+      return;
+    }
+    res.setStatus(HttpServletResponse.SC_NO_CONTENT);
+  }
+
+  static String getStatusUrl(NcssJobManager.Job job, String contextPath) {
+    return contextPath + "/ncss/job/" + job.getId();
+  }
+
+  static Document makeStatusDocument(NcssJobManager.Job job, String contextPath) {
+    Element root = new Element("ncssJob");
+    root.setAttribute("id", job.getId());
+    root.setAttribute("status", job.getState().toString());
+    root.setAttribute("dataset", job.getDatasetPath());
+    root.setAttribute("bytesWritten", Long.toString(job.getBytesWritten()));
+    if (job.getEstimatedSize() >= 0)
+      root.setAttribute("estimatedSize", Long.toString(job.getEstimatedSize()));
+    root.setAttribute("href", getStatusUrl(job, contextPath));
+    if (job.getState() == NcssJobManager.State.done)
+      root.setAttribute("result", getStatusUrl(job, contextPath) + "/result");
+    if (job.getErrorMessage() != null)
+      root.addContent(new Element("error").setText(job.getErrorMessage()));
+    return new Document(root);
+  }
+
+  /**
+   * Response to a job submission: 202 Accepted, with the status document.
+   */
+  static ModelAndView makeSubmitResponse(NcssJobManager.Job job, String contextPath, HttpServletResponse res) {
+    res.setStatus(HttpServletResponse.SC_ACCEPTED);
+    res.setHeader(HttpHeaders.LOCATION, getStatusUrl(job, contextPath));
+    return new ModelAndView("threddsXmlView", "Document", makeStatusDocument(job, contextPath));
+  }
+}
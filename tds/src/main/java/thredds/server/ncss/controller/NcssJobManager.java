@@ -0,0 +1,337 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package thredds.server.ncss.controller;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import thredds.server.config.ThreddsConfig;
+import thredds.server.exception.ServiceBusyException;
+import thredds.servlet.ServletUtil;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs asynchronous NCSS requests.
+ * <p>
+ * A client adds async=true to a grid or point data request. The request is validated and then queued on a bounded
+ * worker pool, and the client gets back a job id. The job writes its result into the NcssDiskCache directory, the
+ * client polls the job status and downloads the result when it is done. Finished jobs are forgotten after the
+ * NcssDiskCache maxAge, when their files get scoured.
+ * <p>
+ * The queue depth and the number of unfinished jobs per user are limited; over the limits a request is rejected with
+ * 503 Service Unavailable.
+ */
+@Component
+public class NcssJobManager implements DisposableBean {
+  static private final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(NcssJobManager.class);
+
+  private static final int RETRY_AFTER_SECS = 30;
+
+  public enum State {
+    queued, running, done, failed, cancelled
+  }
+
+  /** Does the work of a job, writing the result into job.getFile(). */
+  public interface JobWork {
+    void run(Job job) throws Exception;
+  }
+
+  public static class Job {
+    private final String id;
+    private final String user;
+    private final String datasetPath;
+    private final File file;
+    private final long submitted = System.currentTimeMillis();
+    private volatile long finished;
+    private volatile State state = State.queued;
+    private volatile String errorMessage;
+    private volatile long estimatedSize = -1;
+    private volatile HttpHeaders httpHeaders;
+    private Future<?> future;
+    private Closeable resource;
+
+    Job(String id, String user, String datasetPath, File file) {
+      this.id = id;
+      this.user = user;
+      this.datasetPath = datasetPath;
+      this.file = file;
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    public String getUser() {
+      return user;
+    }
+
+    public String getDatasetPath() {
+      return datasetPath;
+    }
+
+    public File getFile() {
+      return file;
+    }
+
+    public State getState() {
+      return state;
+    }
+
+    public boolean isFinished() {
+      return state == State.done || state == State.failed || state == State.cancelled;
+    }
+
+    public String getErrorMessage() {
+      return errorMessage;
+    }
+
+    public long getBytesWritten() {
+      return file.exists() ? file.length() : 0;
+    }
+
+    /** Estimated size of the result in bytes, or -1 if not known */
+    public long getEstimatedSize() {
+      return estimatedSize;
+    }
+
+    public void setEstimatedSize(long estimatedSize) {
+      this.estimatedSize = estimatedSize;
+    }
+
+    /** Headers (content type, disposition) to send with the result */
+    public HttpHeaders getHttpHeaders() {
+      return httpHeaders;
+    }
+
+    public void setHttpHeaders(HttpHeaders httpHeaders) {
+      this.httpHeaders = httpHeaders;
+    }
+
+    public long getSubmitted() {
+      return submitted;
+    }
+  }
+
+  @Autowired
+  private NcssDiskCache ncssDiskCache;
+
+  private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+  private ThreadPoolExecutor executor;
+  private int maxJobsPerUser;
+  private long maxAgeMsecs;
+
+  public NcssJobManager() {}
+
+  // for unit tests
+  NcssJobManager(NcssDiskCache ncssDiskCache, int nthreads, int queueSize, int maxJobsPerUser) {
+    this.ncssDiskCache = ncssDiskCache;
+    init(nthreads, queueSize, maxJobsPerUser);
+  }
+
+  /** Called from TdsInit, after NcssDiskCache.init() */
+  public void init() {
+    int nthreads = ThreddsConfig.getInt("NetcdfSubsetService.asyncThreads", 2);
+    int queueSize = ThreddsConfig.getInt("NetcdfSubsetService.asyncQueueSize", 20);
+    int maxJobsPerUser = ThreddsConfig.getInt("NetcdfSubsetService.asyncMaxJobsPerUser", 2);
+    init(nthreads, queueSize, maxJobsPerUser);
+    ServletUtil.logServerStartup.info(getClass().getName() + " Ncss.async threads= " + nthreads + " queueSize = "
+        + queueSize + " maxJobsPerUser = " + maxJobsPerUser);
+  }
+
+  private synchronized void init(int nthreads, int queueSize, int maxJobsPerUser) {
+    if (executor != null)
+      executor.shutdownNow();
+    nthreads = Math.max(nthreads, 1);
+    executor = new ThreadPoolExecutor(nthreads, nthreads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(Math.max(queueSize, 1)), r -> {
+          Thread t = new Thread(r, "NcssJob");
+          t.setDaemon(true);
+          return t;
+        });
+    this.maxJobsPerUser = Math.max(maxJobsPerUser, 1);
+    int maxAgeSecs = ncssDiskCache.getMaxAgeSecs();
+    this.maxAgeMsecs = 1000L * (maxAgeSecs > 0 ? maxAgeSecs : 30 * 60);
+  }
+
+  @Override
+  public synchronized void destroy() {
+    if (executor != null)
+      executor.shutdownNow();
+  }
+
+  /**
+   * Make a new job, to be submitted. The result file is created in the NcssDiskCache directory.
+   *
+   * @param user identifies the client, for the per user limit
+   * @param datasetPath dataset request path
+   * @param suffix of the result file
+   * @return the job
+   * @throws ServiceBusyException if the user already has too many unfinished jobs
+   */
+  public Job makeJob(String user, String datasetPath, String suffix) {
+    expire();
+    if (countActiveJobs(user) >= maxJobsPerUser)
+      throw new ServiceBusyException("Too many unfinished NCSS jobs for " + user, RETRY_AFTER_SECS);
+
+    File file = ncssDiskCache.getDiskCache().createUniqueFile("ncss-job", suffix);
+    if (file == null)
+      throw new IllegalStateException("NCSS misconfigured cache");
+    return new Job(UUID.randomUUID().toString(), user, datasetPath, file);
+  }
+
+  /**
+   * Queue the job. The job owns the resource from now on, and closes it when done, cancelled or rejected.
+   *
+   * @param job from makeJob()
+   * @param work does the work
+   * @param resource used by the work, eg the open dataset, may be null
+   * @throws ServiceBusyException if the queue is full, or the user has too many unfinished jobs
+   */
+  public synchronized void submit(Job job, JobWork work, Closeable resource) {
+    job.resource = resource;
+    if (countActiveJobs(job.user) >= maxJobsPerUser) {
+      job.file.delete();
+      closeResource(job);
+      throw new ServiceBusyException("Too many unfinished NCSS jobs for " + job.user, RETRY_AFTER_SECS);
+    }
+
+    jobs.put(job.id, job);
+    try {
+      job.future = executor.submit(() -> runJob(job, work));
+    } catch (RejectedExecutionException e) {
+      jobs.remove(job.id);
+      job.file.delete();
+      closeResource(job);
+      throw new ServiceBusyException("NCSS job queue is full", RETRY_AFTER_SECS);
+    }
+  }
+
+  private static void closeResource(Job job) {
+    Closeable resource;
+    synchronized (job) {
+      resource = job.resource;
+      job.resource = null;
+    }
+    if (resource != null) {
+      try {
+        resource.close();
+      } catch (IOException e) {
+        logger.warn("NCSS job {} close failed", job.id, e);
+      }
+    }
+  }
+
+  private void runJob(Job job, JobWork work) {
+    synchronized (this) {
+      if (job.state == State.cancelled)
+        return;
+      job.state = State.running;
+    }
+    try {
+      work.run(job);
+      synchronized (this) {
+        if (job.state != State.cancelled)
+          job.state = State.done;
+      }
+    } catch (Throwable t) {
+      synchronized (this) {
+        if (job.state != State.cancelled) {
+          job.errorMessage = t.getMessage() != null ? t.getMessage() : t.getClass().getName();
+          job.state = State.failed;
+          logger.warn("NCSS job {} on {} failed", job.id, job.datasetPath, t);
+        }
+      }
+      job.file.delete();
+    } finally {
+      job.finished = System.currentTimeMillis();
+      closeResource(job);
+    }
+  }
+
+  /**
+   * Find a job.
+   *
+   * @param id job id
+   * @param user the job is only visible to the user that submitted it
+   * @return the job or null if not found
+   */
+  public Job getJob(String id, String user) {
+    expire();
+    Job job = jobs.get(id);
+    return (job != null && job.user.equals(user)) ? job : null;
+  }
+
+  /**
+   * Cancel a job, and delete its result.
+   *
+   * @return false if no such job
+   */
+  public boolean cancel(String id, String user) {
+    Job job = getJob(id, user);
+    if (job == null)
+      return false;
+    synchronized (this) {
+      if (!job.isFinished()) {
+        boolean wasQueued = (job.state == State.queued);
+        job.state = State.cancelled;
+        job.finished = System.currentTimeMillis();
+        if (job.future != null)
+          job.future.cancel(true);
+        if (wasQueued)
+          closeResource(job); // never going to run
+      }
+    }
+    jobs.remove(id);
+    job.file.delete();
+    return true;
+  }
+
+  private synchronized int countActiveJobs(String user) {
+    int count = 0;
+    for (Job job : jobs.values()) {
+      if (job.user.equals(user) && !job.isFinished())
+        count++;
+    }
+    return count;
+  }
+
+  // forget finished jobs whose result has been scoured
+  private void expire() {
+    long now = System.currentTimeMillis();
+    for (Job job : new ArrayList<>(jobs.values())) {
+      if (job.isFinished() && now - job.finished > maxAgeMsecs) {
+        jobs.remove(job.id);
+        job.file.delete();
+      }
+    }
+  }
+
+  public void showJobs(Formatter f) {
+    f.format("%nNcss Jobs:%n");
+    if (executor != null)
+      f.format("active=%d queued=%d completed=%d%n", executor.getActiveCount(), executor.getQueue().size(),
+          executor.getCompletedTaskCount());
+    List<Job> list = new ArrayList<>(jobs.values());
+    for (Job job : list) {
+      f.format("  %s %s %s %s bytes=%d estimate=%d%n", job.id, job.user, job.datasetPath, job.state,
+          job.getBytesWritten(), job.estimatedSize);
+    }
+  }
+}
@@ -44,7 +44,10 @@ import ucar.unidata.geoloc.LatLonRect;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Formatter;
 import java.util.HashMap;
 import java.util.List;
@@ -85,20 +88,22 @@ public class NcssPointController extends AbstractNcssController {
   }
 
   @RequestMapping("**")
-  public void handleRequest(HttpServletRequest req, HttpServletResponse res, @Valid NcssPointParamsBean params,
+  public ModelAndView handleRequest(HttpServletRequest req, HttpServletResponse res, @Valid NcssPointParamsBean params,
       BindingResult validationResult) throws Exception {
     if (validationResult.hasErrors())
       throw new BindException(validationResult);
 
     String datasetPath = getDatasetPath(req);
-    try (FeatureDatasetPoint fdp = TdsRequestedDataset.getPointDataset(req, res, datasetPath)) {
-      if (fdp == null)
-        return;
+    FeatureDatasetPoint fdp = TdsRequestedDataset.getPointDataset(req, res, datasetPath);
+    if (fdp == null)
+      return null;
 
+    boolean closeDataset = true;
+    try {
       Formatter errs = new Formatter();
       if (!params.intersectsTime(fdp.getCalendarDateRange(), errs)) {
         handleValidationErrorMessage(res, HttpServletResponse.SC_BAD_REQUEST, errs.toString());
-        return;
+        return null;
       }
 
       FeatureType ft = fdp.getFeatureType();
@@ -109,10 +114,31 @@ public class NcssPointController extends AbstractNcssController {
       SubsetParams ncssParams = params.makeSubset();
       SupportedFormat format = getSupportedOperation(fdp).getSupportedFormat(params.getAccept());
 
+      if (params.isAsync()) {
+        NcssJobManager.Job job =
+            jobManager.makeJob(NcssJobController.getUser(req), datasetPath, format.getFileSuffix());
+        closeDataset = false; // the job closes it
+        return submitJob(res, job, j -> writePointJob(j, fdp, ncssParams, format, datasetPath), fdp);
+      }
+
       DsgSubsetWriter pds =
           DsgSubsetWriterFactory.newInstance(fdp, ncssParams, ncssDiskCache, res.getOutputStream(), format);
       setResponseHeaders(res, pds.getHttpHeaders(datasetPath, format.isStream()));
       pds.respond(res, fdp, datasetPath, ncssParams, format);
+      return null;
+
+    } finally {
+      if (closeDataset)
+        fdp.close();
+    }
+  }
+
+  private void writePointJob(NcssJobManager.Job job, FeatureDatasetPoint fdp, SubsetParams ncssParams,
+      SupportedFormat format, String datasetPath) throws Exception {
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(job.getFile()))) {
+      DsgSubsetWriter pds = DsgSubsetWriterFactory.newInstance(fdp, ncssParams, ncssDiskCache, out, format);
+      job.setHttpHeaders(pds.getHttpHeaders(datasetPath, false));
+      pds.write();
     }
   }
 
@@ -0,0 +1,380 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package thredds.server.ncss.controller;
+
+import com.google.common.hash.Hashing;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import thredds.core.CollectionUpdateInvalidator;
+import thredds.core.DataRootManager;
+import thredds.core.TdsRequestedDataset;
+import thredds.server.config.ThreddsConfig;
+import thredds.server.ncss.params.NcssGridParamsBean;
+import thredds.servlet.ServletUtil;
+import ucar.nc2.write.NetcdfFileFormat;
+import java.io.Closeable;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Cache of NCSS grid subset files, so that identical requests on an unchanged dataset share one file.
+ * <p>
+ * The key is the dataset path, the dataset version (its lastModified, or for feature collections the collection
+ * update events) and the canonicalized request parameters. Concurrent identical requests are single-flighted:
+ * the first one writes the file, the others wait for it and then stream the same file.
+ * <p>
+ * Files live in a "results" subdirectory of the NcssDiskCache directory, and are evicted least recently used first
+ * when the total size goes over NetcdfSubsetService.resultCacheMaxSize. A file is only deleted once the last
+ * response streaming it is done.
+ */
+@Component
+public class NcssResultCache implements InitializingBean {
+  static private final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(NcssResultCache.class);
+
+  /** Writes the subset into the given file. */
+  public interface ResultWriter {
+    void write(File file) throws Exception;
+  }
+
+  private static class Entry {
+    final String key;
+    final String datasetPath;
+    final File file;
+    final CompletableFuture<File> future = new CompletableFuture<>();
+    long size;
+    int readers;
+    boolean removed;
+
+    Entry(String key, String datasetPath, File file) {
+      this.key = key;
+      this.datasetPath = datasetPath;
+      this.file = file;
+    }
+  }
+
+  /** A cached file, which stays on disk until closed. */
+  public final class Result implements Closeable {
+    private final Entry entry;
+    private boolean closed;
+
+    private Result(Entry entry) {
+      this.entry = entry;
+    }
+
+    public File getFile() {
+      return entry.file;
+    }
+
+    @Override
+    public void close() {
+      if (!closed) {
+        closed = true;
+        release(entry);
+      }
+    }
+  }
+
+  @Autowired
+  private NcssDiskCache ncssDiskCache;
+
+  @Autowired
+  private CollectionUpdateInvalidator collectionUpdateInvalidator;
+
+  @Autowired
+  private DataRootManager dataRootManager;
+
+  private File resultDir;
+  private long maxSize; // bytes, 0 = off
+
+  // access order = LRU
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long totalSize;
+  private long hits, misses, waits, evictions;
+
+  public NcssResultCache() {}
+
+  // for unit tests
+  NcssResultCache(File resultDir, long maxSize) {
+    init(resultDir, maxSize);
+  }
+
+  @Override
+  public void afterPropertiesSet() {
+    collectionUpdateInvalidator.addListener(this::invalidatePath);
+  }
+
+  /** Called from TdsInit, after NcssDiskCache.init() */
+  public void init() {
+    long maxSize = ThreddsConfig.getBytes("NetcdfSubsetService.resultCacheMaxSize", 0L);
+    init(new File(ncssDiskCache.getDiskCache().getRootDirectory(), "results"), maxSize);
+    ServletUtil.logServerStartup
+        .info(getClass().getName() + " Ncss.resultCache= " + resultDir + " maxSize = " + this.maxSize);
+  }
+
+  private synchronized void init(File resultDir, long maxSize) {
+    this.resultDir = resultDir;
+    this.maxSize = Math.max(maxSize, 0);
+    if (this.maxSize == 0)
+      return;
+
+    if (!resultDir.exists() && !resultDir.mkdirs()) {
+      logger.error("Cant make result cache directory {}, turning result cache off", resultDir);
+      this.maxSize = 0;
+      return;
+    }
+    // the index is in memory, so files left from a previous run are orphans
+    File[] files = resultDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (file.isFile() && !file.delete())
+          logger.warn("Cant delete {}", file);
+      }
+    }
+  }
+
+  public boolean isEnabled() {
+    return maxSize > 0;
+  }
+
+  /**
+   * Make the cache key for a grid subset request.
+   *
+   * @param datasetPath the dataset request path
+   * @param params the request parameters, after the requested variables have been checked
+   * @param format the output file format
+   * @return the key, or null if the result should not be cached
+   */
+  public String makeKey(String datasetPath, NcssGridParamsBean params, NetcdfFileFormat format) {
+    if (!isEnabled())
+      return null;
+
+    // relative to the time of the request
+    if (isRelativeToPresent(params))
+      return null;
+
+    // the dataset version: either the file lastModified, or the collection update events
+    long lastModified = TdsRequestedDataset.getLastModified(datasetPath);
+    if (lastModified <= 0 && !isFeatureCollection(datasetPath))
+      return null;
+
+    return makeKey(datasetPath, lastModified, params, format);
+  }
+
+  /**
+   * Make the cache key for a grid subset request of this version of the dataset.
+   * The requested variables are written in the same order to the file whatever the order in the request,
+   * so they are sorted, and duplicates removed.
+   */
+  static String makeKey(String datasetPath, long lastModified, NcssGridParamsBean params, NetcdfFileFormat format) {
+    Set<String> vars = (params.getVar() == null) ? null : new TreeSet<>(params.getVar());
+    Formatter f = new Formatter();
+    f.format("%s|%d|%s|var=%s", datasetPath, lastModified, format, vars);
+    f.format("|time=%s,%s,%s,%s,%s", params.getTime(), params.getTime_start(), params.getTime_end(),
+        params.getTime_duration(), params.getTemporal());
+    f.format("|ll=%s,%s,%s,%s", params.getNorth(), params.getSouth(), params.getEast(), params.getWest());
+    f.format("|xy=%s,%s,%s,%s", params.getMinx(), params.getMiny(), params.getMaxx(), params.getMaxy());
+    f.format("|stride=%s,%s|addLatLon=%s", params.getHorizStride(), params.getTimeStride(), params.isAddLatLon());
+    f.format("|vert=%s|ens=%s|runtime=%s|timeOffset=%s", params.getVertCoord(), params.getEnsCoord(),
+        params.getRuntime(), params.getTimeOffset());
+    return Hashing.sha256().hashString(f.toString(), StandardCharsets.UTF_8).toString();
+  }
+
+  /**
+   * Any time or runtime "present", a time_duration without start or end, or no time at all, which makeSubset() turns
+   * into the time nearest to now, depends on when the request is made.
+   */
+  static boolean isRelativeToPresent(NcssGridParamsBean params) {
+    for (String time : new String[] {params.getTime(), params.getTime_start(), params.getTime_end(),
+        params.getRuntime()}) {
+      if (time != null && time.toLowerCase(Locale.ROOT).contains("present"))
+        return true;
+    }
+    if (params.getTime_start() == null && params.getTime_end() == null)
+      return params.getTime_duration() != null || (params.getTime() == null && !params.isAllTimes());
+    return false;
+  }
+
+  private boolean isFeatureCollection(String datasetPath) {
+    if (dataRootManager == null)
+      return false;
+    DataRootManager.DataRootMatch match = dataRootManager.findDataRootMatch(datasetPath);
+    return match != null && match.dataRoot.getFeatureCollection() != null;
+  }
+
+  /**
+   * Get the file for this key, writing it if needed. If another request is already writing it, wait for it.
+   * The caller must close the Result when done streaming the file.
+   *
+   * @param key from makeKey()
+   * @param datasetPath the dataset request path
+   * @param writer writes the file on a miss
+   * @return the cached file
+   * @throws Exception whatever the writer threw, also to the requests that were waiting on it
+   */
+  public Result get(String key, String datasetPath, ResultWriter writer) throws Exception {
+    Entry entry;
+    boolean isWriter = false;
+    synchronized (this) {
+      entry = entries.get(key);
+      if (entry != null && entry.future.isDone() && !entry.file.exists()) {
+        // scoured from under us
+        remove(entry);
+        entry = null;
+      }
+      if (entry == null) {
+        entry = new Entry(key, datasetPath, new File(resultDir, key + ".nc"));
+        entries.put(key, entry);
+        isWriter = true;
+        misses++;
+      } else if (entry.future.isDone()) {
+        hits++;
+      } else {
+        waits++;
+      }
+      entry.readers++;
+    }
+
+    if (isWriter) {
+      try {
+        writer.write(entry.file);
+      } catch (Throwable t) {
+        synchronized (this) {
+          remove(entry);
+          entry.future.completeExceptionally(t);
+        }
+        release(entry);
+        throw asException(t);
+      }
+      synchronized (this) {
+        entry.size = entry.file.length();
+        if (!entry.removed) {
+          totalSize += entry.size;
+        }
+        entry.future.complete(entry.file);
+        evict();
+      }
+
+    } else {
+      try {
+        entry.future.get();
+      } catch (ExecutionException e) {
+        release(entry);
+        throw asException(e.getCause());
+      } catch (InterruptedException e) {
+        release(entry);
+        Thread.currentThread().interrupt();
+        throw e;
+      }
+      // keep the DiskCache2 scour away from files in use
+      entry.file.setLastModified(System.currentTimeMillis());
+    }
+
+    return new Result(entry);
+  }
+
+  private static Exception asException(Throwable t) {
+    if (t instanceof Error)
+      throw (Error) t;
+    return (Exception) t;
+  }
+
+  private synchronized void release(Entry entry) {
+    entry.readers--;
+    if (entry.removed && entry.readers == 0)
+      delete(entry);
+  }
+
+  // must hold lock. the file is deleted when the last reader is done
+  private void remove(Entry entry) {
+    if (entry.removed)
+      return;
+    if (entries.get(entry.key) == entry)
+      entries.remove(entry.key);
+    entry.removed = true;
+    if (entry.future.isDone())
+      totalSize -= entry.size;
+    if (entry.readers == 0)
+      delete(entry);
+  }
+
+  // must hold lock
+  private void evict() {
+    List<Entry> victims = new ArrayList<>();
+    long size = totalSize;
+    Iterator<Entry> iter = entries.values().iterator();
+    while (size > maxSize && iter.hasNext()) {
+      Entry entry = iter.next();
+      if (!entry.future.isDone())
+        continue; // being written
+      victims.add(entry);
+      size -= entry.size;
+    }
+    for (Entry entry : victims) {
+      remove(entry);
+      evictions++;
+    }
+  }
+
+  private void delete(Entry entry) {
+    if (entry.file.exists() && !entry.file.delete())
+      logger.warn("Cant delete {}", entry.file);
+  }
+
+  public synchronized void clearCache() {
+    for (Entry entry : new ArrayList<>(entries.values())) {
+      remove(entry);
+    }
+  }
+
+  public synchronized void showCache(Formatter f) {
+    f.format("%nNcss Result Cache:%n");
+    if (!isEnabled()) {
+      f.format("turned off%n");
+      return;
+    }
+    f.format("dir=%s, maxSize=%d, totalSize=%d, numberOfEntries=%d%n", resultDir, maxSize, totalSize, entries.size());
+    f.format("hits=%d, misses=%d, waits=%d, evictionCount=%d%n", hits, misses, waits, evictions);
+    f.format("entries:%n");
+    for (Entry entry : entries.values()) {
+      f.format("  %s %s size=%d readers=%d%n", entry.key, entry.datasetPath, entry.size, entry.readers);
+    }
+  }
+
+  // package private for testing
+  synchronized long getTotalSize() {
+    return totalSize;
+  }
+
+  synchronized int getNumberOfEntries() {
+    return entries.size();
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////////////////
+  // feature collection updates
+
+  /** Remove all results for datasets at or under this path */
+  synchronized void invalidatePath(String path) {
+    for (Entry entry : new ArrayList<>(entries.values())) {
+      if (CollectionUpdateInvalidator.isAtOrUnder(entry.datasetPath, path)) {
+        remove(entry);
+        if (logger.isDebugEnabled())
+          logger.debug("invalidate {}", entry.datasetPath);
+      }
+    }
+  }
+
+}
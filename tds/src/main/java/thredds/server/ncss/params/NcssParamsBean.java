@@ -62,6 +62,8 @@ public class NcssParamsBean {
 
   protected Double longitude;
 
+  protected boolean async; // run as a job, see NcssJobManager
+
   public NcssParamsBean() {}
 
   public NcssParamsBean(NcssParamsBean from) {
@@ -78,6 +80,7 @@ public class NcssParamsBean {
     this.west = from.west;
     this.latitude = from.latitude;
     this.longitude = from.longitude;
+    this.async = from.async;
     this.date = from.date;
     this.dateRange = from.dateRange;
   }
@@ -200,6 +203,14 @@ public class NcssParamsBean {
     this.longitude = longitude;
   }
 
+  public boolean isAsync() {
+    return async;
+  }
+
+  public void setAsync(boolean async) {
+    this.async = async;
+  }
+
   public boolean hasLatLonPoint() {
     return latitude != null && longitude != null;
   }
@@ -9,7 +9,7 @@ import thredds.server.ncss.exception.NcssException;
 import thredds.server.ncss.view.dsg.DsgSubsetWriter;
 import ucar.ma2.StructureData;
 import ucar.nc2.ft.*;
-import ucar.nc2.ft.point.PointIteratorFiltered;
+import ucar.nc2.ft.point.PointIteratorAbstract;
 import ucar.nc2.ft.point.StationFeature;
 import ucar.nc2.ft.point.StationPointFeature;
 import ucar.nc2.ft.point.StationTimeSeriesFeatureImpl;
@@ -18,6 +18,8 @@ import ucar.nc2.time.CalendarDate;
 import ucar.nc2.time.CalendarDateRange;
 import javax.annotation.Nonnull;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -103,66 +105,91 @@ public abstract class AbstractStationSubsetWriter extends DsgSubsetWriter {
     return count;
   }
 
+  /**
+   * The observations of a station that are closest to the wanted time.
+   * The station time series is read in a single pass the first time it is iterated, keeping only the observations
+   * at the closest time seen so far; later iterations (eg one per variable in WaterML) replay those.
+   */
   protected static class ClosestTimeStationFeatureSubset extends StationTimeSeriesFeatureImpl {
     private final StationTimeSeriesFeature stationFeat;
-    private CalendarDate closestTime;
+    private final CalendarDate wantedTime;
+    private List<PointFeature> closest; // lazy
 
     protected ClosestTimeStationFeatureSubset(StationTimeSeriesFeatureImpl stationFeat, CalendarDate wantedTime)
         throws IOException {
       super(stationFeat, stationFeat.getTimeUnit(), stationFeat.getAltUnits(), -1);
       this.stationFeat = stationFeat;
+      this.wantedTime = wantedTime;
       CalendarDateRange cdr = stationFeat.getCalendarDateRange();
       if (cdr != null) {
         getInfo();
         info.setCalendarDateRange(cdr);
       }
+    }
+
+    @Nonnull
+    @Override
+    public StructureData getFeatureData() throws IOException {
+      return stationFeat.getFeatureData();
+    }
+
+    private synchronized List<PointFeature> getClosest() throws IOException {
+      if (closest == null) {
+        closest = findClosest(stationFeat, wantedTime);
+      }
+      return closest;
+    }
 
+    // All the PointFeatures at the time closest to wantedTime, in iteration order.
+    static List<PointFeature> findClosest(PointFeatureCollection pointFeatCol, CalendarDate wantedTime)
+        throws IOException {
+      List<PointFeature> result = new ArrayList<>();
       long smallestDiff = Long.MAX_VALUE;
+      long closestTime = 0;
 
-      stationFeat.resetIteration();
-      try {
-        while (stationFeat.hasNext()) {
-          PointFeature pointFeat = stationFeat.next();
-          CalendarDate obsTime = pointFeat.getObservationTimeAsCalendarDate();
-          long diff = Math.abs(obsTime.getMillis() - wantedTime.getMillis());
+      try (PointFeatureIterator iter = pointFeatCol.getPointFeatureIterator()) {
+        while (iter.hasNext()) {
+          PointFeature pointFeat = iter.next();
+          long obsTime = pointFeat.getObservationTimeAsCalendarDate().getMillis();
+          long diff = Math.abs(obsTime - wantedTime.getMillis());
 
           if (diff < smallestDiff) {
+            result.clear();
+            result.add(pointFeat);
             closestTime = obsTime;
             smallestDiff = diff;
+          } else if (diff == smallestDiff && obsTime == closestTime) {
+            result.add(pointFeat);
           }
         }
-      } finally {
-        stationFeat.finish();
       }
+      return result;
     }
 
-    @Nonnull
     @Override
-    public StructureData getFeatureData() throws IOException {
-      return stationFeat.getFeatureData();
+    public PointFeatureIterator getPointFeatureIterator() throws IOException {
+      return new ListPointFeatureIterator(getClosest());
     }
+  }
 
-    // Filter out PointFeatures that don't have the wantedTime.
-    protected static class TimeFilter implements PointFeatureIterator.Filter {
-      private final CalendarDate wantedTime;
+  private static class ListPointFeatureIterator extends PointIteratorAbstract {
+    private final Iterator<PointFeature> iter;
 
-      protected TimeFilter(CalendarDate wantedTime) {
-        this.wantedTime = wantedTime;
-      }
+    ListPointFeatureIterator(List<PointFeature> pointFeats) {
+      this.iter = pointFeats.iterator();
+    }
 
-      @Override
-      public boolean filter(PointFeature pointFeature) {
-        return pointFeature.getObservationTimeAsCalendarDate().equals(wantedTime);
-      }
+    @Override
+    public boolean hasNext() {
+      return iter.hasNext();
     }
 
     @Override
-    public PointFeatureIterator getPointFeatureIterator() throws IOException {
-      if (closestTime == null) {
-        return stationFeat.getPointFeatureIterator();
-      } else {
-        return new PointIteratorFiltered(stationFeat.getPointFeatureIterator(), new TimeFilter(closestTime));
-      }
+    public PointFeature next() {
+      return iter.next();
     }
+
+    @Override
+    public void close() {}
   }
 }
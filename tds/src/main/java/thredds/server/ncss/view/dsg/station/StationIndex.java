@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package thredds.server.ncss.view.dsg.station;
+
+import ucar.nc2.ft.point.StationFeature;
+import ucar.unidata.geoloc.LatLonPoint;
+import ucar.unidata.geoloc.LatLonPoints;
+import ucar.unidata.geoloc.LatLonRect;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A k-d tree over the stations of a StationFeatureCollection, for nearest station and bounding box queries.
+ * Immutable once built, so it can be shared by concurrent requests.
+ * Longitudes are kept normalized to [-180, 180]; queries account for the dateline.
+ * The index only keeps the station locations, so that caching it does not keep the collection alive:
+ * queries are passed the same list of stations the index was built from.
+ */
+class StationIndex {
+  private final int nstations;
+  private final double[] lats; // by position in stations
+  private final double[] lons; // by position in stations, normalized
+  private final int[] tree; // positions in stations, in k-d tree layout: the node of [lo, hi) is at (lo + hi) / 2
+
+  StationIndex(List<StationFeature> stations) {
+    int n = stations.size();
+    this.nstations = n;
+    this.lats = new double[n];
+    this.lons = new double[n];
+
+    List<Integer> located = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      StationFeature s = stations.get(i);
+      lats[i] = s.getLatitude();
+      lons[i] = LatLonPoints.lonNormal(s.getLongitude());
+      if (!Double.isNaN(lats[i]) && !Double.isNaN(lons[i]))
+        located.add(i); // stations without a location are never found by location
+    }
+
+    Integer[] nodes = located.toArray(new Integer[0]);
+    build(nodes, 0, nodes.length, 0);
+    this.tree = new int[nodes.length];
+    for (int i = 0; i < nodes.length; i++)
+      tree[i] = nodes[i];
+  }
+
+  private void build(Integer[] nodes, int lo, int hi, int depth) {
+    if (hi - lo <= 1)
+      return;
+    double[] coords = (depth % 2 == 0) ? lats : lons;
+    Arrays.sort(nodes, lo, hi, Comparator.comparingDouble((Integer i) -> coords[i]).thenComparingInt(i -> i));
+    int mid = (lo + hi) >>> 1;
+    build(nodes, lo, mid, depth + 1);
+    build(nodes, mid + 1, hi, depth + 1);
+  }
+
+  /**
+   * Find the station closest to the specified point, with the metric of StationWriterUtils.findClosest().
+   * Equally close stations are resolved in collection order.
+   *
+   * @param stations the stations the index was built from
+   * @return the closest station, or null if there are no stations
+   */
+  StationFeature findClosest(List<StationFeature> stations, LatLonPoint pt) {
+    checkStations(stations);
+    if (stations.isEmpty())
+      return null;
+    if (tree.length == 0)
+      return stations.get(0);
+
+    double lat = pt.getLatitude();
+    double lon = LatLonPoints.lonNormal(pt.getLongitude());
+    Nearest nearest = new Nearest(lat, Math.cos(Math.toRadians(lat)));
+    // station longitudes are compared within +/- 180 of the point, so also look across the dateline
+    for (double shift : new double[] {0, 360, -360}) {
+      nearest.lon = lon + shift;
+      nearest(nearest, 0, tree.length, 0);
+    }
+    return stations.get(nearest.best);
+  }
+
+  private static class Nearest {
+    final double lat;
+    final double cos;
+    double lon;
+    int best = -1;
+    double bestDist = Double.MAX_VALUE;
+
+    Nearest(double lat, double cos) {
+      this.lat = lat;
+      this.cos = cos;
+    }
+  }
+
+  private void nearest(Nearest q, int lo, int hi, int depth) {
+    if (lo >= hi)
+      return;
+    int mid = (lo + hi) >>> 1;
+    int s = tree[mid];
+
+    double dy = q.lat - lats[s];
+    double dx = q.cos * (q.lon - lons[s]);
+    double dist = dy * dy + dx * dx;
+    if (dist < q.bestDist || (dist == q.bestDist && s < q.best)) {
+      q.bestDist = dist;
+      q.best = s;
+    }
+
+    double diff = (depth % 2 == 0) ? dy : dx;
+    boolean left = diff < 0;
+    nearest(q, left ? lo : mid + 1, left ? mid : hi, depth + 1);
+    if (diff * diff <= q.bestDist)
+      nearest(q, left ? mid + 1 : lo, left ? hi : mid, depth + 1);
+  }
+
+  /**
+   * Find the stations inside the bounding box.
+   *
+   * @param stations the stations the index was built from
+   * @return the stations, in collection order
+   */
+  List<StationFeature> getStations(List<StationFeature> stations, LatLonRect llrect) {
+    checkStations(stations);
+    double latMin = llrect.getLatMin();
+    double latMax = llrect.getLatMax();
+    double lonMin = LatLonPoints.lonNormal(llrect.getLonMin());
+    double lonMax = lonMin + llrect.getWidth();
+
+    List<Integer> found = new ArrayList<>();
+    if (llrect.getWidth() >= 360) {
+      range(latMin, latMax, -180, 180, 0, tree.length, 0, found);
+    } else {
+      range(latMin, latMax, lonMin, Math.min(lonMax, 180), 0, tree.length, 0, found);
+      if (lonMax > 180)
+        range(latMin, latMax, -180, lonMax - 360, 0, tree.length, 0, found);
+    }
+    Collections.sort(found);
+
+    // the range search is on normalized longitudes, let LatLonRect have the final word
+    List<StationFeature> result = new ArrayList<>(found.size());
+    int last = -1;
+    for (int s : found) {
+      if (s == last)
+        continue; // on both sides of the dateline
+      last = s;
+      StationFeature station = stations.get(s);
+      if (llrect.contains(LatLonPoint.create(station.getLatitude(), station.getLongitude())))
+        result.add(station);
+    }
+    return result;
+  }
+
+  private void checkStations(List<StationFeature> stations) {
+    if (stations.size() != nstations)
+      throw new IllegalArgumentException("index was built for " + nstations + " stations, not " + stations.size());
+  }
+
+  private static final double EPS = 1.0e-9;
+
+  private void range(double latMin, double latMax, double lonMin, double lonMax, int lo, int hi, int depth,
+      List<Integer> found) {
+    if (lo >= hi)
+      return;
+    int mid = (lo + hi) >>> 1;
+    int s = tree[mid];
+
+    double lat = lats[s];
+    double lon = lons[s];
+    if (lat >= latMin - EPS && lat <= latMax + EPS && lon >= lonMin - EPS && lon <= lonMax + EPS)
+      found.add(s);
+
+    double value = (depth % 2 == 0) ? lat : lon;
+    double min = (depth % 2 == 0) ? latMin : lonMin;
+    double max = (depth % 2 == 0) ? latMax : lonMax;
+    if (min - EPS <= value)
+      range(latMin, latMax, lonMin, lonMax, lo, mid, depth + 1, found);
+    if (max + EPS >= value)
+      range(latMin, latMax, lonMin, lonMax, mid + 1, hi, depth + 1, found);
+  }
+}
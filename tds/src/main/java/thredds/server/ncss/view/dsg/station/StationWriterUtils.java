@@ -1,20 +1,57 @@
 package thredds.server.ncss.view.dsg.station;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import ucar.nc2.ft.StationFeatureCollection;
 import ucar.nc2.ft.point.StationFeature;
 import ucar.nc2.ft2.coverage.SubsetParams;
 import ucar.unidata.geoloc.LatLonPoint;
 import ucar.unidata.geoloc.LatLonPoints;
 import ucar.unidata.geoloc.LatLonRect;
-import ucar.unidata.geoloc.Station;
 
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class StationWriterUtils {
 
-  // LOOK could do better : "all", and maybe HashSet<Name>
+  // Collections are often opened for a single request, then an index would cost more than a linear search.
+  // So the index is built the second time a collection is seen, and reused as long as the collection is in use, eg
+  // a feature collection, or a point dataset shared by the DatasetManager.
+  // The entry refers to neither the collection nor its stations, so that weakKeys() lets it go with the collection.
+  private static final Cache<StationFeatureCollection, IndexEntry> indexCache =
+      CacheBuilder.newBuilder().weakKeys().maximumSize(100).expireAfterAccess(1, TimeUnit.HOURS).build();
+
+  private static class IndexEntry {
+    private final WeakReference<List<StationFeature>> stations; // the stations seen, which change when updated
+    private final StationIndex index; // null when first seen
+
+    IndexEntry(List<StationFeature> stations, StationIndex index) {
+      this.stations = new WeakReference<>(stations);
+      this.index = index;
+    }
+  }
+
+  /**
+   * Get the index of the stations of the collection.
+   *
+   * @return the index, or null if the collection has not been seen before
+   */
+  static StationIndex getStationIndex(StationFeatureCollection stationFeatCol, List<StationFeature> stations) {
+    IndexEntry entry = indexCache.getIfPresent(stationFeatCol);
+    if (entry != null && entry.stations.get() == stations) {
+      if (entry.index != null)
+        return entry.index;
+      entry = new IndexEntry(stations, new StationIndex(stations));
+    } else {
+      entry = new IndexEntry(stations, null);
+    }
+    indexCache.put(stationFeatCol, entry);
+    return entry.index;
+  }
+
   public static List<StationFeature> getStationsInSubset(StationFeatureCollection stationFeatCol,
       SubsetParams ncssParams) throws IOException {
     List<StationFeature> wantedStations;
@@ -26,17 +63,23 @@ public class StationWriterUtils {
       if (stnNames.get(0).equals("all")) {
         wantedStations = stationFeatCol.getStationFeatures();
       } else {
-        wantedStations = stationFeatCol.getStationFeatures(stnNames);
+        wantedStations = stationFeatCol.getStationFeatures(stnNames); // hashed by name
       }
     } else if (ncssParams.getLatLonBoundingBox() != null) {
       LatLonRect llrect = ncssParams.getLatLonBoundingBox();
-      wantedStations = stationFeatCol.getStationFeatures(llrect);
+      List<StationFeature> stations = stationFeatCol.getStationFeatures();
+      StationIndex index = getStationIndex(stationFeatCol, stations);
+      wantedStations =
+          (index != null) ? index.getStations(stations, llrect) : stationFeatCol.getStationFeatures(llrect);
 
     } else if (ncssParams.getLatLonPoint() != null) {
-      Station closestStation = findClosestStation(stationFeatCol, ncssParams.getLatLonPoint());
-      List<String> stnList = new ArrayList<>();
-      stnList.add(closestStation.getName());
-      wantedStations = stationFeatCol.getStationFeatures(stnList);
+      List<StationFeature> stations = stationFeatCol.getStationFeatures();
+      StationIndex index = getStationIndex(stationFeatCol, stations);
+      LatLonPoint pt = ncssParams.getLatLonPoint();
+      StationFeature closestStation = (index != null) ? index.findClosest(stations, pt) : findClosest(stations, pt);
+      wantedStations = new ArrayList<>();
+      if (closestStation != null)
+        wantedStations.add(closestStation);
 
     } else { // Want all.
       wantedStations = stationFeatCol.getStationFeatures();
@@ -46,32 +89,25 @@ public class StationWriterUtils {
   }
 
   /**
-   * @param stationFeatCol
-   * @param pt
-   * @return
-   * @throws IOException
-   */
-  /**
-   * Find the station closest to the specified point.
+   * Find the station closest to the specified point, by looking at all of them.
    * The metric is (lat-lat0)**2 + (cos(lat0)*(lon-lon0))**2
    *
-   * @param stationFeatCol - StationFeatureCollection to be searched
-   * @param pt - target LatLonPoint
-   * @return The Station in stationFeatCol closest to pt
+   * @param stations the stations to be searched
+   * @param pt target LatLonPoint
+   * @return the first of the closest stations, or null if there are none
    */
-  public static Station findClosestStation(StationFeatureCollection stationFeatCol, LatLonPoint pt) {
+  static StationFeature findClosest(List<StationFeature> stations, LatLonPoint pt) {
     double lat = pt.getLatitude();
     double lon = pt.getLongitude();
     double cos = Math.cos(Math.toRadians(lat));
-    List<StationFeature> stations = stationFeatCol.getStationFeatures();
-    Station min_station = stations.get(0);
+    StationFeature min_station = stations.isEmpty() ? null : stations.get(0);
     double min_dist = Double.MAX_VALUE;
 
-    for (Station s : stations) {
+    for (StationFeature s : stations) {
       double lat1 = s.getLatitude();
       double lon1 = LatLonPoints.lonNormal(s.getLongitude(), lon);
-      double dy = Math.toRadians(lat - lat1);
-      double dx = cos * Math.toRadians(lon - lon1);
+      double dy = lat - lat1;
+      double dx = cos * (lon - lon1);
       double dist = dy * dy + dx * dx;
       if (dist < min_dist) {
         min_dist = dist;
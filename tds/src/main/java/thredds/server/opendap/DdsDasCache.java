@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 1998-2018 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package thredds.server.opendap;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import thredds.core.CollectionUpdateInvalidator;
+import ucar.nc2.NetcdfFile;
+import java.lang.ref.WeakReference;
+import java.util.Formatter;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keep a cache of NcDDS / NcDAS templates, keyed by the request path.
+ * GuardedDatasetCacheAndClone clones from the template, instead of walking the whole NetcdfFile on every request.
+ *
+ * A template holds references to the Variables of the NetcdfFile it was built from, so it is only valid for that
+ * same NetcdfFile object (as handed back by the NetcdfFile cache), and only as long as its lastModified is unchanged.
+ * Feature collection updates (see CollectionUpdateInvalidator) invalidate all templates under the collection path.
+ * <p>
+ * Through those Variables a template keeps its NetcdfFile reachable after the NetcdfFile cache has closed it. So
+ * templates that have not been used for the scour period of the NetcdfFile cache, after which their file has been
+ * closed, are dropped, and templates are softly held, so that they are dropped when memory is short.
+ */
+@Component
+public class DdsDasCache implements InitializingBean {
+  static private final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(DdsDasCache.class);
+
+  static private final int DEFAULT_MAX_SIZE = 100;
+
+  static class Template {
+    final NcDDS dds;
+    final NcDAS das;
+    final WeakReference<NetcdfFile> ncfile; // only to compare with
+    final long lastModified;
+
+    Template(String reqPath, NetcdfFile ncfile) {
+      this.ncfile = new WeakReference<>(ncfile);
+      this.lastModified = ncfile.getLastModified();
+      this.dds = new NcDDS(reqPath, ncfile);
+      this.das = new NcDAS(ncfile);
+    }
+
+    boolean isValidFor(NetcdfFile ncfile) {
+      return this.ncfile.get() == ncfile && this.lastModified == ncfile.getLastModified();
+    }
+  }
+
+  static private final int DEFAULT_EXPIRE_SECS = 12 * 60;
+
+  private static Cache<String, Template> cache = makeCache(DEFAULT_MAX_SIZE, DEFAULT_EXPIRE_SECS);
+  private static int maxSize = DEFAULT_MAX_SIZE;
+  private static int expireSecs = DEFAULT_EXPIRE_SECS;
+  // counted here, since a template found in the cache may not be valid for the file
+  private static final LongAdder hits = new LongAdder();
+  private static final LongAdder misses = new LongAdder();
+
+  private static Cache<String, Template> makeCache(int maxSize, int expireSecs) {
+    return CacheBuilder.newBuilder().maximumSize(maxSize).expireAfterAccess(expireSecs, TimeUnit.SECONDS).softValues()
+        .recordStats().build();
+  }
+
+  /**
+   * Set the maximum number of templates to keep. Called from OpendapServlet.init(), from threddsConfig.
+   *
+   * @param size max number of entries; 0 turns off the cache.
+   * @param expireSecs drop templates not used for this long, the scour period of the NetcdfFile cache
+   */
+  public static synchronized void init(int size, int expireSecs) {
+    if (size == maxSize && expireSecs == DdsDasCache.expireSecs)
+      return;
+    maxSize = Math.max(size, 0);
+    DdsDasCache.expireSecs = Math.max(expireSecs, 1);
+    cache = makeCache(maxSize, DdsDasCache.expireSecs);
+  }
+
+  /**
+   * Get the DDS/DAS template for this dataset, making it if needed.
+   * Do not modify the template, clone it.
+   *
+   * @param reqPath the request path, used as the cache key, and as the name of the DDS
+   * @param ncfile the open dataset
+   * @return template, never null
+   */
+  static Template getTemplate(String reqPath, NetcdfFile ncfile) {
+    if (maxSize == 0)
+      return new Template(reqPath, ncfile);
+
+    Template template = cache.getIfPresent(reqPath);
+    if (template != null && template.isValidFor(ncfile)) {
+      hits.increment();
+      return template;
+    }
+    misses.increment();
+
+    // miss, or a different / modified NetcdfFile: replace it
+    template = new Template(reqPath, ncfile);
+    cache.put(reqPath, template);
+    return template;
+  }
+
+  public static void showCache(Formatter f) {
+    CacheStats stats = cache.stats();
+    f.format("%nOpendap DDS/DAS Cache:%n");
+    f.format("maxSize=%d, numberOfEntries=%d, ", maxSize, cache.size());
+    long nhits = hits.sum();
+    long nmisses = misses.sum();
+    f.format("expireSecs=%d, hits=%d, misses=%d, hitRate=%.3f, evictionCount=%d%n", expireSecs, nhits, nmisses,
+        (nhits + nmisses) == 0 ? 0.0 : (double) nhits / (nhits + nmisses), stats.evictionCount());
+    f.format("entries:%n");
+    for (Map.Entry<String, Template> entry : cache.asMap().entrySet()) {
+      f.format("  %s%n", entry.getKey());
+    }
+  }
+
+  public static void resetCache() {
+    cache.invalidateAll();
+    hits.reset();
+    misses.reset();
+  }
+
+  // package private for testing
+  static long getNumberOfEntries() {
+    return cache.size();
+  }
+
+  // package private for testing
+  static long getHitCount() {
+    return hits.sum();
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////////////////
+  // feature collection updates
+
+  @Autowired
+  private CollectionUpdateInvalidator collectionUpdateInvalidator;
+
+  @Override
+  public void afterPropertiesSet() {
+    collectionUpdateInvalidator.addListener(DdsDasCache::invalidatePath);
+  }
+
+  /** Invalidate all templates at or under this path */
+  static void invalidatePath(String path) {
+    for (String reqPath : cache.asMap().keySet()) {
+      if (CollectionUpdateInvalidator.isAtOrUnder(reqPath, path)) {
+        cache.invalidate(reqPath);
+        if (logger.isDebugEnabled())
+          logger.debug("invalidate {}", reqPath);
+      }
+    }
+  }
+
+}
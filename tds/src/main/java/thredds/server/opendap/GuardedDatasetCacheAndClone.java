@@ -10,7 +10,7 @@ import javax.annotation.concurrent.Immutable;
 import java.io.IOException;
 
 /**
- * This creates and caches DDS, DAS, then clones them when they are needed.
+ * This gets the DDS, DAS templates from the DdsDasCache, then clones them when they are needed.
  */
 @Immutable
 public class GuardedDatasetCacheAndClone implements GuardedDataset {
@@ -36,8 +36,9 @@ public class GuardedDatasetCacheAndClone implements GuardedDataset {
 
   public GuardedDatasetCacheAndClone(String reqPath, NetcdfFile ncfile, boolean hasSession) {
     this.org_file = ncfile;
-    this.dds = new NcDDS(reqPath, ncfile);
-    this.das = new NcDAS(ncfile);
+    DdsDasCache.Template template = DdsDasCache.getTemplate(reqPath, ncfile);
+    this.dds = template.dds;
+    this.das = template.das;
     this.hasSession = hasSession;
   }
 
@@ -10,7 +10,9 @@ import ucar.ma2.*;
 import ucar.nc2.*;
 import opendap.servers.*;
 import opendap.dap.BaseType;
+import opendap.dap.BaseTypePrimitiveVector;
 import opendap.dap.DArrayDimension;
+import opendap.dap.NoSuchVariableException;
 import opendap.dap.PrimitiveVector;
 import java.io.IOException;
 import java.io.EOFException;
@@ -29,6 +31,23 @@ public class NcSDArray extends SDArray implements HasNetcdfVariable {
   static private org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(NcSDArray.class);
 
   private static final boolean debug = false, debugRead = false;
+
+  // if > 0, serialize large arrays by reading and writing slabs of about this many bytes along the outer dimension
+  private static long streamSlabSize = 0;
+
+  /**
+   * Set the slab size used to stream large arrays in serialize(). Called from OpendapServlet.init().
+   *
+   * @param slabSize approximate size in bytes of each slab; 0 means read the whole array into memory first.
+   */
+  public static void setStreamSlabSize(long slabSize) {
+    streamSlabSize = Math.max(slabSize, 0);
+  }
+
+  public static boolean isStreaming() {
+    return streamSlabSize > 0;
+  }
+
   private Variable ncVar = null;
   // ignore protected BaseType elemType;
 
@@ -174,6 +193,82 @@ public class NcSDArray extends SDArray implements HasNetcdfVariable {
     setRead(true);
   }
 
+  /**
+   * Server-side serialization. If streaming is turned on and the constrained array is larger than the slab size,
+   * read and externalize it one slab at a time along the outer dimension, so that only one slab is held in memory.
+   * Otherwise, read the whole array and externalize it as usual.
+   */
+  @Override
+  public void serialize(String dataset, DataOutputStream sink, CEEvaluator ce, Object specialO)
+      throws NoSuchVariableException, DAP2ServerSideException, IOException {
+    if (streamSlabSize <= 0 || isRead() || !isStreamable()) {
+      super.serialize(dataset, sink, ce, specialO);
+      return;
+    }
+
+    try {
+      int n = numDimensions();
+      long rowSize = 1; // number of elements in one index of the outer dimension
+      for (int i = 1; i < n; i++)
+        rowSize *= getProjectedLength(i);
+      int outerLength = getProjectedLength(0);
+      long totalSize = rowSize * outerLength;
+
+      long rowBytes = rowSize * ncVar.getElementSize();
+      if (rowBytes * outerLength <= streamSlabSize) {
+        super.serialize(dataset, sink, ce, specialO);
+        return;
+      }
+
+      if (!ce.evalClauses(specialO))
+        return;
+
+      // keep the number of elements per slab a multiple of 4, so only the last slab of bytes gets padded
+      int rowsPerSlab = (int) Math.max(1, streamSlabSize / Math.max(rowBytes, 1));
+      rowsPerSlab = Math.max(4, rowsPerSlab - rowsPerSlab % 4);
+
+      // Because both XDR and OPeNDAP read the length, we must write it twice.
+      sink.writeInt((int) totalSize);
+      sink.writeInt((int) totalSize);
+
+      List<Range> ranges = new ArrayList<>(n);
+      ranges.add(null);
+      for (int i = 1; i < n; i++)
+        ranges.add(new Range(getStart(i), getStop(i), getStride(i)));
+
+      int start0 = getStart(0);
+      int stride0 = getStride(0);
+      PrimitiveVector pv = getPrimitiveVector();
+      for (int first = 0; first < outerLength; first += rowsPerSlab) {
+        int last = Math.min(first + rowsPerSlab, outerLength) - 1;
+        ranges.set(0, new Range(start0 + first * stride0, start0 + last * stride0, stride0));
+        setData(ncVar.read(ranges));
+        pv.externalize(sink);
+      }
+      if (debug)
+        System.out.printf("  NcSDArray streamed %s %d elems in slabs of %d rows%n", getEncodedName(), totalSize,
+            rowsPerSlab);
+
+    } catch (InvalidDimensionException e) {
+      log.error(getRequestedRange(), e);
+      throw new IllegalStateException("NcSDArray InvalidDimensionException=" + e.getMessage());
+
+    } catch (InvalidRangeException e) {
+      log.error(getRequestedRange(), e);
+      throw new IllegalStateException("NcSDArray InvalidRangeException=" + e.getMessage());
+    }
+  }
+
+  // only plain numeric arrays are streamed
+  private boolean isStreamable() {
+    DataType dt = ncVar.getDataType();
+    return numDimensions() > 0 && dt.isNumeric() && !(getPrimitiveVector() instanceof BaseTypePrimitiveVector);
+  }
+
+  private int getProjectedLength(int dim) throws InvalidDimensionException {
+    return (getStop(dim) - getStart(dim)) / getStride(dim) + 1;
+  }
+
   public void serialize(DataOutputStream sink, StructureData sdata, StructureMembers.Member m) throws IOException {
     long tstart = System.currentTimeMillis();
 
@@ -12,6 +12,7 @@ import opendap.servers.*;
 import opendap.dap.BaseType;
 import opendap.dap.NoSuchVariableException;
 import ucar.nc2.Variable;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 
@@ -49,4 +50,16 @@ public class NcSDGrid extends SDGrid {
     setRead(true);
     return (false);
   }
+
+  /**
+   * When streaming, let each member read its own data in its serialize(), so that a NcSDArray
+   * does not have the whole data array read into memory up front.
+   */
+  @Override
+  public void serialize(String dataset, DataOutputStream sink, CEEvaluator ce, Object specialO)
+      throws NoSuchVariableException, DAP2ServerSideException, IOException {
+    if (NcSDArray.isStreaming())
+      setRead(true);
+    super.serialize(dataset, sink, ce, specialO);
+  }
 }
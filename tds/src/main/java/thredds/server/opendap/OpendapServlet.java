@@ -63,6 +63,8 @@ public class OpendapServlet extends AbstractServlet implements InitializingBean
 
   private int ascLimit = 50;
   private int binLimit = 500;
+  private int ddsCacheMaxSize = 100;
+  private long streamSlabSize = 0;
 
   private boolean debugSession = false;
 
@@ -95,9 +97,15 @@ public class OpendapServlet extends AbstractServlet implements InitializingBean
       // something in the tds module ??
       this.binLimit = ThreddsConfig.getInt("Opendap.binLimit", binLimit);
 
+      this.ddsCacheMaxSize = ThreddsConfig.getInt("Opendap.ddsCacheMaxSize", ddsCacheMaxSize);
+      DdsDasCache.init(ddsCacheMaxSize, ThreddsConfig.getSeconds("NetcdfFileCache.scour", 12 * 60));
+      this.streamSlabSize = ThreddsConfig.getBytes("Opendap.streamSlabSize", streamSlabSize);
+      NcSDArray.setStreamSlabSize(streamSlabSize);
+
       this.odapVersionString = ThreddsConfig.get("Opendap.serverVersion", odapVersionString);
       logServerStartup.info(getClass().getName() + " version= " + odapVersionString + " ascLimit = " + ascLimit
-          + " binLimit = " + binLimit);
+          + " binLimit = " + binLimit + " ddsCacheMaxSize = " + ddsCacheMaxSize + " streamSlabSize = "
+          + streamSlabSize);
 
       if (tdsContext != null) // LOOK not set in mock testing enviro ?
       {
@@ -14,8 +14,6 @@ import ucar.unidata.geoloc.EarthLocation;
 import java.io.IOException;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.*;
 
 /**
@@ -32,16 +30,17 @@ public class RadarDataInventory {
   }
 
   private static final long updateIntervalMsec = 600000;
-  private EnumMap<DirType, Set<String>> items;
+  private volatile EnumMap<DirType, Set<String>> items; // replaced, never modified, once published
   private Path collectionDir;
   private DirectoryStructure structure;
   private String fileTimeFmt, dataFormat;
   private java.util.regex.Pattern fileTimeRegex;
   private boolean dirty;
-  private CalendarDate lastUpdate;
+  private volatile CalendarDate lastUpdate;
+  private RadarTimeIndex timeIndex;
   private int maxCrawlItems;
   private StationList stations;
-  private CalendarPeriod nearestWindow, rangeAdjustment;
+  private CalendarPeriod nearestWindow;
   private String name, description;
   private DateRange timeCoverage;
   private RadarServerConfig.RadarConfigEntry.GeoInfo geoCoverage;
@@ -138,73 +137,44 @@ public class RadarDataInventory {
       }
     }
 
-    private class DirectoryDateMatcher {
-      // Map a directory level to a date format
-      List<Integer> levels;
-      String fmt;
-
-      public DirectoryDateMatcher() {
-        levels = new ArrayList<>(4);
-        fmt = "";
-      }
-
-      public void add(int level, String value) {
-        levels.add(level);
-        fmt += value;
-      }
-
-      public SimpleDateFormat getFormat() {
-        SimpleDateFormat sdf = new SimpleDateFormat(fmt);
-        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
-        return sdf;
-      }
-
-      public Date getDate(Path path) {
-        Path relPath = base.relativize(path);
-        StringBuilder sb = new StringBuilder("");
-        for (Integer l : levels) {
-          sb.append(relPath.getName(l));
-        }
-        try {
-          SimpleDateFormat fmt = getFormat();
-          return fmt.parse(sb.toString());
-        } catch (ParseException e) {
-          return null;
-        }
-      }
-    }
-
     private Path base;
 
     private List<DirEntry> order;
-    private List<Integer> keyIndices;
 
     public DirectoryStructure(Path dir) {
       base = dir;
       order = new ArrayList<>();
-      keyIndices = new ArrayList<>();
+    }
+
+    Path getBase() {
+      return base;
+    }
+
+    int getNumberOfLevels() {
+      return order.size();
+    }
+
+    DirType getType(int level) {
+      return order.get(level).type;
+    }
+
+    String getFormat(int level) {
+      return order.get(level).fmt;
     }
 
     public void addSubDir(DirType type, String fmt) {
       if (type == DirType.Station || type == DirType.Variable) {
         maxCrawlDepth = order.size() + 1;
-        keyIndices.add(order.size());
       }
       order.add(new DirEntry(type, fmt));
     }
 
-    // Get a key for a path based on station/var
-    public String getKey(Path path) {
-      Path relPath = base.relativize(path);
-      StringBuilder sb = new StringBuilder("");
-      for (int ind : keyIndices) {
-        sb.append(relPath.getName(ind));
+    boolean hasType(DirType type) {
+      for (DirEntry entry : order) {
+        if (entry.type == type)
+          return true;
       }
-      return sb.toString();
-    }
-
-    public DirectoryDateMatcher matcher() {
-      return new DirectoryDateMatcher();
+      return false;
     }
   }
 
@@ -220,38 +190,26 @@ public class RadarDataInventory {
 
   public void addDateDir(String fmt) {
     structure.addSubDir(DirType.Date, fmt);
-    CalendarPeriod adjust = findRangeAdjustment(fmt);
-    if (rangeAdjustment == null) {
-      rangeAdjustment = adjust;
-    } else if (adjust.getConvertFactor(rangeAdjustment) > 1.0) {
-      rangeAdjustment = adjust;
-    }
     dirty = true;
   }
 
-  // Trying to figure out how much to fudge the date range to compensate for
-  // the fact that when parsing a path for a date, such as YYYYMMDD, we
-  // have essentially truncated a portion of the date. While parsing the
-  // start time the same way will give a wider start point, the end
-  // ends up going the wrong way. Adding this adjustment should correct for
-  // this.
-  private CalendarPeriod findRangeAdjustment(String fmtString) {
-    if (fmtString.contains("H") || fmtString.contains("k"))
-      return CalendarPeriod.of(1, CalendarPeriod.Field.Hour);
-    else if (fmtString.contains("d"))
-      return CalendarPeriod.of(1, CalendarPeriod.Field.Day);
-    else if (fmtString.contains("M"))
-      return CalendarPeriod.of(31, CalendarPeriod.Field.Day);
-    else
-      return CalendarPeriod.of(366, CalendarPeriod.Field.Day);
-  }
-
   public void addFileTime(String regex, String fmt) {
     fileTimeRegex = java.util.regex.Pattern.compile(regex);
     fileTimeFmt = fmt;
   }
 
-  private void findItems(Path start, int level) {
+  // the directory structure and file time must have been set
+  private synchronized RadarTimeIndex getTimeIndex() {
+    if (timeIndex == null)
+      timeIndex = new RadarTimeIndex(structure, fileTimeRegex, fileTimeFmt);
+    return timeIndex;
+  }
+
+  int getNumberOfIndexedFiles() {
+    return getTimeIndex().getNumberOfFiles();
+  }
+
+  private void findItems(EnumMap<DirType, Set<String>> items, Path start, int level) {
     // Add each entry from this level to the appropriate item box
     // and recurse
     if (level >= structure.order.size() || level >= structure.maxCrawlDepth)
@@ -278,7 +236,7 @@ public class RadarDataInventory {
           // if (entry.type == DirType.Station)
           // updateStations(item, p);
           if (crawled < maxCrawlItems) {
-            findItems(p, level + 1);
+            findItems(items, p, level + 1);
             ++crawled;
           }
         }
@@ -323,9 +281,11 @@ public class RadarDataInventory {
     }
   }
 
-  private void update() {
+  private synchronized void update() {
     if (dirty || timeToUpdate()) {
-      findItems(structure.base, 0);
+      EnumMap<DirType, Set<String>> newItems = new EnumMap<>(DirType.class);
+      findItems(newItems, structure.base, 0);
+      items = newItems;
       dirty = false;
       lastUpdate = CalendarDate.present();
     }
@@ -390,137 +350,44 @@ public class RadarDataInventory {
       addCriteria(DirType.Date, range);
     }
 
-    private CalendarDateRange rangeFromFormat(SimpleDateFormat fmt, CalendarDateRange range) {
-      if (range == null)
-        return null;
-      CalendarDate newStart = reparseDate(fmt, range.getStart());
-      CalendarDate newEnd = reparseDate(fmt, range.getEnd());
-      return CalendarDateRange.of(newStart, newEnd.add(rangeAdjustment));
-    }
-
-    private CalendarDate reparseDate(SimpleDateFormat fmt, CalendarDate d) {
-      try {
-        Date newDate = fmt.parse(fmt.format(d.toDate()));
-        return CalendarDate.of(newDate);
-      } catch (ParseException e) {
-        return d; // Better than just returning null
-      }
-    }
-
-    private boolean checkDate(CalendarDateRange range, CalendarDate d) {
-      // Range null indicates no time filter
-      return range == null || range.includes(d);
+    // the values of a criterion, or a single null if the directory structure has no such level
+    private List<Object> getCriteria(DirType type) {
+      List<Object> vals = q.get(type);
+      if (vals == null || !structure.hasType(type))
+        return Collections.singletonList(null);
+      return vals;
     }
 
     public Collection<QueryResultItem> results() {
-      List<Path> results = new ArrayList<>();
-      DirectoryStructure.DirectoryDateMatcher matcher = structure.matcher();
-      results.add(structure.base);
+      RadarTimeIndex index = getTimeIndex();
 
       // Grab the range of dates up front
       List<Object> dates = q.get(DirType.Date);
       CalendarDateRange range = (CalendarDateRange) dates.get(0);
 
       // If we're given a single point for time, signifying we are looking
-      // for the file nearest, turn it into a window for query purposes.
-      if (range != null && range.isPoint()) {
-        range = CalendarDateRange.of(range.getStart().subtract(nearestWindow), range.getEnd().add(nearestWindow));
-      }
-
-      // Loop over each entry in the directory structure and handle
-      // as appropriate. For stn/var we check if the desired item
-      // exists. For dates, add the items that are within the filter
-      for (int i = 0; i < structure.order.size(); ++i) {
-        DirectoryStructure.DirEntry entry = structure.order.get(i);
-        List<Path> newResults = new ArrayList<>();
-        List<Object> queryItem = q.get(entry.type);
-        switch (entry.type) {
-          // Loop over results and add subdirs that are within the
-          // appropriate range, which is found by successively adding
-          // the date format to a matcher string
-          case Date:
-            matcher.add(i, entry.fmt);
-            SimpleDateFormat fmt = matcher.getFormat();
-            CalendarDateRange dirRange = rangeFromFormat(fmt, range);
-
-            for (Path p : results)
-              try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(p)) {
-                for (Path sub : dirStream) {
-                  Date d = matcher.getDate(sub);
-                  if (d != null && checkDate(dirRange, CalendarDate.of(d)))
-                    newResults.add(sub);
-                }
-              } catch (IOException e) {
-                System.out.println("results(): Error reading dir: " + p.toString());
-              }
-            break;
-
-          // Add to results and prune non-existent
-          // Add station/var name to matcher string
-          case Station:
-          case Variable:
-          default:
-            for (Object next : queryItem) {
-              for (Path p : results) {
-                Path nextPath = p.resolve(next.toString());
-                if (Files.exists(nextPath))
-                  newResults.add(nextPath);
-              }
-            }
-        }
-        results = newResults;
-      }
-
-      // Now get the contents of the remaining directories
-      Collection<QueryResultItem> filteredFiles = new ArrayList<>();
-      for (Path p : results) {
-        try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(p)) {
-          for (Path f : dirStream) {
-            java.util.regex.Matcher regexMatcher = fileTimeRegex.matcher(f.toString());
-            if (!regexMatcher.find())
-              continue;
-
-            try {
-              SimpleDateFormat fmt = new SimpleDateFormat(fileTimeFmt);
-              fmt.setTimeZone(TimeZone.getTimeZone("UTC"));
-              Date d = fmt.parse(regexMatcher.group());
-              if (d != null) {
-                CalendarDate cd = CalendarDate.of(d);
-                if (checkDate(range, cd))
-                  filteredFiles.add(new QueryResultItem(f, cd));
-              }
-            } catch (ParseException e) {
-              // Ignore file
-            }
+      // for the file nearest, only search a window around it.
+      boolean nearest = range != null && range.isPoint();
+      long start = (range == null) ? Long.MIN_VALUE : range.getStart().getMillis();
+      long end = (range == null) ? Long.MAX_VALUE : range.getEnd().getMillis();
+      long window = nearest ? range.getStart().add(nearestWindow).getMillis() - start : 0;
+
+      // each station/variable is a binary search in the index
+      List<QueryResultItem> filteredFiles = new ArrayList<>();
+      for (Object station : getCriteria(DirType.Station)) {
+        for (Object var : getCriteria(DirType.Variable)) {
+          String key = RadarTimeIndex.makeKey(station == null ? null : station.toString(),
+              var == null ? null : var.toString());
+          if (nearest) {
+            RadarTimeIndex.Hit best = index.findNearest(key, start, window);
+            if (best != null)
+              filteredFiles.add(new QueryResultItem(best.file, CalendarDate.of(best.time)));
+          } else {
+            for (RadarTimeIndex.Hit hit : index.find(key, start, end))
+              filteredFiles.add(new QueryResultItem(hit.file, CalendarDate.of(hit.time)));
           }
-        } catch (IOException e) {
-          System.out.println("results(): Error getting files for: " + p.toString());
         }
       }
-
-      // If only looking for nearest, perform that reduction now
-      CalendarDateRange originalRange = (CalendarDateRange) dates.get(0);
-      if (originalRange != null && originalRange.isPoint()) {
-        Map<String, Long> offsets = new TreeMap<>();
-        Map<String, QueryResultItem> best = new TreeMap<>();
-
-        for (QueryResultItem it : filteredFiles) {
-          String key = structure.getKey(it.file);
-          Long offset = offsets.get(key);
-          if (offset == null)
-            offset = Long.MAX_VALUE;
-
-          long check = Math.abs(it.time.getDifferenceInMsecs(originalRange.getStart()));
-          if (check < offset) {
-            offsets.put(key, check);
-            best.put(key, it);
-          }
-        }
-
-        // Return the best matches in the map
-        filteredFiles = best.values();
-      }
-
       return filteredFiles;
     }
   }
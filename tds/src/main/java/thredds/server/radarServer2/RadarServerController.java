@@ -100,6 +100,7 @@ public class RadarServerController implements InitializingBean {
             }
             e.pw.printf("Collection Dir: %s%n", di.getCollectionDir().toString());
             e.pw.printf("Last Update: %s%n", di.getLastUpdate());
+            e.pw.printf("Indexed files: %d%n", di.getNumberOfIndexedFiles());
             e.pw.println("Dates:");
             for (String item : di.listItems(RadarDataInventory.DirType.Date)) {
               e.pw.println("\t" + item);
@@ -0,0 +1,468 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package thredds.server.radarServer2;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Index of the files of a radar collection, by time, for each station and variable, so that queries are binary
+ * searches instead of directory walks.
+ * <p>
+ * The files of each date directory are kept as one chunk, sorted by time. The whole collection is crawled once;
+ * after that, a refresh only rescans the newest date directories ("tail scan"), since radar archives grow at the end.
+ * Once a day a full crawl picks up deleted and back-filled directories; it only lists the directories whose
+ * modification time has changed. The index is immutable once published, and refreshes run on a background thread,
+ * so queries never wait for a refresh, except for the first crawl.
+ */
+class RadarTimeIndex {
+  private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RadarTimeIndex.class);
+
+  private static final long defaultTailIntervalMsec = 60 * 1000;
+  private static final long defaultFullIntervalMsec = 24 * 3600 * 1000;
+  private static final long mtimeSlackMsec = 2000; // file systems with coarse directory modification times
+
+  // at most one refresh of each index at a time, and idle indexes are not refreshed
+  private static final ExecutorService refresher = Executors.newCachedThreadPool(r -> {
+    Thread t = new Thread(r, "RadarTimeIndex");
+    t.setDaemon(true);
+    return t;
+  });
+
+  /** A file found by a query. */
+  static class Hit {
+    final long time;
+    final Path file;
+
+    private Hit(long time, Path file) {
+      this.time = time;
+      this.file = file;
+    }
+  }
+
+  /** The files of one date directory, sorted by time. Immutable. */
+  private static class Chunk {
+    final Path dir;
+    final long[] times;
+    final String[] names;
+    final long dirModified, scanned;
+
+    Chunk(Path dir, long[] times, String[] names, long dirModified, long scanned) {
+      this.dir = dir;
+      this.times = times;
+      this.names = names;
+      this.dirModified = dirModified;
+      this.scanned = scanned;
+    }
+
+    long first() {
+      return times[0];
+    }
+
+    long last() {
+      return times[times.length - 1];
+    }
+  }
+
+  /** All the files of one station and variable. Immutable. */
+  private static class Series {
+    final Chunk[] chunks; // sorted by first time
+    final long[] maxLast; // maxLast[i] = largest last time of chunks[0..i], so it can be binary searched
+
+    Series(List<Chunk> chunkList) {
+      chunks = chunkList.toArray(new Chunk[0]);
+      Arrays.sort(chunks, Comparator.comparingLong(Chunk::first));
+      maxLast = new long[chunks.length];
+      long max = Long.MIN_VALUE;
+      for (int i = 0; i < chunks.length; i++) {
+        max = Math.max(max, chunks[i].last());
+        maxLast[i] = max;
+      }
+    }
+
+    // files with start <= time <= end
+    void find(long start, long end, List<Hit> result) {
+      int first = lowerBound(maxLast, maxLast.length, start);
+      for (int i = first; i < chunks.length && chunks[i].first() <= end; i++) {
+        Chunk chunk = chunks[i];
+        for (int j = lowerBound(chunk.times, chunk.times.length, start); j < chunk.times.length; j++) {
+          if (chunk.times[j] > end)
+            break;
+          result.add(new Hit(chunk.times[j], chunk.dir.resolve(chunk.names[j])));
+        }
+      }
+    }
+
+    Chunk findChunk(Path dir) {
+      for (int i = chunks.length - 1; i >= 0; i--) { // tail scans look at the newest ones
+        if (chunks[i].dir.equals(dir))
+          return chunks[i];
+      }
+      return null;
+    }
+
+    int size() {
+      int n = 0;
+      for (Chunk chunk : chunks)
+        n += chunk.times.length;
+      return n;
+    }
+  }
+
+  // first index with a[i] >= value
+  private static int lowerBound(long[] a, int n, long value) {
+    int lo = 0, hi = n;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (a[mid] < value)
+        lo = mid + 1;
+      else
+        hi = mid;
+    }
+    return lo;
+  }
+
+  /** The index key of a station and variable; either may be null if not in the directory structure. */
+  static String makeKey(String station, String variable) {
+    return (station == null ? "" : station) + "/" + (variable == null ? "" : variable);
+  }
+
+  private final RadarDataInventory.DirectoryStructure structure;
+  private final Pattern fileTimeRegex;
+  private final String fileTimeFmt;
+
+  private final long tailIntervalMsec;
+  private final long fullIntervalMsec;
+
+  private volatile Map<String, Series> index; // never modified once published
+  final ReentrantLock refreshLock = new ReentrantLock(); // package private for testing
+  private final AtomicBoolean refreshQueued = new AtomicBoolean();
+  private volatile long lastRefresh;
+  // guarded by refreshLock
+  private long lastFull;
+  private Map<Path, Long> newestChild = new HashMap<>(); // for each parent of date directories, its newest date
+
+  RadarTimeIndex(RadarDataInventory.DirectoryStructure structure, Pattern fileTimeRegex, String fileTimeFmt) {
+    this(structure, fileTimeRegex, fileTimeFmt, defaultTailIntervalMsec, defaultFullIntervalMsec);
+  }
+
+  // package private for testing
+  RadarTimeIndex(RadarDataInventory.DirectoryStructure structure, Pattern fileTimeRegex, String fileTimeFmt,
+      long tailIntervalMsec, long fullIntervalMsec) {
+    this.structure = structure;
+    this.fileTimeRegex = fileTimeRegex;
+    this.fileTimeFmt = fileTimeFmt;
+    this.tailIntervalMsec = tailIntervalMsec;
+    this.fullIntervalMsec = fullIntervalMsec;
+  }
+
+  /**
+   * Find the files of a station and variable in a time range.
+   *
+   * @param key from makeKey()
+   * @param start msecs, inclusive
+   * @param end msecs, inclusive
+   * @return the files, sorted by time
+   */
+  List<Hit> find(String key, long start, long end) {
+    Series series = getIndex().get(key);
+    if (series == null)
+      return Collections.emptyList();
+    List<Hit> result = new ArrayList<>();
+    series.find(start, end, result);
+    result.sort(Comparator.comparingLong(h -> h.time)); // chunks may overlap a bit
+    return result;
+  }
+
+  /**
+   * Find the file of a station and variable nearest to a time.
+   *
+   * @param key from makeKey()
+   * @param time msecs
+   * @param window only look this many msecs around time
+   * @return the nearest file, or null if none in the window
+   */
+  Hit findNearest(String key, long time, long window) {
+    Hit best = null;
+    for (Hit hit : find(key, time - window, time + window)) {
+      if (best == null || Math.abs(hit.time - time) < Math.abs(best.time - time))
+        best = hit;
+    }
+    return best;
+  }
+
+  int getNumberOfFiles() {
+    Map<String, Series> current = index;
+    if (current == null)
+      return 0;
+    int n = 0;
+    for (Series series : current.values())
+      n += series.size();
+    return n;
+  }
+
+  private Map<String, Series> getIndex() {
+    Map<String, Series> current = index;
+    if (current == null) {
+      refreshLock.lock();
+      try {
+        if (index == null)
+          refresh(true);
+        return index;
+      } finally {
+        refreshLock.unlock();
+      }
+    }
+
+    if (System.currentTimeMillis() - lastRefresh > tailIntervalMsec && refreshQueued.compareAndSet(false, true)) {
+      try {
+        refresher.execute(this::refreshInBackground);
+      } catch (RejectedExecutionException e) {
+        refreshQueued.set(false);
+      }
+    }
+    return current;
+  }
+
+  private void refreshInBackground() {
+    refreshLock.lock();
+    try {
+      long now = System.currentTimeMillis();
+      if (now - lastRefresh > tailIntervalMsec)
+        refresh(now - lastFull > fullIntervalMsec);
+    } catch (Throwable t) {
+      logger.error("Error refreshing the index of {}", structure.getBase(), t);
+    } finally {
+      refreshQueued.set(false);
+      refreshLock.unlock();
+    }
+  }
+
+  // for unit tests
+  void refreshNow(boolean full) {
+    refreshLock.lock();
+    try {
+      refresh(full);
+    } finally {
+      refreshLock.unlock();
+    }
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+  // crawling, all under refreshLock
+
+  private class Crawl {
+    final boolean full;
+    final long now = System.currentTimeMillis();
+    final SimpleDateFormat fileFormat = makeFormat(fileTimeFmt);
+    final SimpleDateFormat[] dirFormats = new SimpleDateFormat[structure.getNumberOfLevels()];
+    final Map<String, Series> old;
+    final Map<String, Map<Path, Chunk>> oldChunks = new HashMap<>(); // full crawl only
+    final Map<String, Map<Path, Chunk>> found = new HashMap<>(); // null chunk = empty directory
+    final Map<Path, Long> newest;
+    int listed;
+
+    Crawl(boolean full, Map<String, Series> old) {
+      this.full = full;
+      this.old = (old == null) ? Collections.emptyMap() : old;
+      this.newest = full ? new HashMap<>() : newestChild;
+      StringBuilder fmt = new StringBuilder();
+      for (int level = 0; level < dirFormats.length; level++) {
+        if (structure.getType(level) == RadarDataInventory.DirType.Date) {
+          fmt.append(structure.getFormat(level));
+          dirFormats[level] = makeFormat(fmt.toString());
+        }
+      }
+    }
+
+    Chunk getOldChunk(String key, Path dir) {
+      Series series = old.get(key);
+      if (series == null)
+        return null;
+      if (!full)
+        return series.findChunk(dir);
+      Map<Path, Chunk> chunks = oldChunks.computeIfAbsent(key, k -> {
+        Map<Path, Chunk> map = new HashMap<>();
+        for (Chunk chunk : series.chunks)
+          map.put(chunk.dir, chunk);
+        return map;
+      });
+      return chunks.get(dir);
+    }
+  }
+
+  private static SimpleDateFormat makeFormat(String fmt) {
+    SimpleDateFormat sdf = new SimpleDateFormat(fmt);
+    sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+    return sdf;
+  }
+
+  private void refresh(boolean full) {
+    long start = System.currentTimeMillis();
+    Map<String, Series> old = index;
+    if (old == null)
+      full = true;
+    Crawl crawl = new Crawl(full, old);
+    crawl(crawl, structure.getBase(), 0, null, null, "");
+
+    Map<String, Series> result = new HashMap<>();
+    if (!full) {
+      result.putAll(old);
+    }
+    for (Map.Entry<String, Map<Path, Chunk>> entry : crawl.found.entrySet()) {
+      List<Chunk> chunks = new ArrayList<>();
+      Series oldSeries = result.get(entry.getKey());
+      if (!full && oldSeries != null) { // keep the directories that were not rescanned
+        for (Chunk chunk : oldSeries.chunks) {
+          if (!entry.getValue().containsKey(chunk.dir))
+            chunks.add(chunk);
+        }
+      }
+      for (Chunk chunk : entry.getValue().values()) {
+        if (chunk != null)
+          chunks.add(chunk);
+      }
+      if (chunks.isEmpty())
+        result.remove(entry.getKey());
+      else
+        result.put(entry.getKey(), new Series(chunks));
+    }
+
+    index = result;
+    newestChild = crawl.newest;
+    lastRefresh = crawl.now;
+    if (full)
+      lastFull = crawl.now;
+    logger.debug("{} refresh of {}: listed {} directories, took {} msecs", full ? "full" : "tail",
+        structure.getBase(), crawl.listed, System.currentTimeMillis() - start);
+  }
+
+  private void crawl(Crawl crawl, Path dir, int level, String station, String variable, String dateNames) {
+    if (level >= structure.getNumberOfLevels()) {
+      scanFiles(crawl, dir, makeKey(station, variable));
+      return;
+    }
+
+    RadarDataInventory.DirType type = structure.getType(level);
+    List<Path> subdirs = new ArrayList<>();
+    List<Long> dates = new ArrayList<>();
+    try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(dir)) {
+      for (Path sub : dirStream) {
+        if (!Files.isDirectory(sub))
+          continue;
+        if (type == RadarDataInventory.DirType.Date) {
+          try {
+            Date date = crawl.dirFormats[level].parse(dateNames + sub.getFileName());
+            dates.add(date.getTime());
+          } catch (ParseException e) {
+            continue;
+          }
+        }
+        subdirs.add(sub);
+      }
+    } catch (IOException e) {
+      logger.warn("Error reading directory {}", dir, e);
+      return;
+    }
+
+    if (type != RadarDataInventory.DirType.Date) {
+      for (Path sub : subdirs) {
+        String name = sub.getFileName().toString();
+        crawl(crawl, sub, level + 1, type == RadarDataInventory.DirType.Station ? name : station,
+            type == RadarDataInventory.DirType.Variable ? name : variable, dateNames);
+      }
+      return;
+    }
+
+    // date directories: a tail scan only looks at the newest one, and any newer ones
+    Long newest = crawl.full ? null : crawl.newest.get(dir);
+    long max = Long.MIN_VALUE;
+    for (int i = 0; i < subdirs.size(); i++) {
+      long date = dates.get(i);
+      max = Math.max(max, date);
+      if (newest == null || date >= newest) {
+        Path sub = subdirs.get(i);
+        crawl(crawl, sub, level + 1, station, variable, dateNames + sub.getFileName());
+      }
+    }
+    if (!subdirs.isEmpty())
+      crawl.newest.put(dir, max);
+  }
+
+  private void scanFiles(Crawl crawl, Path dir, String key) {
+    Chunk old = crawl.getOldChunk(key, dir);
+    long dirModified;
+    try {
+      dirModified = Files.getLastModifiedTime(dir).toMillis();
+    } catch (IOException e) {
+      dirModified = -1;
+    }
+    // unchanged since it was last listed
+    boolean unchanged = old != null && dirModified > 0 && old.dirModified == dirModified
+        && old.scanned - dirModified > mtimeSlackMsec;
+    if (unchanged) {
+      crawl.found.computeIfAbsent(key, k -> new HashMap<>()).put(dir, old);
+      return;
+    }
+
+    List<Long> times = new ArrayList<>();
+    List<String> names = new ArrayList<>();
+    crawl.listed++;
+    try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(dir)) {
+      for (Path f : dirStream) {
+        Matcher regexMatcher = fileTimeRegex.matcher(f.toString());
+        if (!regexMatcher.find())
+          continue;
+        try {
+          Date d = crawl.fileFormat.parse(regexMatcher.group());
+          times.add(d.getTime());
+          names.add(f.getFileName().toString());
+        } catch (ParseException e) {
+          // Ignore file
+        }
+      }
+    } catch (IOException e) {
+      logger.warn("Error getting files for {}", dir, e);
+      return;
+    }
+
+    Chunk chunk = null;
+    if (!times.isEmpty()) {
+      Integer[] order = new Integer[times.size()];
+      for (int i = 0; i < order.length; i++)
+        order[i] = i;
+      Arrays.sort(order, Comparator.comparingLong(times::get));
+      long[] sortedTimes = new long[order.length];
+      String[] sortedNames = new String[order.length];
+      for (int i = 0; i < order.length; i++) {
+        sortedTimes[i] = times.get(order[i]);
+        sortedNames[i] = names.get(order[i]);
+      }
+      chunk = new Chunk(dir, sortedTimes, sortedNames, dirModified, crawl.now);
+    }
+    crawl.found.computeIfAbsent(key, k -> new HashMap<>()).put(dir, chunk);
+  }
+}
@@ -5,8 +5,10 @@
 
 package thredds.servlet;
 
+import com.google.common.hash.Hashing;
 import java.nio.charset.StandardCharsets;
 import jakarta.servlet.ServletContext;
+import org.springframework.web.context.request.ServletWebRequest;
 import thredds.core.ConfigCatalogHtmlWriter;
 import thredds.core.TdsRequestedDataset;
 import thredds.inventory.MFile;
@@ -15,7 +17,6 @@ import thredds.util.ContentType;
 import thredds.util.RequestForwardUtils;
 import ucar.nc2.util.EscapeStrings;
 import ucar.nc2.util.IO;
-import ucar.unidata.io.RandomAccessFile;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.ServletOutputStream;
 import jakarta.servlet.http.HttpServlet;
@@ -25,6 +26,13 @@ import jakarta.servlet.http.HttpSession;
 import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
 
 public class ServletUtil {
@@ -148,7 +156,7 @@ public class ServletUtil {
   }
 
   /**
-   * Write a file to the response stream. Handles Range requests.
+   * Write a file to the response stream. Handles conditional and Range requests, including multiple ranges.
    *
    * @param req request
    * @param res response
@@ -158,54 +166,17 @@ public class ServletUtil {
    */
   public static void returnFile(HttpServletRequest req, HttpServletResponse res, File file, String contentType)
       throws IOException {
-    res.setContentType(contentType);
-    res.addDateHeader("Last-Modified", file.lastModified());
-    // res.setHeader("Content-Disposition", "attachment; filename=\"" + file.getName() + "\"");
-
-    final boolean isRangeRequest = isRangeRequest(req.getHeader("Range"));
-
-    final long startPos = getContentStartPosition(req.getHeader("Range"));
-    final long endPos = getContentEndPosition(req.getHeader("Range"), file.length());
-    final long contentLength = endPos - startPos;
-
-    addContentLengthHeader(res, contentLength);
-
     String filename = file.getPath();
-    // indicate we allow Range Requests
-    res.addHeader("Accept-Ranges", "bytes");
-
-    if (req.getMethod().equals("HEAD")) {
-      return;
-    }
-
     try {
-
-      if (isRangeRequest) {
-        // set before content is sent
-        res.addHeader("Content-Range", "bytes " + startPos + "-" + (endPos - 1) + "/" + file.length());
-        res.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
-
-        try (RandomAccessFile craf = RandomAccessFile.acquire(filename)) {
-          IO.copyRafB(craf, startPos, contentLength, res.getOutputStream(), new byte[60000]);
-          return;
-        }
-      }
-
-      // Return the file
-      ServletOutputStream out = res.getOutputStream();
-      IO.copyFileB(file, out, 60 * 1000);
-      /*
-       * try (WritableByteChannel cOut = Channels.newChannel(out)) {
-       * IO.copyFileWithChannels(file, cOut);
-       * res.flushBuffer();
-       * }
-       */
+      long length = file.length();
+      long lastModified = file.lastModified();
+      sendFile(req, res, contentType, length, lastModified, makeETag(file, length, lastModified), file, null);
     }
 
     // @todo Split up this exception handling: those from file access vs those from dealing with response
     // File access: catch and res.sendError()
     // response: don't catch (let bubble up out of doGet() etc)
-    catch (FileNotFoundException e) {
+    catch (FileNotFoundException | NoSuchFileException e) {
       log.error("returnFile(): FileNotFoundException= " + filename);
       if (!res.isCommitted())
         res.sendError(HttpServletResponse.SC_NOT_FOUND);
@@ -218,7 +189,7 @@ public class ServletUtil {
         return;
       }
 
-      if (e.getMessage().startsWith("File transfer not complete")) { // coming from FileTransfer.transferTo()
+      if (e.getMessage() != null && e.getMessage().startsWith("File transfer not complete")) {
         log.debug("returnFile() " + e.getMessage());
         return;
       }
@@ -238,39 +209,8 @@ public class ServletUtil {
       res.setContentLength((int) contentLength);
   }
 
-  private static boolean isRangeRequest(String rangeRequest) {
-    if (rangeRequest != null) { // bytes=12-34 or bytes=12-
-      return rangeRequest.indexOf("=") > 0 && rangeRequest.indexOf("-") > 0;
-    }
-
-    return false;
-  }
-
-  private static long getContentStartPosition(String rangeRequest) {
-    final boolean isRangeRequest = isRangeRequest(rangeRequest);
-
-    if (!isRangeRequest)
-      return 0;
-
-    // bytes=12-34 or bytes=12-
-    final String startString = rangeRequest.substring(rangeRequest.indexOf("=") + 1, rangeRequest.indexOf("-"));
-    return Long.parseLong(startString);
-  }
-
-  private static long getContentEndPosition(String rangeRequest, Long fileLength) {
-    final boolean isRangeRequest = isRangeRequest(rangeRequest);
-
-    if (!isRangeRequest)
-      return fileLength;
-
-    // bytes=12-34 or bytes=12-
-    final String endString = rangeRequest.substring(rangeRequest.indexOf("-") + 1);
-    final long endPosition = endString.length() > 0 ? Long.parseLong(endString) + 1 : fileLength;
-    return Math.min(endPosition, fileLength);
-  }
-
   /**
-   * Write an MFile to the response stream.
+   * Write an MFile to the response stream. Handles conditional and Range requests, including multiple ranges.
    *
    * @param request the HttpServletRequest
    * @param response the HttpServletResponse
@@ -301,30 +241,276 @@ public class ServletUtil {
       return;
     }
 
-    response.setContentType(getContentType(requestPath, request.getServletContext()));
-    response.addDateHeader("Last-Modified", file.getLastModified());
-    response.addHeader("Accept-Ranges", "bytes");
+    final String contentType = getContentType(requestPath, request.getServletContext());
+    final long length = file.getLength();
+    final long lastModified = file.getLastModified();
+    final File localFile = getLocalFile(file);
+    final String etag = (localFile != null) ? makeETag(localFile, length, lastModified)
+        : makeETag(file.getPath(), length, lastModified);
+
+    sendFile(request, response, contentType, length, lastModified, etag, localFile, file);
+  }
+
+  /////////////////////////////////////////////////////////////////////////////////////
+  // file serving
+
+  // Tomcat request attributes for sending a file with sendfile(), see org.apache.catalina.servlets.DefaultServlet
+  private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+  private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+  private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+  private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+  private static final long SENDFILE_MIN_SIZE = 48 * 1024; // smaller ones are cheaper to write
+  private static final int MAX_RANGES = 100;
+
+  /** A satisfiable byte range of a file. */
+  static class ByteRange {
+    final long start; // inclusive
+    final long end; // inclusive
+
+    ByteRange(long start, long end) {
+      this.start = start;
+      this.end = end;
+    }
+
+    long getLength() {
+      return end - start + 1;
+    }
+
+    String getContentRange(long fileLength) {
+      return "bytes " + start + "-" + end + "/" + fileLength;
+    }
+  }
+
+  /** Writes part of the file. */
+  private interface RangeWriter {
+    void write(OutputStream out, long start, long count) throws IOException;
+  }
+
+  /**
+   * Send a file, or the requested ranges of it.
+   *
+   * @param localFile the file, if on the local file system, else null
+   * @param mfile the file, if localFile is null
+   */
+  private static void sendFile(HttpServletRequest req, HttpServletResponse res, String contentType, long length,
+      long lastModified, String etag, File localFile, MFile mfile) throws IOException {
+    // If-Match, If-Unmodified-Since -> 412, If-None-Match, If-Modified-Since -> 304; sets ETag and Last-Modified
+    if (new ServletWebRequest(req, res).checkNotModified(etag, lastModified))
+      return;
+
+    // indicate we allow Range Requests
+    res.setHeader("Accept-Ranges", "bytes");
+
+    List<ByteRange> ranges = null;
+    String rangeHeader = req.getHeader("Range");
+    if (rangeHeader != null && isIfRangeSatisfied(req, etag, lastModified)) {
+      ranges = parseRanges(rangeHeader, length);
+      if (ranges != null && ranges.isEmpty()) {
+        res.setHeader("Content-Range", "bytes */" + length);
+        res.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+        return;
+      }
+    }
 
-    final long startPosition = getContentStartPosition(request.getHeader("Range"));
-    final long endPosition = getContentEndPosition(request.getHeader("Range"), file.getLength());
-    final long contentLength = endPosition - startPosition;
-    addContentLengthHeader(response, contentLength);
+    boolean isHead = req.getMethod().equals("HEAD");
+    if (ranges == null || ranges.size() == 1) {
+      ByteRange range = (ranges == null) ? new ByteRange(0, length - 1) : ranges.get(0);
+      res.setContentType(contentType);
+      addContentLengthHeader(res, ranges == null ? length : range.getLength());
+      if (ranges != null) {
+        // set before content is sent
+        res.setHeader("Content-Range", range.getContentRange(length));
+        res.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+      }
+      if (isHead || length == 0)
+        return;
 
-    if (request.getMethod().equals("HEAD")) {
+      // zero copy: let Tomcat send the file from the kernel
+      if (localFile != null && range.getLength() >= SENDFILE_MIN_SIZE
+          && Boolean.TRUE.equals(req.getAttribute(SENDFILE_SUPPORT))) {
+        req.setAttribute(SENDFILE_FILENAME, localFile.getCanonicalPath());
+        req.setAttribute(SENDFILE_START, range.start);
+        req.setAttribute(SENDFILE_END, range.end + 1);
+        return;
+      }
+      writeRanges(res, localFile, mfile, Collections.singletonList(range), null, null, length);
       return;
     }
 
-    ServletOutputStream outputStream = response.getOutputStream();
+    // multipart/byteranges
+    String boundary = "THREDDS_" + UUID.randomUUID().toString().replace("-", "");
+    List<String> partHeaders = new ArrayList<>(ranges.size());
+    long contentLength = 0;
+    for (ByteRange range : ranges) {
+      String partHeader = "\r\n--" + boundary + "\r\nContent-Type: " + contentType + "\r\nContent-Range: "
+          + range.getContentRange(length) + "\r\n\r\n";
+      partHeaders.add(partHeader);
+      contentLength += partHeader.length() + range.getLength();
+    }
+    String trailer = "\r\n--" + boundary + "--\r\n";
+    contentLength += trailer.length();
 
-    if (!isRangeRequest(request.getHeader("Range"))) {
-      file.writeToStream(outputStream);
+    res.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+    res.setContentType("multipart/byteranges; boundary=" + boundary);
+    addContentLengthHeader(res, contentLength);
+    if (isHead)
       return;
+    writeRanges(res, localFile, mfile, ranges, partHeaders, trailer, length);
+  }
+
+  private static void writeRanges(HttpServletResponse res, File localFile, MFile mfile, List<ByteRange> ranges,
+      List<String> partHeaders, String trailer, long length) throws IOException {
+    ServletOutputStream out = res.getOutputStream();
+    if (localFile != null) {
+      try (FileChannel channel = FileChannel.open(localFile.toPath(), StandardOpenOption.READ)) {
+        writeRanges(out, ranges, partHeaders, trailer, (os, start, count) -> transfer(channel, os, start, count));
+      }
+    } else if (partHeaders == null && ranges.get(0).getLength() == length) {
+      mfile.writeToStream(out);
+    } else {
+      writeRanges(out, ranges, partHeaders, trailer, mfile::writeToStream);
+    }
+    out.flush();
+  }
+
+  private static void writeRanges(OutputStream out, List<ByteRange> ranges, List<String> partHeaders, String trailer,
+      RangeWriter writer) throws IOException {
+    for (int i = 0; i < ranges.size(); i++) {
+      ByteRange range = ranges.get(i);
+      if (partHeaders != null)
+        out.write(partHeaders.get(i).getBytes(StandardCharsets.ISO_8859_1));
+      writer.write(out, range.start, range.getLength());
     }
+    if (trailer != null)
+      out.write(trailer.getBytes(StandardCharsets.ISO_8859_1));
+  }
 
-    response.addHeader("Content-Range", "bytes " + startPosition + "-" + (endPosition - 1) + "/" + file.getLength());
-    response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+  // FileChannel.transferTo() avoids copying through a heap buffer
+  private static void transfer(FileChannel channel, OutputStream out, long start, long count) throws IOException {
+    WritableByteChannel target = Channels.newChannel(out); // not closed, that would close the response
+    long pos = start;
+    long end = start + count;
+    while (pos < end) {
+      long n = channel.transferTo(pos, end - pos, target);
+      if (n <= 0)
+        throw new IOException("File transfer not complete: sent " + (pos - start) + " of " + count + " bytes");
+      pos += n;
+    }
+  }
 
-    file.writeToStream(outputStream, startPosition, contentLength);
+  /**
+   * Parse a Range header, see RFC 7233.
+   *
+   * @param rangeHeader eg "bytes=0-499,1000-,-500"
+   * @param length the file length
+   * @return the satisfiable ranges, in the requested order, empty if none is satisfiable, or null if the
+   *         header is not valid, which means the whole file is sent. Ranges that overlap or are adjacent are
+   *         coalesced (RFC 7233 section 4.1), and then come in ascending order, so no byte is sent twice.
+   */
+  static List<ByteRange> parseRanges(String rangeHeader, long length) {
+    String header = rangeHeader.trim();
+    if (!header.startsWith("bytes="))
+      return null;
+
+    String[] specs = header.substring("bytes=".length()).split(",");
+    if (specs.length > MAX_RANGES)
+      return null;
+
+    List<ByteRange> ranges = new ArrayList<>(specs.length);
+    try {
+      for (String spec : specs) {
+        spec = spec.trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0)
+          return null;
+        String first = spec.substring(0, dash).trim();
+        String last = spec.substring(dash + 1).trim();
+
+        long start, end;
+        if (first.isEmpty()) { // suffix, the last N bytes
+          long suffix = Long.parseLong(last);
+          if (suffix < 0)
+            return null;
+          if (suffix == 0)
+            continue;
+          start = Math.max(length - suffix, 0);
+          end = length - 1;
+        } else {
+          start = Long.parseLong(first);
+          end = last.isEmpty() ? length - 1 : Long.parseLong(last);
+          if (start < 0 || end < start)
+            return null;
+          end = Math.min(end, length - 1);
+        }
+        if (start < length)
+          ranges.add(new ByteRange(start, end));
+      }
+    } catch (NumberFormatException e) {
+      return null;
+    }
+    return coalesce(ranges);
+  }
+
+  private static List<ByteRange> coalesce(List<ByteRange> ranges) {
+    List<ByteRange> sorted = new ArrayList<>(ranges);
+    sorted.sort(Comparator.comparingLong(r -> r.start));
+    List<ByteRange> result = new ArrayList<>(sorted.size());
+    for (ByteRange range : sorted) {
+      ByteRange last = result.isEmpty() ? null : result.get(result.size() - 1);
+      if (last != null && range.start <= last.end + 1)
+        result.set(result.size() - 1, new ByteRange(last.start, Math.max(last.end, range.end)));
+      else
+        result.add(range);
+    }
+    return (result.size() == ranges.size()) ? ranges : result;
+  }
+
+  // a Range request is only honored if If-Range, if any, matches the file
+  private static boolean isIfRangeSatisfied(HttpServletRequest req, String etag, long lastModified) {
+    String ifRange = req.getHeader("If-Range");
+    if (ifRange == null)
+      return true;
+    ifRange = ifRange.trim();
+    if (ifRange.startsWith("\"") || ifRange.startsWith("W/"))
+      return ifRange.equals(etag); // strong comparison, weak ETags never match
+    try {
+      long date = req.getDateHeader("If-Range");
+      return date >= 0 && lastModified / 1000 == date / 1000; // HTTP dates have second resolution
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  /**
+   * A strong ETag for a local file, from its identity (eg device and inode), length and last modified time.
+   */
+  static String makeETag(File file, long length, long lastModified) {
+    Object fileKey = null;
+    try {
+      fileKey = Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+    } catch (IOException | UnsupportedOperationException e) {
+      // use the path
+    }
+    return makeETag(fileKey != null ? fileKey.toString() : file.getPath(), length, lastModified);
+  }
+
+  static String makeETag(String id, long length, long lastModified) {
+    long idHash = Hashing.murmur3_128().hashString(id, StandardCharsets.UTF_8).asLong();
+    return "\"" + Long.toHexString(idHash) + "-" + Long.toHexString(length) + "-" + Long.toHexString(lastModified)
+        + "\"";
+  }
+
+  // the MFile on the local file system, or null if not local, eg in an object store
+  private static File getLocalFile(MFile mfile) {
+    String path = mfile.getPath();
+    if (path.startsWith("file:"))
+      path = path.substring("file:".length());
+    try {
+      File file = new File(path);
+      return file.isAbsolute() && file.isFile() ? file : null;
+    } catch (SecurityException e) {
+      return null;
+    }
   }
 
   /**
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package thredds.core;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import thredds.core.CatalogPrefetcher.Position;
+import thredds.server.catalog.tracker.DatasetTrackerNoop;
+
+public class TestCatalogPrefetcher {
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  // the catalogs each catalog refers to
+  private final Map<String, List<String>> tree = new HashMap<>();
+  private final List<String> read = Collections.synchronizedList(new ArrayList<>());
+
+  private String readCatalog(CatalogPrefetcher<String> prefetcher, String path, Position position) {
+    read.add(path);
+    if (path.startsWith("skip"))
+      return null;
+    List<String> children = tree.getOrDefault(path, Collections.emptyList());
+    for (int i = 0; i < children.size(); i++)
+      prefetcher.prefetch(children.get(i), position.child(i));
+    return "read " + path;
+  }
+
+  @Test
+  public void shouldReadInWalkOrder() throws InterruptedException {
+    tree.put("catalog.xml", Arrays.asList("a.xml", "b.xml"));
+    tree.put("a.xml", Arrays.asList("a1.xml", "a2.xml"));
+    tree.put("b.xml", Collections.singletonList("b1.xml"));
+
+    try (CatalogPrefetcher<String> prefetcher = new CatalogPrefetcher<>(this::readCatalog, 1, 100)) {
+      prefetcher.prefetch("catalog.xml", Position.of(0));
+      waitFor(() -> prefetcher.getAvailablePermits() == 100 - 6);
+      // first in first out would read b.xml before a1.xml
+      assertThat(read).containsExactly("catalog.xml", "a.xml", "a1.xml", "a2.xml", "b.xml", "b1.xml").inOrder();
+
+      for (String path : read)
+        assertThat(prefetcher.take(path)).isEqualTo("read " + path);
+      assertThat(prefetcher.getAvailablePermits()).isEqualTo(100);
+    }
+  }
+
+  @Test
+  public void shouldReleasePermitsOfCatalogsNotTaken() throws InterruptedException {
+    tree.put("catalog.xml", Arrays.asList("a.xml", "skip.xml", "b.xml", "c.xml", "d.xml"));
+
+    try (CatalogPrefetcher<String> prefetcher = new CatalogPrefetcher<>(this::readCatalog, 1, 4)) {
+      prefetcher.prefetch("catalog.xml", Position.of(0));
+      // skip.xml gave nothing to take, so does not hold a permit
+      waitFor(() -> read.size() == 5 && prefetcher.getAvailablePermits() == 0);
+      assertThat(read).doesNotContain("d.xml");
+
+      assertThat(prefetcher.take("catalog.xml")).isNotNull();
+      waitFor(() -> read.contains("d.xml") && prefetcher.getAvailablePermits() == 0);
+
+      // the walk went past a.xml and b.xml
+      assertThat(prefetcher.take("c.xml")).isEqualTo("read c.xml");
+      assertThat(prefetcher.getAvailablePermits()).isEqualTo(3);
+      assertThat(prefetcher.take("a.xml")).isNull();
+      assertThat(prefetcher.take("d.xml")).isEqualTo("read d.xml");
+      assertThat(prefetcher.getAvailablePermits()).isEqualTo(4);
+    }
+  }
+
+  @Test
+  public void shouldLogSameMessagesWithMoreThreads() throws IOException {
+    File content = tempFolder.newFolder("content");
+    writeCatalog(content, "catalog.xml", "<catalogRef xlink:href='a.xml' xlink:title='a' name=''/>\n"
+        + "<catalogRef xlink:href='bad.xml' xlink:title='bad' name=''/>\n"
+        + "<catalogRef xlink:href='missing.xml' xlink:title='missing' name=''/>\n"
+        + "<catalogRef xlink:href='b.xml' xlink:title='b' name=''/>\n"
+        + "<catalogScan location='scan' path='scan' name='scan'/>");
+    writeCatalog(content, "a.xml", "<dataset name='nested'>\n"
+        + "  <catalogRef xlink:href='a1.xml' xlink:title='a1' name=''/>\n" + "</dataset>\n"
+        + "<catalogRef xlink:href='a2.xml' xlink:title='a2' name=''/>");
+    writeCatalog(content, "a1.xml", "<dataset name='a1' ID='same'/>");
+    writeCatalog(content, "a2.xml", "<catalogRef xlink:href='bad.xml' xlink:title='bad' name=''/>");
+    writeCatalog(content, "b.xml", "<catalogRef xlink:href='a1.xml' xlink:title='a1' name=''/>\n"
+        + "<catalogRef xlink:href='b1.xml' xlink:title='b1' name=''/>");
+    writeCatalog(content, "b1.xml", "<dataset name='b1'/>");
+    Files.write(new File(content, "bad.xml").toPath(), "<catalog name='bad'".getBytes(StandardCharsets.UTF_8));
+    File scan = new File(content, "scan");
+    assertThat(scan.mkdir()).isTrue();
+    writeCatalog(scan, "s1.xml", "<dataset name='s1'/>");
+    Files.write(new File(scan, "s2.xml").toPath(), "not a catalog".getBytes(StandardCharsets.UTF_8));
+
+    ConfigCatalogInitialization init = new ConfigCatalogInitialization(ConfigCatalogInitialization.ReadMode.always,
+        content, tempFolder.newFolder("tracker").getPath(), new DatasetTrackerNoop(), new AllowedServices(), null, -1);
+    List<String> oneThread = new ArrayList<>();
+    init.setReadListener(oneThread::add);
+    init.reread(ConfigCatalogInitialization.ReadMode.always, true);
+
+    List<String> moreThreads = new ArrayList<>();
+    init.setReadListener(moreThreads::add);
+    init.setReadThreads(4);
+    init.reread(ConfigCatalogInitialization.ReadMode.always, true);
+
+    assertThat(oneThread).contains("readCatalog(): path=b1.xml");
+    assertThat(oneThread).contains("readCatalog(): path=scan/s2.xml");
+    assertThat(oneThread.stream().filter(m -> m.startsWith("*** ERROR: ")).count()).isAtLeast(2);
+    assertThat(moreThreads).containsExactlyElementsIn(oneThread).inOrder();
+  }
+
+  private static void writeCatalog(File dir, String name, String content) throws IOException {
+    String catalog = "<?xml version='1.0' encoding='UTF-8'?>\n"
+        + "<catalog name='" + name + "' xmlns='http://www.unidata.ucar.edu/namespaces/thredds/InvCatalog/v1.0'"
+        + " xmlns:xlink='http://www.w3.org/1999/xlink'>\n" + content + "\n</catalog>\n";
+    Files.write(new File(dir, name).toPath(), catalog.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+    long end = System.currentTimeMillis() + 10_000;
+    while (!condition.getAsBoolean()) {
+      assertThat(System.currentTimeMillis()).isLessThan(end);
+      Thread.sleep(10);
+    }
+  }
+}
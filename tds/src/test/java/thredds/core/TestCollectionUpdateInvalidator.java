@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package thredds.core;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class TestCollectionUpdateInvalidator {
+
+  @Test
+  public void shouldMatchPathsAtOrUnderCollection() {
+    assertThat(CollectionUpdateInvalidator.isAtOrUnder("fc/gfs", "fc/gfs")).isTrue();
+    assertThat(CollectionUpdateInvalidator.isAtOrUnder("fc/gfs/catalog.xml", "fc/gfs")).isTrue();
+    assertThat(CollectionUpdateInvalidator.isAtOrUnder("/fc/gfs/best.ncd", "fc/gfs/")).isTrue();
+    assertThat(CollectionUpdateInvalidator.isAtOrUnder("fc/gfs/catalog.xml", "/fc/gfs")).isTrue();
+
+    assertThat(CollectionUpdateInvalidator.isAtOrUnder("fc/gfsAnalysis/catalog.xml", "fc/gfs")).isFalse();
+    assertThat(CollectionUpdateInvalidator.isAtOrUnder("fc", "fc/gfs")).isFalse();
+  }
+
+  @Test
+  public void shouldTellAllListenersEvenIfOneFails() {
+    CollectionUpdateInvalidator invalidator = new CollectionUpdateInvalidator();
+    List<String> invalidated = new ArrayList<>();
+    invalidator.addListener(path -> {
+      throw new IllegalStateException("failed");
+    });
+    invalidator.addListener(invalidated::add);
+
+    invalidator.invalidatePath("fc/gfs");
+    assertThat(invalidated).containsExactly("fc/gfs");
+  }
+}
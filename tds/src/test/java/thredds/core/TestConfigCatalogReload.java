@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package thredds.core;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import thredds.server.catalog.DataRootPathMatcher;
+import thredds.server.catalog.tracker.DatasetTrackerChronicle;
+
+public class TestConfigCatalogReload {
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private File content;
+  private File models;
+  private DatasetTrackerChronicle datasetTracker;
+  private ConfigCatalogInitialization init;
+
+  @Before
+  public void setup() throws IOException {
+    content = tempFolder.newFolder("content");
+    writeCatalog("catalog.xml", "<catalogRef xlink:href='models.xml' xlink:title='models' name=''/>");
+    models = writeCatalog("models.xml", "<datasetRoot path='models' location='/data/models'/>\n"
+        + "<dataset name='gfs' ID='gfs' urlPath='models/gfs.nc' restrictAccess='role'/>");
+
+    String trackerDir = tempFolder.newFolder("tracker").getPath();
+    datasetTracker = new DatasetTrackerChronicle(trackerDir, 100, 1);
+    init = new ConfigCatalogInitialization(ConfigCatalogInitialization.ReadMode.always, content, trackerDir,
+        datasetTracker, new AllowedServices(), null, -1);
+    init.setWatchDelay(3_600_000); // so that only the test reloads
+    init.startWatching();
+
+    assertThat(datasetTracker.findResourceControl("models/gfs.nc")).isEqualTo("role");
+    assertThat(init.getDataRootPathMatcher().findLongestPathMatch("models/gfs.nc")).isEqualTo("models");
+  }
+
+  @After
+  public void cleanup() throws IOException {
+    init.stopWatching();
+    datasetTracker.close();
+  }
+
+  @Test
+  public void shouldReplaceDatasetsAndRootsOfChangedCatalog() throws IOException {
+    writeCatalog("models.xml", "<datasetRoot path='obs' location='/data/obs'/>\n"
+        + "<dataset name='nam' ID='nam' urlPath='obs/nam.nc' restrictAccess='other'/>");
+    init.reloadCatalogs(changed(models), false);
+
+    DataRootPathMatcher matcher = init.getDataRootPathMatcher();
+    assertThat(datasetTracker.findResourceControl("models/gfs.nc")).isNull();
+    assertThat(datasetTracker.findResourceControl("obs/nam.nc")).isEqualTo("other");
+    assertThat(matcher.findLongestPathMatch("models/gfs.nc")).isNull();
+    assertThat(matcher.findLongestPathMatch("obs/nam.nc")).isEqualTo("obs");
+  }
+
+  @Test
+  public void shouldKeepDatasetsAndRootsWhenCatalogCannotBeRead() throws IOException {
+    Files.write(models.toPath(), "<catalog name='being edited'".getBytes(StandardCharsets.UTF_8));
+    init.reloadCatalogs(changed(models), false);
+
+    assertThat(datasetTracker.findResourceControl("models/gfs.nc")).isEqualTo("role");
+    assertThat(init.getDataRootPathMatcher().findLongestPathMatch("models/gfs.nc")).isEqualTo("models");
+
+    // once it is fixed, the old ones are removed
+    writeCatalog("models.xml", "<dataset name='nam' ID='nam' urlPath='models/nam.nc' restrictAccess='other'/>");
+    init.reloadCatalogs(changed(models), false);
+    assertThat(datasetTracker.findResourceControl("models/gfs.nc")).isNull();
+    assertThat(datasetTracker.findResourceControl("models/nam.nc")).isEqualTo("other");
+    assertThat(init.getDataRootPathMatcher().findLongestPathMatch("models/gfs.nc")).isNull();
+  }
+
+  @Test
+  public void shouldRemoveDatasetsAndRootsOfDeletedCatalog() throws IOException {
+    assertThat(models.delete()).isTrue();
+    init.reloadCatalogs(changed(models), false);
+
+    assertThat(datasetTracker.findResourceControl("models/gfs.nc")).isNull();
+    assertThat(init.getDataRootPathMatcher().findLongestPathMatch("models/gfs.nc")).isNull();
+  }
+
+  private static Set<Path> changed(File catalog) {
+    return Collections.singleton(catalog.toPath().toAbsolutePath());
+  }
+
+  private File writeCatalog(String name, String datasets) throws IOException {
+    String catalog = "<?xml version='1.0' encoding='UTF-8'?>\n"
+        + "<catalog name='" + name + "' xmlns='http://www.unidata.ucar.edu/namespaces/thredds/InvCatalog/v1.0'"
+        + " xmlns:xlink='http://www.w3.org/1999/xlink'>\n" + datasets + "\n</catalog>\n";
+    File file = new File(content, name);
+    Files.write(file.toPath(), catalog.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+}
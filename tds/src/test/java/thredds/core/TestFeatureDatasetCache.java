@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package thredds.core;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import thredds.core.DatasetManager.CacheableSource;
+import ucar.nc2.dt.grid.GridDataset;
+import ucar.nc2.ft.FeatureDatasetPoint;
+import ucar.nc2.ft2.coverage.CoverageCollection;
+import ucar.nc2.ft2.coverage.SubsetParams;
+
+public class TestFeatureDatasetCache {
+
+  private static final String GRID_FILE = "src/test/content/thredds/public/testdata/testData.nc";
+  private static final String POINT_NCML = "src/test/resources/thredds/server/ncss/view/dsg/point/input.ncml";
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private final FeatureDatasetCache cache = new FeatureDatasetCache();
+  private String gridLocation;
+
+  @Before
+  public void setup() throws IOException {
+    cache.init(1, 10, 0);
+    // a copy, so that it can be touched
+    gridLocation = tempFolder.getRoot().toPath().resolve("grid.nc").toString();
+    Files.copy(Paths.get(GRID_FILE), Paths.get(gridLocation));
+  }
+
+  @After
+  public void cleanup() {
+    cache.clearCache(true);
+  }
+
+  @Test
+  public void shouldChangeKeyWhenFileIsModified() throws Exception {
+    File file = tempFolder.newFile("test.nc");
+    String location = file.getPath();
+    assertThat(file.setLastModified(1_000_000L)).isTrue();
+    String key = FeatureDatasetCache.makeKey("grid", location, null);
+    assertThat(FeatureDatasetCache.makeKey("grid", location, null)).isEqualTo(key);
+
+    assertThat(file.setLastModified(2_000_000L)).isTrue();
+    assertThat(FeatureDatasetCache.makeKey("grid", location, null)).isNotEqualTo(key);
+  }
+
+  @Test
+  public void shouldChangeKeyWithNcmlAndKind() throws Exception {
+    String location = tempFolder.newFile("test.nc").getPath();
+    String key = FeatureDatasetCache.makeKey("grid", location, "<netcdf/>");
+
+    assertThat(FeatureDatasetCache.makeKey("grid", location, "<netcdf/>")).isEqualTo(key);
+    assertThat(FeatureDatasetCache.makeKey("grid", location, "<netcdf location='other'/>")).isNotEqualTo(key);
+    assertThat(FeatureDatasetCache.makeKey("grid", location, null)).isNotEqualTo(key);
+    assertThat(FeatureDatasetCache.makeKey("point", location, "<netcdf/>")).isNotEqualTo(key);
+  }
+
+  @Test
+  public void shouldBeOffUntilInitialized() {
+    FeatureDatasetCache cache = new FeatureDatasetCache();
+    assertThat(cache.isEnabled()).isFalse();
+  }
+
+  @Test
+  public void shouldReuseGridDatasetAfterClose() throws IOException {
+    GridDataset first = DatasetManager.acquireGridDataset(cache, CacheableSource.ofFile(gridLocation));
+    assertThat(first.findGridByName("Z_sfc")).isNotNull();
+    first.close();
+
+    try (GridDataset second = DatasetManager.acquireGridDataset(cache, CacheableSource.ofFile(gridLocation))) {
+      assertThat(second).isSameInstanceAs(first);
+      assertThat(second.findGridByName("Z_sfc")).isNotNull();
+    }
+  }
+
+  @Test
+  public void shouldReusePointDatasetAfterClose() throws IOException {
+    CacheableSource source = CacheableSource.ofNcml("test/point.ncml", readPointNcml());
+    FeatureDatasetPoint first = DatasetManager.acquirePointDataset(cache, source);
+    first.close();
+
+    try (FeatureDatasetPoint second = DatasetManager.acquirePointDataset(cache, source)) {
+      assertThat(second).isSameInstanceAs(first);
+    }
+  }
+
+  @Test
+  public void shouldOpenAnotherWhileInUse() throws IOException {
+    try (GridDataset first = DatasetManager.acquireGridDataset(cache, CacheableSource.ofFile(gridLocation));
+        GridDataset second = DatasetManager.acquireGridDataset(cache, CacheableSource.ofFile(gridLocation))) {
+      assertThat(second).isNotSameInstanceAs(first);
+    }
+
+    CacheableSource source = CacheableSource.ofNcml("test/point.ncml", readPointNcml());
+    try (FeatureDatasetPoint first = DatasetManager.acquirePointDataset(cache, source);
+        FeatureDatasetPoint second = DatasetManager.acquirePointDataset(cache, source)) {
+      assertThat(second).isNotSameInstanceAs(first);
+    }
+  }
+
+  @Test
+  public void shouldOpenAgainWhenFileIsModified() throws IOException {
+    GridDataset first = DatasetManager.acquireGridDataset(cache, CacheableSource.ofFile(gridLocation));
+    first.close();
+
+    File file = new File(gridLocation);
+    assertThat(file.setLastModified(file.lastModified() + 10_000)).isTrue();
+    try (GridDataset second = DatasetManager.acquireGridDataset(cache, CacheableSource.ofFile(gridLocation))) {
+      assertThat(second).isNotSameInstanceAs(first);
+    }
+  }
+
+  @Test
+  public void shouldOpenAgainWhenNcmlChanges() throws IOException {
+    String ncml = wrapGridFile("");
+    GridDataset first = DatasetManager.acquireGridDataset(cache, CacheableSource.ofNcml("test/grid.nc", ncml));
+    first.close();
+
+    String changed = wrapGridFile("<attribute name='title' value='changed'/>");
+    try (GridDataset second =
+        DatasetManager.acquireGridDataset(cache, CacheableSource.ofNcml("test/grid.nc", changed))) {
+      assertThat(second).isNotSameInstanceAs(first);
+      assertThat(second.findGlobalAttributeIgnoreCase("title").getStringValue()).isEqualTo("changed");
+    }
+  }
+
+  @Test
+  public void shouldPutNcmlCoverageDatasetBackWhenCoverageIsClosed() throws Exception {
+    CacheableSource ncml = CacheableSource.ofNcml("test/grid.nc", wrapGridFile(""));
+    AtomicInteger opened = new AtomicInteger();
+    CacheableSource source = new CacheableSource(ncml.location, ncml.ncml, (durl, bufferSize, cancelTask, spi) -> {
+      opened.incrementAndGet();
+      return ncml.opener.open(durl, bufferSize, cancelTask, spi);
+    });
+
+    CoverageCollection first = DatasetManager.acquireCoverageFromNcml(cache, source, "test/grid.nc");
+    assertThat(first.findCoverage("Z_sfc")).isNotNull();
+    first.close();
+
+    // the NetcdfDataset was not closed, so it is used again
+    try (CoverageCollection second = DatasetManager.acquireCoverageFromNcml(cache, source, "test/grid.nc")) {
+      assertThat(opened.get()).isEqualTo(1);
+      assertThat(second.findCoverage("Z_sfc")).isNotNull();
+      assertThat(second.findCoverage("Z_sfc").readData(new SubsetParams())).isNotNull();
+
+      // while it is in use, another one is opened
+      try (CoverageCollection third = DatasetManager.acquireCoverageFromNcml(cache, source, "test/grid.nc")) {
+        assertThat(opened.get()).isEqualTo(2);
+      }
+    }
+  }
+
+  private String wrapGridFile(String content) {
+    return "<netcdf xmlns='http://www.unidata.ucar.edu/namespaces/netcdf/ncml-2.2' location='" + gridLocation + "'>"
+        + content + "</netcdf>";
+  }
+
+  private static String readPointNcml() throws IOException {
+    return new String(Files.readAllBytes(Paths.get(POINT_NCML)), StandardCharsets.UTF_8);
+  }
+}
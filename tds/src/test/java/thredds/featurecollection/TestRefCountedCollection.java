@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package thredds.featurecollection;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestRefCountedCollection {
+
+  private static class Counted implements Closeable {
+    final AtomicInteger closes = new AtomicInteger();
+
+    @Override
+    public void close() {
+      closes.incrementAndGet();
+    }
+  }
+
+  @Test
+  public void shouldCloseAfterLastRelease() {
+    Counted collection = new Counted();
+    RefCountedCollection<Counted> ref = new RefCountedCollection<>(collection);
+
+    assertThat(ref.acquire()).isSameInstanceAs(collection);
+    assertThat(ref.acquire()).isSameInstanceAs(collection);
+    ref.retire(0);
+    assertThat(collection.closes.get()).isEqualTo(0);
+
+    ref.release();
+    assertThat(collection.closes.get()).isEqualTo(0);
+    ref.release();
+    assertThat(collection.closes.get()).isEqualTo(1);
+    assertThat(ref.acquire()).isNull();
+  }
+
+  @Test
+  public void shouldNotCloseUntilRetired() {
+    Counted collection = new Counted();
+    RefCountedCollection<Counted> ref = new RefCountedCollection<>(collection);
+    ref.acquire();
+    ref.release();
+    assertThat(collection.closes.get()).isEqualTo(0);
+    assertThat(ref.isClosed()).isFalse();
+  }
+
+  @Test
+  public void shouldWaitForGracePeriod() throws InterruptedException {
+    Counted collection = new Counted();
+    RefCountedCollection<Counted> ref = new RefCountedCollection<>(collection);
+    ref.retire(200);
+    assertThat(ref.acquire()).isSameInstanceAs(collection); // still usable during the grace period
+    ref.release();
+    assertThat(collection.closes.get()).isEqualTo(0);
+
+    long start = System.currentTimeMillis();
+    while (!ref.isClosed() && System.currentTimeMillis() - start < 10000) {
+      Thread.sleep(10);
+    }
+    assertThat(collection.closes.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldCloseNowWhenFeatureCollectionIsClosed() {
+    Counted collection = new Counted();
+    RefCountedCollection<Counted> ref = new RefCountedCollection<>(collection);
+    ref.acquire();
+    ref.closeNow();
+    assertThat(collection.closes.get()).isEqualTo(1);
+    ref.release(); // late release is harmless
+    assertThat(collection.closes.get()).isEqualTo(1);
+  }
+}
@@ -3,10 +3,15 @@ package thredds.featurecollection.cache;
 import static com.google.common.truth.Truth.assertThat;
 
 import com.google.common.base.Charsets;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import org.junit.After;
 import org.junit.BeforeClass;
 import org.junit.Rule;
@@ -72,6 +77,132 @@ public class TestGridInventoryCacheChronicle {
     assertThat(retrievedGridDatasetInv.findGrid("Z_sfc")).isNotNull();
   }
 
+  @Test
+  public void shouldReturnDecodedInventoryFromMemory() throws IOException {
+    GridInventoryCacheChronicle.init(tempFolder.getRoot().toPath());
+    final GridInventoryCacheChronicle cache = new GridInventoryCacheChronicle();
+
+    final MFile mFile = new MFileOS(SMALL_FILE);
+    cache.put(mFile, new GridDatasetInv(GridDataset.openIfce(mFile.getPath()), CalendarDate.of(0)));
+
+    final GridDatasetInv first = cache.get(mFile);
+    assertThat(first).isNotNull();
+    assertThat(cache.get(mFile)).isSameInstanceAs(first);
+  }
+
+  @Test
+  public void shouldRoundTripBinaryEncoding() throws IOException {
+    final MFile mFile = new MFileOS(SMALL_FILE);
+    final GridDatasetInv gridDatasetInv = new GridDatasetInv(GridDataset.openIfce(mFile.getPath()), CalendarDate.of(0));
+    final Date lastModified = new Date(mFile.getLastModified());
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    GridDatasetInvCodec.encode(gridDatasetInv, out);
+    final GridDatasetInv decoded = GridDatasetInvCodec.decode(out.toByteArray(), 0, lastModified.getTime());
+
+    assertThat(decoded).isNotNull();
+    assertThat(decoded).isNotSameInstanceAs(gridDatasetInv);
+    assertThat(decoded.getLastModified()).isEqualTo(lastModified.getTime());
+    assertThat(decoded.getRunDate()).isEqualTo(gridDatasetInv.getRunDate());
+    assertThat(decoded.findGrid("Z_sfc")).isNotNull();
+    // everything that the XML had
+    assertThat(decoded.writeCompactXML(lastModified)).isEqualTo(gridDatasetInv.writeCompactXML(lastModified));
+  }
+
+  @Test
+  public void shouldStoreBinaryEncoding() throws IOException {
+    GridInventoryCacheChronicle.init(tempFolder.getRoot().toPath());
+    final GridInventoryCacheChronicle cache = new GridInventoryCacheChronicle();
+
+    final MFile mFile = new MFileOS(SMALL_FILE);
+    cache.put(mFile, new GridDatasetInv(GridDataset.openIfce(mFile.getPath()), CalendarDate.of(0)));
+    assertThat(GridInventoryCacheChronicle.getFormat(GridInventoryCacheChronicle.getBytes(mFile.getPath())))
+        .isEqualTo(2);
+  }
+
+  @Test
+  public void shouldMigrateDeflatedXmlEntry() throws IOException {
+    GridInventoryCacheChronicle.init(tempFolder.getRoot().toPath());
+    final GridInventoryCacheChronicle cache = new GridInventoryCacheChronicle();
+
+    final MFile mFile = new MFileOS(SMALL_FILE);
+    final String xml = new GridDatasetInv(GridDataset.openIfce(mFile.getPath()), CalendarDate.of(0))
+        .writeCompactXML(new Date(mFile.getLastModified()));
+    GridInventoryCacheChronicle.putBytes(mFile.getPath(),
+        GridInventoryCacheChronicle.encode(xml, mFile.getLastModified()));
+
+    assertThat(cache.get(mFile).findGrid("Z_sfc")).isNotNull();
+    assertThat(GridInventoryCacheChronicle.getFormat(GridInventoryCacheChronicle.getBytes(mFile.getPath())))
+        .isEqualTo(2);
+  }
+
+  @Test
+  public void shouldMigrateXmlEntry() throws IOException {
+    GridInventoryCacheChronicle.init(tempFolder.getRoot().toPath());
+    final GridInventoryCacheChronicle cache = new GridInventoryCacheChronicle();
+
+    final MFile mFile = new MFileOS(SMALL_FILE);
+    final GridDatasetInv gridDatasetInv = new GridDatasetInv(GridDataset.openIfce(mFile.getPath()), CalendarDate.of(0));
+    // the way earlier versions stored it
+    final byte[] xml = gridDatasetInv.writeCompactXML(new Date(mFile.getLastModified())).getBytes(Charsets.UTF_8);
+    GridInventoryCacheChronicle.putBytes(mFile.getPath(), xml);
+
+    final GridDatasetInv retrievedGridDatasetInv = cache.get(mFile);
+    assertThat(retrievedGridDatasetInv).isNotNull();
+    assertThat(retrievedGridDatasetInv.findGrid("Z_sfc")).isNotNull();
+
+    final byte[] migrated = GridInventoryCacheChronicle.getBytes(mFile.getPath());
+    assertThat(GridInventoryCacheChronicle.getFormat(migrated)).isEqualTo(2);
+
+    GridInventoryCacheChronicle.resetCache();
+    GridInventoryCacheChronicle.init(tempFolder.getRoot().toPath());
+    assertThat(new GridInventoryCacheChronicle().get(mFile).findGrid("Z_sfc")).isNotNull();
+  }
+
+  @Test
+  public void shouldGetAllCachedInventories() throws IOException {
+    GridInventoryCacheChronicle.init(tempFolder.getRoot().toPath());
+    final GridInventoryCacheChronicle cache = new GridInventoryCacheChronicle();
+
+    final MFile cached = new MFileOS(SMALL_FILE);
+    final MFile notCached = new MFileOS("notCached");
+    cache.put(cached, new GridDatasetInv(GridDataset.openIfce(cached.getPath()), CalendarDate.of(0)));
+
+    final Map<String, GridDatasetInv> inventories = cache.getAll(Arrays.asList(notCached, cached));
+    assertThat(inventories.keySet()).containsExactly(cached.getPath());
+    assertThat(cache.get(cached)).isSameInstanceAs(inventories.get(cached.getPath()));
+  }
+
+  @Test
+  public void shouldGetAllInOrderAndSkipOutOfDate() throws IOException {
+    GridInventoryCacheChronicle.init(tempFolder.getRoot().toPath());
+    final GridInventoryCacheChronicle cache = new GridInventoryCacheChronicle();
+
+    final MFile mFile = new MFileOS(SMALL_FILE);
+    final String xml = new GridDatasetInv(GridDataset.openIfce(mFile.getPath()), CalendarDate.of(0))
+        .writeCompactXML(new Date(mFile.getLastModified()));
+    final List<MFile> mFiles = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      final MFile copy = new MFileOS(tempFolder.newFile("copy" + i + ".nc").getPath());
+      // every third one was modified after its inventory was made
+      final long lastModified = (i % 3 == 0) ? copy.getLastModified() - 10_000 : copy.getLastModified();
+      GridInventoryCacheChronicle.putBytes(copy.getPath(), GridInventoryCacheChronicle.encode(xml, lastModified));
+      mFiles.add(copy);
+    }
+
+    final Map<String, GridDatasetInv> inventories = cache.getAll(mFiles);
+    final List<String> expected = new ArrayList<>();
+    for (int i = 0; i < mFiles.size(); i++) {
+      if (i % 3 != 0)
+        expected.add(mFiles.get(i).getPath());
+    }
+    assertThat(inventories.keySet()).containsExactlyElementsIn(expected).inOrder();
+    assertThat(inventories.get(expected.get(0)).findGrid("Z_sfc")).isNotNull();
+    assertThat(GridInventoryCacheChronicle.getBytes(mFiles.get(0).getPath())).isNull();
+    // kept decoded
+    assertThat(cache.get(mFiles.get(1))).isSameInstanceAs(inventories.get(mFiles.get(1).getPath()));
+  }
+
   @Test
   public void shouldFitMaxEntriesInCacheWithDefaultAverageValueSize() throws IOException {
     final int maxEntries = 10;
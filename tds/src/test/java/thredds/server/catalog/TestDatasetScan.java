@@ -12,8 +12,10 @@ import org.junit.experimental.categories.Category;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import thredds.client.catalog.Catalog;
+import thredds.client.catalog.CatalogRef;
 import thredds.client.catalog.Dataset;
 import thredds.client.catalog.Service;
+import thredds.client.catalog.builder.CatalogBuilder;
 import thredds.client.catalog.tools.CatalogXmlWriter;
 import thredds.core.StandardService;
 import ucar.nc2.time.CalendarDateFormatter;
@@ -22,8 +24,10 @@ import ucar.nc2.units.TimeDuration;
 import ucar.nc2.util.AliasTranslator;
 import ucar.unidata.util.test.category.NeedsCdmUnitTest;
 import ucar.unidata.util.test.TestDir;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.util.List;
 
@@ -269,6 +273,68 @@ public class TestDatasetScan {
     assertThat(latestDataset).isNotNull();
   }
 
+  @Test
+  public void shouldPageDirectory() throws IOException {
+    ConfigCatalog cat = TestConfigCatalogBuilder.getFromResource(CATALOG);
+    DatasetScan dss = (DatasetScan) cat.findDatasetByID("NWS/NPN/6min");
+    String path = "station/profiler/wind/06min/20131102";
+
+    List<Dataset> all =
+        dss.makeCatalogForDirectory(path, cat.getBaseURI()).makeCatalog().getDatasets().get(0).getDatasets();
+    assertThat(all.size()).isEqualTo(3); // latest and 2 files
+
+    List<Dataset> first =
+        dss.makeCatalogForDirectory(path, cat.getBaseURI(), 0, 1).makeCatalog().getDatasets().get(0).getDatasets();
+    assertThat(first.size()).isEqualTo(3); // latest, 1 file and the next page
+    assertThat(first.get(1).getName()).isEqualTo(all.get(1).getName());
+    assertThat(first.get(2)).isInstanceOf(CatalogRef.class);
+    assertThat(((CatalogRef) first.get(2)).getXlinkHref()).isEqualTo("catalog.xml?start=1&limit=1");
+
+    List<Dataset> second =
+        dss.makeCatalogForDirectory(path, cat.getBaseURI(), 1, 1).makeCatalog().getDatasets().get(0).getDatasets();
+    assertThat(second.size()).isEqualTo(2); // latest and the last file
+    assertThat(second.get(1).getName()).isEqualTo(all.get(2).getName());
+  }
+
+  @Test
+  public void shouldStreamSameCatalog() throws IOException {
+    ConfigCatalog cat = TestConfigCatalogBuilder.getFromResource(CATALOG);
+    DatasetScan dss = (DatasetScan) cat.findDatasetByID("NWS/NPN/6min");
+    String path = "station/profiler/wind/06min/20131102";
+
+    for (boolean useBytes : new boolean[] {false, true}) {
+      CatalogXmlWriter.useBytesForDataSize(useBytes);
+      DatasetScanXmlWriter.useBytesForDataSize(useBytes);
+      try {
+        // as the CatalogXmlWriter writes it
+        Catalog built = dss.makeCatalogForDirectory(path, cat.getBaseURI()).makeCatalog();
+        built = new CatalogBuilder().buildFromString(new CatalogXmlWriter().writeXML(built), cat.getBaseURI());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new DatasetScanXmlWriter().writeXML(dss.makeDirectoryPage(path, cat.getBaseURI(), 0, -1), out);
+        String xml = out.toString(StandardCharsets.UTF_8.name());
+        logger.debug(xml);
+        Catalog streamed = new CatalogBuilder().buildFromString(xml, cat.getBaseURI());
+        assertThat(streamed).isNotNull();
+
+        List<Dataset> expected = built.getDatasets().get(0).getDatasets();
+        List<Dataset> actual = streamed.getDatasets().get(0).getDatasets();
+        assertThat(actual.size()).isEqualTo(expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+          assertThat(actual.get(i).getName()).isEqualTo(expected.get(i).getName());
+          assertThat(actual.get(i).getID()).isEqualTo(expected.get(i).getID());
+          assertThat(actual.get(i).getUrlPath()).isEqualTo(expected.get(i).getUrlPath());
+          assertThat(actual.get(i).getTimeCoverage()).isEqualTo(expected.get(i).getTimeCoverage());
+          assertThat(actual.get(i).getServiceDefault()).isEqualTo(expected.get(i).getServiceDefault());
+          assertThat(actual.get(i).getDataSize()).isEqualTo(expected.get(i).getDataSize());
+        }
+      } finally {
+        CatalogXmlWriter.useBytesForDataSize(false);
+        DatasetScanXmlWriter.useBytesForDataSize(false);
+      }
+    }
+  }
+
   @Test
   public void testEsgfProblems() throws IOException {
     String filePath = "../tds/src/test/content/thredds/testEsgfProblems.xml";
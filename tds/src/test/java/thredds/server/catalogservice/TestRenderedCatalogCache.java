@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package thredds.server.catalogservice;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import java.nio.charset.StandardCharsets;
+
+public class TestRenderedCatalogCache {
+  private static final String XML = "application/xml";
+
+  private static RenderedCatalogCache.Key key(String path, boolean isHtml) {
+    return new RenderedCatalogCache.Key(path, "http://localhost/thredds/catalog/" + path, isHtml, null, 0, -1);
+  }
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void shouldOnlyHitSameVersion() {
+    RenderedCatalogCache cache = new RenderedCatalogCache(1000 * 1000);
+    Object version = new Object();
+    RenderedCatalogCache.Key key = key("test/catalog.xml", false);
+    RenderedCatalogCache.Rendered rendered = cache.put(key, version, bytes("<catalog/>"), XML);
+    assertThat(rendered).isNotNull();
+
+    assertThat(cache.get(key("test/catalog.xml", false), version)).isSameInstanceAs(rendered);
+    assertThat(cache.get(key("test/catalog.xml", true), version)).isNull();
+
+    // the catalog changed
+    assertThat(cache.get(key, new Object())).isNull();
+    assertThat(cache.getNumberOfEntries()).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldMakeStrongETag() {
+    RenderedCatalogCache cache = new RenderedCatalogCache(1000 * 1000);
+    Object version = new Object();
+    String etag1 = cache.put(key("a/catalog.xml", false), version, bytes("<catalog name='a'/>"), XML).getETag();
+    String etag2 = cache.put(key("b/catalog.xml", false), version, bytes("<catalog name='a'/>"), XML).getETag();
+    String etag3 = cache.put(key("c/catalog.xml", false), version, bytes("<catalog name='c'/>"), XML).getETag();
+
+    assertThat(etag1).startsWith("\"");
+    assertThat(etag1).endsWith("\"");
+    assertThat(etag1).isEqualTo(etag2);
+    assertThat(etag1).isNotEqualTo(etag3);
+  }
+
+  @Test
+  public void shouldNotCacheWithoutVersionOrWhenTooBig() {
+    RenderedCatalogCache cache = new RenderedCatalogCache(100);
+    assertThat(cache.put(key("a/catalog.xml", false), null, bytes("<catalog/>"), XML)).isNull();
+    assertThat(cache.put(key("a/catalog.xml", false), new Object(), new byte[11], XML)).isNull();
+    assertThat(cache.put(key("a/catalog.xml", false), new Object(), new byte[10], XML)).isNotNull();
+  }
+
+  @Test
+  public void shouldInvalidatePath() {
+    RenderedCatalogCache cache = new RenderedCatalogCache(1000 * 1000);
+    Object version = new Object();
+    cache.put(key("fc/gfs/catalog.xml", false), version, bytes("<catalog/>"), XML);
+    cache.put(key("fc/gfs/catalog.html", true), version, bytes("<html/>"), "text/html");
+    cache.put(key("fc/gfsAnalysis/catalog.xml", false), version, bytes("<catalog/>"), XML);
+
+    cache.invalidatePath("/fc/gfs");
+    assertThat(cache.getNumberOfEntries()).isEqualTo(1);
+    assertThat(cache.get(key("fc/gfsAnalysis/catalog.xml", false), version)).isNotNull();
+
+    cache.invalidateAll();
+    assertThat(cache.getNumberOfEntries()).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldBeOffWhenMaxSizeIsZero() {
+    RenderedCatalogCache cache = new RenderedCatalogCache(0);
+    assertThat(cache.isEnabled()).isFalse();
+    assertThat(cache.put(key("a/catalog.xml", false), new Object(), bytes("<catalog/>"), XML)).isNull();
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package thredds.server.dap4;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import dap4.core.util.DapContext;
+import dap4.servlet.DMRCache;
+import dap4.servlet.DapController;
+import dap4.servlet.DapRequest;
+import java.io.File;
+import java.io.IOException;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class TestDMRCacheReuse {
+  private static final String TEST_FILE = "src/test/content/thredds/public/testdata/testGridAsPoint.nc";
+
+  // serves TEST_FILE for any dataset path
+  private static class FileController extends DapController {
+    @Override
+    protected void doFavicon(String icopath, DapContext cxt) {
+      throw new UnsupportedOperationException("Favicon");
+    }
+
+    @Override
+    protected void doCapabilities(DapRequest drq, DapContext cxt) {
+      throw new UnsupportedOperationException("Capabilities");
+    }
+
+    @Override
+    public long getBinaryWriteLimit() {
+      return DEFAULTBINARYWRITELIMIT;
+    }
+
+    @Override
+    public String getServletID() {
+      return "/dap4";
+    }
+
+    @Override
+    protected String getWebContentRoot(DapRequest drq) {
+      return new File(".").getAbsolutePath();
+    }
+
+    @Override
+    protected String getResourcePath(DapRequest drq, String location) {
+      return new File(TEST_FILE).getAbsolutePath();
+    }
+  }
+
+  private static MockHttpServletResponse request(DapController controller, String path) throws IOException {
+    MockHttpServletRequest req = new MockHttpServletRequest("GET", "/dap4" + path);
+    req.setServletPath(path);
+    MockHttpServletResponse res = new MockHttpServletResponse();
+    controller.handleRequest(req, res);
+    return res;
+  }
+
+  @Test
+  public void shouldReusePrintedDmrForDataRequest() throws IOException {
+    FileController controller = new FileController();
+    MockHttpServletResponse dmrResponse = request(controller, "/testGridAsPoint.nc.dmr");
+    assertThat(dmrResponse.getContentAsByteArray().length).isGreaterThan(0);
+    DMRCache cache = controller.getDMRCache();
+    assertThat(cache.getPrintedMisses()).isEqualTo(1);
+    assertThat(cache.getPrintedHits()).isEqualTo(0);
+
+    MockHttpServletResponse dataResponse = request(controller, "/testGridAsPoint.nc.dap");
+    assertThat(dataResponse.getContentAsByteArray().length).isGreaterThan(dmrResponse.getContentAsByteArray().length);
+    assertThat(cache.getPrintedHits()).isEqualTo(1);
+    assertThat(cache.getPrintedMisses()).isEqualTo(1);
+    assertThat(cache.getHits()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldReusePrintedDmrFromDataRequest() throws IOException {
+    FileController controller = new FileController();
+    request(controller, "/testGridAsPoint.nc.dap");
+    request(controller, "/testGridAsPoint.nc.dmr");
+    DMRCache cache = controller.getDMRCache();
+    assertThat(cache.getPrintedMisses()).isEqualTo(1);
+    assertThat(cache.getPrintedHits()).isEqualTo(1);
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package thredds.server.ncss.controller;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import thredds.server.exception.ServiceBusyException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class TestNcssJobManager {
+  private static final String DATASET = "localContent/test.nc";
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private NcssDiskCache diskCache;
+
+  @Before
+  public void setup() throws IOException {
+    diskCache = new NcssDiskCache(tempFolder.newFolder("ncss").getPath());
+  }
+
+  @Test
+  public void shouldRunJob() throws Exception {
+    NcssJobManager manager = new NcssJobManager(diskCache, 1, 1, 1);
+    try {
+      NcssJobManager.Job job = manager.makeJob("user", DATASET, ".nc");
+      AtomicBoolean closed = new AtomicBoolean();
+      manager.submit(job, j -> Files.write(j.getFile().toPath(), new byte[100]), () -> closed.set(true));
+
+      waitFor(job);
+      assertThat(job.getState()).isEqualTo(NcssJobManager.State.done);
+      assertThat(job.getBytesWritten()).isEqualTo(100);
+      assertThat(closed.get()).isTrue();
+      assertThat(manager.getJob(job.getId(), "user")).isSameInstanceAs(job);
+      assertThat(manager.getJob(job.getId(), "someoneElse")).isNull();
+    } finally {
+      manager.destroy();
+    }
+  }
+
+  @Test
+  public void shouldReportFailure() throws Exception {
+    NcssJobManager manager = new NcssJobManager(diskCache, 1, 1, 1);
+    try {
+      NcssJobManager.Job job = manager.makeJob("user", DATASET, ".nc");
+      manager.submit(job, j -> {
+        throw new IOException("failed");
+      }, null);
+
+      waitFor(job);
+      assertThat(job.getState()).isEqualTo(NcssJobManager.State.failed);
+      assertThat(job.getErrorMessage()).isEqualTo("failed");
+      assertThat(job.getFile().exists()).isFalse();
+    } finally {
+      manager.destroy();
+    }
+  }
+
+  @Test
+  public void shouldLimitJobsPerUser() throws Exception {
+    NcssJobManager manager = new NcssJobManager(diskCache, 1, 10, 1);
+    CountDownLatch finish = new CountDownLatch(1);
+    try {
+      NcssJobManager.Job job = manager.makeJob("user", DATASET, ".nc");
+      manager.submit(job, j -> finish.await(10, TimeUnit.SECONDS), null);
+      try {
+        manager.makeJob("user", DATASET, ".nc");
+        fail();
+      } catch (ServiceBusyException e) {
+        assertThat(e.getRetryAfterSecs()).isGreaterThan(0);
+      }
+      // other users are not affected
+      manager.makeJob("otherUser", DATASET, ".nc");
+
+      finish.countDown();
+      waitFor(job);
+      manager.makeJob("user", DATASET, ".nc");
+    } finally {
+      finish.countDown();
+      manager.destroy();
+    }
+  }
+
+  @Test
+  public void shouldRejectWhenQueueIsFull() throws Exception {
+    NcssJobManager manager = new NcssJobManager(diskCache, 1, 1, 10);
+    CountDownLatch running = new CountDownLatch(1);
+    CountDownLatch finish = new CountDownLatch(1);
+    try {
+      manager.submit(manager.makeJob("user", DATASET, ".nc"), j -> {
+        running.countDown();
+        finish.await(10, TimeUnit.SECONDS);
+      }, null);
+      running.await(10, TimeUnit.SECONDS);
+      manager.submit(manager.makeJob("user", DATASET, ".nc"), j -> {
+      }, null); // queued
+
+      NcssJobManager.Job rejected = manager.makeJob("user", DATASET, ".nc");
+      AtomicBoolean closed = new AtomicBoolean();
+      try {
+        manager.submit(rejected, j -> fail("should not run"), () -> closed.set(true));
+        fail();
+      } catch (ServiceBusyException e) {
+        assertThat(closed.get()).isTrue();
+        assertThat(rejected.getFile().exists()).isFalse();
+        assertThat(manager.getJob(rejected.getId(), "user")).isNull();
+      }
+    } finally {
+      finish.countDown();
+      manager.destroy();
+    }
+  }
+
+  @Test
+  public void shouldCancelQueuedJob() throws Exception {
+    NcssJobManager manager = new NcssJobManager(diskCache, 1, 10, 10);
+    CountDownLatch running = new CountDownLatch(1);
+    CountDownLatch finish = new CountDownLatch(1);
+    try {
+      manager.submit(manager.makeJob("user", DATASET, ".nc"), j -> {
+        running.countDown();
+        finish.await(10, TimeUnit.SECONDS);
+      }, null);
+      running.await(10, TimeUnit.SECONDS);
+
+      NcssJobManager.Job queued = manager.makeJob("user", DATASET, ".nc");
+      AtomicBoolean ran = new AtomicBoolean();
+      AtomicBoolean closed = new AtomicBoolean();
+      manager.submit(queued, j -> ran.set(true), () -> closed.set(true));
+
+      assertThat(manager.cancel(queued.getId(), "someoneElse")).isFalse();
+      assertThat(manager.cancel(queued.getId(), "user")).isTrue();
+      assertThat(queued.getState()).isEqualTo(NcssJobManager.State.cancelled);
+      assertThat(closed.get()).isTrue();
+      assertThat(queued.getFile().exists()).isFalse();
+      assertThat(manager.getJob(queued.getId(), "user")).isNull();
+
+      finish.countDown();
+      assertThat(ran.get()).isFalse();
+    } finally {
+      finish.countDown();
+      manager.destroy();
+    }
+  }
+
+  private static void waitFor(NcssJobManager.Job job) throws InterruptedException {
+    long start = System.currentTimeMillis();
+    while (!job.isFinished() && System.currentTimeMillis() - start < 10000) {
+      Thread.sleep(10);
+    }
+    assertThat(job.isFinished()).isTrue();
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package thredds.server.ncss.controller;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import thredds.server.ncss.params.NcssGridParamsBean;
+import ucar.nc2.write.NetcdfFileFormat;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestNcssResultCache {
+  private static final String DATASET = "localContent/test.nc";
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private File resultDir;
+
+  @Before
+  public void setup() throws IOException {
+    resultDir = tempFolder.newFolder("results");
+  }
+
+  @Test
+  public void shouldWriteOnceForConcurrentRequests() throws Exception {
+    NcssResultCache cache = new NcssResultCache(resultDir, 1000);
+    AtomicInteger writes = new AtomicInteger();
+    CountDownLatch writing = new CountDownLatch(1);
+    CountDownLatch finish = new CountDownLatch(1);
+
+    NcssResultCache.ResultWriter writer = file -> {
+      writes.incrementAndGet();
+      writing.countDown();
+      finish.await(10, TimeUnit.SECONDS);
+      Files.write(file.toPath(), new byte[100]);
+    };
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      Future<File> first = executor.submit(() -> getAndClose(cache, "key", writer));
+      writing.await(10, TimeUnit.SECONDS);
+      Future<File> second = executor.submit(() -> getAndClose(cache, "key", writer));
+      Future<File> third = executor.submit(() -> getAndClose(cache, "key", writer));
+      finish.countDown();
+
+      assertThat(second.get(10, TimeUnit.SECONDS)).isEqualTo(first.get(10, TimeUnit.SECONDS));
+      assertThat(third.get(10, TimeUnit.SECONDS)).isEqualTo(first.get());
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertThat(writes.get()).isEqualTo(1);
+    assertThat(cache.getNumberOfEntries()).isEqualTo(1);
+    assertThat(cache.getTotalSize()).isEqualTo(100);
+  }
+
+  @Test
+  public void shouldNotDeleteFileBeingStreamed() throws Exception {
+    NcssResultCache cache = new NcssResultCache(resultDir, 150);
+
+    NcssResultCache.Result streaming = cache.get("key1", DATASET, file -> Files.write(file.toPath(), new byte[100]));
+    File file1 = streaming.getFile();
+
+    // evicts key1, which is still being streamed
+    getAndClose(cache, "key2", file -> Files.write(file.toPath(), new byte[100]));
+    assertThat(cache.getNumberOfEntries()).isEqualTo(1);
+    assertThat(cache.getTotalSize()).isEqualTo(100);
+    assertThat(file1.exists()).isTrue();
+
+    streaming.close();
+    assertThat(file1.exists()).isFalse();
+  }
+
+  @Test
+  public void shouldEvictLeastRecentlyUsed() throws Exception {
+    NcssResultCache cache = new NcssResultCache(resultDir, 250);
+    File file1 = getAndClose(cache, "key1", file -> Files.write(file.toPath(), new byte[100]));
+    File file2 = getAndClose(cache, "key2", file -> Files.write(file.toPath(), new byte[100]));
+    getAndClose(cache, "key1", file -> fail("should be cached"));
+    File file3 = getAndClose(cache, "key3", file -> Files.write(file.toPath(), new byte[100]));
+
+    assertThat(file1.exists()).isTrue();
+    assertThat(file2.exists()).isFalse();
+    assertThat(file3.exists()).isTrue();
+    assertThat(cache.getTotalSize()).isEqualTo(200);
+  }
+
+  @Test
+  public void shouldNotCacheFailures() throws Exception {
+    NcssResultCache cache = new NcssResultCache(resultDir, 1000);
+    try {
+      getAndClose(cache, "key", file -> {
+        throw new IOException("failed");
+      });
+      fail();
+    } catch (IOException e) {
+      assertThat(e.getMessage()).isEqualTo("failed");
+    }
+    assertThat(cache.getNumberOfEntries()).isEqualTo(0);
+
+    File file = getAndClose(cache, "key", f -> Files.write(f.toPath(), new byte[10]));
+    assertThat(file.exists()).isTrue();
+  }
+
+  @Test
+  public void shouldInvalidateUnderCollectionPath() throws Exception {
+    NcssResultCache cache = new NcssResultCache(resultDir, 1000);
+    File file = getAndClose(cache, "key", f -> Files.write(f.toPath(), new byte[10]));
+
+    cache.invalidatePath("otherContent");
+    assertThat(cache.getNumberOfEntries()).isEqualTo(1);
+    cache.invalidatePath("localContent");
+    assertThat(cache.getNumberOfEntries()).isEqualTo(0);
+    assertThat(file.exists()).isFalse();
+  }
+
+  @Test
+  public void shouldNotCacheTimesRelativeToPresent() {
+    assertThat(NcssResultCache.isRelativeToPresent(makeParams("2021-01-01T00:00:00Z", null, null, null))).isFalse();
+    assertThat(NcssResultCache.isRelativeToPresent(makeParams(null, "2021-01-01T00:00:00Z", null, "P1D"))).isFalse();
+    assertThat(NcssResultCache.isRelativeToPresent(makeParams("present", null, null, null))).isTrue();
+    assertThat(NcssResultCache.isRelativeToPresent(makeParams(null, "Present", null, "P1D"))).isTrue();
+    assertThat(NcssResultCache.isRelativeToPresent(makeParams(null, "2021-01-01T00:00:00Z", "present", null))).isTrue();
+    assertThat(NcssResultCache.isRelativeToPresent(makeParams(null, null, null, "P1D"))).isTrue();
+
+    NcssGridParamsBean params = makeParams("2021-01-01T00:00:00Z", null, null, null);
+    params.setRuntime("present");
+    assertThat(NcssResultCache.isRelativeToPresent(params)).isTrue();
+
+    // no time is the time nearest to now
+    assertThat(NcssResultCache.isRelativeToPresent(makeParams(null, null, null, null))).isTrue();
+    assertThat(NcssResultCache.isRelativeToPresent(makeParams("all", null, null, null))).isFalse();
+    params = makeParams(null, null, null, null);
+    params.setTemporal("all");
+    assertThat(NcssResultCache.isRelativeToPresent(params)).isFalse();
+  }
+
+  @Test
+  public void shouldMakeSameKeyForVariablesInAnyOrder() {
+    NcssGridParamsBean params1 = makeParams("2021-01-01T00:00:00Z", null, null, null);
+    params1.setVar(Arrays.asList("b", "a"));
+    NcssGridParamsBean params2 = makeParams("2021-01-01T00:00:00Z", null, null, null);
+    params2.setVar(Arrays.asList("a", "b", "a"));
+    NcssGridParamsBean params3 = makeParams("2021-01-01T00:00:00Z", null, null, null);
+    params3.setVar(Arrays.asList("a", "c"));
+
+    String key = NcssResultCache.makeKey(DATASET, 1000, params1, NetcdfFileFormat.NETCDF3);
+    assertThat(NcssResultCache.makeKey(DATASET, 1000, params2, NetcdfFileFormat.NETCDF3)).isEqualTo(key);
+    assertThat(NcssResultCache.makeKey(DATASET, 1000, params3, NetcdfFileFormat.NETCDF3)).isNotEqualTo(key);
+    assertThat(NcssResultCache.makeKey(DATASET, 2000, params1, NetcdfFileFormat.NETCDF3)).isNotEqualTo(key);
+  }
+
+  private static NcssGridParamsBean makeParams(String time, String start, String end, String duration) {
+    NcssGridParamsBean params = new NcssGridParamsBean();
+    params.setTime(time);
+    params.setTime_start(start);
+    params.setTime_end(end);
+    params.setTime_duration(duration);
+    return params;
+  }
+
+  private static File getAndClose(NcssResultCache cache, String key, NcssResultCache.ResultWriter writer)
+      throws Exception {
+    try (NcssResultCache.Result result = cache.get(key, DATASET, writer)) {
+      return result.getFile();
+    }
+  }
+}
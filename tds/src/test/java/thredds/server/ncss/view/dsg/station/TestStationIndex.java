@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package thredds.server.ncss.view.dsg.station;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import ucar.nc2.ft.StationFeatureCollection;
+import ucar.nc2.ft.point.StationFeature;
+import ucar.nc2.ft.point.StationFeatureImpl;
+import ucar.unidata.geoloc.LatLonPoint;
+import ucar.unidata.geoloc.LatLonRect;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TestStationIndex {
+  private final Random random = new Random(1234);
+
+  @Test
+  public void shouldFindClosestStation() {
+    List<StationFeature> stations = makeStations(2000);
+    StationIndex index = new StationIndex(stations);
+
+    for (int i = 0; i < 1000; i++) {
+      LatLonPoint pt = LatLonPoint.create(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+      assertThat(index.findClosest(stations, pt)).isSameInstanceAs(StationWriterUtils.findClosest(stations, pt));
+    }
+  }
+
+  @Test
+  public void shouldFindClosestAcrossDateline() {
+    List<StationFeature> stations = new ArrayList<>();
+    stations.add(makeStation("west", 10, -179.5));
+    stations.add(makeStation("east", 10, 170));
+    StationIndex index = new StationIndex(stations);
+
+    assertThat(index.findClosest(stations, LatLonPoint.create(10, 179)).getName()).isEqualTo("west");
+    assertThat(index.findClosest(stations, LatLonPoint.create(10, 540)).getName()).isEqualTo("west");
+  }
+
+  @Test
+  public void shouldFindStationsInBoundingBox() {
+    List<StationFeature> stations = makeStations(2000);
+    StationIndex index = new StationIndex(stations);
+
+    for (int i = 0; i < 500; i++) {
+      double lat = random.nextDouble() * 160 - 80;
+      double lon = random.nextDouble() * 360 - 180;
+      LatLonRect llrect = new LatLonRect(LatLonPoint.create(lat, lon), random.nextDouble() * 20,
+          random.nextDouble() * 60);
+
+      List<StationFeature> expected = new ArrayList<>();
+      for (StationFeature s : stations) {
+        if (llrect.contains(LatLonPoint.create(s.getLatitude(), s.getLongitude())))
+          expected.add(s);
+      }
+      assertThat(index.getStations(stations, llrect)).containsExactlyElementsIn(expected).inOrder();
+    }
+  }
+
+  @Test
+  public void shouldHandleEmptyCollection() {
+    List<StationFeature> stations = new ArrayList<>();
+    StationIndex index = new StationIndex(stations);
+    assertThat(index.findClosest(stations, LatLonPoint.create(0, 0))).isNull();
+    assertThat(index.getStations(stations, new LatLonRect())).isEmpty();
+  }
+
+  @Test
+  public void shouldIndexCollectionSeenAgain() {
+    StationFeatureCollection collection = (StationFeatureCollection) Proxy.newProxyInstance(
+        getClass().getClassLoader(), new Class<?>[] {StationFeatureCollection.class}, (proxy, method, args) -> null);
+    List<StationFeature> stations = makeStations(10);
+    assertThat(StationWriterUtils.getStationIndex(collection, stations)).isNull();
+    StationIndex index = StationWriterUtils.getStationIndex(collection, stations);
+    assertThat(index).isNotNull();
+    assertThat(StationWriterUtils.getStationIndex(collection, stations)).isSameInstanceAs(index);
+
+    // the collection was updated
+    List<StationFeature> updated = makeStations(20);
+    assertThat(StationWriterUtils.getStationIndex(collection, updated)).isNull();
+    assertThat(StationWriterUtils.getStationIndex(collection, updated)).isNotSameInstanceAs(index);
+  }
+
+  private List<StationFeature> makeStations(int n) {
+    List<StationFeature> stations = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      // some on a grid, so there are ties
+      double lat = (i % 4 == 0) ? (i % 40) - 20 : random.nextDouble() * 180 - 90;
+      double lon = (i % 4 == 0) ? (i % 60) * 3 : random.nextDouble() * 360 - 180;
+      stations.add(makeStation("stn" + i, lat, lon));
+    }
+    return stations;
+  }
+
+  private static StationFeature makeStation(String name, double lat, double lon) {
+    return new StationFeatureImpl(name, null, null, lat, lon, 0, -1, null);
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package thredds.server.opendap;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import opendap.servers.ServerDDS;
+import org.junit.After;
+import org.junit.Test;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import java.io.IOException;
+
+public class TestDdsDasCache {
+  private static final String TEST_FILE = "src/test/content/thredds/public/testdata/testGridAsPoint.nc";
+  private static final String REQ_PATH = "/localContent/testGridAsPoint.nc";
+
+  @After
+  public void resetCache() {
+    DdsDasCache.resetCache();
+  }
+
+  @Test
+  public void shouldReuseTemplateForSameFile() throws IOException {
+    try (NetcdfFile ncfile = NetcdfFiles.open(TEST_FILE)) {
+      DdsDasCache.Template template1 = DdsDasCache.getTemplate(REQ_PATH, ncfile);
+      DdsDasCache.Template template2 = DdsDasCache.getTemplate(REQ_PATH, ncfile);
+      assertThat(template2).isSameInstanceAs(template1);
+      assertThat(DdsDasCache.getNumberOfEntries()).isEqualTo(1);
+      assertThat(DdsDasCache.getHitCount()).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void shouldRebuildTemplateForDifferentFileObject() throws IOException {
+    DdsDasCache.Template template1;
+    try (NetcdfFile ncfile = NetcdfFiles.open(TEST_FILE)) {
+      template1 = DdsDasCache.getTemplate(REQ_PATH, ncfile);
+    }
+    try (NetcdfFile ncfile = NetcdfFiles.open(TEST_FILE)) {
+      DdsDasCache.Template template2 = DdsDasCache.getTemplate(REQ_PATH, ncfile);
+      assertThat(template2).isNotSameInstanceAs(template1);
+      assertThat(DdsDasCache.getNumberOfEntries()).isEqualTo(1);
+      // the template of the other file was found, but is not a hit
+      assertThat(DdsDasCache.getHitCount()).isEqualTo(0);
+    }
+  }
+
+  @Test
+  public void shouldCloneFromTemplate() throws IOException {
+    try (NetcdfFile ncfile = NetcdfFiles.open(TEST_FILE)) {
+      GuardedDatasetCacheAndClone gds = new GuardedDatasetCacheAndClone(REQ_PATH, ncfile, true);
+      ServerDDS dds1 = gds.getDDS();
+      ServerDDS dds2 = gds.getDDS();
+      assertThat(dds1).isNotSameInstanceAs(dds2);
+      assertThat(dds1.numVariables()).isEqualTo(dds2.numVariables());
+    }
+  }
+
+  @Test
+  public void shouldInvalidateUnderCollectionPath() throws IOException {
+    try (NetcdfFile ncfile = NetcdfFiles.open(TEST_FILE)) {
+      DdsDasCache.getTemplate(REQ_PATH, ncfile);
+      DdsDasCache.invalidatePath("otherContent");
+      assertThat(DdsDasCache.getNumberOfEntries()).isEqualTo(1);
+      DdsDasCache.invalidatePath("localContent");
+      assertThat(DdsDasCache.getNumberOfEntries()).isEqualTo(0);
+    }
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package thredds.server.opendap;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import opendap.servers.CEEvaluator;
+import opendap.servers.ServerDDS;
+import org.junit.After;
+import org.junit.Test;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+
+// Test that streaming NcSDArray serialization gives the same bytes as reading the whole array
+
+public class TestNcSDArrayStreaming {
+  private static final String TEST_FILE = "src/test/data/testdata2/temp_air_01082000.nc";
+
+  @After
+  public void turnOffStreaming() {
+    NcSDArray.setStreamSlabSize(0);
+    DdsDasCache.resetCache();
+  }
+
+  @Test
+  public void shouldStreamSameBytes() throws Exception {
+    for (String constraint : new String[] {"t", "levelist", "t[0:2:3][3:4][4:5][0:2:6]",
+        "time,t[1:3][0:4][0:5][0:6]"}) {
+      NcSDArray.setStreamSlabSize(0);
+      byte[] expected = serialize(constraint);
+      NcSDArray.setStreamSlabSize(64);
+      byte[] result = serialize(constraint);
+      assertThat(result).isEqualTo(expected);
+    }
+  }
+
+  private byte[] serialize(String constraint) throws Exception {
+    try (NetcdfFile ncfile = NetcdfFiles.open(TEST_FILE)) {
+      GuardedDatasetCacheAndClone ds = new GuardedDatasetCacheAndClone(TEST_FILE, ncfile, true);
+      ServerDDS dds = ds.getDDS();
+      CEEvaluator ce = new CEEvaluator(dds);
+      ce.parseConstraint(constraint, null);
+
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      DataOutputStream sink = new DataOutputStream(bos);
+      ce.send(dds.getEncodedName(), sink, ds);
+      sink.flush();
+      return bos.toByteArray();
+    }
+  }
+}
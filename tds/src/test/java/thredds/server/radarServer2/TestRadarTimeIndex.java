@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package thredds.server.radarServer2;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.nc2.time.CalendarDate;
+import ucar.nc2.time.CalendarDateRange;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+
+public class TestRadarTimeIndex {
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private Path root;
+
+  @Before
+  public void setup() throws IOException {
+    root = tempFolder.getRoot().toPath();
+    addFile("KFTG", "20140101", "0000");
+    addFile("KFTG", "20140101", "1200");
+    addFile("KFTG", "20140102", "0600");
+    addFile("KCYS", "20140102", "0605");
+  }
+
+  private void addFile(String station, String day, String hhmm) throws IOException {
+    Path dir = Files.createDirectories(root.resolve(station).resolve(day));
+    Files.createFile(dir.resolve("Level2_" + station + "_" + day + "_" + hhmm + ".ar2v"));
+  }
+
+  private RadarTimeIndex makeIndex() {
+    return makeIndex(60 * 1000);
+  }
+
+  private RadarTimeIndex makeIndex(long tailIntervalMsec) {
+    RadarDataInventory.DirectoryStructure structure = new RadarDataInventory.DirectoryStructure(root);
+    structure.addSubDir(RadarDataInventory.DirType.Station, null);
+    structure.addSubDir(RadarDataInventory.DirType.Date, "yyyyMMdd");
+    return new RadarTimeIndex(structure, Pattern.compile("\\d{8}_\\d{4}"), "yyyyMMdd_HHmm", tailIntervalMsec,
+        24 * 3600 * 1000);
+  }
+
+  private static long time(String iso) {
+    return CalendarDate.parseISOformat(null, iso).getMillis();
+  }
+
+  private static List<String> names(List<RadarTimeIndex.Hit> hits) {
+    List<String> names = new ArrayList<>();
+    for (RadarTimeIndex.Hit hit : hits)
+      names.add(hit.file.getFileName().toString());
+    return names;
+  }
+
+  @Test
+  public void shouldFindRange() {
+    RadarTimeIndex index = makeIndex();
+    String key = RadarTimeIndex.makeKey("KFTG", null);
+
+    assertThat(names(index.find(key, Long.MIN_VALUE, Long.MAX_VALUE))).containsExactly(
+        "Level2_KFTG_20140101_0000.ar2v", "Level2_KFTG_20140101_1200.ar2v", "Level2_KFTG_20140102_0600.ar2v")
+        .inOrder();
+    assertThat(names(index.find(key, time("2014-01-01T12:00:00Z"), time("2014-01-02T06:00:00Z"))))
+        .containsExactly("Level2_KFTG_20140101_1200.ar2v", "Level2_KFTG_20140102_0600.ar2v").inOrder();
+    assertThat(index.find(key, time("2014-01-03T00:00:00Z"), Long.MAX_VALUE)).isEmpty();
+    assertThat(index.find(RadarTimeIndex.makeKey("KXXX", null), Long.MIN_VALUE, Long.MAX_VALUE)).isEmpty();
+    assertThat(index.getNumberOfFiles()).isEqualTo(4);
+  }
+
+  @Test
+  public void shouldFindNearest() {
+    RadarTimeIndex index = makeIndex();
+    String key = RadarTimeIndex.makeKey("KFTG", null);
+    long hour = 3600 * 1000;
+
+    RadarTimeIndex.Hit hit = index.findNearest(key, time("2014-01-01T11:40:00Z"), hour);
+    assertThat(hit.file.getFileName().toString()).isEqualTo("Level2_KFTG_20140101_1200.ar2v");
+    assertThat(index.findNearest(key, time("2014-01-01T06:00:00Z"), hour)).isNull();
+  }
+
+  @Test
+  public void shouldRefreshInBackground() throws Exception {
+    RadarTimeIndex index = makeIndex(0);
+    String key = RadarTimeIndex.makeKey("KFTG", null);
+    assertThat(index.find(key, Long.MIN_VALUE, Long.MAX_VALUE)).hasSize(3);
+
+    // a refresh is due, but the query does not wait for it
+    index.refreshLock.lock();
+    try {
+      addFile("KFTG", "20140102", "1800");
+      assertThat(index.find(key, Long.MIN_VALUE, Long.MAX_VALUE)).hasSize(3);
+    } finally {
+      index.refreshLock.unlock();
+    }
+
+    long end = System.currentTimeMillis() + 10_000;
+    while (index.find(key, Long.MIN_VALUE, Long.MAX_VALUE).size() < 4) {
+      assertThat(System.currentTimeMillis()).isLessThan(end);
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  public void shouldOnlyRescanNewestDirectories() throws IOException {
+    RadarTimeIndex index = makeIndex();
+    String key = RadarTimeIndex.makeKey("KFTG", null);
+    assertThat(index.getNumberOfFiles()).isEqualTo(4);
+
+    addFile("KFTG", "20140102", "1800"); // newest day
+    addFile("KFTG", "20140103", "0000"); // new day
+    addFile("KFTG", "20140101", "1800"); // back-filled
+    addFile("KTLX", "20140101", "0000"); // new station
+
+    index.refreshNow(false);
+    assertThat(names(index.find(key, time("2014-01-02T00:00:00Z"), Long.MAX_VALUE))).containsExactly(
+        "Level2_KFTG_20140102_0600.ar2v", "Level2_KFTG_20140102_1800.ar2v", "Level2_KFTG_20140103_0000.ar2v")
+        .inOrder();
+    assertThat(index.find(key, time("2014-01-01T18:00:00Z"), time("2014-01-01T18:00:00Z"))).isEmpty();
+    assertThat(index.find(RadarTimeIndex.makeKey("KTLX", null), Long.MIN_VALUE, Long.MAX_VALUE)).hasSize(1);
+
+    index.refreshNow(true);
+    assertThat(index.find(key, time("2014-01-01T18:00:00Z"), time("2014-01-01T18:00:00Z"))).hasSize(1);
+    assertThat(index.getNumberOfFiles()).isEqualTo(8);
+  }
+
+  @Test
+  public void shouldQueryInventory() {
+    RadarDataInventory inv = new RadarDataInventory(root, 5);
+    inv.addStationDir();
+    inv.addDateDir("yyyyMMdd");
+    inv.addFileTime("\\d{8}_\\d{4}", "yyyyMMdd_HHmm");
+
+    RadarDataInventory.Query query = inv.newQuery();
+    query.addStation("KFTG");
+    query.addStation("KCYS");
+    query.addDateRange(CalendarDateRange.of(CalendarDate.parseISOformat(null, "2014-01-02T00:00:00Z"),
+        CalendarDate.parseISOformat(null, "2014-01-02T23:00:00Z")));
+    Collection<RadarDataInventory.Query.QueryResultItem> results = query.results();
+    assertThat(results).hasSize(2);
+
+    query = inv.newQuery();
+    query.addStation("KFTG");
+    CalendarDate point = CalendarDate.parseISOformat(null, "2014-01-01T00:10:00Z");
+    query.addDateRange(CalendarDateRange.of(point, point));
+    results = query.results();
+    assertThat(results).hasSize(1);
+    assertThat(results.iterator().next().file.getFileName().toString()).isEqualTo("Level2_KFTG_20140101_0000.ar2v");
+  }
+}
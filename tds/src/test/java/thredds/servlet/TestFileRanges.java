@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 1998-2021 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package thredds.servlet;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+public class TestFileRanges {
+  private static final String CONTENT = "0123456789abcdefghij";
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private File file;
+
+  @Before
+  public void setup() throws Exception {
+    file = tempFolder.newFile("test.bin");
+    Files.write(file.toPath(), CONTENT.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  @Test
+  public void shouldParseRanges() {
+    List<ServletUtil.ByteRange> ranges = ServletUtil.parseRanges("bytes=10-14, 0-4, -3", 20);
+    assertThat(ranges).hasSize(3);
+    assertThat(ranges.get(0).getContentRange(20)).isEqualTo("bytes 10-14/20");
+    assertThat(ranges.get(1).getContentRange(20)).isEqualTo("bytes 0-4/20");
+    assertThat(ranges.get(2).getContentRange(20)).isEqualTo("bytes 17-19/20");
+
+    assertThat(ServletUtil.parseRanges("bytes=5-100", 20).get(0).getLength()).isEqualTo(15);
+    assertThat(ServletUtil.parseRanges("bytes=20-30", 20)).isEmpty();
+    assertThat(ServletUtil.parseRanges("bytes=5-2", 20)).isNull();
+    assertThat(ServletUtil.parseRanges("bytes=a-b", 20)).isNull();
+    assertThat(ServletUtil.parseRanges("lines=1-2", 20)).isNull();
+  }
+
+  @Test
+  public void shouldCoalesceOverlappingRanges() {
+    List<ServletUtil.ByteRange> ranges = ServletUtil.parseRanges("bytes=0-4, 10-, -3", 20);
+    assertThat(ranges).hasSize(2);
+    assertThat(ranges.get(0).getContentRange(20)).isEqualTo("bytes 0-4/20");
+    assertThat(ranges.get(1).getContentRange(20)).isEqualTo("bytes 10-19/20");
+
+    ranges = ServletUtil.parseRanges("bytes=12-15, 0-4, 5-9, 14-17", 20);
+    assertThat(ranges).hasSize(2);
+    assertThat(ranges.get(0).getContentRange(20)).isEqualTo("bytes 0-9/20");
+    assertThat(ranges.get(1).getContentRange(20)).isEqualTo("bytes 12-17/20");
+
+    StringBuilder header = new StringBuilder("bytes=0-");
+    for (int i = 1; i < 100; i++)
+      header.append(",0-");
+    ranges = ServletUtil.parseRanges(header.toString(), 20);
+    assertThat(ranges).hasSize(1);
+    assertThat(ranges.get(0).getLength()).isEqualTo(20);
+  }
+
+  @Test
+  public void shouldSendOverlappingRangesOnce() throws Exception {
+    MockHttpServletResponse res = get("bytes=0-,0-,5-9", null);
+    assertThat(res.getStatus()).isEqualTo(206);
+    assertThat(res.getHeader("Content-Range")).isEqualTo("bytes 0-19/20");
+    assertThat(res.getContentAsString()).isEqualTo(CONTENT);
+  }
+
+  @Test
+  public void shouldReturnWholeFileWithETag() throws Exception {
+    MockHttpServletResponse res = get(null, null);
+    assertThat(res.getStatus()).isEqualTo(200);
+    assertThat(res.getContentAsString()).isEqualTo(CONTENT);
+    assertThat(res.getHeader("ETag")).startsWith("\"");
+    assertThat(res.getHeader("Accept-Ranges")).isEqualTo("bytes");
+  }
+
+  @Test
+  public void shouldReturnSingleRange() throws Exception {
+    MockHttpServletResponse res = get("bytes=2-5", null);
+    assertThat(res.getStatus()).isEqualTo(206);
+    assertThat(res.getHeader("Content-Range")).isEqualTo("bytes 2-5/20");
+    assertThat(res.getContentAsString()).isEqualTo("2345");
+  }
+
+  @Test
+  public void shouldReturnMultipleRanges() throws Exception {
+    MockHttpServletResponse res = get("bytes=0-1,-2", null);
+    assertThat(res.getStatus()).isEqualTo(206);
+    assertThat(res.getContentType()).startsWith("multipart/byteranges; boundary=");
+    String boundary = res.getContentType().substring(res.getContentType().indexOf('=') + 1);
+
+    String partType = "\r\nContent-Type: application/octet-stream\r\n";
+    String expected = "\r\n--" + boundary + partType + "Content-Range: bytes 0-1/20\r\n\r\n01" //
+        + "\r\n--" + boundary + partType + "Content-Range: bytes 18-19/20\r\n\r\nij" //
+        + "\r\n--" + boundary + "--\r\n";
+    assertThat(res.getContentAsString()).isEqualTo(expected);
+    assertThat(res.getContentLength()).isEqualTo(expected.length());
+  }
+
+  @Test
+  public void shouldRejectUnsatisfiableRange() throws Exception {
+    MockHttpServletResponse res = get("bytes=100-200", null);
+    assertThat(res.getStatus()).isEqualTo(416);
+    assertThat(res.getHeader("Content-Range")).isEqualTo("bytes */20");
+  }
+
+  @Test
+  public void shouldAnswerConditionalRequests() throws Exception {
+    String etag = get(null, null).getHeader("ETag");
+
+    MockHttpServletRequest req = request(null, null);
+    req.addHeader("If-None-Match", etag);
+    MockHttpServletResponse res = new MockHttpServletResponse();
+    ServletUtil.returnFile(req, res, file, "application/octet-stream");
+    assertThat(res.getStatus()).isEqualTo(304);
+    assertThat(res.getContentAsByteArray()).isEmpty();
+
+    req = request(null, null);
+    req.addHeader("If-Match", "\"other\"");
+    res = new MockHttpServletResponse();
+    ServletUtil.returnFile(req, res, file, "application/octet-stream");
+    assertThat(res.getStatus()).isEqualTo(412);
+  }
+
+  @Test
+  public void shouldIgnoreRangeIfFileChanged() throws Exception {
+    String etag = get(null, null).getHeader("ETag");
+    assertThat(get("bytes=0-1", etag).getStatus()).isEqualTo(206);
+
+    MockHttpServletResponse res = get("bytes=0-1", "\"changed\"");
+    assertThat(res.getStatus()).isEqualTo(200);
+    assertThat(res.getContentAsString()).isEqualTo(CONTENT);
+  }
+
+  private MockHttpServletRequest request(String range, String ifRange) {
+    MockHttpServletRequest req = new MockHttpServletRequest("GET", "/fileServer/test.bin");
+    if (range != null)
+      req.addHeader("Range", range);
+    if (ifRange != null)
+      req.addHeader("If-Range", ifRange);
+    return req;
+  }
+
+  private MockHttpServletResponse get(String range, String ifRange) throws Exception {
+    MockHttpServletResponse res = new MockHttpServletResponse();
+    ServletUtil.returnFile(request(range, ifRange), res, file, "application/octet-stream");
+    return res;
+  }
+}